@@ -0,0 +1,248 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.users.User;
+import edu.harvard.iq.dataverse.dataaccess.ChunkedUpload;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Named;
+
+/**
+ * Keeps track of the resumable, chunked file uploads of the native API
+ * (/api/datasets/{id}/uploads): each upload writes its chunks straight to the
+ * store of the dataset (see {@link ChunkedUpload}), so the file is never
+ * copied to the local temp directory; once all the bytes have been received,
+ * the file is added to the dataset the same way as a direct upload, with the
+ * checksum and the type calculated on the way.
+ *
+ * The uploads in progress are kept in memory, on the server that started
+ * them, and are not shared with the other servers of a cluster: all the
+ * requests of an upload must go to the same server (the others don't know
+ * about it, and return a 404), and the uploads are lost on a restart (and
+ * whatever was stored for them is left behind, for the storage cleanup to
+ * find). The number of uploads in progress is limited
+ * (dataverse.files.chunked-uploads.max-in-progress), as is the memory their
+ * stores keep for them (dataverse.files.chunked-uploads.max-buffered-bytes;
+ * see {@link ChunkedUpload#getBufferSize()}), and uploads that haven't
+ * received a chunk in a while (dataverse.files.chunked-uploads.expiry-minutes)
+ * are aborted.
+ */
+@Named
+@Singleton
+@Lock(LockType.READ)
+public class ChunkedUploadServiceBean {
+
+    private static final Logger logger = Logger.getLogger(ChunkedUploadServiceBean.class.getCanonicalName());
+
+    private static final int DEFAULT_MAX_IN_PROGRESS = 100;
+    private static final int DEFAULT_EXPIRY_MINUTES = 24 * 60;
+    private static final long DEFAULT_MAX_BUFFERED_BYTES = 512 * 1024 * 1024L;
+
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    // the sum of the buffer sizes of the uploads in progress:
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    /**
+     * Starts the upload of a file to a dataset, and creates its (empty)
+     * object in the store.
+     *
+     * @return the new upload, or null if too many uploads are already in
+     * progress, or if the memory for its buffer isn't available
+     */
+    public Upload start(Dataset dataset, User user, long length, String fileName, String jsonData, DataFile.ChecksumType checksumType) throws IOException {
+        if (uploads.size() >= JvmSettings.CHUNKED_UPLOADS_MAX_IN_PROGRESS.lookupOptional(Integer.class).orElse(DEFAULT_MAX_IN_PROGRESS)) {
+            return null;
+        }
+        DataFile dataFile = new DataFile();
+        dataFile.setOwner(dataset);
+        StorageIO<DataFile> storageIO = DataAccess.createNewStorageIO(dataFile, FileUtil.generateStorageIdentifier());
+        ChunkedUpload chunkedUpload = storageIO.startChunkedUpload(length, checksumType);
+        if (!reserveBuffer(chunkedUpload.getBufferSize())) {
+            chunkedUpload.abort();
+            return null;
+        }
+
+        Upload upload = new Upload(UUID.randomUUID().toString(), dataset.getId(), user.getIdentifier(),
+                dataFile.getStorageIdentifier(), fileName, jsonData, chunkedUpload);
+        uploads.put(upload.getId(), upload);
+        logger.fine(() -> "started upload " + upload.getId() + " of " + fileName + " (" + length + " bytes) to " + upload.getStorageIdentifier());
+        return upload;
+    }
+
+    /**
+     * @return the upload in progress, if it was started by this user for
+     * this dataset; null otherwise
+     */
+    public Upload find(String uploadId, Dataset dataset, User user) {
+        Upload upload = uploads.get(uploadId);
+        if (upload == null || !upload.getDatasetId().equals(dataset.getId())
+                || !upload.getUserIdentifier().equals(user.getIdentifier())) {
+            return null;
+        }
+        return upload;
+    }
+
+    /**
+     * Forgets a completed upload; its file now belongs to the dataset.
+     */
+    public void finish(Upload upload) {
+        if (uploads.remove(upload.getId()) != null) {
+            bufferedBytes.addAndGet(-upload.getChunkedUpload().getBufferSize());
+        }
+    }
+
+    /**
+     * Forgets the upload, and removes what was stored for it.
+     */
+    public void abort(Upload upload) {
+        if (uploads.remove(upload.getId()) != null) {
+            bufferedBytes.addAndGet(-upload.getChunkedUpload().getBufferSize());
+            upload.getChunkedUpload().abort();
+            logger.fine(() -> "aborted upload " + upload.getId() + " of " + upload.getFileName());
+        }
+    }
+
+    /**
+     * Removes the stored file of a completed upload that could not be added
+     * to its dataset; otherwise it would be left in the store with no
+     * DataFile pointing to it.
+     */
+    public void deleteStoredFile(Upload upload, Dataset dataset) {
+        DataFile dataFile = new DataFile();
+        dataFile.setOwner(dataset);
+        dataFile.setStorageIdentifier(upload.getStorageIdentifier());
+        try {
+            // (deleting is only allowed through a direct StorageIO)
+            String storageLocation = DataAccess.getStorageIO(dataFile).getStorageLocation();
+            DataAccess.getDirectStorageIO(storageLocation).delete();
+            logger.fine(() -> "deleted the stored file of upload " + upload.getId() + " (" + upload.getStorageIdentifier() + ")");
+        } catch (IOException ex) {
+            logger.warning("Failed to delete the stored file of upload " + upload.getId() + " (" + upload.getStorageIdentifier()
+                    + "), left for the storage cleanup: " + ex.getMessage());
+        }
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    boolean reserveBuffer(long size) {
+        long max = JvmSettings.CHUNKED_UPLOADS_MAX_BUFFERED_BYTES.lookupOptional(Long.class).orElse(DEFAULT_MAX_BUFFERED_BYTES);
+        long current;
+        do {
+            current = bufferedBytes.get();
+            if (current + size > max) {
+                return false;
+            }
+        } while (!bufferedBytes.compareAndSet(current, current + size));
+        return true;
+    }
+
+    @Schedule(hour = "*", minute = "*/15", persistent = false)
+    public void abortExpiredUploads() {
+        long expiryMillis = TimeUnit.MINUTES.toMillis(JvmSettings.CHUNKED_UPLOADS_EXPIRY_MINUTES.lookupOptional(Integer.class).orElse(DEFAULT_EXPIRY_MINUTES));
+        long now = System.currentTimeMillis();
+        for (Upload upload : uploads.values()) {
+            // (an upload that is receiving a chunk right now is left alone)
+            if (now - upload.getLastActivity() > expiryMillis && upload.getLock().tryLock()) {
+                try {
+                    logger.info("Aborting the upload of " + upload.getFileName() + " (" + upload.getId()
+                            + "), idle since " + new Date(upload.getLastActivity()));
+                    abort(upload);
+                } finally {
+                    upload.getLock().unlock();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Upload upload : uploads.values()) {
+            abort(upload);
+        }
+    }
+
+    public static class Upload {
+
+        private final String id;
+        private final Long datasetId;
+        private final String userIdentifier;
+        private final String storageIdentifier;
+        private final String fileName;
+        private final String jsonData;
+        private final ChunkedUpload chunkedUpload;
+        // only one request at a time can write to an upload:
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        Upload(String id, Long datasetId, String userIdentifier, String storageIdentifier, String fileName, String jsonData, ChunkedUpload chunkedUpload) {
+            this.id = id;
+            this.datasetId = datasetId;
+            this.userIdentifier = userIdentifier;
+            this.storageIdentifier = storageIdentifier;
+            this.fileName = fileName;
+            this.jsonData = jsonData;
+            this.chunkedUpload = chunkedUpload;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Long getDatasetId() {
+            return datasetId;
+        }
+
+        public String getUserIdentifier() {
+            return userIdentifier;
+        }
+
+        public String getStorageIdentifier() {
+            return storageIdentifier;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * @return the optional file parameters sent when the upload was
+         * started, as for /api/datasets/{id}/add
+         */
+        public String getJsonData() {
+            return jsonData;
+        }
+
+        public ChunkedUpload getChunkedUpload() {
+            return chunkedUpload;
+        }
+
+        public ReentrantLock getLock() {
+            return lock;
+        }
+
+        public long getLastActivity() {
+            return lastActivity;
+        }
+
+        public void touch() {
+            lastActivity = System.currentTimeMillis();
+        }
+    }
+}
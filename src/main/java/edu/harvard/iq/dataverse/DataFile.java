@@ -188,7 +188,7 @@ public class DataFile extends DvObject implements Comparable {
     @OneToMany(mappedBy = "dataFile", cascade = {CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
     private List<IngestReport> ingestReports;
     
-    @OneToOne(mappedBy = "dataFile", cascade = {CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
+    @OneToOne(mappedBy = "dataFile", cascade = {CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST}, fetch = FetchType.LAZY)
     private IngestRequest ingestRequest;
     
     @OneToMany(mappedBy = "dataFile", orphanRemoval = true, cascade = {CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
@@ -210,10 +210,10 @@ public class DataFile extends DvObject implements Comparable {
 
     private char ingestStatus = INGEST_STATUS_NONE; 
     
-    @OneToOne(mappedBy = "thumbnailFile")
+    @OneToOne(mappedBy = "thumbnailFile", fetch = FetchType.LAZY)
     private Dataset thumbnailForDataset;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name="embargo_id")
     private Embargo embargo;
 
@@ -236,6 +236,23 @@ public class DataFile extends DvObject implements Comparable {
         initFileReplaceAttributes();
     }
 
+    /**
+     * Set when the file turned out not to be an image (or a PDF) we can
+     * decode, so that generating a thumbnail is not attempted again every time
+     * the file is displayed. (A failure to read the file from the storage
+     * doesn't set it; that is retried the next time.)
+     */
+    @Column(columnDefinition = "BOOLEAN DEFAULT FALSE")
+    private boolean previewImageFail;
+
+    public boolean isPreviewImageFail() {
+        return previewImageFail;
+    }
+
+    public void setPreviewImageFail(boolean previewImageFail) {
+        this.previewImageFail = previewImageFail;
+    }
+
     /*
     Used in manage file permissions UI 
     to easily display those files that have been deleted in the current draft 
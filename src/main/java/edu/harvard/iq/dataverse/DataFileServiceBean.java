@@ -12,6 +12,7 @@ import edu.harvard.iq.dataverse.util.FileUtil;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -21,6 +22,7 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
@@ -59,6 +61,9 @@ public class DataFileServiceBean implements java.io.Serializable {
 
     @EJB EmbargoServiceBean embargoService;
     
+    @EJB
+    ThumbnailGenerationServiceBean thumbnailGenerationService;
+    
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
     
@@ -287,21 +292,24 @@ public class DataFileServiceBean implements java.io.Serializable {
                 .getResultList();
     }
     
-    public List<Long> findDataFileIdsByDatasetVersionIdLabelSearchTerm(Long datasetVersionId, String searchTerm, String userSuppliedSortField, String userSuppliedSortOrder){
-        FileSortFieldAndOrder sortFieldAndOrder = new FileSortFieldAndOrder(userSuppliedSortField, userSuppliedSortOrder);
-        
-        searchTerm=searchTerm.trim();
-        String sortField = sortFieldAndOrder.getSortField();
-        String sortOrder = sortFieldAndOrder.getSortOrder();
-        String searchClause = "";
-        if(searchTerm != null && !searchTerm.isEmpty()){
-            searchClause = " and  (lower(o.label) like '%" + searchTerm.toLowerCase() + "%' or lower(o.description) like '%" + searchTerm.toLowerCase() + "%')";
+    /**
+     * The checksums and labels of all the files of a version, in one query,
+     * by fileMetadata id: {checksum, label}. Used for the duplicate checks of
+     * the uploads (see FileChecksumIndex).
+     */
+    public Map<Long, String[]> findChecksumsByFileMetadataId(Long datasetVersionId) {
+        Map<Long, String[]> checksums = new HashMap<>();
+        if (datasetVersionId == null) {
+            return checksums;
         }
-        
-        return em.createNativeQuery("select o.datafile_id from FileMetadata o where o.datasetVersion_id = "  + datasetVersionId
-                + searchClause
-                + " order by o." + sortField + " " + sortOrder)
+        List<Object[]> rows = em.createNativeQuery("SELECT fm.id, df.checksumvalue, fm.label FROM filemetadata fm, datafile df"
+                + " WHERE fm.datasetversion_id = ?1 AND fm.datafile_id = df.id")
+                .setParameter(1, datasetVersionId)
                 .getResultList();
+        for (Object[] row : rows) {
+            checksums.put(((Number) row[0]).longValue(), new String[]{(String) row[1], (String) row[2]});
+        }
+        return checksums;
     }
     
     public List<FileMetadata> findFileMetadataByDatasetVersionIdLazy(Long datasetVersionId, int maxResults, String userSuppliedSortField, String userSuppliedSortOrder, int firstResult) {
@@ -356,20 +364,56 @@ public class DataFileServiceBean implements java.io.Serializable {
     }
 
     public DataFile findCheapAndEasy(Long id) {
-        DataFile dataFile;
+        if (id == null) {
+            return null;
+        }
+        return findCheapAndEasy(List.of(id)).get(id);
+    }
 
-        Object[] result;
+    /**
+     * Looks up the files, the same way as {@link #findCheapAndEasy(Long)},
+     * but with one query for all of them (and, if some of them are tabular,
+     * one more for their data tables and one for their tags), rather than
+     * a query per file.
+     *
+     * @return the files found, by id
+     */
+    public Map<Long, DataFile> findCheapAndEasy(Collection<Long> ids) {
+        Map<Long, DataFile> dataFiles = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return dataFiles;
+        }
+        String idList = ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+
+        List<Object[]> results;
 
         try {
-            result = (Object[]) em.createNativeQuery("SELECT t0.ID, t0.CREATEDATE, t0.INDEXTIME, t0.MODIFICATIONTIME, t0.PERMISSIONINDEXTIME, t0.PERMISSIONMODIFICATIONTIME, t0.PUBLICATIONDATE, t0.CREATOR_ID, t0.RELEASEUSER_ID, t0.PREVIEWIMAGEAVAILABLE, t1.CONTENTTYPE, t0.STORAGEIDENTIFIER, t1.FILESIZE, t1.INGESTSTATUS, t1.CHECKSUMVALUE, t1.RESTRICTED, t3.ID, t2.AUTHORITY, t2.IDENTIFIER, t1.CHECKSUMTYPE, t1.PREVIOUSDATAFILEID, t1.ROOTDATAFILEID, t0.AUTHORITY, T0.PROTOCOL, T0.IDENTIFIER, t2.PROTOCOL FROM DVOBJECT t0, DATAFILE t1, DVOBJECT t2, DATASET t3 WHERE ((t0.ID = " + id + ") AND (t0.OWNER_ID = t2.ID) AND (t2.ID = t3.ID) AND (t1.ID = t0.ID))").getSingleResult();
+            results = em.createNativeQuery("SELECT t0.ID, t0.CREATEDATE, t0.INDEXTIME, t0.MODIFICATIONTIME, t0.PERMISSIONINDEXTIME, t0.PERMISSIONMODIFICATIONTIME, t0.PUBLICATIONDATE, t0.CREATOR_ID, t0.RELEASEUSER_ID, t0.PREVIEWIMAGEAVAILABLE, t1.CONTENTTYPE, t0.STORAGEIDENTIFIER, t1.FILESIZE, t1.INGESTSTATUS, t1.CHECKSUMVALUE, t1.RESTRICTED, t3.ID, t2.AUTHORITY, t2.IDENTIFIER, t1.CHECKSUMTYPE, t1.PREVIOUSDATAFILEID, t1.ROOTDATAFILEID, t0.AUTHORITY, T0.PROTOCOL, T0.IDENTIFIER, t2.PROTOCOL, t1.PREVIEWIMAGEFAIL FROM DVOBJECT t0, DATAFILE t1, DVOBJECT t2, DATASET t3 WHERE ((t0.ID IN (" + idList + ")) AND (t0.OWNER_ID = t2.ID) AND (t2.ID = t3.ID) AND (t1.ID = t0.ID))").getResultList();
         } catch (Exception ex) {
-            return null;
+            return dataFiles;
         }
 
-        if (result == null) {
-            return null;
+        for (Object[] result : results) {
+            DataFile dataFile = dataFileFromCheapAndEasyResult(result);
+            dataFiles.put(dataFile.getId(), dataFile);
         }
 
+        // For the files whose content type indicates tabular data, spend 2
+        // extra queries looking up the data table and tabular tags objects:
+        String tabularIdList = dataFiles.values().stream()
+                .filter(dataFile -> MIME_TYPE_TSV.equalsIgnoreCase(dataFile.getContentType()) || MIME_TYPE_TSV_ALT.equalsIgnoreCase(dataFile.getContentType()))
+                .map(dataFile -> String.valueOf(dataFile.getId()))
+                .collect(Collectors.joining(","));
+        if (!tabularIdList.isEmpty()) {
+            addCheapAndEasyDataTables(dataFiles, tabularIdList);
+        }
+
+        return dataFiles;
+    }
+
+    private DataFile dataFileFromCheapAndEasyResult(Object[] result) {
+        DataFile dataFile;
+
         Integer file_id = (Integer) result[0];
 
         dataFile = new DataFile();
@@ -427,6 +471,11 @@ public class DataFileServiceBean implements java.io.Serializable {
             dataFile.setPreviewImageAvailable(previewAvailable);
         }
         
+        Boolean previewImageFail = (Boolean) result[26];
+        if (previewImageFail != null) {
+            dataFile.setPreviewImageFail(previewImageFail);
+        }
+        
         String contentType = (String) result[10];
         
         if (contentType != null) {
@@ -510,60 +559,66 @@ public class DataFileServiceBean implements java.io.Serializable {
         
         dataFile.setOwner(owner);
 
-        // If content type indicates it's tabular data, spend 2 extra queries 
-        // looking up the data table and tabular tags objects:
-        
-        if (MIME_TYPE_TSV.equalsIgnoreCase(contentType) || MIME_TYPE_TSV_ALT.equalsIgnoreCase(contentType)) {
-            Object[] dtResult;
-            try {
-                dtResult = (Object[]) em.createNativeQuery("SELECT ID, UNF, CASEQUANTITY, VARQUANTITY, ORIGINALFILEFORMAT, ORIGINALFILESIZE FROM dataTable WHERE DATAFILE_ID = " + id).getSingleResult();
-            } catch (Exception ex) {
-                dtResult = null;
+        return dataFile;
+    }
+
+    private void addCheapAndEasyDataTables(Map<Long, DataFile> dataFiles, String tabularIdList) {
+        List<Object[]> dtResults;
+        try {
+            dtResults = em.createNativeQuery("SELECT ID, UNF, CASEQUANTITY, VARQUANTITY, ORIGINALFILEFORMAT, ORIGINALFILESIZE, DATAFILE_ID FROM dataTable WHERE DATAFILE_ID IN (" + tabularIdList + ")").getResultList();
+        } catch (Exception ex) {
+            dtResults = Collections.emptyList();
+        }
+
+        for (Object[] dtResult : dtResults) {
+            DataFile dataFile = dataFiles.get(((Number) dtResult[6]).longValue());
+            if (dataFile == null || dataFile.getDataTable() != null) {
+                continue;
             }
-        
-            if (dtResult != null) {
-                DataTable dataTable = new DataTable(); 
+            DataTable dataTable = new DataTable(); 
 
-                dataTable.setId(((Integer) dtResult[0]).longValue());
-            
-                dataTable.setUnf((String)dtResult[1]);
-            
-                dataTable.setCaseQuantity((Long)dtResult[2]);
+            dataTable.setId(((Integer) dtResult[0]).longValue());
+        
+            dataTable.setUnf((String)dtResult[1]);
+        
+            dataTable.setCaseQuantity((Long)dtResult[2]);
+        
+            dataTable.setVarQuantity((Long)dtResult[3]);
+        
+            dataTable.setOriginalFileFormat((String)dtResult[4]);
             
-                dataTable.setVarQuantity((Long)dtResult[3]);
+            dataTable.setOriginalFileSize((Long)dtResult[5]);
             
-                dataTable.setOriginalFileFormat((String)dtResult[4]);
-                
-                dataTable.setOriginalFileSize((Long)dtResult[5]);
-                
-                dataTable.setDataFile(dataFile);
-                dataFile.setDataTable(dataTable);
-                
-                // tabular tags: 
-                
-                List<Object[]> tagResults;
-                try {
-                    tagResults = em.createNativeQuery("SELECT t.TYPE, t.DATAFILE_ID FROM DATAFILETAG t WHERE t.DATAFILE_ID = " + id).getResultList();
-                } catch (Exception ex) {
-                    logger.info("EXCEPTION looking up tags.");
-                    tagResults = null;
-                }
-                
-                if (tagResults != null) {
-                    List<String> fileTagLabels = DataFileTag.listTags();
-                    
-                    for (Object[] tagResult : tagResults) {
-                        Integer tagId = (Integer)tagResult[0];
-                        DataFileTag tag = new DataFileTag();
-                        tag.setTypeByLabel(fileTagLabels.get(tagId));
-                        tag.setDataFile(dataFile);
-                        dataFile.addTag(tag);
-                    }
+            dataTable.setDataFile(dataFile);
+            dataFile.setDataTable(dataTable);
+        }
+
+        // tabular tags: 
+
+        List<Object[]> tagResults;
+        try {
+            tagResults = em.createNativeQuery("SELECT t.TYPE, t.DATAFILE_ID FROM DATAFILETAG t WHERE t.DATAFILE_ID IN (" + tabularIdList + ")").getResultList();
+        } catch (Exception ex) {
+            logger.info("EXCEPTION looking up tags.");
+            tagResults = null;
+        }
+
+        if (tagResults != null) {
+            List<String> fileTagLabels = DataFileTag.listTags();
+
+            for (Object[] tagResult : tagResults) {
+                DataFile dataFile = dataFiles.get(((Number) tagResult[1]).longValue());
+                // (the tags of a file without a data table are left out, as before)
+                if (dataFile == null || dataFile.getDataTable() == null) {
+                    continue;
                 }
+                Integer tagId = (Integer)tagResult[0];
+                DataFileTag tag = new DataFileTag();
+                tag.setTypeByLabel(fileTagLabels.get(tagId));
+                tag.setDataFile(dataFile);
+                dataFile.addTag(tag);
             }
         }
-        
-        return dataFile;
     }
     
     public List<DataFile> findIngestsInProgress() {
@@ -757,8 +812,12 @@ public class DataFileServiceBean implements java.io.Serializable {
     
     /*
      * This method will return true if the thumbnail is *actually available* and
-     * ready to be downloaded. (it will try to generate a thumbnail for supported
-     * file types, if not yet available)
+     * ready to be downloaded. It is called while pages are being rendered, so
+     * it never generates the thumbnail itself: if it hasn't been generated
+     * yet, its generation is queued in the background (see 
+     * ThumbnailGenerationServiceBean), and false is returned for now, so that
+     * the page shows the file icon instead. (The thumbnails are only 
+     * generated on demand by the access API.)
      */
     public boolean isThumbnailAvailable (DataFile file) {
         if (file == null) {
@@ -778,26 +837,46 @@ public class DataFileServiceBean implements java.io.Serializable {
             return false;
         }
         
+        // ... or if we have already tried and failed to generate one: 
+        if (file.isPreviewImageFail()) {
+            return false;
+        }
+        
         /*
          Checking the permission here was resulting in extra queries; 
          it is now the responsibility of the client - such as the DatasetPage - 
          to make sure the permission check out, before calling this method.
-         (or *after* calling this method? - checking permissions costs db 
-         queries; checking if the thumbnail is available may cost cpu time, if 
-         it has to be generated on the fly - so you have to figure out which 
-         is more important... 
-        
         */
-                
         
-       if (ImageThumbConverter.isThumbnailAvailable(file)) {
-           file = this.find(file.getId());
-           file.setPreviewImageAvailable(true);
-           this.save(file); 
-           return true;
-       }
+        if (ImageThumbConverter.isThumbnailAvailable(file, ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE)) {
+            // (generated, but the flag wasn't set)
+            if (file.getId() != null) {
+                setPreviewImageAvailable(file.getId());
+            }
+            file.setPreviewImageAvailable(true);
+            return true;
+        }
 
-       return false;
+        thumbnailGenerationService.requestThumbnails(file);
+        return false;
+    }
+    
+    /*
+     * The following two methods update the thumbnail flags of a file directly
+     * in the database, without merging the (possibly stale) DataFile entity; 
+     * they are used by the background thumbnail generation.
+     */
+    public void setPreviewImageAvailable(Long fileId) {
+        em.createNativeQuery("UPDATE dvobject SET previewimageavailable = true WHERE id = ?1")
+                .setParameter(1, fileId)
+                .executeUpdate();
+    }
+    
+    public void setPreviewImageFail(Long fileId, boolean fail) {
+        em.createNativeQuery("UPDATE datafile SET previewimagefail = ?1 WHERE id = ?2")
+                .setParameter(1, fail)
+                .setParameter(2, fileId)
+                .executeUpdate();
     }
 
     
@@ -1018,8 +1097,17 @@ public class DataFileServiceBean implements java.io.Serializable {
         return MIME_TYPE_PACKAGE_FILE.equalsIgnoreCase(contentType);
     }
     
-    public void populateFileSearchCard(SolrSearchResult solrSearchResult) {
-        solrSearchResult.setEntity(this.findCheapAndEasy(solrSearchResult.getEntityId()));
+    /**
+     * Looks up the files of the file cards of a page of search results, with
+     * a constant number of queries for the whole page.
+     */
+    public void populateFileSearchCards(List<SolrSearchResult> solrSearchResults) {
+        Map<Long, DataFile> dataFiles = findCheapAndEasy(solrSearchResults.stream()
+                .map(SolrSearchResult::getEntityId)
+                .collect(Collectors.toSet()));
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            solrSearchResult.setEntity(dataFiles.get(solrSearchResult.getEntityId()));
+        }
     }
     
     public boolean hasBeenDeleted(DataFile df){
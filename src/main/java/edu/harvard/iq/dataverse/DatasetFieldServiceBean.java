@@ -30,6 +30,7 @@ import jakarta.json.JsonReader;
 import jakarta.json.JsonString;
 import jakarta.json.JsonValue;
 import jakarta.json.JsonValue.ValueType;
+import jakarta.persistence.Cache;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.NonUniqueResultException;
@@ -256,6 +257,22 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
     
     public ControlledVocabAlternate save(ControlledVocabAlternate alt) {
         return em.merge(alt);
+    }
+
+    /**
+     * Empties the shared entity cache of the metadata blocks, the field types
+     * and the controlled vocabularies; to be called once a metadata block has
+     * been (re)loaded. The saves above update the cached copies of the
+     * objects they merge, but not the cached collections of their parents
+     * (the fields of a block, the values of a field), which are only set from
+     * the other side.
+     */
+    public void evictCachedMetadataBlocks() {
+        Cache cache = em.getEntityManagerFactory().getCache();
+        cache.evict(MetadataBlock.class);
+        cache.evict(DatasetFieldType.class);
+        cache.evict(ControlledVocabularyValue.class);
+        cache.evict(ControlledVocabAlternate.class);
     } 
     
 
@@ -572,12 +572,20 @@ public class DatasetFieldType implements Serializable, Comparable<DatasetFieldTy
     }
 
     public String getLocaleTitle() {
-        if(getMetadataBlock()  == null) {
+        return getLocaleTitle(getName(), getMetadataBlock() == null ? null : getMetadataBlock().getName(), title);
+    }
+
+    /**
+     * @return the title of the field in the current locale, or the given
+     *         title if it isn't translated
+     */
+    public static String getLocaleTitle(String name, String metadataBlockName, String title) {
+        if(metadataBlockName == null) {
             return title;
         }
         else {
             try {
-                return BundleUtil.getStringFromPropertyFile("datasetfieldtype." + getName() + ".title", getMetadataBlock().getName());
+                return BundleUtil.getStringFromPropertyFile("datasetfieldtype." + name + ".title", metadataBlockName);
             } catch (MissingResourceException e) {
                 return title;
             }
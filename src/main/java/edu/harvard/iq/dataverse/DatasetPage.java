@@ -188,6 +188,10 @@ public class DatasetPage implements java.io.Serializable {
     @EJB
     DataFileServiceBean datafileService;
     @EJB
+    DatasetVersionFilesServiceBean datasetVersionFilesService;
+    @EJB
+    ThumbnailGenerationServiceBean thumbnailGenerationService;
+    @EJB
     PermissionServiceBean permissionService;
     @EJB
     DataverseServiceBean dataverseService;
@@ -659,19 +663,23 @@ public class DatasetPage implements java.io.Serializable {
         }
     }
 
-    private List<FileMetadata> fileMetadatasSearch;
+    // The files of the version that match the search term and the facets (null: all of them):
+    private Set<Long> fileSearchResultIds;
+    private int fileMetadatasSearchCount;
+    private LazyFileMetadataDataModel filesTableModel;
+    private Map<Long, FileMetadata> fileMetadatasByDataFileId;
 
-    public List<FileMetadata> getFileMetadatasSearch() {
-        return fileMetadatasSearch;
+    public LazyFileMetadataDataModel getFilesTableModel() {
+        return filesTableModel;
     }
 
-    public void setFileMetadatasSearch(List<FileMetadata> fileMetadatasSearch) {
-        this.fileMetadatasSearch = fileMetadatasSearch;
+    public int getFileMetadatasSearchCount() {
+        return fileMetadatasSearchCount;
     }
 
     public void updateFileSearch(){
         logger.fine("updating file search list");
-        this.fileMetadatasSearch = selectFileMetadatasForDisplay();
+        selectFileMetadatasForDisplay();
 
     }
 
@@ -686,10 +694,10 @@ public class DatasetPage implements java.io.Serializable {
     }
 
     public void showAll(){
-        setNumberOfFilesToShow(new Long(fileMetadatasSearch.size()));
+        setNumberOfFilesToShow(new Long(fileMetadatasSearchCount));
     }
 
-    private List<FileMetadata> selectFileMetadatasForDisplay() {
+    private void selectFileMetadatasForDisplay() {
         final Set<Long> searchResultsIdSet;
         if (isIndexedVersion() && StringUtil.isEmpty(fileLabelSearchTerm) && StringUtil.isEmpty(fileTypeFacet) && StringUtil.isEmpty(fileAccessFacet) && StringUtil.isEmpty(fileTagsFacet)) {
             // Indexed version: we need facets, they are set as a side effect of getFileIdsInVersionFromSolr method.
@@ -698,7 +706,7 @@ public class DatasetPage implements java.io.Serializable {
             getFileIdsInVersionFromSolr(workingVersion.getId(), this.fileLabelSearchTerm);
             // Since the search results should include the full set of fmds if all the
             // terms/facets are empty, setting them to null should just be
-            // an optimization to skip the loop below
+            // an optimization to skip the filtering of the files
             searchResultsIdSet = null;
         } else if (isIndexedVersion()) {
             // We run the search even if no search term and/or facets are
@@ -709,20 +717,66 @@ public class DatasetPage implements java.io.Serializable {
             // If the search term was specified, we'll run a search in the db;
             // if not - return the full list of files in the version.
             // (no facets without solr!)
-            searchResultsIdSet = getFileIdsInVersionFromDb(workingVersion.getId(), this.fileLabelSearchTerm);
+            searchResultsIdSet = getFileIdsInVersionFromDb(workingVersion, this.fileLabelSearchTerm);
         } else {
             searchResultsIdSet = null;
         }
 
-        final List<FileMetadata> md = workingVersion.getFileMetadatas();
-        final List<FileMetadata> retList;
-        if (searchResultsIdSet == null) {
-            retList = new ArrayList<>(md);
-        } else {
-            retList = md.stream().filter(x -> searchResultsIdSet.contains(x.getDataFile().getId())).collect(Collectors.toList());
+        fileMetadatasByDataFileId = new HashMap<>();
+        for (FileMetadata fmd : workingVersion.getFileMetadatas()) {
+            if (searchResultsIdSet == null || searchResultsIdSet.contains(fmd.getDataFile().getId())) {
+                fileMetadatasByDataFileId.put(fmd.getDataFile().getId(), fmd);
+            }
         }
-        sortFileMetadatas(retList);
-        return retList;
+        fileSearchResultIds = (searchResultsIdSet == null) ? null : new HashSet<>(fileMetadatasByDataFileId.keySet());
+        fileMetadatasSearchCount = fileMetadatasByDataFileId.size();
+        // The table only looks up the page of files it shows:
+        filesTableModel = new LazyFileMetadataDataModel(this::loadFileMetadatasPage, this::findFileMetadataInVersion, fileMetadatasSearchCount);
+    }
+
+    /**
+     * The FileMetadata of a file of the working version, for the rows of the
+     * files table that are selected but not on the page being shown.
+     */
+    private FileMetadata findFileMetadataInVersion(Long dataFileId) {
+        FileMetadata fmd = fileMetadatasByDataFileId.get(dataFileId);
+        if (fmd != null) {
+            return fmd;
+        }
+        for (FileMetadata versionFmd : workingVersion.getFileMetadatas()) {
+            if (dataFileId.equals(versionFmd.getDataFile().getId())) {
+                return versionFmd;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One page of the files table. The files are sorted and paged in the
+     * database, and the FileMetadatas of the page are then taken from the
+     * working version, so that the rows are the same objects that the rest of
+     * the page works with.
+     */
+    private List<FileMetadata> loadFileMetadatasPage(int first, int pageSize) {
+        // The order of the categories (the tag presort), and the files of a
+        // version that hasn't been saved yet, can only be sorted in memory:
+        boolean byCategory = tagPresort && FileMetadata.getCategorySortOrder() != null;
+        if (workingVersion.getId() == null || byCategory
+                || (fileSearchResultIds != null && fileSearchResultIds.size() > DatasetVersionFilesServiceBean.MAX_DATA_FILE_IDS)) {
+            List<FileMetadata> fileList = new ArrayList<>(fileMetadatasByDataFileId.values());
+            sortFileMetadatas(fileList);
+            return new ArrayList<>(fileList.subList(Math.min(first, fileList.size()), Math.min(first + pageSize, fileList.size())));
+        }
+
+        DatasetVersionFilesServiceBean.FileSearchCriteria searchCriteria = new DatasetVersionFilesServiceBean.FileSearchCriteria(null, null, null, null, null, fileSearchResultIds);
+        List<FileMetadata> fileList = new ArrayList<>();
+        for (Long dataFileId : datasetVersionFilesService.getDataFileIds(workingVersion, searchCriteria, folderPresort, fileSortField, !"desc".equals(fileSortOrder), pageSize, first)) {
+            FileMetadata fmd = fileMetadatasByDataFileId.get(dataFileId);
+            if (fmd != null) {
+                fileList.add(fmd);
+            }
+        }
+        return fileList;
     }
 
     private void sortFileMetadatas(final List<FileMetadata> fileList) {
@@ -755,15 +809,16 @@ public class DatasetPage implements java.io.Serializable {
      * Finds the list of numeric datafile ids in the Version specified, by running
      * a database query.
      *
-     * @param datasetVersionId numeric version id
+     * @param datasetVersion the version
      * @param pattern string keyword
      * @return set of numeric ids
      *
      */
 
-    public Set<Long> getFileIdsInVersionFromDb(Long datasetVersionId, String pattern) {
+    public Set<Long> getFileIdsInVersionFromDb(DatasetVersion datasetVersion, String pattern) {
         logger.fine("searching for file ids, in the database");
-        List<Long> searchResultsIdList = datafileService.findDataFileIdsByDatasetVersionIdLabelSearchTerm(datasetVersionId, pattern, "", "");
+        List<Long> searchResultsIdList = datasetVersionFilesService.getDataFileIds(datasetVersion,
+                new DatasetVersionFilesServiceBean.FileSearchCriteria(null, null, null, null, pattern), null);
 
         Set<Long> ret = new HashSet<>();
         for (Long id : searchResultsIdList) {
@@ -1330,7 +1385,10 @@ public class DatasetPage implements java.io.Serializable {
 
 
 
-        String thumbnailAsBase64 = ImageThumbConverter.getImageThumbnailAsBase64(fileMetadata.getDataFile(), ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE);
+        // Only use the thumbnail if it's already been generated; if not, it
+        // is queued to be generated in the background, and the file icon is
+        // shown for now:
+        String thumbnailAsBase64 = ImageThumbConverter.getImageThumbnailAsBase64(fileMetadata.getDataFile(), ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE, false);
 
 
         //if (datafileService.isThumbnailAvailable(fileMetadata.getDataFile())) {
@@ -1339,6 +1397,7 @@ public class DatasetPage implements java.io.Serializable {
             return true;
         }
 
+        thumbnailGenerationService.requestThumbnails(fileMetadata.getDataFile());
         datafileThumbnailsMap.put(dataFileId, "");
         return false;
 
@@ -2007,7 +2066,7 @@ public class DatasetPage implements java.io.Serializable {
                 }
                 // This will default to all the files in the version, if the search term
                 // parameter hasn't been specified yet:
-                fileMetadatasSearch = selectFileMetadatasForDisplay();
+                selectFileMetadatasForDisplay();
                 ownerId = dataset.getOwner().getId();
                 datasetNextMajorVersion = this.dataset.getNextMajorVersionString();
                 datasetNextMinorVersion = this.dataset.getNextMinorVersionString();
@@ -2532,7 +2591,7 @@ public class DatasetPage implements java.io.Serializable {
     }
 
     public void viewAllButtonPress(){
-        setChunkSize(fileMetadatasSearch.size());
+        setChunkSize(fileMetadatasSearchCount);
     }
 
      private int activeTabIndex;
@@ -2856,7 +2915,7 @@ public class DatasetPage implements java.io.Serializable {
         if (!newFolderPresort == folderPresort) {
             folderPresort = newFolderPresort;
         }
-        sortFileMetadatas(fileMetadatasSearch);
+        // (the files table picks up the new presorts the next time it loads a page)
         JsfHelper.addSuccessMessage(BundleUtil.getStringFromBundle("file.results.presort.change.success"));
     }
 
@@ -2889,7 +2948,7 @@ public class DatasetPage implements java.io.Serializable {
             return "";
         }
 
-        fileMetadatasSearch = selectFileMetadatasForDisplay();
+        selectFileMetadatasForDisplay();
 
         displayCitation = dataset.getCitation(true, workingVersion);
         stateChanged = false;
@@ -4527,8 +4586,9 @@ public class DatasetPage implements java.io.Serializable {
         if (fileMetadata != null) {
             if (fileMetadata.getDataFile() != null) {
                 if (fileMetadata.getDataFile().getId() != null) {
-                    if (fileMetadata.getDataFile().getOwner() != null) {
-                        if (fileMetadata.getDataFile().equals(fileMetadata.getDataFile().getOwner().getThumbnailFile())) {
+                    // (the files on this page are the files of this dataset)
+                    if (dataset != null) {
+                        if (fileMetadata.getDataFile().equals(dataset.getThumbnailFile())) {
                             return true;
                         }
                     }
@@ -4565,8 +4625,8 @@ public class DatasetPage implements java.io.Serializable {
         if (fileMetadataSelectedForThumbnailPopup != null) {
             if (fileMetadataSelectedForThumbnailPopup.getDataFile() != null) {
                 if (fileMetadataSelectedForThumbnailPopup.getDataFile().getId() != null) {
-                    if (fileMetadataSelectedForThumbnailPopup.getDataFile().getOwner() != null) {
-                        if (fileMetadataSelectedForThumbnailPopup.getDataFile().equals(fileMetadataSelectedForThumbnailPopup.getDataFile().getOwner().getThumbnailFile())) {
+                    if (dataset != null) {
+                        if (fileMetadataSelectedForThumbnailPopup.getDataFile().equals(dataset.getThumbnailFile())) {
                             return true;
                         }
                     }
@@ -4582,11 +4642,13 @@ public class DatasetPage implements java.io.Serializable {
         if (fileMetadataSelectedForThumbnailPopup != null) {
             if (fileMetadataSelectedForThumbnailPopup.getDataFile() != null) {
                 if (fileMetadataSelectedForThumbnailPopup.getDataFile().getId() != null) { // ?
-                    if (fileMetadataSelectedForThumbnailPopup.getDataFile().getOwner() != null) {
+                    // (this is the dataset that is saved; the owner of the file,
+                    // if it's looked up lazily, may be another copy of it)
+                    if (dataset != null) {
                         if (useAsThumbnail) {
-                            fileMetadataSelectedForThumbnailPopup.getDataFile().getOwner().setThumbnailFile(fileMetadataSelectedForThumbnailPopup.getDataFile());
+                            dataset.setThumbnailFile(fileMetadataSelectedForThumbnailPopup.getDataFile());
                         } else if (getUseAsDatasetThumbnail()) {
-                            fileMetadataSelectedForThumbnailPopup.getDataFile().getOwner().setThumbnailFile(null);
+                            dataset.setThumbnailFile(null);
                         }
                     }
                 }
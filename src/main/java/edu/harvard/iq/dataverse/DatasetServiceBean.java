@@ -6,7 +6,6 @@ import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
-import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.dataset.DatasetUtil;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
@@ -642,7 +641,8 @@ public class DatasetServiceBean implements java.io.Serializable {
         if (datasetVersion.getDataset() != null) {
             DataFile dataFile = datasetVersion.getDataset().getThumbnailFile();
             if (dataFile != null) {
-                return ImageThumbConverter.isThumbnailAvailable(dataFile, 48);
+                // (only a thumbnail that is already generated; a missing one is queued)
+                return fileService.isThumbnailAvailable(dataFile);
             }
         }
 
@@ -0,0 +1,286 @@
+package edu.harvard.iq.dataverse;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import jakarta.ejb.Stateless;
+import jakarta.inject.Named;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+/**
+ * Lists the files in a dataset version one page at a time, with the filtering
+ * and the sorting done in the database, so that neither the API nor the
+ * dataset page has to load all the FileMetadatas (and their DataFiles and
+ * DataTables) of a version with many files in order to show a few of them.
+ */
+@Stateless
+@Named
+public class DatasetVersionFilesServiceBean implements Serializable {
+
+    private static final Logger logger = Logger.getLogger(DatasetVersionFilesServiceBean.class.getCanonicalName());
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    public enum FileOrderCriteria {
+        NameAZ, NameZA, Newest, Oldest, Size, Type
+    }
+
+    public enum FileAccessStatus {
+        Public, Restricted, EmbargoedThenRestricted, EmbargoedThenPublic
+    }
+
+    /**
+     * The filters that can be applied to the files of a version; the ones
+     * left null are not applied.
+     */
+    public static class FileSearchCriteria implements Serializable {
+
+        private final String contentType;
+        private final FileAccessStatus accessStatus;
+        private final String categoryName;
+        private final DataFileTag.TagType tabularTagType;
+        private final String searchText;
+        private final Collection<Long> dataFileIds;
+
+        public FileSearchCriteria(String contentType, FileAccessStatus accessStatus, String categoryName, DataFileTag.TagType tabularTagType, String searchText) {
+            this(contentType, accessStatus, categoryName, tabularTagType, searchText, null);
+        }
+
+        /**
+         * @param dataFileIds only the files with these ids (e.g. the results
+         * of a search of the version in Solr); at most
+         * {@link #MAX_DATA_FILE_IDS} of them
+         */
+        public FileSearchCriteria(String contentType, FileAccessStatus accessStatus, String categoryName, DataFileTag.TagType tabularTagType, String searchText, Collection<Long> dataFileIds) {
+            if (dataFileIds != null && dataFileIds.size() > MAX_DATA_FILE_IDS) {
+                throw new IllegalArgumentException("Too many file ids: " + dataFileIds.size());
+            }
+            this.contentType = contentType;
+            this.accessStatus = accessStatus;
+            this.categoryName = categoryName;
+            this.tabularTagType = tabularTagType;
+            this.searchText = searchText;
+            this.dataFileIds = dataFileIds;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public FileAccessStatus getAccessStatus() {
+            return accessStatus;
+        }
+
+        public String getCategoryName() {
+            return categoryName;
+        }
+
+        public DataFileTag.TagType getTabularTagType() {
+            return tabularTagType;
+        }
+
+        public String getSearchText() {
+            return searchText;
+        }
+
+        public Collection<Long> getDataFileIds() {
+            return dataFileIds;
+        }
+    }
+
+    /**
+     * The most file ids a {@link FileSearchCriteria} can be restricted to
+     * (each one is a bound parameter of the query).
+     */
+    public static final int MAX_DATA_FILE_IDS = 10000;
+
+    private static final String FILE_DATE = "COALESCE(df.publicationDate, df.createDate)";
+
+    /**
+     * The columns selected by {@link #getFileSummaries}, in this order.
+     */
+    public static final String[] FILE_SUMMARY_COLUMNS = {"id", "label", "directoryLabel", "restricted", "contentType", "filesize", "checksumType", "checksumValue"};
+
+    /**
+     * @param limit the maximum number of results (null: no limit)
+     * @param offset the number of results to skip (null: none)
+     */
+    public List<FileMetadata> getFileMetadatas(DatasetVersion datasetVersion, Integer limit, Integer offset, FileSearchCriteria searchCriteria, FileOrderCriteria orderCriteria) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        String queryString = "SELECT fm FROM FileMetadata fm JOIN fm.dataFile df LEFT JOIN df.embargo e"
+                + getWhereClause(datasetVersion, searchCriteria, parameters)
+                + getOrderByClause(orderCriteria);
+        TypedQuery<FileMetadata> query = em.createQuery(queryString, FileMetadata.class);
+        return setPage(setParameters(query, parameters), limit, offset).getResultList();
+    }
+
+    /**
+     * Same as {@link #getFileMetadatas}, but only selects the handful of
+     * columns listed in {@link #FILE_SUMMARY_COLUMNS}, without instantiating
+     * any entities.
+     */
+    public List<Object[]> getFileSummaries(DatasetVersion datasetVersion, Integer limit, Integer offset, FileSearchCriteria searchCriteria, FileOrderCriteria orderCriteria) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        String queryString = "SELECT df.id, fm.label, fm.directoryLabel, fm.restricted, df.contentType, df.filesize, df.checksumType, df.checksumValue"
+                + " FROM FileMetadata fm JOIN fm.dataFile df LEFT JOIN df.embargo e"
+                + getWhereClause(datasetVersion, searchCriteria, parameters)
+                + getOrderByClause(orderCriteria);
+        TypedQuery<Object[]> query = em.createQuery(queryString, Object[].class);
+        return setPage(setParameters(query, parameters), limit, offset).getResultList();
+    }
+
+    /**
+     * @return the ids of the DataFiles in the version that match the
+     * criteria, in the requested order
+     */
+    public List<Long> getDataFileIds(DatasetVersion datasetVersion, FileSearchCriteria searchCriteria, FileOrderCriteria orderCriteria) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        String queryString = "SELECT df.id FROM FileMetadata fm JOIN fm.dataFile df LEFT JOIN df.embargo e"
+                + getWhereClause(datasetVersion, searchCriteria, parameters)
+                + getOrderByClause(orderCriteria);
+        return setParameters(em.createQuery(queryString, Long.class), parameters).getResultList();
+    }
+
+    /**
+     * One page of the ids of the DataFiles in the version that match the
+     * criteria, in the order of the files table of the dataset page: by
+     * folder first (the files that aren't in a folder first) if byFolder is
+     * set, then by the sort field ("name", "date", "size" or "type", as in
+     * {@link edu.harvard.iq.dataverse.util.DataFileComparator}).
+     */
+    public List<Long> getDataFileIds(DatasetVersion datasetVersion, FileSearchCriteria searchCriteria, boolean byFolder, String sortField, boolean ascending, Integer limit, Integer offset) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        String queryString = "SELECT df.id FROM FileMetadata fm JOIN fm.dataFile df LEFT JOIN df.embargo e"
+                + getWhereClause(datasetVersion, searchCriteria, parameters)
+                + getOrderByClause(byFolder, sortField, ascending);
+        return setPage(setParameters(em.createQuery(queryString, Long.class), parameters), limit, offset).getResultList();
+    }
+
+    public long getFileMetadataCount(DatasetVersion datasetVersion, FileSearchCriteria searchCriteria) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        String queryString = "SELECT COUNT(fm) FROM FileMetadata fm JOIN fm.dataFile df LEFT JOIN df.embargo e"
+                + getWhereClause(datasetVersion, searchCriteria, parameters);
+        return setParameters(em.createQuery(queryString, Long.class), parameters).getSingleResult();
+    }
+
+    private String getWhereClause(DatasetVersion datasetVersion, FileSearchCriteria searchCriteria, Map<String, Object> parameters) {
+        StringBuilder where = new StringBuilder(" WHERE fm.datasetVersion.id = :datasetVersionId");
+        parameters.put("datasetVersionId", datasetVersion.getId());
+        if (searchCriteria == null) {
+            return where.toString();
+        }
+
+        if (searchCriteria.getContentType() != null) {
+            where.append(" AND df.contentType = :contentType");
+            parameters.put("contentType", searchCriteria.getContentType());
+        }
+        if (searchCriteria.getAccessStatus() != null) {
+            String activeEmbargo = "(e.dateAvailable IS NOT NULL AND e.dateAvailable > :today)";
+            switch (searchCriteria.getAccessStatus()) {
+                case Public:
+                    where.append(" AND fm.restricted = FALSE AND NOT ").append(activeEmbargo);
+                    break;
+                case Restricted:
+                    where.append(" AND fm.restricted = TRUE AND NOT ").append(activeEmbargo);
+                    break;
+                case EmbargoedThenRestricted:
+                    where.append(" AND fm.restricted = TRUE AND ").append(activeEmbargo);
+                    break;
+                case EmbargoedThenPublic:
+                    where.append(" AND fm.restricted = FALSE AND ").append(activeEmbargo);
+                    break;
+            }
+            parameters.put("today", LocalDate.now());
+        }
+        if (searchCriteria.getCategoryName() != null) {
+            where.append(" AND EXISTS (SELECT c FROM FileMetadata fmc JOIN fmc.fileCategories c WHERE fmc = fm AND c.name = :categoryName)");
+            parameters.put("categoryName", searchCriteria.getCategoryName());
+        }
+        if (searchCriteria.getTabularTagType() != null) {
+            where.append(" AND EXISTS (SELECT t FROM DataFileTag t WHERE t.dataFile = df AND t.type = :tagType)");
+            parameters.put("tagType", searchCriteria.getTabularTagType());
+        }
+        if (searchCriteria.getSearchText() != null && !searchCriteria.getSearchText().trim().isEmpty()) {
+            where.append(" AND (LOWER(fm.label) LIKE :searchText OR LOWER(fm.description) LIKE :searchText)");
+            parameters.put("searchText", "%" + searchCriteria.getSearchText().trim().toLowerCase() + "%");
+        }
+        if (searchCriteria.getDataFileIds() != null) {
+            if (searchCriteria.getDataFileIds().isEmpty()) {
+                where.append(" AND df.id IS NULL");
+            } else {
+                where.append(" AND df.id IN :dataFileIds");
+                parameters.put("dataFileIds", searchCriteria.getDataFileIds());
+            }
+        }
+        return where.toString();
+    }
+
+    private String getOrderByClause(FileOrderCriteria orderCriteria) {
+        if (orderCriteria == null) {
+            orderCriteria = FileOrderCriteria.NameAZ;
+        }
+        // (the id is always added last, so that the order, and therefore the
+        // pages, are stable)
+        switch (orderCriteria) {
+            case NameZA:
+                return " ORDER BY fm.label DESC, fm.id DESC";
+            // (the files that haven't been published yet have no publication
+            // date; they are ordered by their creation date instead)
+            case Newest:
+                return " ORDER BY " + FILE_DATE + " DESC, fm.id DESC";
+            case Oldest:
+                return " ORDER BY " + FILE_DATE + ", fm.id";
+            case Size:
+                return " ORDER BY df.filesize, fm.id";
+            case Type:
+                return " ORDER BY df.contentType, fm.id";
+            default:
+                return " ORDER BY fm.label, fm.id";
+        }
+    }
+
+    private String getOrderByClause(boolean byFolder, String sortField, boolean ascending) {
+        StringBuilder orderBy = new StringBuilder(" ORDER BY ");
+        if (byFolder) {
+            // (the empty string sorts first, so do the files that aren't in a folder)
+            orderBy.append("UPPER(COALESCE(fm.directoryLabel, '')), ");
+        }
+        switch (sortField == null ? "name" : sortField) {
+            case "date":
+                orderBy.append(FILE_DATE);
+                break;
+            case "size":
+                orderBy.append("df.filesize");
+                break;
+            case "type":
+                orderBy.append("df.contentType");
+                break;
+            default:
+                orderBy.append("UPPER(fm.label)");
+        }
+        return orderBy.append(ascending ? "" : " DESC").append(", fm.id").toString();
+    }
+
+    private <T> TypedQuery<T> setParameters(TypedQuery<T> query, Map<String, Object> parameters) {
+        parameters.forEach(query::setParameter);
+        logger.fine(() -> "file listing query parameters: " + parameters);
+        return query;
+    }
+
+    private <T> TypedQuery<T> setPage(TypedQuery<T> query, Integer limit, Integer offset) {
+        if (limit != null && limit > 0) {
+            query.setMaxResults(limit);
+        }
+        if (offset != null && offset > 0) {
+            query.setFirstResult(offset);
+        }
+        return query;
+    }
+}
@@ -22,8 +22,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import jakarta.ejb.EJB;
 import jakarta.ejb.EJBException;
 import jakarta.ejb.Stateless;
@@ -158,6 +160,9 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
         return (DatasetVersion) em.createNamedQuery("DatasetVersion.findById")
             .setParameter("id", pk)
             // Optimization hints: retrieve all data in one query; this prevents point queries when iterating over the files 
+            // (the to-one relationships are lazy, so the ones the dataset page needs are listed here too)
+            .setHint("eclipselink.left-join-fetch", "o.dataset")
+            .setHint("eclipselink.left-join-fetch", "o.termsOfUseAndAccess")
             .setHint("eclipselink.left-join-fetch", "o.fileMetadatas.dataFile.ingestRequest")
             .setHint("eclipselink.left-join-fetch", "o.fileMetadatas.dataFile.thumbnailForDataset")
             .setHint("eclipselink.left-join-fetch", "o.fileMetadatas.dataFile.dataTables")
@@ -166,6 +171,9 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
             .setHint("eclipselink.left-join-fetch", "o.fileMetadatas.datasetVersion")
             .setHint("eclipselink.left-join-fetch", "o.fileMetadatas.dataFile.releaseUser")
             .setHint("eclipselink.left-join-fetch", "o.fileMetadatas.dataFile.creator")
+            // (the owner of the files is the dataset fetched above; fetching it here makes
+            // it the same instance, instead of a copy looked up for every file later on)
+            .setHint("eclipselink.left-join-fetch", "o.fileMetadatas.dataFile.owner")
             .getSingleResult();
     }
 
@@ -734,6 +742,9 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
     // when in read-only, optimized mode, when we similarly try to serve the 
     // page while minimizing full lookup of entities via EJB. 
     // (in both cases above the method is called via ThumbnailServiceWrapper)
+    // A candidate file whose thumbnail hasn't been generated yet is not used:
+    // its generation is queued in the background, and the dataset will get
+    // its thumbnail once it is there.
     
     public Long getThumbnailByVersionId(Long versionId) {
         if (versionId == null) {
@@ -766,7 +777,7 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
         }
 
         if (!systemConfig.isThumbnailGenerationDisabledForImages()) {
-            // OK, let's try and generate an image thumbnail!
+            // OK, let's look for an image file with a thumbnail!
             long imageThumbnailSizeLimit = systemConfig.getThumbnailSizeLimitImage();
 
             try {
@@ -801,7 +812,7 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
 
         // And if that didn't work, try the same thing for PDFs:
         if (!systemConfig.isThumbnailGenerationDisabledForPDF()) {
-            // OK, let's try and generate an image thumbnail!
+            // OK, let's look for a PDF file with a thumbnail!
             long imageThumbnailSizeLimit = systemConfig.getThumbnailSizeLimitPDF();
             try {
                 thumbnailFileId = (Long) em.createNativeQuery("SELECT df.id "
@@ -855,56 +866,84 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
         
     }
     
-    public void populateDatasetSearchCard(SolrSearchResult solrSearchResult) {
-        Long dataverseId = Long.parseLong(solrSearchResult.getParent().get("id"));
-        Long datasetVersionId = solrSearchResult.getDatasetVersionId();
-        Long datasetId = solrSearchResult.getEntityId();
-        
-        if (dataverseId == 0) {
+    /**
+     * Fills in the version state, dataverse alias and thumbnail of the dataset
+     * cards of a page of search results, with a constant number of queries
+     * for the whole page (the versions, the dataverses, and the thumbnail
+     * files).
+     */
+    public void populateDatasetSearchCards(List<SolrSearchResult> solrSearchResults) {
+        Map<Long, SolrSearchResult> cards = new HashMap<>();
+        Map<Long, Long> dataverseIds = new HashMap<>();
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            Long dataverseId;
+            try {
+                dataverseId = Long.parseLong(solrSearchResult.getParent().get("id"));
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            if (dataverseId == 0) {
+                continue;
+            }
+            cards.put(solrSearchResult.getDatasetVersionId(), solrSearchResult);
+            dataverseIds.put(solrSearchResult.getDatasetVersionId(), dataverseId);
+        }
+        if (cards.isEmpty()) {
             return;
         }
         
-        Object[] searchResult;
+        List<Object[]> searchResults;
+        List<Object[]> aliasResults;
         
         try {
-            if (datasetId != null) {
-                searchResult = (Object[]) em.createNativeQuery("SELECT t0.VERSIONSTATE, t1.ALIAS, t2.THUMBNAILFILE_ID, t2.USEGENERICTHUMBNAIL, t3.STORAGEIDENTIFIER FROM DATASETVERSION t0, DATAVERSE t1, DATASET t2, DVOBJECT t3 WHERE t0.ID = " 
-                        + datasetVersionId 
-                        + " AND t1.ID = " 
-                        + dataverseId
-                        + " AND t2.ID = "
-                        + datasetId
-                        + " AND t2.ID = t3.ID").getSingleResult()
-                        
-                        ;
-            } else {
-                // Why is this method ever called with dataset_id = null? -- L.A.
-                searchResult = (Object[]) em.createNativeQuery("SELECT t0.VERSIONSTATE, t1.ALIAS FROM DATASETVERSION t0, DATAVERSE t1 WHERE t0.ID = " + datasetVersionId + " AND t1.ID = " + dataverseId).getSingleResult();
-            }
+            searchResults = em.createNativeQuery("SELECT t0.ID, t0.VERSIONSTATE, t2.THUMBNAILFILE_ID, t2.USEGENERICTHUMBNAIL, t3.STORAGEIDENTIFIER FROM DATASETVERSION t0, DATASET t2, DVOBJECT t3 WHERE t0.ID IN ("
+                    + cards.keySet().stream().map(String::valueOf).collect(Collectors.joining(","))
+                    + ") AND t2.ID = t0.DATASET_ID AND t2.ID = t3.ID").getResultList();
+            aliasResults = em.createNativeQuery("SELECT t1.ID, t1.ALIAS FROM DATAVERSE t1 WHERE t1.ID IN ("
+                    + dataverseIds.values().stream().distinct().map(String::valueOf).collect(Collectors.joining(","))
+                    + ")").getResultList();
         } catch (Exception ex) {
             return;
         }
-
-        if (searchResult == null) {
-            return;
-        }
         
-        if (searchResult[0] != null) {
-            String versionState = (String)searchResult[0];
-            if ("DEACCESSIONED".equals(versionState)) {
-                solrSearchResult.setDeaccessionedState(true);
-            }
+        Map<Long, String> aliases = new HashMap<>();
+        for (Object[] aliasResult : aliasResults) {
+            aliases.put(((Number) aliasResult[0]).longValue(), (String) aliasResult[1]);
         }
         
-        /**
-          * @todo (from pdurbin) can a dataverse alias ever be null?
-          */
-        
-        if (searchResult[1] != null) {
-            solrSearchResult.setDataverseAlias((String) searchResult[1]);
+        // The image files specifically assigned as the "icons" for the datasets:
+        Map<Long, DataFile> thumbnailFiles;
+        try {
+            thumbnailFiles = datafileService.findCheapAndEasy(searchResults.stream()
+                    .filter(searchResult -> searchResult[2] != null)
+                    .map(searchResult -> ((Number) searchResult[2]).longValue())
+                    .collect(Collectors.toSet()));
+        } catch (Exception ex) {
+            thumbnailFiles = new HashMap<>();
         }
         
-        if (searchResult.length == 5) {
+        for (Object[] searchResult : searchResults) {
+            Long datasetVersionId = ((Number) searchResult[0]).longValue();
+            SolrSearchResult solrSearchResult = cards.get(datasetVersionId);
+            String alias = aliases.get(dataverseIds.get(datasetVersionId));
+            if (solrSearchResult == null || alias == null) {
+                continue;
+            }
+            
+            if (searchResult[1] != null) {
+                String versionState = (String)searchResult[1];
+                if ("DEACCESSIONED".equals(versionState)) {
+                    solrSearchResult.setDeaccessionedState(true);
+                }
+            }
+            
+            solrSearchResult.setDataverseAlias(alias);
+            
+            // Why is this method ever called with dataset_id = null? -- L.A.
+            if (solrSearchResult.getEntityId() == null) {
+                continue;
+            }
+            
             Dataset datasetEntity = new Dataset();
             String globalIdentifier = solrSearchResult.getIdentifier();
             GlobalId globalId = PidUtil.parseAsGlobalID(globalIdentifier);
@@ -917,26 +956,15 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
             }
             solrSearchResult.setEntity(datasetEntity);
             if (searchResult[2] != null) {
-                // This is the image file specifically assigned as the "icon" for
-                // the dataset:
-                Long thumbnailFile_id = (Long) searchResult[2];
-                if (thumbnailFile_id != null) {
-                    DataFile thumbnailFile;
-                    try {
-                        thumbnailFile = datafileService.findCheapAndEasy(thumbnailFile_id);
-                    } catch (Exception ex) {
-                        thumbnailFile = null;
-                    }
-
-                    if (thumbnailFile != null) {
-                        ((Dataset) solrSearchResult.getEntity()).setThumbnailFile(thumbnailFile);
-                    }
+                DataFile thumbnailFile = thumbnailFiles.get(((Number) searchResult[2]).longValue());
+                if (thumbnailFile != null) {
+                    datasetEntity.setThumbnailFile(thumbnailFile);
                 }
             }
             if (searchResult[3] != null) {
-                ((Dataset)solrSearchResult.getEntity()).setUseGenericThumbnail((Boolean) searchResult[3]);
+                datasetEntity.setUseGenericThumbnail((Boolean) searchResult[3]);
             } else {
-                ((Dataset)solrSearchResult.getEntity()).setUseGenericThumbnail(false);
+                datasetEntity.setUseGenericThumbnail(false);
             }
         }
     }
@@ -976,12 +1004,15 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
             throw new NullPointerException("datasetVersion cannot be null");
         }
         
-        String query = "SELECT df.md5 FROM datafile df, filemetadata fm" 
-                + " WHERE fm.datasetversion_id = " + datasetVersion.getId() 
+        String query = "SELECT df.id FROM datafile df, filemetadata fm" 
+                + " WHERE fm.datasetversion_id = ?1"
                 + " AND fm.datafile_id = df.id"
-                + " AND df.md5 = '" + selectedChecksum + "';";
+                + " AND df.checksumvalue = ?2"
+                + " LIMIT 1";
         
-        Query nativeQuery = em.createNativeQuery(query);
+        Query nativeQuery = em.createNativeQuery(query)
+                .setParameter(1, datasetVersion.getId())
+                .setParameter(2, selectedChecksum);
         List<?> checksumList = nativeQuery.getResultList();
 
         return !checksumList.isEmpty();
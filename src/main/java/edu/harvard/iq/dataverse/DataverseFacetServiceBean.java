@@ -1,9 +1,12 @@
 package edu.harvard.iq.dataverse;
 
+import edu.harvard.iq.dataverse.search.SearchResultCache;
 import edu.harvard.iq.dataverse.util.LruCache;
 import java.util.List;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -24,6 +27,9 @@ public class DataverseFacetServiceBean implements java.io.Serializable {
     
     @EJB
     DataverseServiceBean dataverses;
+
+    @Inject
+    Event<SearchResultCache.FacetsChangedEvent> facetsChanged;
     
     public List<DataverseFacet> findByDataverseId(Long dataverseId) {
         List<DataverseFacet> res = cache.get(dataverseId);
@@ -40,6 +46,7 @@ public class DataverseFacetServiceBean implements java.io.Serializable {
     public void delete(DataverseFacet dataverseFacet) {
         em.remove(em.merge(dataverseFacet));
         cache.invalidate();
+        facetsChanged.fire(new SearchResultCache.FacetsChangedEvent());
     }
     
 	public void deleteFacetsFor( Dataverse d ) {
@@ -47,6 +54,7 @@ public class DataverseFacetServiceBean implements java.io.Serializable {
 			.setParameter("ownerId", d.getId())
 				.executeUpdate();
         cache.invalidate(d.getId());
+        facetsChanged.fire(new SearchResultCache.FacetsChangedEvent());
         
 	}
 	
@@ -59,6 +67,7 @@ public class DataverseFacetServiceBean implements java.io.Serializable {
         
         ownerDv.getDataverseFacets().add(dataverseFacet);
         em.persist(dataverseFacet);
+        facetsChanged.fire(new SearchResultCache.FacetsChangedEvent());
         return dataverseFacet;
     }
     
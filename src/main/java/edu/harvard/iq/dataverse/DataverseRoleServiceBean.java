@@ -1,13 +1,13 @@
 package edu.harvard.iq.dataverse;
 
+import edu.harvard.iq.dataverse.authorization.AuthenticationCache;
 import edu.harvard.iq.dataverse.authorization.DataverseRole;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.RoleAssignee;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.authorization.RoleAssignmentSet;
-import edu.harvard.iq.dataverse.search.IndexAsync;
-import edu.harvard.iq.dataverse.search.IndexResponse;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.search.PermissionReindexServiceBean.PermissionsChangedEvent;
 import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -19,6 +19,8 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -44,8 +46,10 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     IndexServiceBean indexService;
     @EJB
     SolrIndexServiceBean solrIndexService;
-    @EJB
-    IndexAsync indexAsync;
+    @Inject
+    Event<PermissionsChangedEvent> permissionsChanged;
+    @Inject
+    Event<AuthenticationCache.RolesChangedEvent> rolesChanged;
 
     public DataverseRole save(DataverseRole aRole) {
         if (aRole.getId() == null) {
@@ -57,11 +61,10 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
             return aRole;
         } else {
             DataverseRole merged = em.merge(aRole);
-            /**
-             * @todo update permissionModificationTime here.
-             */
-            IndexResponse indexDefinitionPountResult = indexDefinitionPoint(merged.getOwner());
-            logger.info("aRole getId was not null. Indexing result: " + indexDefinitionPountResult);
+            if (merged.getOwner() != null) {
+                // (the permissions are reindexed in the background, once this is committed)
+                permissionsChanged.fire(new PermissionsChangedEvent(List.<DvObject>of(merged.getOwner())));
+            }
             return merged;
         }
     }
@@ -76,24 +79,16 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
         } else {
             assignment = em.merge(assignment);
         }
+        rolesChanged.fire(new AuthenticationCache.RolesChangedEvent(assignment.getAssigneeIdentifier()));
         /**
          * @todo update permissionModificationTime here.
          */
         if ( createIndex ) {
-            indexAsync.indexRole(assignment);
+            permissionsChanged.fire(new PermissionsChangedEvent(List.of(assignment.getDefinitionPoint())));
         }
         return assignment;
     }
 
-    private IndexResponse indexDefinitionPoint(DvObject definitionPoint) {
-        /**
-         * @todo Do something with the index response. Was Solr down? Is
-         * everything ok?
-         */
-        IndexResponse indexResponse = solrIndexService.indexPermissionsOnSelfAndChildren(definitionPoint);
-        return indexResponse;
-    }
-
     public DataverseRole find(Long id) {
         return em.find(DataverseRole.class, id);
     }
@@ -106,6 +101,9 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
         em.createNamedQuery("DataverseRole.deleteById", DataverseRole.class)
             .setParameter("id", id)
             .executeUpdate();
+        // (roles are kept in the shared entity cache, which the bulk delete
+        // bypasses)
+        em.getEntityManagerFactory().getCache().evict(DataverseRole.class, id);
     }
 
     public List<DataverseRole> findByOwnerId(Long ownerId) {
@@ -142,6 +140,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
             em.refresh(role);
         }
         em.refresh(assignee);
+        rolesChanged.fire(new AuthenticationCache.RolesChangedEvent(assignee.getIdentifier()));
     }
 
     public void revoke(RoleAssignment ra) {
@@ -149,10 +148,11 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
             ra = em.merge(ra);
         }
         em.remove(ra);
+        rolesChanged.fire(new AuthenticationCache.RolesChangedEvent(ra.getAssigneeIdentifier()));
         /**
          * @todo update permissionModificationTime here.
          */
-        indexAsync.indexRole(ra);
+        permissionsChanged.fire(new PermissionsChangedEvent(List.of(ra.getDefinitionPoint())));
     }
 
     // "nuclear" remove-all roles for a user or group: 
@@ -170,8 +170,9 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
 
             reindexSet.add(ra.getDefinitionPoint());
         }
+        rolesChanged.fire(new AuthenticationCache.RolesChangedEvent(assignee.getIdentifier()));
 
-        indexAsync.indexRoles(reindexSet);
+        permissionsChanged.fire(new PermissionsChangedEvent(reindexSet));
     }
 
     public RoleAssignmentSet roleAssignments(User user, Dataverse dv) {
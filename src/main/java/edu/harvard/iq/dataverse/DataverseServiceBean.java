@@ -16,6 +16,8 @@ import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.search.PermissionReindexServiceBean;
+import edu.harvard.iq.dataverse.search.SearchResultCache;
 import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
 import edu.harvard.iq.dataverse.search.SolrSearchResult;
 import edu.harvard.iq.dataverse.util.StringUtil;
@@ -24,15 +26,18 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.Properties;
 
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.json.Json;
@@ -59,6 +64,12 @@ public class DataverseServiceBean implements java.io.Serializable {
     @EJB
     SolrIndexServiceBean solrIndexService; 
 
+    @Inject
+    Event<SearchResultCache.FacetsChangedEvent> facetsChanged;
+
+    @EJB
+    PermissionReindexServiceBean permissionReindexService;
+
     @EJB
     AuthenticationServiceBean authService;
     
@@ -99,6 +110,8 @@ public class DataverseServiceBean implements java.io.Serializable {
        
         dataverse.setModificationTime(new Timestamp(new Date().getTime()));
         Dataverse savedDataverse = em.merge(dataverse);
+        // (the facets, or the facet root, may have changed)
+        facetsChanged.fire(new SearchResultCache.FacetsChangedEvent());
         return savedDataverse;
     }
     
@@ -115,7 +128,7 @@ public class DataverseServiceBean implements java.io.Serializable {
         try {
             indexService.indexDataverse(dataverse);
             if (indexPermissions) {
-                solrIndexService.indexPermissionsOnSelfAndChildren(dataverse);
+                permissionReindexService.submit(dataverse);
             }
         } catch (IOException | SolrServerException e) {
             String failureLogText = "Post-save indexing failed. You can kickoff a re-index of this dataverse with: \r\n curl http://localhost:8080/api/admin/index/dataverses/" + dataverse.getId().toString();
@@ -696,54 +709,63 @@ public class DataverseServiceBean implements java.io.Serializable {
     }
     
     
-    public void populateDvSearchCard(SolrSearchResult solrSearchResult) {
-  
-        Long dvId = solrSearchResult.getEntityId();
-        
-        if (dvId == null) {
-            return;
-        }
-        
-        Long parentDvId = null;
-        String parentId = solrSearchResult.getParent().get("id");
-        if (parentId != null) {
-            try {
-                parentDvId = Long.parseLong(parentId);
-            } catch (NumberFormatException ex) {
-                parentDvId = null;
+    /**
+     * Fills in the affiliation, alias and parent alias of the dataverse cards
+     * of a page of search results, with one query for the whole page.
+     */
+    public void populateDvSearchCards(List<SolrSearchResult> solrSearchResults) {
+        Map<Long, SolrSearchResult> cards = new HashMap<>();
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            if (solrSearchResult.getEntityId() != null) {
+                cards.put(solrSearchResult.getEntityId(), solrSearchResult);
             }
         }
-        
-        Object[] searchResult;
-        
-        try {
-            if (parentDvId == null) {
-                searchResult = (Object[]) em.createNativeQuery("SELECT t0.AFFILIATION, t0.ALIAS FROM DATAVERSE t0 WHERE t0.ID = " + dvId).getSingleResult();
-            } else {
-                searchResult = (Object[]) em.createNativeQuery("SELECT t0.AFFILIATION, t0.ALIAS, t2.ALIAS FROM DATAVERSE t0, DVOBJECT t1, DATAVERSE t2, DVOBJECT t3 WHERE (t0.ID = t1.ID) AND (t1.OWNER_ID = t3.ID) AND (t2.ID = t3.ID) AND (t0.ID = " + dvId + ")").getSingleResult();
-            }
-        } catch (Exception ex) {
+        if (cards.isEmpty()) {
             return;
         }
+        String idList = cards.keySet().stream().map(String::valueOf).collect(Collectors.joining(","));
 
-        if (searchResult == null) {
+        List<Object[]> searchResults;
+
+        try {
+            searchResults = em.createNativeQuery("SELECT t0.ID, t0.AFFILIATION, t0.ALIAS, t2.ALIAS FROM DATAVERSE t0 JOIN DVOBJECT t1 ON (t0.ID = t1.ID) LEFT JOIN DATAVERSE t2 ON (t1.OWNER_ID = t2.ID) WHERE t0.ID IN (" + idList + ")").getResultList();
+        } catch (Exception ex) {
             return;
         }
-        
-        if (searchResult[0] != null) {
-            solrSearchResult.setDataverseAffiliation((String) searchResult[0]);
-        }
 
-        if (searchResult[1] != null) {
-            solrSearchResult.setDataverseAlias((String) searchResult[1]);
-        }
-        
-        if (parentDvId != null) {
+        for (Object[] searchResult : searchResults) {
+            SolrSearchResult solrSearchResult = cards.get(((Number) searchResult[0]).longValue());
+            if (solrSearchResult == null) {
+                continue;
+            }
+
+            if (searchResult[1] != null) {
+                solrSearchResult.setDataverseAffiliation((String) searchResult[1]);
+            }
+
             if (searchResult[2] != null) {
-                solrSearchResult.setDataverseParentAlias((String) searchResult[2]);
+                solrSearchResult.setDataverseAlias((String) searchResult[2]);
+            }
+
+            // (the parent alias is only shown if the Solr document has a parent)
+            if (hasParentId(solrSearchResult) && searchResult[3] != null) {
+                solrSearchResult.setDataverseParentAlias((String) searchResult[3]);
             }
         }
     }
+
+    private static boolean hasParentId(SolrSearchResult solrSearchResult) {
+        String parentId = solrSearchResult.getParent().get("id");
+        if (parentId == null) {
+            return false;
+        }
+        try {
+            Long.parseLong(parentId);
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
     
     // function to recursively find ids of all children of a dataverse that 
     // are also of type dataverse
@@ -928,5 +950,15 @@ public class DataverseServiceBean implements java.io.Serializable {
         return em.createNativeQuery(cqString).getResultList();
     }
 
+    public List<Object[]> getDatasetTitles(Collection<Integer> datasetIds) {
+        if (datasetIds == null || datasetIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String cqString = BASE_QUERY_DATASET_TITLES_WITHIN_DV
+                + "and o.id in (" + datasetIds.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")";
+
+        return em.createNativeQuery(cqString).getResultList();
+    }
+
     
 }
@@ -23,6 +23,8 @@ import jakarta.persistence.*;
             query = "SELECT o FROM DvObject o ORDER BY o.id"),
     @NamedQuery(name = "DvObject.findById",
             query = "SELECT o FROM DvObject o WHERE o.id=:id"),
+    @NamedQuery(name = "DvObject.findByIds",
+            query = "SELECT o FROM DvObject o WHERE o.id IN :ids"),
     @NamedQuery(name = "DvObject.checkExists", 
             query = "SELECT count(o) from DvObject o WHERE o.id=:id"),
     @NamedQuery(name = "DvObject.ownedObjectsById",
@@ -111,13 +113,13 @@ public abstract class DvObject extends DataverseEntity implements java.io.Serial
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private DvObject owner;
 
     private Timestamp publicationDate;
 
     /** The user that released this dataverse */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private AuthenticatedUser releaseUser;
     
     @Column( nullable = false )
@@ -211,7 +213,7 @@ public abstract class DvObject extends DataverseEntity implements java.io.Serial
         this.indexTime = indexTime;
     }
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private AuthenticatedUser creator;
 
     public interface Visitor<T> {
@@ -5,6 +5,7 @@ import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -60,6 +61,22 @@ public class DvObjectServiceBean implements java.io.Serializable {
         }
     }
 
+    /**
+     * @return the objects found, by id, with one query for all of them
+     */
+    public Map<Long, DvObject> findDvObjects(Collection<Long> ids) {
+        Map<Long, DvObject> dvObjects = new HashMap<>();
+        if (ids.isEmpty()) {
+            return dvObjects;
+        }
+        for (DvObject dvObject : em.createNamedQuery("DvObject.findByIds", DvObject.class)
+                .setParameter("ids", ids)
+                .getResultList()) {
+            dvObjects.put(dvObject.getId(), dvObject);
+        }
+        return dvObjects;
+    }
+
     public List<DvObject> findAll() {
         return em.createNamedQuery("DvObject.findAll", DvObject.class).getResultList();
     }
@@ -222,6 +239,37 @@ public class DvObjectServiceBean implements java.io.Serializable {
         return savedDvObject;
     }
 
+    /**
+     * Sets the permission index time of the objects to now, with one update
+     * (in its own transaction, so that it sticks once the permission documents
+     * of the objects are in Solr).
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public int updatePermissionIndexTimes(Collection<Long> dvObjectIds) {
+        if (dvObjectIds.isEmpty()) {
+            return 0;
+        }
+        return em.createQuery("UPDATE DvObject o SET o.permissionIndexTime = :time WHERE o.id IN :ids")
+                .setParameter("time", new Timestamp(new Date().getTime()))
+                .setParameter("ids", dvObjectIds)
+                .executeUpdate();
+    }
+
+    /**
+     * Sets the permission modification time of the objects to now, marking
+     * their permission documents as stale until they are indexed again.
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public int updatePermissionModificationTimes(Collection<Long> dvObjectIds) {
+        if (dvObjectIds.isEmpty()) {
+            return 0;
+        }
+        return em.createQuery("UPDATE DvObject o SET o.permissionModificationTime = :time WHERE o.id IN :ids")
+                .setParameter("time", new Timestamp(new Date().getTime()))
+                .setParameter("ids", dvObjectIds)
+                .executeUpdate();
+    }
+
     @TransactionAttribute(REQUIRES_NEW)
     public int clearAllIndexTimes() {
         Query clearIndexTimes = em.createQuery("UPDATE DvObject o SET o.indexTime = NULL, o.permissionIndexTime = NULL");
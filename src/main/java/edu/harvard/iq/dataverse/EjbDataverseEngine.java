@@ -184,6 +184,9 @@ public class EjbDataverseEngine {
     @EJB
     ConfirmEmailServiceBean confirmEmailService;
     
+    @EJB
+    ThumbnailGenerationServiceBean thumbnailGenerationService;
+    
     @EJB
     EjbDataverseEngineInner innerEngine;
     
@@ -603,6 +606,11 @@ public class EjbDataverseEngine {
                     return logSvc;
                 }
 
+                @Override
+                public ThumbnailGenerationServiceBean thumbnails() {
+                    return thumbnailGenerationService;
+                }
+
                 @Override
                 public void beginCommandSequence() {
                     this.commandsCalled = new Stack();
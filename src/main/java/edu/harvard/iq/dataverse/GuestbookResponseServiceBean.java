@@ -9,17 +9,24 @@ import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.externaltools.ExternalTool;
 import edu.harvard.iq.dataverse.util.StringUtil;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
@@ -131,27 +138,83 @@ public class GuestbookResponseServiceBean {
        This method is used for streaming downloads of guestbook responses, in 
        CSV format, both for individual guestbooks, and for entire dataverses
        (with guestbookId = null).
+       The responses are retrieved in pages, by id (newest first); the custom 
+       question answers and the dataset titles are only looked up for the 
+       responses in the current page, and each row is written straight to the 
+       output. So the memory used does not grow with the number of responses 
+       in the collection. 
      */
     private static final String SEPARATOR = ",";
     private static final String NEWLINE = "\n";
+    private static final String CSV_HEADER = "Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n";
+    private static final int STREAMING_PAGE_SIZE = 1000;
+    
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void streamResponsesByDataverseIdAndGuestbookId(OutputStream out, Long dataverseId, Long guestbookId) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        // the CSV header:
+        writer.write(CSV_HEADER);
         
-        // Before we do anything else, create a map of all the custom question responses
-        // available for this dataverse (or, this individual guestbook within the
-        // dataverse; see the comment below, how it's saving us a metric f-ton
-        // of queries now) -- L.A. 
+        int count = 0;
+        Integer lastResponseId = null;
+        List<Object[]> page;
+        do {
+            page = getGuestbookResultsPage(dataverseId, guestbookId, lastResponseId, STREAMING_PAGE_SIZE);
+            if (page.isEmpty()) {
+                break;
+            }
+            Integer highestResponseId = (Integer) page.get(0)[0];
+            lastResponseId = (Integer) page.get(page.size() - 1)[0];
+            
+            // (note the order of the last/first arguments)
+            Map<Integer, Object> customQandAs = selectCustomQuestionAnswers(dataverseId, guestbookId, true, highestResponseId, lastResponseId);
+            Set<Integer> datasetIds = new HashSet<>();
+            for (Object[] result : page) {
+                datasetIds.add((Integer) result[2]);
+            }
+            Map<Integer, String> datasetTitles = mapDatasetTitles(datasetIds);
+            
+            for (Object[] result : page) {
+                appendGuestbookResponseAsCSV(writer, customQandAs, datasetTitles, result);
+            }
+            writer.flush();
+            count += page.size();
+        } while (page.size() == STREAMING_PAGE_SIZE);
         
-        Map<Integer, Object> customQandAs = mapCustomQuestionAnswersAsStrings(dataverseId, guestbookId);
-        Map<Integer, String> datasetTitles = mapDatasetTitles(dataverseId);
-                
-        List<Object[]> guestbookResults = getGuestbookResults( dataverseId,  guestbookId );
-        // the CSV header:
-        out.write("Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n".getBytes());
-        for (Object[] result : guestbookResults) {
-            StringBuilder sb = convertGuestbookResponsesToCSV(customQandAs, datasetTitles, result);
-            out.write(sb.toString().getBytes());
-            out.flush();
+        writer.flush();
+        logger.fine("streamed " + count + " guestbook responses");
+    }
+    
+    /*
+       One page of the results of the CSV download query, in descending order of
+       the response ids, starting below beforeResponseId (if supplied). 
+       (There is at most one filedownload per response, so there are no 
+       duplicate response ids in the results that could be split between pages.)
+    */
+    private List<Object[]> getGuestbookResultsPage(Long dataverseId, Long guestbookId, Integer beforeResponseId, int pageSize) {
+        String queryString = BASE_QUERY_STRING_FOR_DOWNLOAD_AS_CSV
+                + " and o.owner_id = ?1";
+        
+        if (guestbookId != null) {
+            queryString += " and r.guestbook_id = ?2";
+        }
+        if (beforeResponseId != null) {
+            queryString += " and r.id < ?3";
         }
+        
+        queryString += " ORDER by r.id DESC LIMIT ?4";
+        logger.fine("stream responses query: " + queryString);
+        
+        Query query = em.createNativeQuery(queryString)
+                .setParameter(1, dataverseId)
+                .setParameter(4, pageSize);
+        if (guestbookId != null) {
+            query.setParameter(2, guestbookId);
+        }
+        if (beforeResponseId != null) {
+            query.setParameter(3, beforeResponseId);
+        }
+        return query.getResultList();
     }
     
     public List<Object[]> getGuestbookResults(Long dataverseId, Long guestbookId ){
@@ -172,11 +235,15 @@ public class GuestbookResponseServiceBean {
     }
     
     public StringBuilder convertGuestbookResponsesToCSV ( Map<Integer, Object> customQandAs, Map<Integer, String> datasetTitles, Object[] result) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        appendGuestbookResponseAsCSV(sb, customQandAs, datasetTitles, result);
+        return sb;
+    }
+    
+    private void appendGuestbookResponseAsCSV(Appendable sb, Map<Integer, Object> customQandAs, Map<Integer, String> datasetTitles, Object[] result) throws IOException {
 
             Integer guestbookResponseId = (Integer)result[0];
             
-            StringBuilder sb = new StringBuilder();
-            
             // Since we are formatting the output as comma-separated values, 
             // we should go to the trouble of removing any commas from the 
             // string fields, or the structure of the file will be broken. -- L.A.
@@ -204,7 +271,7 @@ public class GuestbookResponseServiceBean {
             sb.append(SEPARATOR);
             
             // type: (download, etc.)
-            sb.append(result[4]);
+            sb.append(String.valueOf(result[4]));
             sb.append(SEPARATOR);
 
             // file name: 
@@ -212,7 +279,7 @@ public class GuestbookResponseServiceBean {
             sb.append(SEPARATOR);
 
             // file id (numeric):
-            sb.append(result[6] == null ? "" : result[6]);
+            sb.append(result[6] == null ? "" : result[6].toString());
             sb.append(SEPARATOR);
             
             // persistent id of the file (if available):
@@ -239,11 +306,10 @@ public class GuestbookResponseServiceBean {
             
             
             if (customQandAs.containsKey(guestbookResponseId)) {
-                sb.append(customQandAs.get(guestbookResponseId)); 
+                sb.append(customQandAs.get(guestbookResponseId).toString()); 
             } 
 
             sb.append(NEWLINE);
-        return sb;
         
     }
     
@@ -965,10 +1031,16 @@ public class GuestbookResponseServiceBean {
     }
         
     public Map<Integer, String> mapDatasetTitles(Long dataverseId) {
+        return mapDatasetTitles(dataverseService.getDatasetTitlesWithinDataverse(dataverseId));
+    }
+    
+    private Map<Integer, String> mapDatasetTitles(Collection<Integer> datasetIds) {
+        return mapDatasetTitles(dataverseService.getDatasetTitles(datasetIds));
+    }
+    
+    private Map<Integer, String> mapDatasetTitles(List<Object[]> titleResults) {
         Map<Integer, String> ret = new HashMap<>();
 
-        List<Object[]> titleResults = dataverseService.getDatasetTitlesWithinDataverse(dataverseId);
-
         if (titleResults != null) {
             for (Object[] titleObj : titleResults) {
                 Integer datasetId = (Integer) titleObj[1];
@@ -0,0 +1,75 @@
+package edu.harvard.iq.dataverse;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.primefaces.model.FilterMeta;
+import org.primefaces.model.LazyDataModel;
+import org.primefaces.model.SortMeta;
+
+/**
+ * The files table of the dataset page: only the page of files being shown is
+ * looked up (the filtering, sorting and paging is done by the page loader),
+ * instead of the whole, sorted list of the files of the version being built
+ * for every request. The rows selected on other pages are still resolved, by
+ * the ids of their files, so that a selection can span pages.
+ */
+public class LazyFileMetadataDataModel extends LazyDataModel<FileMetadata> {
+
+    /**
+     * Looks up one page of the files, in the order of the table.
+     */
+    public interface PageLoader extends Serializable {
+        List<FileMetadata> load(int first, int pageSize);
+    }
+
+    /**
+     * Looks up the file of a row that isn't on the current page.
+     */
+    public interface RowLoader extends Serializable {
+        FileMetadata find(Long dataFileId);
+    }
+
+    private final PageLoader pageLoader;
+    private final RowLoader rowLoader;
+    private final int fileCount;
+    private List<FileMetadata> page = new ArrayList<>();
+
+    public LazyFileMetadataDataModel(PageLoader pageLoader, RowLoader rowLoader, int fileCount) {
+        this.pageLoader = pageLoader;
+        this.rowLoader = rowLoader;
+        this.fileCount = fileCount;
+    }
+
+    @Override
+    public int count(Map<String, FilterMeta> filterBy) {
+        return fileCount;
+    }
+
+    @Override
+    public List<FileMetadata> load(int first, int pageSize, Map<String, SortMeta> sortBy, Map<String, FilterMeta> filterBy) {
+        page = pageLoader.load(first, pageSize);
+        return page;
+    }
+
+    @Override
+    public String getRowKey(FileMetadata fileMetadata) {
+        return String.valueOf(fileMetadata.getDataFile().getId());
+    }
+
+    @Override
+    public FileMetadata getRowData(String rowKey) {
+        for (FileMetadata fileMetadata : page) {
+            if (rowKey.equals(getRowKey(fileMetadata))) {
+                return fileMetadata;
+            }
+        }
+        // (selected on another page)
+        try {
+            return rowLoader.find(Long.valueOf(rowKey));
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+}
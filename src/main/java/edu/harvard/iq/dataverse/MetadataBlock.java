@@ -212,8 +212,16 @@ public class MetadataBlock implements Serializable, Comparable {
 
     // Visible for testing
     String getLocaleValue(String metadataBlockKey) {
+        return getLocaleValue(metadataBlockKey, getName(), displayName);
+    }
+
+    /**
+     * @return the value of the key for the block in the current locale, or the
+     *         display name of the block if it isn't translated
+     */
+    public static String getLocaleValue(String metadataBlockKey, String name, String displayName) {
         try {
-            return BundleUtil.getStringFromPropertyFile(metadataBlockKey, getName());
+            return BundleUtil.getStringFromPropertyFile(metadataBlockKey, name);
         } catch (MissingResourceException e) {
             return displayName;
         }
@@ -0,0 +1,140 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.inject.Named;
+
+/**
+ * Generates file thumbnails in the background, so that the pages that show
+ * them never have to wait for a large image to be decoded or a PDF to be
+ * rendered: the pages only show the thumbnails that are already cached, and
+ * queue the generation of the missing ones here (a placeholder icon is shown
+ * in the meantime). Thumbnails are also queued when files are uploaded and
+ * when datasets are published.
+ *
+ * The work is done by a small, fixed pool of container managed threads
+ * (dataverse.thumbnails.threads), from a bounded queue
+ * (dataverse.thumbnails.queue-size); requests that don't fit in the queue
+ * are dropped, and will be made again the next time the file is displayed.
+ * There is one task per file, which produces all the standard sizes (an image
+ * is only decoded once for all of them); a request for a file that is already
+ * queued or in progress is ignored. Files that can't be decoded are flagged
+ * in the database (DataFile.previewImageFail), and are not attempted again; a
+ * file that couldn't be read from the storage is tried again the next time it
+ * is requested.
+ */
+@Named
+@Singleton
+@Lock(LockType.READ)
+public class ThumbnailGenerationServiceBean {
+
+    private static final Logger logger = Logger.getLogger(ThumbnailGenerationServiceBean.class.getCanonicalName());
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    @EJB
+    DataFileServiceBean dataFileService;
+    @Resource
+    ManagedThreadFactory managedThreadFactory;
+
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = JvmSettings.THUMBNAILS_THREADS.lookupOptional(Integer.class).orElse(DEFAULT_THREADS);
+        int queueSize = JvmSettings.THUMBNAILS_QUEUE_SIZE.lookupOptional(Integer.class).orElse(DEFAULT_QUEUE_SIZE);
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread t = managedThreadFactory.newThread(r);
+            // thumbnails should not compete with the requests being served:
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues the generation of the thumbnails of the file in all the
+     * standard sizes, unless it is already queued, or they can't be
+     * generated. Returns right away.
+     */
+    public void requestThumbnails(DataFile file) {
+        if (file == null || file.getId() == null || file.isHarvested() || file.isPreviewImageFail()
+                || !FileUtil.isThumbnailSupported(file)) {
+            return;
+        }
+        final Long fileId = file.getId();
+        if (!pending.add(fileId)) {
+            logger.fine("thumbnails of file " + fileId + " already queued");
+            return;
+        }
+        try {
+            executor.execute(() -> generateThumbnails(fileId));
+        } catch (RejectedExecutionException rex) {
+            pending.remove(fileId);
+            logger.fine("thumbnail queue is full; not queueing file " + fileId);
+        }
+    }
+
+    /**
+     * @return the number of files whose thumbnails are queued or in progress
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    void generateThumbnails(Long fileId) {
+        try {
+            DataFile file = dataFileService.find(fileId);
+            if (file == null || file.isPreviewImageFail()) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            // (this generates and caches the thumbnails that aren't there already)
+            ImageThumbConverter.ThumbnailStatus status = ImageThumbConverter.generateThumbnails(file);
+            switch (status) {
+                case AVAILABLE:
+                    if (!file.isPreviewImageAvailable()) {
+                        dataFileService.setPreviewImageAvailable(fileId);
+                    }
+                    logger.fine("thumbnails of file " + fileId + " generated in " + (System.currentTimeMillis() - start) + " ms");
+                    break;
+                case UNREADABLE:
+                    logger.fine("file " + fileId + " can't be decoded; will not try to generate its thumbnails again");
+                    dataFileService.setPreviewImageFail(fileId, true);
+                    break;
+                default:
+                    logger.fine("no thumbnails for file " + fileId + " for now");
+            }
+        } catch (RuntimeException rex) {
+            logger.log(Level.WARNING, "Unexpected failure generating the thumbnails of file " + fileId, rex);
+        } finally {
+            pending.remove(fileId);
+        }
+    }
+}
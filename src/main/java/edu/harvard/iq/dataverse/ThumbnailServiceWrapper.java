@@ -43,6 +43,8 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
     DatasetVersionServiceBean datasetVersionService;
     @EJB
     DataFileServiceBean dataFileService;
+    @EJB
+    ThumbnailGenerationServiceBean thumbnailGenerationService;
     
     private Map<Long, String> dvobjectThumbnailsMap = new HashMap<>();
     private Map<Long, DvObject> dvobjectViewMap = new HashMap<>();
@@ -66,9 +68,7 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
                 return null;
             }
 
-            String imageSourceBase64 = ImageThumbConverter.getImageThumbnailAsBase64(assignedThumbnailFile,
-                    size);
-                    //ImageThumbConverter.DEFAULT_CARDIMAGE_SIZE);
+            String imageSourceBase64 = getCachedThumbnailOrRequest(assignedThumbnailFile, size);
 
             if (imageSourceBase64 != null) {
                 this.dvobjectThumbnailsMap.put(assignedThumbnailFileId, imageSourceBase64);
@@ -90,6 +90,18 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
 
     }
 
+    // Returns the thumbnail if it has already been generated and cached; 
+    // otherwise, queues its generation in the background, and returns null
+    // right away (so the page will show the placeholder icon for now, 
+    // instead of waiting for the image to be decoded/the pdf rendered).
+    private String getCachedThumbnailOrRequest(DataFile file, int size) {
+        String imageSourceBase64 = ImageThumbConverter.getImageThumbnailAsBase64(file, size, false);
+        if (imageSourceBase64 == null) {
+            thumbnailGenerationService.requestThumbnails(file);
+        }
+        return imageSourceBase64;
+    }
+
     // it's the responsibility of the user - to make sure the search result
     // passed to this method is of the Datafile type!
     public String getFileCardImageAsBase64Url(SolrSearchResult result) {
@@ -128,11 +140,10 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
                 }
             }
 
-            if ((!((DataFile)result.getEntity()).isRestricted()
-                        || permissionsWrapper.hasDownloadFilePermission(result.getEntity()))
-                    && dataFileService.isThumbnailAvailable((DataFile) result.getEntity())) {
+            if (!((DataFile)result.getEntity()).isRestricted()
+                        || permissionsWrapper.hasDownloadFilePermission(result.getEntity())) {
                 
-                cardImageUrl = ImageThumbConverter.getImageThumbnailAsBase64(
+                cardImageUrl = getCachedThumbnailOrRequest(
                         (DataFile) result.getEntity(),
                         ImageThumbConverter.DEFAULT_CARDIMAGE_SIZE);
             }
@@ -292,12 +303,7 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
                 }
             }
 
-            if (dataFileService.isThumbnailAvailable(thumbnailImageFile)) {
-                cardImageUrl = ImageThumbConverter.getImageThumbnailAsBase64(
-                        thumbnailImageFile,
-                        size);
-                        //ImageThumbConverter.DEFAULT_CARDIMAGE_SIZE);
-            }
+            cardImageUrl = getCachedThumbnailOrRequest(thumbnailImageFile, size);
 
             if (cardImageUrl != null) {
                 this.dvobjectThumbnailsMap.put(thumbnailImageFileId, cardImageUrl);
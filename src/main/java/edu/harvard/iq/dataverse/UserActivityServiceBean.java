@@ -0,0 +1,131 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+
+/**
+ * Records the last login and last API use times of the users in memory, and
+ * writes them to the authenticateduser table every
+ * dataverse.user-activity.flush-interval-seconds, in one batch. A script
+ * making thousands of API calls thus causes (at most) one update of its user
+ * per interval, instead of an update, and a lock on the row of the user, per
+ * call.
+ *
+ * The times not yet written are lost if the server crashes; they are written
+ * on a normal shutdown. With an interval of 0, the times are written right
+ * away, as before.
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class UserActivityServiceBean {
+
+    private static final Logger logger = Logger.getLogger(UserActivityServiceBean.class.getCanonicalName());
+
+    private static final int DEFAULT_FLUSH_INTERVAL_SECONDS = 60;
+
+    @Resource
+    TimerService timerService;
+
+    @Resource(lookup = "java:app/jdbc/dataverse")
+    DataSource dataSource;
+
+    private final Map<Long, Timestamp> pendingApiUse = new ConcurrentHashMap<>();
+    private final Map<Long, Timestamp> pendingLogin = new ConcurrentHashMap<>();
+    private boolean enabled;
+
+    @PostConstruct
+    public void init() {
+        long interval = JvmSettings.USER_ACTIVITY_FLUSH_INTERVAL_SECONDS.lookupOptional(Integer.class).orElse(DEFAULT_FLUSH_INTERVAL_SECONDS) * 1000L;
+        enabled = interval > 0;
+        if (enabled) {
+            timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+        }
+    }
+
+    /**
+     * Records the last API use of the user, to be written with the next
+     * batch. (The time is also set on the user passed in.)
+     *
+     * @return false if the times are written right away instead, in which case
+     *         the caller should save the user
+     */
+    public boolean recordApiUse(AuthenticatedUser user, Timestamp time) {
+        return record(pendingApiUse, user, time);
+    }
+
+    /**
+     * Records the last login of the user, to be written with the next batch.
+     *
+     * @see #recordApiUse(AuthenticatedUser, Timestamp)
+     */
+    public boolean recordLogin(AuthenticatedUser user, Timestamp time) {
+        return record(pendingLogin, user, time);
+    }
+
+    @Timeout
+    public void flush() {
+        write("lastapiusetime", pendingApiUse);
+        write("lastlogintime", pendingLogin);
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    private boolean record(Map<Long, Timestamp> pending, AuthenticatedUser user, Timestamp time) {
+        if (!enabled || user.getId() == null) {
+            return false;
+        }
+        pending.merge(user.getId(), time, (older, newer) -> newer.after(older) ? newer : older);
+        return true;
+    }
+
+    private void write(String column, Map<Long, Timestamp> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Timestamp>> batch = new ArrayList<>(pending.entrySet());
+        // (the time is only ever moved forward, in case another server wrote a later one)
+        String sql = "UPDATE authenticateduser SET " + column + " = ? WHERE id = ? AND (" + column + " IS NULL OR " + column + " < ?)";
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement update = connection.prepareStatement(sql)) {
+            for (Map.Entry<Long, Timestamp> entry : batch) {
+                update.setTimestamp(1, entry.getValue());
+                update.setLong(2, entry.getKey());
+                update.setTimestamp(3, entry.getValue());
+                update.addBatch();
+            }
+            update.executeBatch();
+            // (a time recorded while the batch was written stays pending)
+            batch.forEach(entry -> pending.remove(entry.getKey(), entry.getValue()));
+            logger.fine(() -> "Wrote the " + column + " of " + batch.size() + " users");
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Failed to write the " + column + " of " + batch.size() + " users, will retry", e);
+        }
+    }
+}
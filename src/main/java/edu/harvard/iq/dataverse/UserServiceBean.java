@@ -41,6 +41,8 @@ public class UserServiceBean {
 
     @EJB IndexServiceBean indexService;
 
+    @EJB UserActivityServiceBean userActivityService;
+
     public AuthenticatedUser find(Object pk) {
         return (AuthenticatedUser) em.find(AuthenticatedUser.class, pk);
     }
@@ -524,15 +526,24 @@ public class UserServiceBean {
 
     public AuthenticatedUser updateLastLogin(AuthenticatedUser user) {
         //assumes that AuthenticatedUser user already exists
-        user.setLastLoginTime(new Timestamp(new Date().getTime()));
-
+        Timestamp now = new Timestamp(new Date().getTime());
+        user.setLastLoginTime(now);
+        // (written with the next batch of user activity, unless that is turned off)
+        if (userActivityService.recordLogin(user, now)) {
+            return user;
+        }
         return save(user);
     }
 
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public AuthenticatedUser updateLastApiUseTime(AuthenticatedUser user) {
         //assumes that AuthenticatedUser user already exists
-        user.setLastApiUseTime(new Timestamp(new Date().getTime()));
+        Timestamp now = new Timestamp(new Date().getTime());
+        user.setLastApiUseTime(now);
+        // (written with the next batch of user activity, unless that is turned off)
+        if (userActivityService.recordApiUse(user, now)) {
+            return user;
+        }
         return save(user);
     }
 }
@@ -1,6 +1,15 @@
 package edu.harvard.iq.dataverse.actionlogging;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.Date;
+import java.util.List;
+import javax.sql.DataSource;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.EJBException;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
@@ -17,11 +26,24 @@ public class ActionLogServiceBean {
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
     
+    @Resource(lookup = "java:app/jdbc/dataverse")
+    private DataSource dataSource;
+    
+    @EJB
+    ActionLogWriter actionLogWriter;
+    
+    private static final String INSERT_SQL = "INSERT INTO actionlogrecord "
+            + "(id, starttime, endtime, actionresult, useridentifier, actiontype, actionsubtype, info) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    
     /**
-     * Log the record. Set default values.
+     * Log the record. Set default values. The record is queued, and written
+     * with the next batch by the {@link ActionLogWriter}; it is written right
+     * away (in a transaction of its own) if the queue is full, or if the
+     * records are not written asynchronously.
      * @param rec 
      */
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void log( ActionLogRecord rec ) {
         if ( rec.getEndTime() == null ) {
             rec.setEndTime( new Date() );
@@ -30,12 +52,47 @@ public class ActionLogServiceBean {
                 && rec.getActionType() != ActionLogRecord.ActionType.Command ) {
             rec.setActionResult(ActionLogRecord.Result.OK);
         }
-        em.persist(rec);
+        if ( ! actionLogWriter.offer(rec) ) {
+            actionLogWriter.write(List.of(rec));
+        }
+    }
+    
+    /**
+     * Inserts the records in a single JDBC batch.
+     * @param records 
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void logBatch( List<ActionLogRecord> records ) {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+            for (ActionLogRecord rec : records) {
+                rec.prepresist();
+                insert.setString(1, rec.getId());
+                insert.setTimestamp(2, toTimestamp(rec.getStartTime()));
+                insert.setTimestamp(3, toTimestamp(rec.getEndTime()));
+                insert.setString(4, (rec.getActionResult() == null) ? null : rec.getActionResult().name());
+                insert.setString(5, rec.getUserIdentifier());
+                insert.setString(6, (rec.getActionType() == null) ? null : rec.getActionType().name());
+                insert.setString(7, rec.getActionSubType());
+                insert.setString(8, rec.getInfo());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        } catch (SQLException e) {
+            // (a system exception, so that none of the batch is committed)
+            throw new EJBException("Failed to write " + records.size() + " action log records", e);
+        }
+    }
+    
+    private static Timestamp toTimestamp(Date date) {
+        return (date == null) ? null : new Timestamp(date.getTime());
     }
 
     //Switches all actions from one identifier to another identifier, via native query
     //This is needed for when we change a userIdentifier or merge one account into another
     public void changeUserIdentifierInHistory(String oldIdentifier, String newIdentifier) {
+        // (so that the records still queued are changed too)
+        actionLogWriter.flush();
         em.createNativeQuery(
                 "UPDATE actionlogrecord "
                         + "SET useridentifier='"+newIdentifier+"', "
@@ -0,0 +1,175 @@
+package edu.harvard.iq.dataverse.actionlogging;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+
+/**
+ * Queues {@link ActionLogRecord}s in memory and writes them to the DB in
+ * batches, on a background thread, so that logging an action doesn't cost the
+ * request that performed it a transaction and an insert of its own.
+ *
+ * A batch is written once it has {@code dataverse.action-log.batch-size}
+ * records, or {@code dataverse.action-log.flush-interval-ms} after its first
+ * record was queued, whichever comes first. The background thread is a
+ * managed one, from the container's thread factory. On a normal shutdown, the
+ * queue is drained before the bean is destroyed (and a record offered while
+ * it is being drained is handed back to its caller); if the server crashes,
+ * the records of (at most) the last flush interval are lost. When the queue is full, or when
+ * {@code dataverse.action-log.async} is false, the records are written
+ * synchronously instead, as before.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ActionLogWriter {
+
+    private static final Logger logger = Logger.getLogger(ActionLogWriter.class.getCanonicalName());
+
+    @EJB
+    ActionLogServiceBean actionLogService;
+
+    @Resource
+    ManagedThreadFactory managedThreadFactory;
+
+    private int batchSize;
+    private long flushInterval;
+    private BlockingQueue<ActionLogRecord> queue;
+    private ExecutorService writer;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() {
+        boolean async = JvmSettings.ACTION_LOG_ASYNC.lookupOptional(Boolean.class).orElse(true);
+        batchSize = Math.max(1, JvmSettings.ACTION_LOG_BATCH_SIZE.lookupOptional(Integer.class).orElse(500));
+        flushInterval = Math.max(1, JvmSettings.ACTION_LOG_FLUSH_INTERVAL_MS.lookupOptional(Integer.class).orElse(1000));
+        queue = new LinkedBlockingQueue<>(Math.max(1, JvmSettings.ACTION_LOG_QUEUE_SIZE.lookupOptional(Integer.class).orElse(10000)));
+        if (async) {
+            running = true;
+            writer = Executors.newSingleThreadExecutor(managedThreadFactory);
+            writer.submit(this::writeQueued);
+        }
+    }
+
+    /**
+     * Queues the record, to be written with the next batch.
+     *
+     * @return false if the record was not queued (the queue is full, or the
+     *         records are written synchronously), and should be written by the
+     *         caller
+     */
+    public boolean offer(ActionLogRecord rec) {
+        if (!running || !queue.offer(rec)) {
+            return false;
+        }
+        // (if the writer was stopped meanwhile, the record may have missed the
+        // final drain; if it's still in the queue, the caller writes it)
+        return running || !queue.remove(rec);
+    }
+
+    /**
+     * Writes all the records queued so far, on the calling thread.
+     */
+    public void flush() {
+        List<ActionLogRecord> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stops the background thread, which writes the batch it has in hand,
+     * then writes whatever is left in the queue.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(flushInterval + 10000, TimeUnit.MILLISECONDS)) {
+                logger.warning("The action log writer did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        logger.fine("Action log queue drained");
+    }
+
+    private void writeQueued() {
+        List<ActionLogRecord> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                ActionLogRecord first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < batchSize && running) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) == 0) {
+                        long wait = deadline - System.currentTimeMillis();
+                        ActionLogRecord next = (wait > 0) ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                // (the records already taken from the queue are not lost)
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Unexpected error in the action log writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the records now, each batch in a transaction of its own.
+     */
+    public void write(List<ActionLogRecord> batch) {
+        try {
+            actionLogService.logBatch(batch);
+        } catch (RuntimeException e) {
+            // A single bad record shouldn't lose the whole batch: retry them one by one
+            logger.log(Level.WARNING, "Failed to write a batch of " + batch.size() + " action log records, writing them one by one", e);
+            for (ActionLogRecord rec : batch) {
+                try {
+                    actionLogService.logBatch(List.of(rec));
+                } catch (RuntimeException e2) {
+                    logger.log(Level.SEVERE, "Failed to write action log record " + rec, e2);
+                }
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.DataverseSession;
 import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.api.auth.AuthRequired;
+import edu.harvard.iq.dataverse.fixity.FixityAuditServiceBean;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.validation.EMailValidator;
 import edu.harvard.iq.dataverse.EjbDataverseEngine;
@@ -52,6 +53,7 @@ import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
@@ -98,12 +100,14 @@ import edu.harvard.iq.dataverse.engine.command.impl.DeleteTemplateCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.RegisterDvObjectCommand;
 import edu.harvard.iq.dataverse.externaltools.ExternalToolHandler;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
+import edu.harvard.iq.dataverse.ingest.IngestWorkerServiceBean;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.userdata.UserListMaker;
 import edu.harvard.iq.dataverse.userdata.UserListResult;
 import edu.harvard.iq.dataverse.util.ArchiverUtil;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.util.SharedEntityCacheCustomizer;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.util.UrlSignerUtil;
 
@@ -170,6 +174,10 @@ public class Admin extends AbstractApiBean {
         BannerMessageServiceBean bannerMessageService;
         @EJB
         TemplateServiceBean templateService;
+        @EJB
+        FixityAuditServiceBean fixityAuditService;
+        @EJB
+        IngestWorkerServiceBean ingestWorkerService;
 
 	// Make the session available
 	@Inject
@@ -1924,6 +1932,105 @@ public class Admin extends AbstractApiBean {
 
     }
 
+    /**
+     * Starts a background fixity audit: the checksums of the stored files are
+     * recalculated, in parallel across the storage drivers, and the results
+     * recorded in the fixitycheck table. Unlike the endpoints above, this
+     * doesn't do the work inside the request.
+     *
+     * @param notVerifiedInDays skip the files verified within this many days
+     * @param limit verify at most this many files (0: no limit)
+     * @param maxBytesPerSecond read rate limit per storage driver (0: default)
+     */
+    @POST
+    @AuthRequired
+    @Path("/fixity/audit")
+    public Response startFixityAudit(@Context ContainerRequestContext crc,
+            @QueryParam("notVerifiedInDays") @DefaultValue("0") int notVerifiedInDays,
+            @QueryParam("limit") @DefaultValue("0") long limit,
+            @QueryParam("maxBytesPerSecond") @DefaultValue("0") long maxBytesPerSecond) {
+        try {
+            User u = getRequestAuthenticatedUserOrDie(crc);
+            if (!u.isSuperuser()) {
+                return error(Status.UNAUTHORIZED, "must be superuser");
+            }
+        } catch (WrappedResponse e1) {
+            return error(Status.UNAUTHORIZED, "api key required");
+        }
+        if (notVerifiedInDays < 0 || limit < 0 || maxBytesPerSecond < 0) {
+            return error(Status.BAD_REQUEST, "notVerifiedInDays, limit and maxBytesPerSecond must not be negative");
+        }
+        fixityAuditService.runAudit(notVerifiedInDays, limit, maxBytesPerSecond);
+        return ok("Fixity audit started; check /api/admin/fixity/status for its progress.");
+    }
+
+    @GET
+    @AuthRequired
+    @Path("/fixity/status")
+    public Response getFixityAuditStatus(@Context ContainerRequestContext crc) {
+        try {
+            User u = getRequestAuthenticatedUserOrDie(crc);
+            if (!u.isSuperuser()) {
+                return error(Status.UNAUTHORIZED, "must be superuser");
+            }
+        } catch (WrappedResponse e1) {
+            return error(Status.UNAUTHORIZED, "api key required");
+        }
+        return ok(fixityAuditService.getAuditStatus());
+    }
+
+    @GET
+    @AuthRequired
+    @Path("/ingest/status")
+    public Response getIngestStatus(@Context ContainerRequestContext crc) {
+        try {
+            User u = getRequestAuthenticatedUserOrDie(crc);
+            if (!u.isSuperuser()) {
+                return error(Status.UNAUTHORIZED, "must be superuser");
+            }
+        } catch (WrappedResponse e1) {
+            return error(Status.UNAUTHORIZED, "api key required");
+        }
+        return ok(ingestWorkerService.getStatus());
+    }
+
+    @GET
+    @AuthRequired
+    @Path("/cache/entities")
+    public Response getEntityCacheStatistics(@Context ContainerRequestContext crc) {
+        try {
+            User u = getRequestAuthenticatedUserOrDie(crc);
+            if (!u.isSuperuser()) {
+                return error(Status.UNAUTHORIZED, "must be superuser");
+            }
+        } catch (WrappedResponse e1) {
+            return error(Status.UNAUTHORIZED, "api key required");
+        }
+        return ok(SharedEntityCacheCustomizer.getStatistics());
+    }
+
+    /**
+     * Empties the shared entity cache (on this server), e.g. after the
+     * reference entities have been edited directly in the database.
+     */
+    @DELETE
+    @AuthRequired
+    @Path("/cache/entities")
+    public Response clearEntityCache(@Context ContainerRequestContext crc) {
+        try {
+            User u = getRequestAuthenticatedUserOrDie(crc);
+            if (!u.isSuperuser()) {
+                return error(Status.UNAUTHORIZED, "must be superuser");
+            }
+        } catch (WrappedResponse e1) {
+            return error(Status.UNAUTHORIZED, "api key required");
+        }
+        for (Class<?> entityClass : SharedEntityCacheCustomizer.CACHED_ENTITIES) {
+            em.getEntityManagerFactory().getCache().evict(entityClass);
+        }
+        return ok("Entity cache cleared.");
+    }
+
     @POST
 	@AuthRequired
     @Path("/submitDatasetVersionToArchive/{id}/{version}")
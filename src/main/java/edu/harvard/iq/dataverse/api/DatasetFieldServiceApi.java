@@ -312,6 +312,8 @@ public class DatasetFieldServiceApi extends AbstractApiBean {
                     logger.log(Level.WARNING, "Error closing the reader while importing Dataset Fields.");
                 }
             }
+            // (the blocks, fields and values saved above are committed by now)
+            datasetFieldService.evictCachedMetadataBlocks();
             actionLogSvc.log(alr);
         }
 
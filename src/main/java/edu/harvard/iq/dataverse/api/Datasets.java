@@ -64,10 +64,12 @@ import edu.harvard.iq.dataverse.externaltools.ExternalToolHandler;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
 import edu.harvard.iq.dataverse.privateurl.PrivateUrl;
 import edu.harvard.iq.dataverse.api.dto.RoleAssignmentDTO;
+import edu.harvard.iq.dataverse.dataaccess.ChunkedUpload;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.dataaccess.UnsupportedDataAccessOperationException;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.UnforcedCommandException;
 import edu.harvard.iq.dataverse.engine.command.impl.GetDatasetStorageSizeCommand;
@@ -139,7 +141,10 @@ import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HEAD;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.NotAcceptableException;
+import jakarta.ws.rs.PATCH;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
@@ -163,6 +168,10 @@ public class Datasets extends AbstractApiBean {
 
     private static final Logger logger = Logger.getLogger(Datasets.class.getCanonicalName());
     private static final Pattern dataFilePattern = Pattern.compile("^[0-9a-f]{11}-[0-9a-f]{12}\\.?.*");
+    // the headers of the (tus-style) chunked uploads:
+    private static final String UPLOAD_LENGTH_HEADER = "Upload-Length";
+    private static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+    private static final String UPLOAD_CHUNK_MEDIA_TYPE = "application/offset+octet-stream";
     
     @Inject DataverseSession session;
 
@@ -236,6 +245,12 @@ public class Datasets extends AbstractApiBean {
     @Inject
     PrivateUrlServiceBean privateUrlService;
 
+    @EJB
+    DatasetVersionFilesServiceBean datasetVersionFilesService;
+
+    @EJB
+    ChunkedUploadServiceBean chunkedUploadService;
+
     /**
      * Used to consolidate the way we parse and handle dataset versions.
      * @param <T> 
@@ -488,9 +503,93 @@ public class Datasets extends AbstractApiBean {
     @GET
     @AuthRequired
     @Path("{id}/versions/{versionId}/files")
-    public Response getVersionFiles(@Context ContainerRequestContext crc, @PathParam("id") String datasetId, @PathParam("versionId") String versionId, @Context UriInfo uriInfo, @Context HttpHeaders headers) {
-        return response( req -> ok( jsonFileMetadatas(
-                         getDatasetVersionOrDie(req, versionId, findDatasetOrDie(datasetId), uriInfo, headers).getFileMetadatas())), getRequestUser(crc));
+    public Response getVersionFiles(@Context ContainerRequestContext crc,
+                                    @PathParam("id") String datasetId,
+                                    @PathParam("versionId") String versionId,
+                                    @QueryParam("limit") Integer limit,
+                                    @QueryParam("offset") Integer offset,
+                                    @QueryParam("orderCriteria") String orderCriteria,
+                                    @QueryParam("contentType") String contentType,
+                                    @QueryParam("accessStatus") String accessStatus,
+                                    @QueryParam("categoryName") String categoryName,
+                                    @QueryParam("tabularTagName") String tabularTagName,
+                                    @QueryParam("searchText") String searchText,
+                                    @DefaultValue("false") @QueryParam("summary") boolean summary,
+                                    @Context UriInfo uriInfo,
+                                    @Context HttpHeaders headers) {
+        return response( req -> {
+            DatasetVersion datasetVersion = getDatasetVersionOrDie(req, versionId, findDatasetOrDie(datasetId), uriInfo, headers);
+            DatasetVersionFilesServiceBean.FileOrderCriteria fileOrderCriteria;
+            try {
+                fileOrderCriteria = orderCriteria == null ? DatasetVersionFilesServiceBean.FileOrderCriteria.NameAZ
+                        : DatasetVersionFilesServiceBean.FileOrderCriteria.valueOf(orderCriteria);
+            } catch (IllegalArgumentException e) {
+                return badRequest("Invalid order criteria: " + orderCriteria);
+            }
+            DatasetVersionFilesServiceBean.FileSearchCriteria searchCriteria = getFileSearchCriteria(contentType, accessStatus, categoryName, tabularTagName, searchText);
+
+            if (summary) {
+                // just a few columns of each file, without loading the entities:
+                JsonArrayBuilder summaries = Json.createArrayBuilder();
+                for (Object[] row : datasetVersionFilesService.getFileSummaries(datasetVersion, limit, offset, searchCriteria, fileOrderCriteria)) {
+                    JsonObjectBuilder fileSummary = Json.createObjectBuilder();
+                    for (int i = 0; i < row.length; i++) {
+                        String column = DatasetVersionFilesServiceBean.FILE_SUMMARY_COLUMNS[i];
+                        if (row[i] == null) {
+                            continue;
+                        } else if (row[i] instanceof Number) {
+                            fileSummary.add(column, ((Number) row[i]).longValue());
+                        } else if (row[i] instanceof Boolean) {
+                            fileSummary.add(column, (Boolean) row[i]);
+                        } else {
+                            fileSummary.add(column, row[i].toString());
+                        }
+                    }
+                    summaries.add(fileSummary);
+                }
+                return ok(summaries);
+            }
+            return ok(jsonFileMetadatas(datasetVersionFilesService.getFileMetadatas(datasetVersion, limit, offset, searchCriteria, fileOrderCriteria)));
+        }, getRequestUser(crc));
+    }
+
+    @GET
+    @AuthRequired
+    @Path("{id}/versions/{versionId}/files/count")
+    public Response getVersionFileCount(@Context ContainerRequestContext crc,
+                                        @PathParam("id") String datasetId,
+                                        @PathParam("versionId") String versionId,
+                                        @QueryParam("contentType") String contentType,
+                                        @QueryParam("accessStatus") String accessStatus,
+                                        @QueryParam("categoryName") String categoryName,
+                                        @QueryParam("tabularTagName") String tabularTagName,
+                                        @QueryParam("searchText") String searchText,
+                                        @Context UriInfo uriInfo,
+                                        @Context HttpHeaders headers) {
+        return response( req -> {
+            DatasetVersion datasetVersion = getDatasetVersionOrDie(req, versionId, findDatasetOrDie(datasetId), uriInfo, headers);
+            DatasetVersionFilesServiceBean.FileSearchCriteria searchCriteria = getFileSearchCriteria(contentType, accessStatus, categoryName, tabularTagName, searchText);
+            return ok(Json.createObjectBuilder().add("count", datasetVersionFilesService.getFileMetadataCount(datasetVersion, searchCriteria)));
+        }, getRequestUser(crc));
+    }
+
+    private DatasetVersionFilesServiceBean.FileSearchCriteria getFileSearchCriteria(String contentType, String accessStatus, String categoryName, String tabularTagName, String searchText) throws WrappedResponse {
+        DatasetVersionFilesServiceBean.FileAccessStatus fileAccessStatus = null;
+        if (accessStatus != null) {
+            try {
+                fileAccessStatus = DatasetVersionFilesServiceBean.FileAccessStatus.valueOf(accessStatus);
+            } catch (IllegalArgumentException e) {
+                throw new WrappedResponse(badRequest("Invalid access status: " + accessStatus));
+            }
+        }
+        DataFileTag.TagType tabularTagType = null;
+        if (tabularTagName != null) {
+            tabularTagType = new DataFileTag().getDataFileTagFromLabel(tabularTagName);
+            if (tabularTagType == null) {
+                throw new WrappedResponse(badRequest("Invalid tabular tag name: " + tabularTagName));
+            }
+        }
+        return new DatasetVersionFilesServiceBean.FileSearchCriteria(contentType, fileAccessStatus, categoryName, tabularTagType, searchText);
     }
     
     @GET
@@ -2497,6 +2596,12 @@ public class Datasets extends AbstractApiBean {
         }
 
 
+        return addFileToDataset(authUser, dataset, newFilename, newFileContentType, newStorageIdentifier, fileInputStream, optionalFileParams);
+    } // end: addFileToDataset
+    
+    private Response addFileToDataset(User authUser, Dataset dataset, String newFilename, String newFileContentType,
+            String newStorageIdentifier, InputStream fileInputStream, OptionalFileParams optionalFileParams) {
+
         //-------------------
         // (3) Create the AddReplaceFileHelper object
         //-------------------
@@ -2555,9 +2660,252 @@ public class Datasets extends AbstractApiBean {
 
             }
         }
-        
-    } // end: addFileToDataset
+    }
+
+
+    /**
+     * Starts a resumable, chunked upload of a file to the dataset (in the
+     * style of the tus protocol): the length of the file is sent in the
+     * Upload-Length header, and the body has the same optional parameters as
+     * the jsonData of /add, with the fileName required. The chunks are then
+     * sent, in order, with PATCH to the returned location, each with the
+     * Upload-Offset it starts at; a HEAD request returns the offset to resume
+     * from. The chunks are written straight to the store of the dataset, and
+     * the file is added to the dataset once the last one has been received.
+     */
+    @POST
+    @AuthRequired
+    @Path("{id}/uploads")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response startChunkedUpload(@Context ContainerRequestContext crc, @PathParam("id") String idSupplied,
+            @HeaderParam(UPLOAD_LENGTH_HEADER) Long uploadLength, String jsonData) {
+
+        if (!systemConfig.isHTTPUpload()) {
+            return error(Response.Status.SERVICE_UNAVAILABLE, BundleUtil.getStringFromBundle("file.api.httpDisabled"));
+        }
+        User authUser = getRequestUser(crc);
+        Dataset dataset;
+        try {
+            dataset = findDatasetOrDie(idSupplied);
+        } catch (WrappedResponse wr) {
+            return wr.getResponse();
+        }
+        if (!permissionSvc.requestOn(createDataverseRequest(authUser), dataset).canIssue(UpdateDatasetVersionCommand.class)) {
+            return error(Response.Status.FORBIDDEN, "You are not permitted to upload files to this dataset.");
+        }
+        for (DatasetVersion dv : dataset.getVersions()) {
+            if (dv.isHasPackageFile()) {
+                return error(Response.Status.FORBIDDEN,
+                        BundleUtil.getStringFromBundle("file.api.alreadyHasPackageFile")
+                );
+            }
+        }
+        if (uploadLength == null || uploadLength < 0) {
+            return error(BAD_REQUEST, "The length of the file must be sent in the " + UPLOAD_LENGTH_HEADER + " header.");
+        }
+        Long fileSizeLimit = systemConfig.getMaxFileUploadSizeForStore(dataset.getEffectiveStorageDriverId());
+        if (fileSizeLimit != null && uploadLength > fileSizeLimit) {
+            return error(Response.Status.REQUEST_ENTITY_TOO_LARGE, MessageFormat.format(BundleUtil.getStringFromBundle("file.addreplace.error.file_exceeds_limit"),
+                    FileUtil.bytesToHumanReadable(uploadLength), FileUtil.bytesToHumanReadable(fileSizeLimit)));
+        }
+        OptionalFileParams optionalFileParams;
+        try {
+            optionalFileParams = new OptionalFileParams(jsonData);
+        } catch (DataFileTagException ex) {
+            return error(Response.Status.BAD_REQUEST, ex.getMessage());
+        } catch (ClassCastException | com.google.gson.JsonParseException ex) {
+            return error(Response.Status.BAD_REQUEST, BundleUtil.getStringFromBundle("file.addreplace.error.parsing"));
+        }
+        if (!optionalFileParams.hasFileName()) {
+            return error(BAD_REQUEST, "You must provide the fileName of the file to upload.");
+        }
+
+        ChunkedUploadServiceBean.Upload upload;
+        try {
+            upload = chunkedUploadService.start(dataset, authUser, uploadLength, optionalFileParams.getFileName(), jsonData,
+                    systemConfig.getFileFixityChecksumAlgorithm());
+        } catch (UnsupportedDataAccessOperationException ex) {
+            return error(BAD_REQUEST, "Chunked uploads are not supported by the store of this dataset.");
+        } catch (IOException ex) {
+            logger.warning("Failed to start a chunked upload to dataset " + dataset.getId() + ": " + ex.getMessage());
+            return error(Response.Status.INTERNAL_SERVER_ERROR, "Could not start the upload.");
+        }
+        if (upload == null) {
+            return error(Response.Status.SERVICE_UNAVAILABLE, "Too many uploads are in progress on this server; please try again later.");
+        }
+        return Response.fromResponse(created("/api/datasets/" + dataset.getId() + "/uploads/" + upload.getId(),
+                Json.createObjectBuilder()
+                        .add("uploadId", upload.getId())
+                        .add("offset", 0)
+                        .add("length", uploadLength)))
+                .header(UPLOAD_OFFSET_HEADER, 0)
+                .build();
+    }
+
+    @HEAD
+    @AuthRequired
+    @Path("{id}/uploads/{uploadId}")
+    public Response getChunkedUploadOffset(@Context ContainerRequestContext crc, @PathParam("id") String idSupplied,
+            @PathParam("uploadId") String uploadId) {
+        ChunkedUploadServiceBean.Upload upload;
+        try {
+            upload = findChunkedUploadOrDie(crc, idSupplied, uploadId);
+        } catch (WrappedResponse wr) {
+            return wr.getResponse();
+        }
+        return Response.ok()
+                .header(UPLOAD_OFFSET_HEADER, upload.getChunkedUpload().getOffset())
+                .header(UPLOAD_LENGTH_HEADER, upload.getChunkedUpload().getLength())
+                .header("Cache-Control", "no-store")
+                .build();
+    }
+
+    /**
+     * Receives the next chunk of an upload; the Upload-Offset header must
+     * match the number of bytes received so far. Once the last chunk has been
+     * received, the file is added to the dataset, and the response is the
+     * same as that of /add.
+     */
+    @PATCH
+    @AuthRequired
+    @Path("{id}/uploads/{uploadId}")
+    @Consumes({UPLOAD_CHUNK_MEDIA_TYPE, MediaType.APPLICATION_OCTET_STREAM})
+    public Response receiveChunk(@Context ContainerRequestContext crc, @PathParam("id") String idSupplied,
+            @PathParam("uploadId") String uploadId, @HeaderParam(UPLOAD_OFFSET_HEADER) Long uploadOffset,
+            InputStream chunk) {
+        ChunkedUploadServiceBean.Upload upload;
+        try {
+            upload = findChunkedUploadOrDie(crc, idSupplied, uploadId);
+        } catch (WrappedResponse wr) {
+            return wr.getResponse();
+        }
+        if (!upload.getLock().tryLock()) {
+            return conflict("Another chunk of this upload is being received.");
+        }
+        try {
+            upload.touch();
+            ChunkedUpload chunkedUpload = upload.getChunkedUpload();
+            if (uploadOffset == null || uploadOffset != chunkedUpload.getOffset()) {
+                return Response.fromResponse(conflict("The chunk must start at offset " + chunkedUpload.getOffset() + "."))
+                        .header(UPLOAD_OFFSET_HEADER, chunkedUpload.getOffset())
+                        .build();
+            }
+            try {
+                chunkedUpload.write(chunk);
+            } catch (ChunkedUpload.StorageException ex) {
+                // (whatever was stored before the failure is kept; the 
+                // client can resume from the current offset)
+                logger.warning("Failed to store a chunk of upload " + upload.getId() + " at offset " + uploadOffset + ": " + ex.getMessage());
+                return Response.fromResponse(error(Response.Status.INTERNAL_SERVER_ERROR, "Failed to store the chunk."))
+                        .header(UPLOAD_OFFSET_HEADER, chunkedUpload.getOffset())
+                        .build();
+            } catch (IOException ex) {
+                logger.fine("Failed to receive a chunk of upload " + upload.getId() + " at offset " + uploadOffset + ": " + ex.getMessage());
+                return Response.fromResponse(error(Response.Status.BAD_REQUEST, "Failed to receive the chunk: " + ex.getMessage()))
+                        .header(UPLOAD_OFFSET_HEADER, chunkedUpload.getOffset())
+                        .build();
+            } finally {
+                upload.touch();
+            }
+            if (chunkedUpload.getOffset() < chunkedUpload.getLength()) {
+                return Response.noContent()
+                        .header(UPLOAD_OFFSET_HEADER, chunkedUpload.getOffset())
+                        .build();
+            }
+            return completeChunkedUpload(crc, upload);
+        } finally {
+            upload.getLock().unlock();
+        }
+    }
+
+    @DELETE
+    @AuthRequired
+    @Path("{id}/uploads/{uploadId}")
+    public Response abortChunkedUpload(@Context ContainerRequestContext crc, @PathParam("id") String idSupplied,
+            @PathParam("uploadId") String uploadId) {
+        ChunkedUploadServiceBean.Upload upload;
+        try {
+            upload = findChunkedUploadOrDie(crc, idSupplied, uploadId);
+        } catch (WrappedResponse wr) {
+            return wr.getResponse();
+        }
+        if (!upload.getLock().tryLock()) {
+            return conflict("A chunk of this upload is being received.");
+        }
+        try {
+            chunkedUploadService.abort(upload);
+        } finally {
+            upload.getLock().unlock();
+        }
+        return Response.noContent().build();
+    }
+
+    private ChunkedUploadServiceBean.Upload findChunkedUploadOrDie(ContainerRequestContext crc, String idSupplied, String uploadId) throws WrappedResponse {
+        Dataset dataset = findDatasetOrDie(idSupplied);
+        ChunkedUploadServiceBean.Upload upload = chunkedUploadService.find(uploadId, dataset, getRequestUser(crc));
+        if (upload == null) {
+            throw new WrappedResponse(notFound("No upload " + uploadId + " in progress for this dataset on this server."));
+        }
+        return upload;
+    }
 
+    private Response completeChunkedUpload(ContainerRequestContext crc, ChunkedUploadServiceBean.Upload upload) {
+        ChunkedUpload chunkedUpload = upload.getChunkedUpload();
+
+        Dataset dataset;
+        OptionalFileParams optionalFileParams;
+        try {
+            dataset = findDatasetOrDie(upload.getDatasetId().toString());
+            optionalFileParams = new OptionalFileParams(upload.getJsonData());
+        } catch (WrappedResponse wr) {
+            chunkedUploadService.abort(upload);
+            return wr.getResponse();
+        } catch (DataFileTagException ex) {
+            // (already parsed once, when the upload was started)
+            chunkedUploadService.abort(upload);
+            return error(Response.Status.BAD_REQUEST, ex.getMessage());
+        }
+        // A checksum sent by the client is checked against the one calculated 
+        // on the way, before the stored object is completed; the calculated 
+        // one is what gets saved.
+        if (optionalFileParams.hasCheckSum() && optionalFileParams.getCheckSumType() == chunkedUpload.getChecksumType()
+                && !optionalFileParams.getCheckSum().equalsIgnoreCase(chunkedUpload.getChecksum())) {
+            logger.warning("Checksum mismatch for upload " + upload.getId() + " (" + upload.getStorageIdentifier() + ")");
+            chunkedUploadService.abort(upload);
+            return error(BAD_REQUEST, "The checksum of the received file (" + chunkedUpload.getChecksum()
+                    + ") does not match the one provided (" + optionalFileParams.getCheckSum() + "); the upload has been aborted.");
+        }
+        try {
+            chunkedUpload.complete();
+        } catch (IOException ex) {
+            logger.warning("Failed to complete upload " + upload.getId() + ": " + ex.getMessage());
+            chunkedUploadService.abort(upload);
+            return error(Response.Status.INTERNAL_SERVER_ERROR, "Could not complete the upload.");
+        }
+        chunkedUploadService.finish(upload);
+        optionalFileParams.setCheckSum(chunkedUpload.getChecksum(), chunkedUpload.getChecksumType());
+
+        // the type is detected from the header window captured on the way:
+        String contentType = optionalFileParams.hasMimetype() ? optionalFileParams.getMimeType() : FileUtil.MIME_TYPE_UNDETERMINED_DEFAULT;
+        try {
+            String recognizedType = FileUtil.determineFileType(chunkedUpload.getHeader(), upload.getFileName());
+            if (recognizedType != null && FileUtil.useRecognizedType(contentType, recognizedType)) {
+                contentType = recognizedType;
+            }
+        } catch (IOException ex) {
+            logger.warning("Failed to run the type detection on upload " + upload.getId() + ": " + ex.getMessage());
+        }
+
+        Response response = addFileToDataset(getRequestUser(crc), dataset, upload.getFileName(), contentType,
+                upload.getStorageIdentifier(), null, optionalFileParams);
+        // If the file couldn't be added, nothing points to the completed 
+        // object in the store any more: 
+        if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL
+                && fileService.findByStorageIdandDatasetVersion(upload.getStorageIdentifier(), datasetService.find(dataset.getId()).getLatestVersion()) == null) {
+            chunkedUploadService.deleteStoredFile(upload, dataset);
+        }
+        return response;
+    }
 
     /**
      * Clean storage of a Dataset
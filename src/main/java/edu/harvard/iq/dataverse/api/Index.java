@@ -31,6 +31,7 @@ import edu.harvard.iq.dataverse.search.IndexBatchServiceBean;
 import edu.harvard.iq.dataverse.search.IndexResponse;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.search.IndexUtil;
+import edu.harvard.iq.dataverse.search.PermissionReindexServiceBean;
 import edu.harvard.iq.dataverse.search.SearchException;
 import edu.harvard.iq.dataverse.search.SearchFields;
 import edu.harvard.iq.dataverse.search.SearchFilesServiceBean;
@@ -96,6 +97,8 @@ public class Index extends AbstractApiBean {
     DatasetFieldServiceBean datasetFieldService;
     @EJB
     SearchFilesServiceBean searchFilesService;
+    @EJB
+    PermissionReindexServiceBean permissionReindexService;
 
     public static String contentChanged = "contentChanged";
     public static String contentIndexed = "contentIndexed";
@@ -352,6 +355,16 @@ public class Index extends AbstractApiBean {
         return ok(indexResponse.getMessage());
     }
 
+    /**
+     * The progress of the background permission reindexing, by definition
+     * point.
+     */
+    @GET
+    @Path("perms/status")
+    public Response indexPermissionsStatus() {
+        return ok(permissionReindexService.getStatus());
+    }
+
     @GET
     @Path("perms/{id}")
     public Response indexPermissions(@PathParam("id") Long id) {
@@ -67,6 +67,7 @@ public class Search extends AbstractApiBean {
             @QueryParam("order") String sortOrder,
             @QueryParam("per_page") final int numResultsPerPageRequested,
             @QueryParam("start") final int paginationStart,
+            @QueryParam("cursor") String cursor,
             @QueryParam("show_relevance") boolean showRelevance,
             @QueryParam("show_facets") boolean showFacets,
             @QueryParam("fq") final List<String> filterQueries,
@@ -137,6 +138,10 @@ public class Search extends AbstractApiBean {
                     return error(Response.Status.BAD_REQUEST, "If you supply geo_radius you must also supply geo_point.");
                 }
 
+                if (cursor != null && (cursor.isBlank() || paginationStart != 0)) {
+                    return error(Response.Status.BAD_REQUEST, "The cursor must be \"*\" or a next_cursor returned by a previous search, and cannot be combined with start.");
+                }
+
             } catch (Exception ex) {
                 return error(Response.Status.BAD_REQUEST, ex.getLocalizedMessage());
             }
@@ -157,7 +162,8 @@ public class Search extends AbstractApiBean {
                         numResultsPerPage,
                         true, //SEK get query entities always for search API additional Dataset Information 6300  12/6/2019
                         geoPoint,
-                        geoRadius
+                        geoRadius,
+                        cursor
                 );
             } catch (SearchException ex) {
                 Throwable cause = ex;
@@ -207,6 +213,15 @@ public class Search extends AbstractApiBean {
                     .add("start", solrQueryResponse.getResultsStart())
                     .add("spelling_alternatives", spelling_alternatives)
                     .add("items", itemsArrayBuilder.build());
+            if (cursor != null) {
+                value.add("cursor", cursor);
+                // (no next cursor once the last page has been returned: a page
+                // with fewer results than requested is the last one)
+                String nextCursor = solrQueryResponse.getNextCursorMark();
+                if (nextCursor != null && !nextCursor.equals(cursor) && solrSearchResults.size() >= numResultsPerPage) {
+                    value.add("next_cursor", nextCursor);
+                }
+            }
             if (showFacets) {
                 value.add("facets", facets);
             }
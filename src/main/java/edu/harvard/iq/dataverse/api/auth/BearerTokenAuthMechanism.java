@@ -1,8 +1,10 @@
 package edu.harvard.iq.dataverse.api.auth;
 
+import com.nimbusds.jwt.JWTParser;
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
 import edu.harvard.iq.dataverse.UserServiceBean;
+import edu.harvard.iq.dataverse.authorization.AuthenticationCache;
 import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.UserRecordIdentifier;
 import edu.harvard.iq.dataverse.authorization.providers.oauth2.OAuth2Exception;
@@ -15,6 +17,7 @@ import jakarta.inject.Inject;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.HttpHeaders;
 import java.io.IOException;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -31,6 +34,8 @@ public class BearerTokenAuthMechanism implements AuthMechanism {
     protected AuthenticationServiceBean authSvc;
     @Inject
     protected UserServiceBean userSvc;
+    @Inject
+    protected AuthenticationCache authCache;
     private static final Logger logger = Logger.getLogger(BearerTokenAuthMechanism.class.getCanonicalName());
     @Override
     public User findUserFromRequest(ContainerRequestContext containerRequestContext) throws WrappedAuthErrorResponse {
@@ -40,13 +45,26 @@ public class BearerTokenAuthMechanism implements AuthMechanism {
             if (!bearerToken.isPresent()) {
                 return null;
             }
+            // A token validated recently (and not invalidated since) needs no new round trip to the provider
+            AuthenticatedUser cachedUser = authSvc.findByID(authCache.getUserId(bearerToken.get()));
+            if (cachedUser != null) {
+                if (!cachedUser.isDeactivated()) {
+                    return userSvc.updateLastApiUseTime(cachedUser);
+                }
+                authCache.invalidate(bearerToken.get());
+            }
             // Validate and verify provided Bearer Token, and retrieve UserRecordIdentifier
-            // TODO: Get the identifier from an invalidating cache to avoid lookup bursts of the same token. Tokens in the cache should be removed after some (configurable) time.
             UserRecordIdentifier userInfo = verifyOidcBearerTokenAndGetUserIndentifier(bearerToken.get());
 
             // retrieve Authenticated User from AuthService
             AuthenticatedUser authUser = authSvc.lookupUser(userInfo);
             if (authUser != null) {
+                // (only kept until the token expires, so that an expired token goes back to the provider;
+                // a token that doesn't say when it expires isn't kept)
+                Optional<Date> expirationTime = getExpirationTime(bearerToken.get());
+                if (!authUser.isDeactivated() && expirationTime.isPresent()) {
+                    authCache.putUser(bearerToken.get(), authUser, expirationTime.get());
+                }
                 // track the API usage
                 authUser = userSvc.updateLastApiUseTime(authUser);
                 return authUser;
@@ -104,6 +122,21 @@ public class BearerTokenAuthMechanism implements AuthMechanism {
         throw new WrappedAuthErrorResponse(UNAUTHORIZED_BEARER_TOKEN);
     }
 
+    /**
+     * Reads the expiration time ("exp" claim) of a Bearer token that is a JWT.
+     *
+     * @param token The raw token from the header
+     * @return An {@link Optional} either empty if the token isn't a JWT or has no expiration time, or the expiration time
+     */
+    static Optional<Date> getExpirationTime(String token) {
+        try {
+            return Optional.ofNullable(JWTParser.parse(BearerAccessToken.parse(token).getValue()).getJWTClaimsSet().getExpirationTime());
+        } catch (ParseException | java.text.ParseException e) {
+            logger.log(Level.FINE, "Bearer token detected, not a JWT with an expiration time", e);
+            return Optional.empty();
+        }
+    }
+
     /**
      * Retrieve the raw, encoded token value from the Authorization Bearer HTTP header as defined in RFC 6750
      * @return An {@link Optional} either empty if not present or the raw token from the header
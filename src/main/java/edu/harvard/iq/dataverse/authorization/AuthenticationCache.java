@@ -0,0 +1,224 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.authorization.users.PrivateUrlUser;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.util.LruCache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.logging.Logger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+
+/**
+ * Remembers, for a while, who the API tokens, Private URL tokens and bearer
+ * tokens presented to the API belong to, so that scripted clients making
+ * thousands of calls don't cost a lookup (or, for bearer tokens, a round trip
+ * to the OIDC provider) per call.
+ *
+ * The tokens are only kept as hashes. For authenticated users, only the id of
+ * the user is kept, and the user itself is looked up again on each call (by
+ * its primary key), so the cached entries never hold stale user data.
+ * The entries expire after {@code dataverse.api.auth-cache.ttl-seconds} (or
+ * when the token expires, if it is sooner), and are invalidated (once the
+ * change is committed) when the token of the user is removed or regenerated,
+ * when the user is deactivated or deleted, and when the role of a Private URL
+ * changes. A cached user that
+ * has been deactivated is never returned, wherever the deactivation happened.
+ * On a multi-server installation, the entries on the other servers are
+ * otherwise only invalidated by the expiry.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AuthenticationCache {
+
+    private static final Logger logger = Logger.getLogger(AuthenticationCache.class.getCanonicalName());
+
+    private final LruCache<String, Entry> cache = new LruCache<>();
+    private boolean enabled;
+    private long ttl;
+
+    @PostConstruct
+    public void init() {
+        enabled = JvmSettings.API_AUTH_CACHE_ENABLED.lookupOptional(Boolean.class).orElse(true);
+        cache.setMaxSize(Math.max(1, JvmSettings.API_AUTH_CACHE_MAX_SIZE.lookupOptional(Integer.class).orElse(10000)));
+        ttl = JvmSettings.API_AUTH_CACHE_TTL_SECONDS.lookupOptional(Integer.class).orElse(60) * 1000L;
+        if (ttl <= 0) {
+            enabled = false;
+        }
+        logger.fine("Authentication cache " + (enabled ? "enabled, for " + (ttl / 1000) + "s" : "disabled"));
+    }
+
+    /**
+     * @return the id of the authenticated user the token belongs to, or null
+     *         if it isn't in the cache
+     */
+    public Long getUserId(String token) {
+        Entry entry = get(token);
+        return (entry == null) ? null : entry.userId;
+    }
+
+    /**
+     * @param tokenExpiry when the token expires, or null if it doesn't
+     */
+    public void putUser(String token, AuthenticatedUser user, Date tokenExpiry) {
+        put(token, new Entry(user.getId(), null, user.getIdentifier(), expiry(tokenExpiry)));
+    }
+
+    /**
+     * @return the Private URL user the token belongs to, or null if it isn't
+     *         in the cache
+     */
+    public PrivateUrlUser getPrivateUrlUser(String token) {
+        Entry entry = get(token);
+        return (entry == null) ? null : entry.privateUrlUser;
+    }
+
+    public void putPrivateUrlUser(String token, PrivateUrlUser user) {
+        put(token, new Entry(null, user, user.getIdentifier(), expiry(null)));
+    }
+
+    /**
+     * @return true if the token is in the cache, whoever it belongs to
+     */
+    public boolean contains(String token) {
+        return get(token) != null;
+    }
+
+    public void invalidate(String token) {
+        if (enabled) {
+            cache.invalidate(hash(token));
+        }
+    }
+
+    public void invalidateUser(AuthenticatedUser user) {
+        if (enabled && user != null) {
+            String identifier = user.getIdentifier();
+            cache.invalidateIf(entry -> identifier.equals(entry.assigneeIdentifier));
+        }
+    }
+
+    /**
+     * Invalidates the tokens of a role assignee, after a change of its roles.
+     * Only the Private URL users are cached along with what they give access
+     * to; an authenticated user is looked up again on each call, so a change
+     * of the roles of a user, or of a group, leaves the cache alone.
+     */
+    public void invalidateAssignee(String assigneeIdentifier) {
+        if (enabled && assigneeIdentifier != null && assigneeIdentifier.startsWith(PrivateUrlUser.PREFIX)) {
+            cache.invalidateIf(entry -> assigneeIdentifier.equals(entry.assigneeIdentifier));
+        }
+    }
+
+    /**
+     * Invalidates the tokens of a user once the change of its tokens (or its
+     * deactivation or deletion) is committed. Invalidating them any earlier
+     * would let a call made in the meantime cache the token from before the
+     * change again.
+     */
+    public void userChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) UserChangedEvent event) {
+        invalidateUser(event.getUser());
+    }
+
+    /**
+     * Invalidates the tokens of a role assignee once the change of its roles
+     * is committed.
+     */
+    public void rolesChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) RolesChangedEvent event) {
+        invalidateAssignee(event.getAssigneeIdentifier());
+    }
+
+    public void invalidateAll() {
+        cache.invalidate();
+    }
+
+    private Entry get(String token) {
+        if (!enabled || token == null) {
+            return null;
+        }
+        String key = hash(token);
+        Entry entry = cache.get(key);
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            cache.invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private void put(String token, Entry entry) {
+        if (enabled && token != null) {
+            cache.put(hash(token), entry);
+        }
+    }
+
+    private long expiry(Date tokenExpiry) {
+        long expiresAt = System.currentTimeMillis() + ttl;
+        return (tokenExpiry == null) ? expiresAt : Math.min(expiresAt, tokenExpiry.getTime());
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return FileUtil.checksumDigestToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Fired when the API token of a user is removed or regenerated, and when
+     * the user is deactivated or deleted.
+     */
+    public static class UserChangedEvent {
+
+        private final AuthenticatedUser user;
+
+        public UserChangedEvent(AuthenticatedUser user) {
+            this.user = user;
+        }
+
+        public AuthenticatedUser getUser() {
+            return user;
+        }
+    }
+
+    /**
+     * Fired when roles are assigned to, or revoked from, a role assignee.
+     */
+    public static class RolesChangedEvent {
+
+        private final String assigneeIdentifier;
+
+        public RolesChangedEvent(String assigneeIdentifier) {
+            this.assigneeIdentifier = assigneeIdentifier;
+        }
+
+        public String getAssigneeIdentifier() {
+            return assigneeIdentifier;
+        }
+    }
+
+    private static class Entry {
+
+        private final Long userId;
+        private final PrivateUrlUser privateUrlUser;
+        private final String assigneeIdentifier;
+        private final long expiresAt;
+
+        Entry(Long userId, PrivateUrlUser privateUrlUser, String assigneeIdentifier, long expiresAt) {
+            this.userId = userId;
+            this.privateUrlUser = privateUrlUser;
+            this.assigneeIdentifier = assigneeIdentifier;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -48,6 +48,8 @@ import jakarta.annotation.PostConstruct;
 import jakarta.ejb.EJB;
 import jakarta.ejb.EJBException;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
@@ -76,6 +78,12 @@ public class AuthenticationServiceBean {
     @EJB
     AuthenticationProvidersRegistrationServiceBean authProvidersRegistrationService;
     
+    @EJB
+    AuthenticationCache authCache;
+
+    @Inject
+    Event<AuthenticationCache.UserChangedEvent> userChanged;
+    
     @EJB
     BuiltinUserServiceBean builtinUserServiceBean;
     
@@ -165,6 +173,7 @@ public class AuthenticationServiceBean {
 
     public void removeApiToken(AuthenticatedUser user){
         if (user!=null) {
+            userChanged.fire(new AuthenticationCache.UserChangedEvent(user));
             ApiToken apiToken = findApiTokenByUser(user);
             if (apiToken != null) {
                 em.remove(apiToken);
@@ -196,6 +205,7 @@ public class AuthenticationServiceBean {
         AuthenticatedUser user = em.find(AuthenticatedUser.class, pk);
 
         if (user != null) {
+            userChanged.fire(new AuthenticationCache.UserChangedEvent(user));
             ApiToken apiToken = findApiTokenByUser(user);
             if (apiToken != null) {
                 em.remove(apiToken);
@@ -403,6 +413,9 @@ public class AuthenticationServiceBean {
         if (au == null) {
             return null;
         }
+        // (the cached tokens of the user might be the ones being replaced;
+        // they are invalidated once the new one is committed)
+        userChanged.fire(new AuthenticationCache.UserChangedEvent(au));
 
         ApiToken apiToken = new ApiToken();
         apiToken.setTokenString(java.util.UUID.randomUUID().toString());
@@ -419,6 +432,18 @@ public class AuthenticationServiceBean {
     }
 
     public AuthenticatedUser lookupUser( String apiToken ) {
+        Long cachedUserId = authCache.getUserId(apiToken);
+        if ( cachedUserId != null ) {
+            AuthenticatedUser user = findByID(cachedUserId);
+            if ( user != null && !user.isDeactivated() ) {
+                return user;
+            }
+            authCache.invalidate(apiToken);
+        } else if ( authCache.contains(apiToken) ) {
+            // a cached Private URL token, so not an API token
+            return null;
+        }
+        
         ApiToken tkn = findApiToken(apiToken);
         if ( tkn == null ) return null;
         
@@ -433,6 +458,7 @@ public class AuthenticationServiceBean {
         
         AuthenticatedUser user = tkn.getAuthenticatedUser();
         if (!user.isDeactivated()) {
+            authCache.putUser(apiToken, user, tkn.getExpireTime());
             return user;
         } else {
             logger.info("attempted access with token from deactivated user: " + apiToken);
@@ -507,6 +533,9 @@ public class AuthenticationServiceBean {
         we will delete them here 
         */
 
+        // (the user is being deactivated or deleted; its tokens are no longer good)
+        userChanged.fire(new AuthenticationCache.UserChangedEvent(au));
+
         deletePendingAccessRequests(au);
         
         deleteBannerMessages(au);
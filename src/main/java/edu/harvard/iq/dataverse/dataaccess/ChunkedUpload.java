@@ -0,0 +1,183 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.util.file.FileHeaderBuffer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A file of a known length, written to its final storage location in
+ * consecutive chunks, possibly received over several requests (see
+ * {@link StorageIO#startChunkedUpload(long, ChecksumType)}). The bytes go
+ * straight to the store - there is no local temp copy of the file - and the
+ * checksum and the header window used for the type detection are calculated
+ * on the way.
+ *
+ * The driver-specific part is the storing of the bytes (storeChunk), and the
+ * completion or cancellation of the stored object. An upload is not thread
+ * safe; the callers make sure only one request writes to it at a time.
+ *
+ * The checksum is available as soon as the last byte has been received, so
+ * that it can be checked before the stored object is completed.
+ */
+public abstract class ChunkedUpload {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long length;
+    private final ChecksumType checksumType;
+    private final MessageDigest digest;
+    private final byte[] header;
+    private int headerLength = 0;
+    private long offset = 0;
+    private String checksum = null;
+    private boolean complete = false;
+
+    protected ChunkedUpload(long length, ChecksumType checksumType) {
+        this.length = length;
+        this.checksumType = checksumType;
+        try {
+            // Use "SHA-1" (toString) rather than "SHA1", for example.
+            this.digest = MessageDigest.getInstance(checksumType.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        this.header = new byte[(int) Math.min(length, FileHeaderBuffer.DEFAULT_WINDOW_SIZE)];
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of bytes received so far; the next chunk starts at
+     * this offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the number of bytes the driver keeps in memory for this upload
+     * while it is in progress
+     */
+    public long getBufferSize() {
+        return 0;
+    }
+
+    /**
+     * Stores everything that can be read from the stream (i.e. the next
+     * chunk of the file). If the stream fails midway, the bytes read up to
+     * that point are kept, and the client can resume from getOffset().
+     *
+     * @throws StorageException if the bytes can't be stored
+     * @throws IOException if the stream fails, or has more bytes than what
+     * is left of the file
+     */
+    public void write(InputStream in) throws IOException {
+        if (isComplete()) {
+            throw new IOException("The upload is already complete");
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int nread;
+            while ((nread = in.read(buffer)) != -1) {
+                if (offset + nread > length) {
+                    throw new IOException("The chunk goes beyond the declared length of the file (" + length + " bytes)");
+                }
+                try {
+                    storeChunk(buffer, 0, nread);
+                } catch (IOException ioex) {
+                    throw new StorageException(ioex);
+                }
+                digest.update(buffer, 0, nread);
+                if (headerLength < header.length) {
+                    int n = Math.min(nread, header.length - headerLength);
+                    System.arraycopy(buffer, 0, header, headerLength, n);
+                    headerLength += n;
+                }
+                offset += nread;
+            }
+        } finally {
+            try {
+                flush();
+            } catch (IOException ioex) {
+                throw new StorageException(ioex);
+            }
+        }
+    }
+
+    /**
+     * Completes the stored object, once all the bytes have been written.
+     *
+     * @throws StorageException if the object can't be completed
+     */
+    public void complete() throws IOException {
+        if (isComplete()) {
+            return;
+        }
+        if (offset != length) {
+            throw new IOException("The upload is not complete (" + offset + " of " + length + " bytes received)");
+        }
+        try {
+            completeStorage();
+        } catch (IOException ioex) {
+            throw new StorageException(ioex);
+        }
+        complete = true;
+    }
+
+    /**
+     * Gives up on the upload, and removes whatever has been stored so far.
+     */
+    public abstract void abort();
+
+    public ChecksumType getChecksumType() {
+        return checksumType;
+    }
+
+    /**
+     * @return the checksum of the file; only available once all the bytes
+     * have been received
+     */
+    public String getChecksum() {
+        if (checksum == null && offset == length) {
+            checksum = FileUtil.checksumDigestToString(digest.digest());
+        }
+        return checksum;
+    }
+
+    /**
+     * @return the beginning of the file, for the type detection
+     */
+    public FileHeaderBuffer getHeader() {
+        return FileHeaderBuffer.of(Arrays.copyOf(header, headerLength), length);
+    }
+
+    protected abstract void storeChunk(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Called at the end of every chunk.
+     */
+    protected abstract void flush() throws IOException;
+
+    protected abstract void completeStorage() throws IOException;
+
+    /**
+     * A failure of the store, rather than of the client sending the chunk.
+     */
+    public static class StorageException extends IOException {
+
+        public StorageException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
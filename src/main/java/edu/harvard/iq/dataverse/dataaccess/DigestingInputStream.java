@@ -0,0 +1,258 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.util.ManagedExecutors;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * An InputStream that calculates the MD5, SHA-1, SHA-256 and SHA-512 digests
+ * of everything read through it, so that a StorageIO driver can checksum a
+ * file in the same pass in which it is writing it to storage, instead of
+ * reading the stored bytes back afterwards.
+ *
+ * The hashing itself is done on a worker thread, in chunks, so that it
+ * doesn't stall the reads and writes of the storage driver. The chunks are
+ * hashed on the container's managed executor service, one at a time for each
+ * stream, so the threads are the container's to size and to stop with the
+ * application. Each stream reuses a fixed set of chunk buffers; if the hashing
+ * falls behind, the reader will block until a buffer has been hashed and is
+ * free again.
+ *
+ * The digests are only available once the stream has been read to the end
+ * (and/or closed) - see {@link #getChecksums()}.
+ */
+public class DigestingInputStream extends FilterInputStream {
+
+    private static final Logger logger = Logger.getLogger(DigestingInputStream.class.getCanonicalName());
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_CHUNKS_IN_FLIGHT = 8;
+
+    private final ExecutorService hashingExecutor = ManagedExecutors.getExecutorService();
+    private final Map<ChecksumType, MessageDigest> digests;
+    // the buffers that have been hashed, ready to be reused:
+    private final BlockingQueue<byte[]> freeChunks = new ArrayBlockingQueue<>(MAX_CHUNKS_IN_FLIGHT + 1);
+    private int allocatedChunks = 0;
+    private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+    private byte[] chunk = null;
+    private int chunkLength = 0;
+    private long bytesRead = 0;
+    private Map<ChecksumType, String> checksums = null;
+
+    public DigestingInputStream(InputStream in) {
+        this(in, ChecksumType.values());
+    }
+
+    public DigestingInputStream(InputStream in, ChecksumType... checksumTypes) {
+        super(in);
+        digests = createDigests(checksumTypes);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            stage(new byte[]{(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int nread = super.read(b, off, len);
+        if (nread > 0) {
+            stage(b, off, nread);
+        }
+        return nread;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes would be missing from the digests; read them instead
+        byte[] skipBuffer = new byte[(int) Math.min(n, 8192)];
+        long remaining = n;
+        while (remaining > 0) {
+            int nread = read(skipBuffer, 0, (int) Math.min(remaining, skipBuffer.length));
+            if (nread < 0) {
+                break;
+            }
+            remaining -= nread;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Calculates the checksums of a local file on a managed thread, for 
+     * drivers that upload straight from a file (and may read it in parallel 
+     * parts), so that the hashing can run alongside the upload.
+     */
+    public static CompletableFuture<Map<ChecksumType, String>> digestAsync(Path path) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<ChecksumType, MessageDigest> fileDigests = createDigests(ChecksumType.values());
+            byte[] buffer = new byte[CHUNK_SIZE];
+            try (InputStream fileIn = Files.newInputStream(path)) {
+                int nread;
+                while ((nread = fileIn.read(buffer)) != -1) {
+                    for (MessageDigest md : fileDigests.values()) {
+                        md.update(buffer, 0, nread);
+                    }
+                }
+            } catch (IOException ioex) {
+                throw new UncheckedIOException(ioex);
+            }
+            return toChecksums(fileDigests);
+        }, ManagedExecutors.getExecutorService());
+    }
+
+    /**
+     * @return the number of bytes that went through the digests so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Waits for the hashing worker to finish and returns the digests of all
+     * the bytes read through this stream, as hex strings.
+     * Nothing can be read from the stream after this has been called.
+     */
+    public Map<ChecksumType, String> getChecksums() throws IOException {
+        if (checksums == null) {
+            submitChunk();
+            try {
+                pending.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the checksums to be calculated", ie);
+            } catch (ExecutionException ee) {
+                throw new IOException("Failed to calculate the checksums", ee.getCause());
+            }
+            checksums = toChecksums(digests);
+            freeChunks.clear();
+            chunk = null;
+            logger.fine("calculated checksums of " + bytesRead + " bytes inline: " + checksums);
+        }
+        return checksums;
+    }
+
+    private void stage(byte[] b, int off, int len) throws IOException {
+        if (checksums != null) {
+            throw new IOException("The checksums of this stream have already been calculated");
+        }
+        bytesRead += len;
+        while (len > 0) {
+            if (chunk == null) {
+                chunk = nextChunk();
+            }
+            int n = Math.min(len, CHUNK_SIZE - chunkLength);
+            System.arraycopy(b, off, chunk, chunkLength, n);
+            chunkLength += n;
+            off += n;
+            len -= n;
+            if (chunkLength == CHUNK_SIZE) {
+                submitChunk();
+            }
+        }
+    }
+
+    private void submitChunk() throws IOException {
+        if (chunkLength == 0) {
+            return;
+        }
+        final byte[] fullChunk = chunk;
+        final int fullChunkLength = chunkLength;
+        // the chunks are chained, so they are hashed in the order they were read:
+        pending = pending.thenRunAsync(() -> {
+            try {
+                for (MessageDigest md : digests.values()) {
+                    md.update(fullChunk, 0, fullChunkLength);
+                }
+            } finally {
+                freeChunks.offer(fullChunk);
+            }
+        }, hashingExecutor);
+        chunk = null;
+        chunkLength = 0;
+    }
+
+    /**
+     * @return a free chunk buffer: one that has been hashed already, or a new
+     *         one, as long as there are fewer than MAX_CHUNKS_IN_FLIGHT in
+     *         flight; otherwise, waits for one to be hashed.
+     */
+    private byte[] nextChunk() throws IOException {
+        byte[] free = freeChunks.poll();
+        if (free != null) {
+            return free;
+        }
+        if (allocatedChunks <= MAX_CHUNKS_IN_FLIGHT) {
+            allocatedChunks++;
+            return new byte[CHUNK_SIZE];
+        }
+        try {
+            while ((free = freeChunks.poll(1, TimeUnit.SECONDS)) == null) {
+                // (a failed chunk never frees its buffer)
+                if (pending.isCompletedExceptionally()) {
+                    throw new IOException("Failed to calculate the checksums");
+                }
+            }
+            return free;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the checksum worker", ie);
+        }
+    }
+
+    private static Map<ChecksumType, MessageDigest> createDigests(ChecksumType... checksumTypes) {
+        Map<ChecksumType, MessageDigest> digests = new EnumMap<>(ChecksumType.class);
+        for (ChecksumType checksumType : checksumTypes) {
+            try {
+                // Use "SHA-1" (toString) rather than "SHA1", for example.
+                digests.put(checksumType, MessageDigest.getInstance(checksumType.toString()));
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return digests;
+    }
+
+    private static Map<ChecksumType, String> toChecksums(Map<ChecksumType, MessageDigest> digests) {
+        Map<ChecksumType, String> results = new EnumMap<>(ChecksumType.class);
+        for (Map.Entry<ChecksumType, MessageDigest> entry : digests.entrySet()) {
+            results.put(entry.getKey(), FileUtil.checksumDigestToString(entry.getValue().digest()));
+        }
+        return Collections.unmodifiableMap(results);
+    }
+}
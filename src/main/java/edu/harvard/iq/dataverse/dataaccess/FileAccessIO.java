@@ -202,7 +202,12 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
         if (outputPath == null) {
             throw new FileNotFoundException("FileAccessIO: Could not locate aux file for writing.");
         }
-        Files.copy(fileSystemPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+        // (the file is copied through a digesting stream, so that we get 
+        // the checksums of the saved copy without reading it again)
+        try (DigestingInputStream digestingIn = new DigestingInputStream(Files.newInputStream(fileSystemPath))) {
+            Files.copy(digestingIn, outputPath, StandardCopyOption.REPLACE_EXISTING);
+            setSavedChecksums(digestingIn.getChecksums());
+        }
         long newFileSize = outputPath.toFile().length();
 
         // if it has worked successfully, we also need to reset the size
@@ -226,20 +231,62 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
             throw new FileNotFoundException("FileAccessIO: Could not locate file for writing.");
         }
         
+        DigestingInputStream digestingIn = new DigestingInputStream(inputStream);
         try (OutputStream outputStream = new FileOutputStream(outputFile)) {
             int read;
             byte[] bytes = new byte[1024];
-            while ((read = inputStream.read(bytes)) != -1) {
+            while ((read = digestingIn.read(bytes)) != -1) {
                 outputStream.write(bytes, 0, read);
             }
         }
-        inputStream.close();
+        digestingIn.close();
+        setSavedChecksums(digestingIn.getChecksums());
 
         // if it has worked successfully, we also need to reset the size
         // of the object. 
         setSize(outputFile.length());
     }
     
+    @Override
+    public ChunkedUpload startChunkedUpload(long length, DataFile.ChecksumType checksumType) throws IOException {
+        Path outputPath = getFileSystemPath();
+        
+        if (outputPath == null) {
+            throw new FileNotFoundException("FileAccessIO: Could not locate file for writing.");
+        }
+        // (the file was opened for writing, in its final location, by 
+        // open(WRITE_ACCESS); the chunks are simply appended to it)
+        OutputStream outputStream = getOutputStream() != null ? getOutputStream() : new FileOutputStream(outputPath.toFile());
+        
+        return new ChunkedUpload(length, checksumType) {
+            @Override
+            protected void storeChunk(byte[] b, int off, int len) throws IOException {
+                outputStream.write(b, off, len);
+            }
+            
+            @Override
+            protected void flush() throws IOException {
+                outputStream.flush();
+            }
+            
+            @Override
+            protected void completeStorage() throws IOException {
+                outputStream.close();
+                setSize(outputPath.toFile().length());
+            }
+            
+            @Override
+            public void abort() {
+                try {
+                    outputStream.close();
+                    Files.deleteIfExists(outputPath);
+                } catch (IOException ioex) {
+                    logger.warning("Failed to remove the aborted upload " + outputPath + ": " + ioex.getMessage());
+                }
+            }
+        };
+    }
+    
     @Override
     public Channel openAuxChannel(String auxItemTag, DataAccessOption... options) throws IOException {
       
@@ -30,11 +30,16 @@ import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 
+import javax.imageio.IIOException;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 
 import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.ByteArrayOutputStream;
@@ -67,8 +72,30 @@ public class ImageThumbConverter {
     public static int DEFAULT_DATASETLOGO_SIZE = 140;
     public static int DEFAULT_PREVIEW_SIZE = 400;
 
+    private static final int[] STANDARD_THUMBNAIL_SIZES = {DEFAULT_CARDIMAGE_SIZE, DEFAULT_THUMBNAIL_SIZE, DEFAULT_DATASETLOGO_SIZE, DEFAULT_PREVIEW_SIZE};
+    private static final long DEFAULT_MAX_DECODE_PIXELS = 4L * 1024 * 1024;
+
     private static final Logger logger = Logger.getLogger(ImageThumbConverter.class.getCanonicalName());
 
+    /**
+     * The outcome of an attempt to produce a thumbnail.
+     */
+    public enum ThumbnailStatus {
+        /** The thumbnail is cached (it already was, or has just been generated). */
+        AVAILABLE,
+        /**
+         * There is no thumbnail for now: thumbnails aren't supported for the
+         * file, it is over the size limits, or the file or the storage
+         * couldn't be read or written - which may well work next time.
+         */
+        UNAVAILABLE,
+        /**
+         * The file was read, but couldn't be decoded as an image (or converted,
+         * for a PDF); trying again won't help.
+         */
+        UNREADABLE
+    }
+
     public ImageThumbConverter() {
     }
 
@@ -76,22 +103,73 @@ public class ImageThumbConverter {
         return isThumbnailAvailable(file, DEFAULT_THUMBNAIL_SIZE);
     }
 
+    /**
+     * Tells if the thumbnail of the file has already been generated and 
+     * cached. Nothing is generated here, so this is safe to call while a page
+     * is being rendered; use generateThumbnail() (or the background 
+     * ThumbnailGenerationServiceBean) to produce a missing thumbnail.
+     */
     public static boolean isThumbnailAvailable(DataFile file, int size) {
+        if (file == null || !FileUtil.isThumbnailSupported(file) || file.isHarvested() || file.isPreviewImageFail()) {
+            return false;
+        }
+        try {
+            StorageIO<DataFile> storageIO = file.getStorageIO();
+            return storageIO != null && storageIO.getDvObject() != null && isThumbnailCached(storageIO, size);
+        } catch (IOException ioEx) {
+            return false;
+        }
+    }
+
+    /**
+     * Makes sure the thumbnail of the file is cached, generating it if it
+     * isn't (which, for a large image or a PDF, may take a while); tells why
+     * the thumbnail isn't available when it isn't.
+     */
+    public static ThumbnailStatus generateThumbnail(DataFile file, int size) {
 
         try {
 
             StorageIO<DataFile> storageIO = file.getStorageIO();
-            return isThumbnailAvailable(storageIO, size);
+            return getThumbnailStatus(storageIO, size);
         } catch (IOException ioEx) {
-            return false;
+            return ThumbnailStatus.UNAVAILABLE;
         }
 
     }
 
+    /**
+     * Makes sure the thumbnails of the file, in all the standard sizes, are
+     * cached, generating the missing ones.
+     *
+     * @return AVAILABLE if all of them are; otherwise, why they aren't
+     */
+    public static ThumbnailStatus generateThumbnails(DataFile file) {
+        StorageIO<DataFile> storageIO;
+        try {
+            storageIO = file.getStorageIO();
+        } catch (IOException ioEx) {
+            logger.fine("could not open the storage of " + file.getStorageIdentifier() + ": " + ioEx.getMessage());
+            return ThumbnailStatus.UNAVAILABLE;
+        }
+        // (for an image, the first size generates all the others, from the same decoded image)
+        for (int size : STANDARD_THUMBNAIL_SIZES) {
+            ThumbnailStatus status = getThumbnailStatus(storageIO, size);
+            if (status != ThumbnailStatus.AVAILABLE) {
+                return status;
+            }
+        }
+        return ThumbnailStatus.AVAILABLE;
+    }
+
     private static boolean isThumbnailAvailable(StorageIO<DataFile> storageIO, int size) {
+        return getThumbnailStatus(storageIO, size) == ThumbnailStatus.AVAILABLE;
+    }
+
+    private static ThumbnailStatus getThumbnailStatus(StorageIO<DataFile> storageIO, int size) {
 
         if (storageIO == null || storageIO.getDvObject() == null) {
-            return false;
+            return ThumbnailStatus.UNAVAILABLE;
         }
 
         DataFile file = storageIO.getDataFile();
@@ -100,17 +178,23 @@ public class ImageThumbConverter {
         // to check anything else:
         if (!FileUtil.isThumbnailSupported(file)) {
             logger.fine("No thumbnail support for " + file.getContentType());
-            return false;
+            return ThumbnailStatus.UNAVAILABLE;
         }
 
         // similarly, if this is a harvested file: 
         if (file.isHarvested()) {
             logger.fine("thumbnails are not supported on harvested files at this time.");
-            return false;
+            return ThumbnailStatus.UNAVAILABLE;
+        }
+
+        // ... or if we have already tried, and failed, to generate one:
+        if (file.isPreviewImageFail()) {
+            logger.fine("thumbnail generation has previously failed for " + file.getStorageIdentifier());
+            return ThumbnailStatus.UNAVAILABLE;
         }
 
         if (isThumbnailCached(storageIO, size)) {
-            return true;
+            return ThumbnailStatus.AVAILABLE;
         }
 
         logger.fine("Checking for thumbnail, file type: " + file.getContentType());
@@ -121,7 +205,7 @@ public class ImageThumbConverter {
             return generatePDFThumbnail(storageIO, size);
         }
 
-        return false;
+        return ThumbnailStatus.UNAVAILABLE;
 
     }
 
@@ -175,16 +259,16 @@ public class ImageThumbConverter {
         }
     }
 
-    private static boolean generatePDFThumbnail(StorageIO<DataFile> storageIO, int size) {
+    private static ThumbnailStatus generatePDFThumbnail(StorageIO<DataFile> storageIO, int size) {
         if (isPdfFileOverSizeLimit(storageIO.getDataFile().getFilesize())) {
             logger.fine("PDF file too large (" + storageIO.getDataFile().getFilesize() + " bytes) - skipping");
-            return false;
+            return ThumbnailStatus.UNAVAILABLE;
         }
 
         // We rely on ImageMagick to convert PDFs; so if it's not installed, 
         // better give up right away: 
         if (!isImageMagickInstalled()) {
-            return false;
+            return ThumbnailStatus.UNAVAILABLE;
         }
 
         File sourcePdfFile = null;
@@ -207,7 +291,7 @@ public class ImageThumbConverter {
 
         } catch (IOException ioex) {
             // this on the other hand is likely a fatal condition :(
-            return false;
+            return ThumbnailStatus.UNAVAILABLE;
         }
 
         if (tempFilesRequired) {
@@ -219,7 +303,7 @@ public class ImageThumbConverter {
                 pdfFileChannel = storageIO.getReadChannel();
             } catch (Exception ioex) {
                 logger.warning("caught Exception trying to open an input stream for " + storageIO.getDataFile().getStorageIdentifier());
-                return false;
+                return ThumbnailStatus.UNAVAILABLE;
             }
 
             File tempFile;
@@ -231,7 +315,7 @@ public class ImageThumbConverter {
                 tempFileChannel.transferFrom(pdfFileChannel, 0, storageIO.getSize());
             } catch (IOException ioex) {
                 logger.warning("GenerateImageThumb: failed to save pdf bytes in a temporary file.");
-                return false;
+                return ThumbnailStatus.UNAVAILABLE;
             } finally {
                 IOUtils.closeQuietly(tempFileChannel);
                 IOUtils.closeQuietly(pdfFileChannel);
@@ -242,7 +326,8 @@ public class ImageThumbConverter {
         String imageThumbFileName = generatePDFThumbnailFromFile(sourcePdfFile.getAbsolutePath(), size);
 
         if (imageThumbFileName == null) {
-            return false;
+            // (the file was read; ImageMagick couldn't convert it)
+            return ThumbnailStatus.UNREADABLE;
         }
 
         // If there was a local Path to the permanent location of the PDF file on the 
@@ -256,18 +341,18 @@ public class ImageThumbConverter {
                 storageIO.savePathAsAux(Paths.get(imageThumbFileName), THUMBNAIL_SUFFIX + size);
             } catch (IOException ioex) {
                 logger.warning("failed to save generated pdf thumbnail, as AUX file " + THUMBNAIL_SUFFIX + size + "!");
-                return false;
+                return ThumbnailStatus.UNAVAILABLE;
             }
         }
 
-        return true;
+        return ThumbnailStatus.AVAILABLE;
     }
 
-    private static boolean generateImageThumbnail(StorageIO<DataFile> storageIO, int size) {
+    private static ThumbnailStatus generateImageThumbnail(StorageIO<DataFile> storageIO, int size) {
 
         if (isImageOverSizeLimit(storageIO.getDataFile().getFilesize())) {
             logger.fine("Image file too large - skipping");
-            return false;
+            return ThumbnailStatus.UNAVAILABLE;
         }
 
         try {
@@ -277,34 +362,70 @@ public class ImageThumbConverter {
             }
         } catch (IOException ioex) {
             logger.warning("caught IOException trying to open an input stream for " + storageIO.getDataFile().getStorageIdentifier() + ioex);
-            return false;
+            return ThumbnailStatus.UNAVAILABLE;
         }
         
     }
 
     /*
      * This is the actual workhorse method that does the rescaling of the full 
-     * size image: 
+     * size image. 
+     * The image is only decoded once, at a reduced resolution (see 
+     * readImageForThumbnail()), and all the standard thumbnail sizes that are
+     * not cached yet are produced from it, along with the one requested - 
+     * so that the image doesn't need to be read again for the other sizes.
      */
-    private static boolean generateImageThumbnailFromInputStream(StorageIO<DataFile> storageIO, int size, InputStream inputStream) {
+    private static ThumbnailStatus generateImageThumbnailFromInputStream(StorageIO<DataFile> storageIO, int size, InputStream inputStream) {
 
-        BufferedImage fullSizeImage;
+        BufferedImage reducedImage;
 
         try {
-            logger.fine("attempting to read the image file with ImageIO.read(InputStream), " + storageIO.getDataFile().getStorageIdentifier());
-            fullSizeImage = ImageIO.read(inputStream);
-        } catch (Exception ioex) {
-            logger.warning("Caught exception attempting to read the image file with ImageIO.read(InputStream)");
-            return false;
+            logger.fine("attempting to read the image file " + storageIO.getDataFile().getStorageIdentifier());
+            reducedImage = readImageForThumbnail(inputStream, Math.max(size, DEFAULT_PREVIEW_SIZE));
+        } catch (Exception ex) {
+            logger.warning("Caught exception attempting to read the image file: " + ex.getMessage());
+            return isDecodingFailure(ex) ? ThumbnailStatus.UNREADABLE : ThumbnailStatus.UNAVAILABLE;
         }
 
-        if (fullSizeImage == null) {
-            logger.warning("could not read image with ImageIO.read()");
-            return false;
+        if (reducedImage == null) {
+            logger.warning("could not read image with ImageIO");
+            return ThumbnailStatus.UNREADABLE;
         }
 
-        int width = fullSizeImage.getWidth(null);
-        int height = fullSizeImage.getHeight(null);
+        if (!saveImageThumbnail(storageIO, reducedImage, size)) {
+            return ThumbnailStatus.UNAVAILABLE;
+        }
+
+        // while we are at it, let's make sure other size thumbnails are 
+        // generated too:
+        for (int s : STANDARD_THUMBNAIL_SIZES) {
+            if (s != size && !isThumbnailCached(storageIO, s)) {
+                saveImageThumbnail(storageIO, reducedImage, s);
+            }
+        }
+        reducedImage.flush();
+
+        return ThumbnailStatus.AVAILABLE;
+    }
+
+    /**
+     * Whether an exception thrown while reading an image means that the image
+     * itself is broken (the decoders report that with an IIOException, or
+     * sometimes a runtime exception), rather than that the bytes couldn't be
+     * read from the storage (an IOException from the stream, possibly wrapped
+     * by the decoder or the storage client).
+     */
+    static boolean isDecodingFailure(Exception ex) {
+        Throwable cause = ex.getCause();
+        if (ex instanceof IIOException || ex instanceof RuntimeException) {
+            return !(cause instanceof IOException) || cause instanceof IIOException;
+        }
+        return false;
+    }
+
+    private static boolean saveImageThumbnail(StorageIO<DataFile> storageIO, BufferedImage image, int size) {
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
 
         logger.fine("image dimensions: " + width + "x" + height + "(" + storageIO.getDataFile().getStorageIdentifier() + ")");
 
@@ -340,16 +461,8 @@ public class ImageThumbConverter {
 
         try {
 
-            rescaleImage(fullSizeImage, width, height, size, outputStream);
-            /*
-            // while we are at it, let's make sure other size thumbnails are 
-            // generated too:
-            for (int s : (new int[]{DEFAULT_PREVIEW_SIZE, DEFAULT_THUMBNAIL_SIZE, DEFAULT_CARDIMAGE_SIZE})) {
-                if (size != s && !thumbnailFileExists(fileLocation, s)) {
-                    rescaleImage(fullSizeImage, width, height, s, fileLocation);
-                }
-            }
-             */
+            rescaleImage(image, width, height, size, outputStream);
+            outputStream.close();
 
             if (tempFileRequired) {
                 storageIO.savePathAsAux(Paths.get(tempFile.getAbsolutePath()), THUMBNAIL_SUFFIX + size);
@@ -358,10 +471,71 @@ public class ImageThumbConverter {
         } catch (Exception ioex) {
             logger.warning("Failed to rescale and/or save the image: " + ioex.getMessage());
             return false;
+        } finally {
+            IOUtils.closeQuietly(outputStream);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
         }
 
         return true;
+    }
+
+    /**
+     * Decodes an image at a reduced resolution - just large enough to produce
+     * thumbnails of up to largestSize pixels from it, and never more than 
+     * dataverse.thumbnails.max-decode-pixels in total - by asking the ImageIO 
+     * reader to subsample the source as it decodes it. This way a huge scan 
+     * can be thumbnailed without allocating a raster for the full resolution 
+     * image (ImageIO.read() of a 20,000 x 20,000 image takes over 1.5 GB).
+     *
+     * @param input a File or an InputStream
+     * @return the reduced image, or null if no ImageIO reader can read it
+     */
+    static BufferedImage readImageForThumbnail(Object input, int largestSize) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(input)) {
+            if (imageInputStream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = getSubsampling(width, height, largestSize, getMaxDecodePixels());
+                logger.fine("image dimensions: " + width + "x" + height + "; decoding with subsampling " + subsampling);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
 
+    /**
+     * The subsampling (n: only decode every n-th pixel, in both directions)
+     * that keeps at least twice the target resolution along the longer side
+     * of the image - to leave the final rescaling something to smooth over - 
+     * and at most maxPixels pixels in the decoded image.
+     */
+    static int getSubsampling(long width, long height, int largestSize, long maxPixels) {
+        int subsampling = (int) Math.max(1, Math.max(width, height) / (2L * largestSize));
+        if (maxPixels > 0 && width * height > maxPixels) {
+            subsampling = Math.max(subsampling, (int) Math.ceil(Math.sqrt((double) width * height / maxPixels)));
+        }
+        return subsampling;
+    }
+
+    private static long getMaxDecodePixels() {
+        return JvmSettings.THUMBNAILS_MAX_DECODE_PIXELS.lookupOptional(Long.class).orElse(DEFAULT_MAX_DECODE_PIXELS);
     }
 
     private static boolean isThumbnailCached(StorageIO<DataFile> storageIO, int size) {
@@ -389,6 +563,16 @@ public class ImageThumbConverter {
      * downloadable image via an API call.
      */
     public static String getImageThumbnailAsBase64(DataFile file, int size) {
+        return getImageThumbnailAsBase64(file, size, true);
+    }
+
+    /**
+     * Same as above; but with generateIfMissing=false, only a thumbnail that
+     * has already been generated and cached is returned (and null otherwise),
+     * so that the caller - a page being rendered - never has to wait for a 
+     * large image to be decoded, or a PDF rendered. 
+     */
+    public static String getImageThumbnailAsBase64(DataFile file, int size, boolean generateIfMissing) {
 
         logger.fine("entering getImageThumbnailAsBase64, size " + size + ", for " + file.getStorageIdentifier());
 
@@ -399,6 +583,11 @@ public class ImageThumbConverter {
             return null;
         }
 
+        if (file.isPreviewImageFail()) {
+            logger.fine("thumbnail generation has previously failed for " + file.getStorageIdentifier());
+            return null;
+        }
+
         StorageIO<DataFile> storageIO = null;
 
         try {
@@ -436,12 +625,16 @@ public class ImageThumbConverter {
         if (cachedThumbnailChannel == null) {
             logger.fine("Null channel for aux object " + THUMBNAIL_SUFFIX + size);
 
+            if (!generateIfMissing) {
+                return null;
+            }
+
             // try to generate, if not available: 
             boolean generated = false;
             if (file.getContentType().substring(0, 6).equalsIgnoreCase("image/")) {
-                generated = generateImageThumbnail(storageIO, size);
+                generated = generateImageThumbnail(storageIO, size) == ThumbnailStatus.AVAILABLE;
             } else if (file.getContentType().equalsIgnoreCase("application/pdf")) {
-                generated = generatePDFThumbnail(storageIO, size);
+                generated = generatePDFThumbnail(storageIO, size) == ThumbnailStatus.AVAILABLE;
             }
 
             if (generated) {
@@ -578,11 +771,11 @@ public class ImageThumbConverter {
         }
 
         try {
-            logger.fine("attempting to read the image file " + fileLocation + " with ImageIO.read()");
-            BufferedImage fullSizeImage = ImageIO.read(new File(fileLocation));
+            logger.fine("attempting to read the image file " + fileLocation + " with ImageIO");
+            BufferedImage fullSizeImage = readImageForThumbnail(new File(fileLocation), size);
 
             if (fullSizeImage == null) {
-                logger.warning("could not read image with ImageIO.read()");
+                logger.warning("could not read image with ImageIO");
                 return null;
             }
 
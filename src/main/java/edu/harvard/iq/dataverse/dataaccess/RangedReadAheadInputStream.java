@@ -0,0 +1,125 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Presents a large stored object as a single sequential InputStream, while
+ * fetching it as a series of byte ranges, several of them in parallel ahead
+ * of the reader. Useful for object stores like S3, where a single GET stream
+ * is limited in throughput, but parallel ranged GETs are not.
+ *
+ * At most readAhead + 1 parts (of partSize bytes each) are held in memory
+ * at any time: the one being read, and readAhead parts fetched ahead of it.
+ */
+public class RangedReadAheadInputStream extends InputStream {
+
+    public interface RangeReader {
+
+        InputStream open(long offset, long length) throws IOException;
+    }
+
+    private final RangeReader rangeReader;
+    private final long size;
+    private final int partSize;
+    private final int readAhead;
+    private final ExecutorService executor;
+
+    private final Deque<Future<byte[]>> parts = new ArrayDeque<>();
+    private long nextPartOffset = 0;
+    private byte[] currentPart = null;
+    private int currentPosition = 0;
+    private boolean closed = false;
+
+    public RangedReadAheadInputStream(RangeReader rangeReader, long size, int partSize, int readAhead, ExecutorService executor) {
+        if (partSize <= 0 || readAhead <= 0) {
+            throw new IllegalArgumentException("partSize and readAhead must be positive");
+        }
+        this.rangeReader = rangeReader;
+        this.size = size;
+        this.partSize = partSize;
+        this.readAhead = readAhead;
+        this.executor = executor;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureCurrentPart()) {
+            return -1;
+        }
+        return currentPart[currentPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureCurrentPart()) {
+            return -1;
+        }
+        int n = Math.min(len, currentPart.length - currentPosition);
+        System.arraycopy(currentPart, currentPosition, b, off, n);
+        currentPosition += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Future<byte[]> part : parts) {
+            part.cancel(true);
+        }
+        parts.clear();
+        currentPart = null;
+    }
+
+    private boolean ensureCurrentPart() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (currentPart != null && currentPosition < currentPart.length) {
+            return true;
+        }
+        scheduleParts();
+        Future<byte[]> next = parts.poll();
+        if (next == null) {
+            return false;
+        }
+        try {
+            currentPart = next.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a ranged read", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+        currentPosition = 0;
+        // keep the pipeline full:
+        scheduleParts();
+        return currentPart.length > 0;
+    }
+
+    private void scheduleParts() {
+        while (parts.size() < readAhead && nextPartOffset < size) {
+            final long offset = nextPartOffset;
+            final int length = (int) Math.min(partSize, size - offset);
+            parts.add(executor.submit(() -> {
+                try (InputStream in = rangeReader.open(offset, length)) {
+                    byte[] part = in.readNBytes(length);
+                    if (part.length != length) {
+                        throw new IOException("Short read of range " + offset + "-" + (offset + length - 1) + ": got " + part.length + " bytes");
+                    }
+                    return part;
+                }
+            }));
+            nextPartOffset += length;
+        }
+    }
+}
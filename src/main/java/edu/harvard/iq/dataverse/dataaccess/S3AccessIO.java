@@ -32,6 +32,7 @@ import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ResponseHeaderOverrides;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import edu.harvard.iq.dataverse.DataFile;
@@ -42,6 +43,7 @@ import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import opennlp.tools.util.StringUtil;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -60,7 +62,10 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -91,6 +96,9 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
     
     private boolean mainDriver = true;
 
+    private static final long CHUNKED_UPLOAD_PART_SIZE = 8 * 1024 * 1024l;
+    private static final long MAX_UPLOAD_PARTS = 10000;
+
     private static HashMap<String, AmazonS3> driverClientMap = new HashMap<String,AmazonS3>();
     private static HashMap<String, TransferManager> driverTMMap = new HashMap<String,TransferManager>();
 
@@ -303,6 +311,26 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         return super.getInputStream();
     }
     
+    /**
+     * Opens a separate stream for a byte range of the main S3 object, so that
+     * several ranges of a large object can be read in parallel (see
+     * RangedReadAheadInputStream). Does not affect the main InputStream of this
+     * StorageIO.
+     *
+     * @param offset the first byte of the range
+     * @param length the number of bytes in the range
+     */
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        if (key == null) {
+            open();
+        }
+        try {
+            return s3.getObject(new GetObjectRequest(bucketName, key).withRange(offset, offset + length - 1)).getObjectContent();
+        } catch (SdkClientException sce) {
+            throw new IOException("Cannot get range " + offset + "-" + (offset + length - 1) + " of S3 object " + key + " (" + sce.getMessage() + ")");
+        }
+    }
+
     @Override
     public Channel getChannel() throws IOException {
         if(super.getChannel()==null) {
@@ -330,8 +358,18 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         try {
             File inputFile = fileSystemPath.toFile();
             if (dvObject instanceof DataFile) {
+                // The TransferManager uploads the file in parallel parts, 
+                // straight from the local disk; we calculate the checksums 
+                // of the local copy alongside the upload, rather than 
+                // reading the object back from S3 afterwards:
+                CompletableFuture<Map<DataFile.ChecksumType, String>> checksums = DigestingInputStream.digestAsync(fileSystemPath);
                 tm.upload(new PutObjectRequest(bucketName, key, inputFile)).waitForCompletion();
                 newFileSize = inputFile.length();
+                try {
+                    setSavedChecksums(checksums.join());
+                } catch (CompletionException ce) {
+                    logger.warning("Failed to calculate the checksums of " + fileSystemPath + " while uploading it to S3: " + ce.getMessage());
+                }
             } else {
                 throw new IOException("DvObject type other than datafile is not yet supported");
             }
@@ -381,8 +419,10 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
 
             ObjectMetadata metadata = new ObjectMetadata();
             metadata.setContentLength(filesize);
+            DigestingInputStream digestingIn = new DigestingInputStream(inputStream);
             try {
-                s3.putObject(bucketName, key, inputStream, metadata);
+                s3.putObject(bucketName, key, digestingIn, metadata);
+                setSavedChecksums(digestingIn.getChecksums());
             } catch (SdkClientException ioex) {
                 String failureMsg = ioex.getMessage();
                 if (failureMsg == null) {
@@ -404,7 +444,10 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
 
         Random rand = new Random();
         Path tempPath = Paths.get(directoryString, Integer.toString(rand.nextInt(Integer.MAX_VALUE)));
-        File tempFile = createTempFile(tempPath, inputStream);
+        // (we get the checksums while spooling the stream into the temp file)
+        DigestingInputStream digestingIn = new DigestingInputStream(inputStream);
+        File tempFile = createTempFile(tempPath, digestingIn);
+        setSavedChecksums(digestingIn.getChecksums());
         
         try {
             s3.putObject(bucketName, key, tempFile);
@@ -423,6 +466,119 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         }
     }
     
+    /**
+     * The chunks are stored as the parts of a multipart upload. S3 wants all
+     * the parts but the last one to be at least 5 MB, and won't take more 
+     * than 10,000 of them, so the chunks are gathered into parts of 
+     * max(8 MB, length / 10,000) in memory; this buffer of one part per 
+     * upload in progress is all that is kept on the app server. Like the 
+     * direct uploads, the object is tagged as temporary until the file is 
+     * saved in the dataset.
+     */
+    @Override
+    public ChunkedUpload startChunkedUpload(long length, DataFile.ChecksumType checksumType) throws IOException {
+        if (!this.canWrite()) {
+            open(DataAccessOption.WRITE_ACCESS);
+        }
+        final String uploadKey = key;
+        final int partSize = (int) Math.max(CHUNKED_UPLOAD_PART_SIZE, (length + MAX_UPLOAD_PARTS - 1) / MAX_UPLOAD_PARTS);
+        final String uploadId;
+        try {
+            InitiateMultipartUploadRequest initiationRequest = new InitiateMultipartUploadRequest(bucketName, uploadKey);
+            initiationRequest.putCustomRequestHeader(Headers.S3_TAGGING, "dv-state=temp");
+            uploadId = s3.initiateMultipartUpload(initiationRequest).getUploadId();
+        } catch (SdkClientException sce) {
+            throw new IOException("Failed to start a multipart upload of " + uploadKey + " (" + sce.getMessage() + ")");
+        }
+
+        return new ChunkedUpload(length, checksumType) {
+            private final List<PartETag> partETags = new ArrayList<>();
+            private final int bufferSize = (int) Math.min(partSize, Math.max(length, 1));
+            private byte[] part = new byte[bufferSize];
+            private int partLength = 0;
+
+            @Override
+            public long getBufferSize() {
+                return bufferSize;
+            }
+
+            @Override
+            protected void storeChunk(byte[] b, int off, int len) throws IOException {
+                // (the bytes of this chunk taken into the current part; if 
+                // the upload of the part fails, they are given back, so 
+                // that none of the chunk is stored, and the client can 
+                // resume from the same offset)
+                int taken = 0;
+                try {
+                    while (len > 0) {
+                        if (partLength == part.length) {
+                            uploadPart();
+                            taken = 0;
+                        }
+                        int n = Math.min(len, part.length - partLength);
+                        System.arraycopy(b, off, part, partLength, n);
+                        partLength += n;
+                        taken += n;
+                        off += n;
+                        len -= n;
+                    }
+                } catch (IOException ioex) {
+                    partLength -= taken;
+                    throw ioex;
+                }
+            }
+
+            @Override
+            protected void flush() {
+                // (a part that isn't full yet stays in memory until the 
+                // next chunk)
+            }
+
+            @Override
+            protected void completeStorage() throws IOException {
+                uploadPart();
+                try {
+                    s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, uploadKey, uploadId, partETags));
+                } catch (SdkClientException sce) {
+                    abort();
+                    throw new IOException("Failed to complete the multipart upload of " + uploadKey + " (" + sce.getMessage() + ")");
+                }
+                part = null;
+                setSize(length);
+            }
+
+            @Override
+            public void abort() {
+                part = null;
+                try {
+                    s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, uploadKey, uploadId));
+                } catch (SdkClientException sce) {
+                    logger.warning("Failed to abort the multipart upload of " + uploadKey + " (" + sce.getMessage() + ")");
+                }
+            }
+
+            private void uploadPart() throws IOException {
+                // (a zero-length file is uploaded as a single empty part)
+                if (partLength == 0 && !partETags.isEmpty()) {
+                    return;
+                }
+                UploadPartRequest partRequest = new UploadPartRequest()
+                        .withBucketName(bucketName)
+                        .withKey(uploadKey)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partETags.size() + 1)
+                        .withInputStream(new ByteArrayInputStream(part, 0, partLength))
+                        .withPartSize(partLength);
+                try {
+                    partETags.add(s3.uploadPart(partRequest).getPartETag());
+                } catch (SdkClientException sce) {
+                    throw new IOException("Failed to upload part " + partRequest.getPartNumber() + " of " + uploadKey + " (" + sce.getMessage() + ")");
+                }
+                partLength = 0;
+            }
+        };
+    }
+    
     @Override
     public void delete() throws IOException {
         if (!isDirectAccess()) {
@@ -131,6 +131,18 @@ public abstract class StorageIO<T extends DvObject> {
     public abstract void saveInputStream(InputStream inputStream) throws IOException;
     public abstract void saveInputStream(InputStream inputStream, Long filesize) throws IOException;
     
+    /**
+     * Starts writing the file, of a known length, in consecutive chunks, 
+     * straight into this DataAccess location (for the resumable uploads of 
+     * the native API). The checksum of the file, of the type requested, is 
+     * calculated on the way. open() must have been called with 
+     * WRITE_ACCESS. Drivers that can't write in chunks (the default) throw 
+     * an UnsupportedDataAccessOperationException. 
+     */
+    public ChunkedUpload startChunkedUpload(long length, DataFile.ChecksumType checksumType) throws IOException {
+        throw new UnsupportedDataAccessOperationException("This storage driver does not support chunked uploads.");
+    }
+    
     // Auxiliary File Management: (new as of 4.0.2!)
     
     // An "auxiliary object" is an abstraction of the traditional DVN/Dataverse
@@ -197,6 +209,13 @@ public abstract class StorageIO<T extends DvObject> {
     /*private int status;*/
     private long size;
 
+    /**
+     * Checksums of the main file, calculated inline by the driver while
+     * saving it (savePath()/saveInputStream()); null if the driver hasn't 
+     * saved anything, or doesn't support this.
+     */
+    private Map<DataFile.ChecksumType, String> savedChecksums;
+
     /**
      * Where in the file to seek to when reading (default is zero bytes, the
      * start of the file).
@@ -406,6 +425,14 @@ public abstract class StorageIO<T extends DvObject> {
         size = s;
     }
 
+    public Map<DataFile.ChecksumType, String> getSavedChecksums() {
+        return savedChecksums;
+    }
+
+    protected void setSavedChecksums(Map<DataFile.ChecksumType, String> savedChecksums) {
+        this.savedChecksums = savedChecksums;
+    }
+
     // open() has already been called. Now we can skip, if need be.
     public void setOffset(long offset) throws IOException {
         InputStream inputStream = getInputStream();
@@ -143,6 +143,9 @@ public class AddReplaceFileHelper{
     private DataFile fileToReplace;             // step 25
     
     private DatasetVersion workingVersion;
+    // the checksums of the files of the working version, for the duplicate
+    // checks of all the files added by this helper:
+    private FileChecksumIndex checksumIndex;
     private DatasetVersion clone;
     List<DataFile> initialFileList; 
     List<DataFile> finalFileList;
@@ -1328,7 +1331,10 @@ public class AddReplaceFileHelper{
                 break;
             } 
             
-            if (DuplicateFileChecker.isDuplicateOriginalWay(workingVersion, df.getFileMetadata())){
+            if (checksumIndex == null || !checksumIndex.isFor(workingVersion)) {
+                checksumIndex = new FileChecksumIndex(workingVersion, fileService.findChecksumsByFileMetadataId(workingVersion.getId()));
+            }
+            if (DuplicateFileChecker.isDuplicate(checksumIndex, df.getFileMetadata())){
                 String dupeName = df.getFileMetadata().getLabel();
                 this.duplicateFileWarningFound = true;
                 this.duplicateFileWarningString = BundleUtil.getStringFromBundle("file.addreplace.warning.duplicate_file", 
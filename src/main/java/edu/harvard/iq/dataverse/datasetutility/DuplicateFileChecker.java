@@ -115,13 +115,34 @@ public class DuplicateFileChecker {
     }
     
     
+    /**
+     * Checks the file against the checksums of the working version, indexed
+     * once for the whole upload (see FileChecksumIndex), and sets the same
+     * inline message as isDuplicateOriginalWay() when it is a duplicate.
+     * 
+     * @param checksumIndex
+     * @param fileMetadata
+     * @return 
+     */
+    public static boolean isDuplicate(FileChecksumIndex checksumIndex, FileMetadata fileMetadata) {
+        if (checksumIndex == null){
+            throw new NullPointerException("checksumIndex cannot be null");
+        }
+
+        String existingLabel = checksumIndex.findDuplicate(fileMetadata.getDataFile().getChecksumValue());
+        if (existingLabel == null) {
+            return false;
+        }
+        String inLineMessage = BundleUtil.getStringFromBundle("dataset.file.inline.message", Arrays.asList(existingLabel));
+        fileMetadata.getDataFile().setDuplicateFilename(inLineMessage);
+        return true;
+    }
+    
     /** 
      * Original isDuplicate method from the DatasetPage and EditDatafilesPage
      * 
-     * Note: this has efficiency issues in that the hash is re-created for every fileMetadata checked
-     * Note: the only remaining component that uses this method is AddReplaceFileHelper; 
-     * Currently it is only being used for file replace calls from the File page - which always 
-     * operates on one file at a time; so performance is not much of an issue. -- L.A. 4.6.1
+     * Note: this has efficiency issues in that the hash is re-created for every fileMetadata checked;
+     * AddReplaceFileHelper now uses isDuplicate(FileChecksumIndex, FileMetadata) instead.
      * 
      * @param workingVersion
      * @param fileMetadata
@@ -0,0 +1,91 @@
+package edu.harvard.iq.dataverse.datasetutility;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.FileMetadata;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The checksums of the files in a (working) DatasetVersion, for the duplicate
+ * checks of an upload session: built once, and then brought up to date with
+ * the files added to the version since, so that checking thousands of files
+ * (of a zip, or of an /addFiles call) doesn't mean going through all the
+ * files of the version, and loading them, for every one of them.
+ *
+ * The checksums of the files already saved are passed in, as read in one
+ * query (see DataFileServiceBean.findChecksumsByFileMetadataId); the files
+ * that are not saved yet are read from memory.
+ */
+public class FileChecksumIndex {
+
+    private final DatasetVersion datasetVersion;
+    // fileMetadata id -> {checksum, label}, of the saved files:
+    private final Map<Long, String[]> savedChecksums;
+    // checksum -> label, of the first file with that checksum:
+    private final Map<String, String> labelsByChecksum = new HashMap<>();
+    private int indexedCount = 0;
+    private FileMetadata lastIndexed = null;
+
+    public FileChecksumIndex(DatasetVersion datasetVersion, Map<Long, String[]> savedChecksums) {
+        if (datasetVersion == null) {
+            throw new NullPointerException("datasetVersion cannot be null");
+        }
+        this.datasetVersion = datasetVersion;
+        this.savedChecksums = savedChecksums != null ? savedChecksums : Collections.emptyMap();
+    }
+
+    public boolean isFor(DatasetVersion version) {
+        return datasetVersion == version;
+    }
+
+    /**
+     * @return the label of a file of the version with this checksum, or null
+     * if there is none
+     */
+    public String findDuplicate(String checksum) {
+        if (checksum == null) {
+            return null;
+        }
+        update();
+        return labelsByChecksum.get(checksum);
+    }
+
+    private void update() {
+        List<FileMetadata> fileMetadatas = datasetVersion.getFileMetadatas();
+        if (fileMetadatas == null) {
+            labelsByChecksum.clear();
+            indexedCount = 0;
+            lastIndexed = null;
+            return;
+        }
+        // files are normally only added at the end; if anything else
+        // happened to the list, it is indexed again:
+        if (fileMetadatas.size() < indexedCount
+                || (indexedCount > 0 && fileMetadatas.get(indexedCount - 1) != lastIndexed)) {
+            labelsByChecksum.clear();
+            indexedCount = 0;
+        }
+        for (int i = indexedCount; i < fileMetadatas.size(); i++) {
+            index(fileMetadatas.get(i));
+        }
+        indexedCount = fileMetadatas.size();
+        lastIndexed = indexedCount > 0 ? fileMetadatas.get(indexedCount - 1) : null;
+    }
+
+    private void index(FileMetadata fileMetadata) {
+        String[] saved = fileMetadata.getId() != null ? savedChecksums.get(fileMetadata.getId()) : null;
+        if (saved != null) {
+            if (saved[0] != null) {
+                labelsByChecksum.putIfAbsent(saved[0], saved[1]);
+            }
+            return;
+        }
+        DataFile dataFile = fileMetadata.getDataFile();
+        if (dataFile != null && dataFile.getChecksumValue() != null) {
+            labelsByChecksum.putIfAbsent(dataFile.getChecksumValue(), fileMetadata.getLabel());
+        }
+    }
+}
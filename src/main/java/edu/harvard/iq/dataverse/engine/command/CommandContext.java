@@ -23,6 +23,7 @@ import edu.harvard.iq.dataverse.PermissionServiceBean;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.search.SearchServiceBean;
 import edu.harvard.iq.dataverse.TemplateServiceBean;
+import edu.harvard.iq.dataverse.ThumbnailGenerationServiceBean;
 import edu.harvard.iq.dataverse.UserNotificationServiceBean;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
 import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
@@ -143,6 +144,8 @@ public interface CommandContext {
     
     public ActionLogServiceBean actionLog();
     
+    public ThumbnailGenerationServiceBean thumbnails();
+    
     public void beginCommandSequence();
     
     public boolean completeCommandSequence(Command command);
@@ -15,16 +15,18 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
+import edu.harvard.iq.dataverse.util.ManagedExecutors;
 import edu.harvard.iq.dataverse.util.bagit.BagGenerator;
+import edu.harvard.iq.dataverse.util.bagit.BagPipe;
 import edu.harvard.iq.dataverse.util.bagit.OREMap;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.security.DigestInputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 @RequiredPermissions(Permission.PublishDataset)
@@ -36,6 +38,7 @@ public abstract class AbstractSubmitToArchiveCommand extends AbstractCommand<Dat
     private static final Logger logger = Logger.getLogger(AbstractSubmitToArchiveCommand.class.getName());
     private static final int MAX_ZIP_WAIT = 20000;
     private static final int DEFAULT_THREADS = 2;
+
     
     public AbstractSubmitToArchiveCommand(DataverseRequest aRequest, DatasetVersion version) {
         super(aRequest, version.getDataset());
@@ -104,70 +107,59 @@ public abstract class AbstractSubmitToArchiveCommand extends AbstractCommand<Dat
                 dv.getDataset());
     }
 
-    public Thread startBagThread(DatasetVersion dv, PipedInputStream in, DigestInputStream digestInputStream2,
-            String dataciteXml, ApiToken token) throws IOException, InterruptedException {
-        Thread bagThread = new Thread(new Runnable() {
-            public void run() {
-                try (PipedOutputStream out = new PipedOutputStream(in)) {
+    /**
+     * Starts generating the bag on a thread of the container's managed executor
+     * service, writing it to the pipe, and waits until the bag is ready to be
+     * uploaded: i.e. until the first full buffer of the pipe is ready. The BagGenerator, due to it's use of parallel
+     * streaming creation of the zip file, makes a few bytes available - from
+     * setting up the directory structure for the zip file - significantly earlier
+     * than it is ready to stream file content (e.g. for thousands of files and GB
+     * of content). If, for these large datasets, the transfer is started as soon
+     * as bytes are available, the call can timeout before the bytes for all the
+     * zipped files are available.
+     * 
+     * An additional sanity check limits the wait to 20K (MAX_ZIP_WAIT) seconds.
+     * 
+     * @return the bag generation, done (true) once the whole bag has been
+     *         written to the pipe
+     */
+    public Future<Boolean> startBagGeneration(DatasetVersion dv, BagPipe pipe, String dataciteXml, ApiToken token)
+            throws IOException, InterruptedException {
+        Future<Boolean> bagGeneration = ManagedExecutors.getExecutorService().submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                try {
                     // Generate bag
                     BagGenerator bagger = new BagGenerator(new OREMap(dv, false), dataciteXml);
                     bagger.setNumConnections(getNumberOfBagGeneratorThreads());
                     bagger.setAuthenticationKey(token.getTokenString());
-                    bagger.generateBag(out);
+                    if (!bagger.generateBag(pipe.getOutputStream())) {
+                        throw new IOException("Bag not generated");
+                    }
+                    pipe.getOutputStream().close();
                     success = true;
+                    return true;
                 } catch (Exception e) {
                     logger.severe("Error creating bag: " + e.getMessage());
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                    try {
-                        digestInputStream2.close();
-                    } catch (Exception ex) {
-                        logger.warning(ex.getLocalizedMessage());
+                    // (before anything else, so that the upload doesn't take a truncated bag as complete)
+                    pipe.fail(e);
+                    throw e;
                 }
-                    throw new RuntimeException("Error creating bag: " + e.getMessage());
-            }
             }
         });
-        bagThread.start();
-        /*
-         * The following loop handles two issues. First, with no delay, the
-         * bucket.create() call below can get started before the piped streams are set
-         * up, causing a failure (seen when triggered in a PostPublishDataset workflow).
-         * A minimal initial wait, e.g. until some bytes are available, would address
-         * this. Second, the BagGenerator class, due to it's use of parallel streaming
-         * creation of the zip file, has the characteristic that it makes a few bytes
-         * available - from setting up the directory structure for the zip file -
-         * significantly earlier than it is ready to stream file content (e.g. for
-         * thousands of files and GB of content). If, for these large datasets,
-         * the transfer is started as soon as bytes are available, the call can
-         * timeout before the bytes for all the zipped files are available. To manage
-         * this, the loop waits until 90K bytes are available, larger than any expected
-         * dir structure for the zip and implying that the main zipped content is
-         * available, or until the thread terminates, with all of its content written to
-         * the pipe. (Note the PipedInputStream buffer is set at 100K above - I didn't
-         * want to test whether that means that exactly 100K bytes will be available()
-         * for large datasets or not, so the test below is at 90K.)
-         * 
-         * An additional sanity check limits the wait to 20K (MAX_ZIP_WAIT) seconds. The BagGenerator
-         * has been used to archive >120K files, 2K directories, and ~600GB files on the
-         * SEAD project (streaming content to disk rather than over an internet
-         * connection) which would take longer than 20K seconds (even 10+ hours) and might
-         * produce an initial set of bytes for directories > 90K. If Dataverse ever
-         * needs to support datasets of this size, the numbers here would need to be
-         * increased, and/or a change in how archives are sent to google (e.g. as
-         * multiple blobs that get aggregated) would be required.
-         */
-        int i = 0;
-        while (digestInputStream2.available() <= 90000 && i < MAX_ZIP_WAIT && bagThread.isAlive()) {
-            Thread.sleep(1000);
-            logger.fine("avail: " + digestInputStream2.available() + " : " + bagThread.getState().toString());
-            i++;
-        }
-        logger.fine("Bag: transfer started, i=" + i + ", avail = " + digestInputStream2.available());
-        if(i==MAX_ZIP_WAIT) {
+        if (!pipe.awaitData(MAX_ZIP_WAIT, TimeUnit.SECONDS)) {
+            bagGeneration.cancel(true);
             throw new IOException("Stream not available");
         }
-        return bagThread;
+        logger.fine("Bag: transfer started, " + pipe.getBytesWritten() + " bytes ready");
+        return bagGeneration;
+    }
+
+    /**
+     * Logs the progress of an upload of a bag through the pipe.
+     */
+    protected void logTransfer(String name, BagPipe pipe) {
+        logger.info("Bag " + name + ": " + pipe.getBytesWritten() + " bytes transferred, at "
+                + (pipe.getThroughput() / (1024 * 1024)) + " MB/s");
     }
 
     public static boolean isArchivable(Dataset dataset, SettingsWrapper settingsWrapper) {
@@ -8,17 +8,19 @@ import edu.harvard.iq.dataverse.authorization.users.ApiToken;
 import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
+import edu.harvard.iq.dataverse.util.bagit.BagPipe;
 import edu.harvard.iq.dataverse.workflow.step.Failure;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import jakarta.json.Json;
@@ -109,40 +111,16 @@ public class DuraCloudSubmitToArchiveCommand extends AbstractSubmitToArchiveComm
                     String dataciteXml = getDataCiteXml(dv);
 
                     MessageDigest messageDigest = MessageDigest.getInstance("MD5");
-                    try (PipedInputStream dataciteIn = new PipedInputStream();
-                            DigestInputStream digestInputStream = new DigestInputStream(dataciteIn, messageDigest)) {
+                    try (DigestInputStream digestInputStream = new DigestInputStream(
+                            new ByteArrayInputStream(dataciteXml.getBytes(StandardCharsets.UTF_8)), messageDigest)) {
                         // Add datacite.xml file
-
-                        Thread dcThread = new Thread(new Runnable() {
-                            public void run() {
-                                try (PipedOutputStream dataciteOut = new PipedOutputStream(dataciteIn)) {
-
-                                    dataciteOut.write(dataciteXml.getBytes(Charset.forName("utf-8")));
-                                    dataciteOut.close();
-                                    success=true;
-                                } catch (Exception e) {
-                                    logger.severe("Error creating datacite.xml: " + e.getMessage());
-                                    // TODO Auto-generated catch block
-                                    e.printStackTrace();
-                                }
-                            }
-                        }); 
-                        dcThread.start();
-                        // Have seen Pipe Closed errors for other archivers when used as a workflow
-                        // without this delay loop
-                        int i = 0;
-                        while (digestInputStream.available() <= 0 && i < 100) {
-                            Thread.sleep(10);
-                            i++;
-                        }
                         String checksum = store.addContent(spaceName, baseFileName + "_datacite.xml", digestInputStream,
                                 -1l, null, null, null);
                         logger.fine("Content: datacite.xml added with checksum: " + checksum);
-                        dcThread.join();
                         String localchecksum = Hex.encodeHexString(digestInputStream.getMessageDigest().digest());
-                        if (!success || !checksum.equals(localchecksum)) {
+                        if (!checksum.equals(localchecksum)) {
                             logger.severe("Failure on " + baseFileName);
-                            logger.severe(success ? checksum + " not equal to " + localchecksum : "failed to transfer to DuraCloud");
+                            logger.severe(checksum + " not equal to " + localchecksum);
                             try {
                                 store.deleteContent(spaceName, baseFileName + "_datacite.xml");
                             } catch (ContentStoreException cse) {
@@ -161,11 +139,17 @@ public class DuraCloudSubmitToArchiveCommand extends AbstractSubmitToArchiveComm
                         // transfer
 
                         messageDigest = MessageDigest.getInstance("MD5");
-                        try (PipedInputStream in = new PipedInputStream(100000);
-                                DigestInputStream digestInputStream2 = new DigestInputStream(in, messageDigest)) {
-                            Thread bagThread = startBagThread(dv, in, digestInputStream2, dataciteXml, token);
-                            checksum = store.addContent(spaceName, fileName, digestInputStream2, -1l, null, null, null);
-                            bagThread.join();
+                        BagPipe pipe = new BagPipe();
+                        try (DigestInputStream digestInputStream2 = new DigestInputStream(pipe.getInputStream(), messageDigest)) {
+                            Future<Boolean> bagGeneration = startBagGeneration(dv, pipe, dataciteXml, token);
+                            try {
+                                checksum = store.addContent(spaceName, fileName, digestInputStream2, -1l, null, null, null);
+                                bagGeneration.get();
+                                logTransfer(fileName, pipe);
+                            } catch (ContentStoreException | ExecutionException e) {
+                                logger.warning("Failure transferring " + fileName + ": " + e.getMessage());
+                                success = false;
+                            }
                             if (success) {
                                 logger.fine("Content: " + fileName + " added with checksum: " + checksum);
                                 localchecksum = Hex.encodeHexString(digestInputStream2.getMessageDigest().digest());
@@ -254,6 +254,16 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
             }
         }
 
+        // Queue the generation of any thumbnails that are still missing, so
+        // that they are ready by the time the published dataset is browsed:
+        if (ctxt.thumbnails() != null) {
+            for (DataFile dataFile : dataset.getFiles()) {
+                if (!dataFile.isPreviewImageAvailable() && !dataFile.isPreviewImageFail()) {
+                    ctxt.thumbnails().requestThumbnails(dataFile);
+                }
+            }
+        }
+
         // Metadata export:
         
         try {
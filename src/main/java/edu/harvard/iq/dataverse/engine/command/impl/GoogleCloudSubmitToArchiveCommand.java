@@ -1,7 +1,9 @@
 package edu.harvard.iq.dataverse.engine.command.impl;
 
 import com.google.auth.oauth2.ServiceAccountCredentials;
+import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.Bucket;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageException;
@@ -15,21 +17,24 @@ import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.bagit.BagPipe;
 import edu.harvard.iq.dataverse.workflow.step.Failure;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
 
 import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.nio.charset.Charset;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 @RequiredPermissions(Permission.PublishDataset)
@@ -38,6 +43,8 @@ public class GoogleCloudSubmitToArchiveCommand extends AbstractSubmitToArchiveCo
     private static final Logger logger = Logger.getLogger(GoogleCloudSubmitToArchiveCommand.class.getName());
     private static final String GOOGLECLOUD_BUCKET = ":GoogleCloudBucket";
     private static final String GOOGLECLOUD_PROJECT = ":GoogleCloudProject";
+    // (must be a multiple of 256K)
+    private static final int UPLOAD_CHUNK_SIZE = 16 * 1024 * 1024;
 
     public GoogleCloudSubmitToArchiveCommand(DataverseRequest aRequest, DatasetVersion version) {
         super(aRequest, version);
@@ -74,42 +81,17 @@ public class GoogleCloudSubmitToArchiveCommand extends AbstractSubmitToArchiveCo
 
                     String dataciteXml = getDataCiteXml(dv);
                     MessageDigest messageDigest = MessageDigest.getInstance("MD5");
-                    try (PipedInputStream dataciteIn = new PipedInputStream();
-                            DigestInputStream digestInputStream = new DigestInputStream(dataciteIn, messageDigest)) {
+                    try (DigestInputStream digestInputStream = new DigestInputStream(
+                            new ByteArrayInputStream(dataciteXml.getBytes(StandardCharsets.UTF_8)), messageDigest)) {
                         // Add datacite.xml file
-
-                        Thread dcThread = new Thread(new Runnable() {
-                            public void run() {
-                                try (PipedOutputStream dataciteOut = new PipedOutputStream(dataciteIn)) {
-
-                                    dataciteOut.write(dataciteXml.getBytes(Charset.forName("utf-8")));
-                                    dataciteOut.close();
-                                    success = true;
-                                } catch (Exception e) {
-                                    logger.severe("Error creating datacite.xml: " + e.getMessage());
-                                    // TODO Auto-generated catch block
-                                    e.printStackTrace();
-                                    // throw new RuntimeException("Error creating datacite.xml: " + e.getMessage());
-                                }
-                            }
-                        });
-                        dcThread.start();
-                        // Have seen Pipe Closed errors for other archivers when used as a workflow
-                        // without this delay loop
-                        int i = 0;
-                        while (digestInputStream.available() <= 0 && i < 100) {
-                            Thread.sleep(10);
-                            i++;
-                        }
                         Blob dcXml = bucket.create(spaceName + "/datacite.v" + dv.getFriendlyVersionNumber() + ".xml", digestInputStream, "text/xml", Bucket.BlobWriteOption.doesNotExist());
 
-                        dcThread.join();
                         String checksum = dcXml.getMd5ToHexString();
                         logger.fine("Content: datacite.xml added with checksum: " + checksum);
                         String localchecksum = Hex.encodeHexString(digestInputStream.getMessageDigest().digest());
-                        if (!success || !checksum.equals(localchecksum)) {
+                        if (!checksum.equals(localchecksum)) {
                             logger.severe("Failure on " + spaceName);
-                            logger.severe(success ? checksum + " not equal to " + localchecksum : "datacite.xml transfer did not succeed");
+                            logger.severe(checksum + " not equal to " + localchecksum);
                             try {
                                 dcXml.delete(Blob.BlobSourceOption.generationMatch());
                             } catch (StorageException se) {
@@ -127,15 +109,23 @@ public class GoogleCloudSubmitToArchiveCommand extends AbstractSubmitToArchiveCo
                         // Google uses MD5 as one way to verify the
                         // transfer
                         messageDigest = MessageDigest.getInstance("MD5");
-                        try (PipedInputStream in = new PipedInputStream(100000);
-                                DigestInputStream digestInputStream2 = new DigestInputStream(in, messageDigest)) {
-                            Thread bagThread = startBagThread(dv, in, digestInputStream2, dataciteXml, token);
-                            Blob bag = bucket.create(spaceName + "/" + fileName, digestInputStream2, "application/zip",
-                                    Bucket.BlobWriteOption.doesNotExist());
-                            if (bag.getSize() == 0) {
+                        BagPipe pipe = new BagPipe();
+                        try (DigestInputStream digestInputStream2 = new DigestInputStream(pipe.getInputStream(), messageDigest)) {
+                            Future<Boolean> bagGeneration = startBagGeneration(dv, pipe, dataciteXml, token);
+                            BlobInfo bagInfo = BlobInfo.newBuilder(bucket.getName(), spaceName + "/" + fileName)
+                                    .setContentType("application/zip").build();
+                            // A resumable upload, in large chunks, rather than the (deprecated) streaming create
+                            WriteChannel writer = storage.writer(bagInfo, Storage.BlobWriteOption.doesNotExist());
+                            writer.setChunkSize(UPLOAD_CHUNK_SIZE);
+                            IOUtils.copyLarge(digestInputStream2, Channels.newOutputStream(writer));
+                            // (closing the channel completes the upload, so it is not closed if the bag fails)
+                            writer.close();
+                            bagGeneration.get();
+                            logTransfer(fileName, pipe);
+                            Blob bag = storage.get(bagInfo.getBlobId());
+                            if (bag == null || bag.getSize() == 0) {
                                 throw new IOException("Empty Bag");
                             }
-                            bagThread.join();
 
                             checksum = bag.getMd5ToHexString();
                             logger.fine("Bag: " + fileName + " added with checksum: " + checksum);
@@ -8,22 +8,29 @@ import edu.harvard.iq.dataverse.authorization.users.ApiToken;
 import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
-import edu.harvard.iq.dataverse.util.bagit.BagGenerator;
-import edu.harvard.iq.dataverse.util.bagit.OREMap;
+import edu.harvard.iq.dataverse.util.ManagedExecutors;
+import edu.harvard.iq.dataverse.util.bagit.BagPipe;
 import edu.harvard.iq.dataverse.util.json.JsonUtil;
 import edu.harvard.iq.dataverse.workflow.step.Failure;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 
 import jakarta.json.Json;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 
+import org.apache.commons.io.IOUtils;
 import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.ConfigProvider;
 
@@ -35,8 +42,13 @@ import com.amazonaws.auth.profile.ProfileCredentialsProvider;
 import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 
@@ -45,6 +57,8 @@ public class S3SubmitToArchiveCommand extends AbstractSubmitToArchiveCommand imp
 
     private static final Logger logger = Logger.getLogger(S3SubmitToArchiveCommand.class.getName());
     private static final String S3_CONFIG = ":S3ArchiverConfig";
+    private static final int DEFAULT_PART_SIZE_MB = 64;
+    private static final int DEFAULT_UPLOAD_THREADS = 4;
 
     private static final Config config = ConfigProvider.getConfig();
     protected AmazonS3 s3 = null;
@@ -106,43 +120,35 @@ public class S3SubmitToArchiveCommand extends AbstractSubmitToArchiveCommand imp
                         // Google uses MD5 as one way to verify the
                         // transfer
 
-                        // Generate bag
-                        BagGenerator bagger = new BagGenerator(new OREMap(dv, false), dataciteXml);
-                        bagger.setAuthenticationKey(token.getTokenString());
-                        if (bagger.generateBag(fileName, false)) {
-                            File bagFile = bagger.getBagFile(fileName);
-
-                            try (FileInputStream in = new FileInputStream(bagFile)) {
-                                om = new ObjectMetadata();
-                                om.setContentLength(bagFile.length());
-
-                                tm.upload(new PutObjectRequest(bucketName, bagKey, in, om)).waitForCompletion();
-                                om = s3.getObjectMetadata(bucketName, bagKey);
-
-                                if (om == null) {
-                                    logger.severe("Error sending file to S3: " + fileName);
-                                    return new Failure("Error in transferring Bag file to S3",
-                                            "S3 Submission Failure: incomplete transfer");
-                                }
-                            } catch (RuntimeException rte) {
-                                logger.severe("Error creating Bag during S3 archiving: " + rte.getMessage());
-                                return new Failure("Error in generating Bag",
-                                        "S3 Submission Failure: archive file not created");
+                        // Generate bag, streamed to a multipart upload
+                        BagPipe pipe = new BagPipe();
+                        try (InputStream in = pipe.getInputStream()) {
+                            Future<Boolean> bagGeneration = startBagGeneration(dv, pipe, dataciteXml, token);
+                            uploadInParts(bagKey, in, configObject);
+                            bagGeneration.get();
+                            logTransfer(fileName, pipe);
+                            om = s3.getObjectMetadata(bucketName, bagKey);
+
+                            if (om == null) {
+                                logger.severe("Error sending file to S3: " + fileName);
+                                return new Failure("Error in transferring Bag file to S3",
+                                        "S3 Submission Failure: incomplete transfer");
                             }
+                        } catch (ExecutionException | IOException | RuntimeException e) {
+                            logger.severe("Error creating Bag during S3 archiving: " + e.getMessage());
+                            return new Failure("Error in generating Bag",
+                                    "S3 Submission Failure: archive file not created");
+                        }
 
-                            logger.fine("S3 Submission step: Content Transferred");
+                        logger.fine("S3 Submission step: Content Transferred");
 
-                            // Document the location of dataset archival copy location (actually the URL
-                            // where you can
-                            // view it as an admin)
+                        // Document the location of dataset archival copy location (actually the URL
+                        // where you can
+                        // view it as an admin)
 
-                            // Unsigned URL - gives location but not access without creds
-                            statusObject.add(DatasetVersion.ARCHIVAL_STATUS, DatasetVersion.ARCHIVAL_STATUS_SUCCESS);
-                            statusObject.add(DatasetVersion.ARCHIVAL_STATUS_MESSAGE, s3.getUrl(bucketName, bagKey).toString());
-                        } else {
-                            logger.warning("Could not write local Bag file " + fileName);
-                            return new Failure("S3 Archiver fail writing temp local bag");
-                        }
+                        // Unsigned URL - gives location but not access without creds
+                        statusObject.add(DatasetVersion.ARCHIVAL_STATUS, DatasetVersion.ARCHIVAL_STATUS_SUCCESS);
+                        statusObject.add(DatasetVersion.ARCHIVAL_STATUS_MESSAGE, s3.getUrl(bucketName, bagKey).toString());
 
                     }
                 } else {
@@ -166,6 +172,73 @@ public class S3SubmitToArchiveCommand extends AbstractSubmitToArchiveCommand imp
         }
     }
 
+    /**
+     * Uploads a stream of unknown length (the bag, as it is generated) as a
+     * multipart upload, with several parts in flight at once. The parts are
+     * read into memory, so the memory used is about (upload-threads + 1) *
+     * part-size. An upload can have at most 10000 parts, so the part size
+     * limits the size of the bag (640 GB with the default 64 MB parts).
+     * Nothing is left behind if the stream or an upload fails.
+     */
+    private void uploadInParts(String key, InputStream in, JsonObject configObject) throws IOException, InterruptedException {
+        int partSize = configObject.getInt("part-size-mb", DEFAULT_PART_SIZE_MB) * 1024 * 1024;
+        int threads = configObject.getInt("upload-threads", DEFAULT_UPLOAD_THREADS);
+        String uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key)).getUploadId();
+        // (the container's threads; the semaphore limits the parts in flight)
+        ExecutorService partExecutor = ManagedExecutors.getExecutorService();
+        Semaphore partsInFlight = new Semaphore(threads);
+        List<Future<PartETag>> parts = new ArrayList<>();
+        boolean completed = false;
+        try {
+            int partNumber = 1;
+            int checkedParts = 0;
+            int length;
+            do {
+                // stop early if a part has failed
+                while (checkedParts < parts.size() && parts.get(checkedParts).isDone()) {
+                    parts.get(checkedParts++).get();
+                }
+                byte[] part = new byte[partSize];
+                length = IOUtils.read(in, part);
+                if (length == 0 && partNumber > 1) {
+                    break;
+                }
+                partsInFlight.acquire();
+                final int number = partNumber++;
+                final int partLength = length;
+                parts.add(partExecutor.submit(() -> {
+                    try {
+                        UploadPartRequest request = new UploadPartRequest().withBucketName(bucketName).withKey(key)
+                                .withUploadId(uploadId).withPartNumber(number)
+                                .withInputStream(new ByteArrayInputStream(part, 0, partLength)).withPartSize(partLength);
+                        return s3.uploadPart(request).getPartETag();
+                    } finally {
+                        partsInFlight.release();
+                    }
+                }));
+            } while (length == partSize);
+
+            List<PartETag> partETags = new ArrayList<>();
+            for (Future<PartETag> part : parts) {
+                partETags.add(part.get());
+            }
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+            completed = true;
+            logger.fine("Uploaded " + key + " in " + partETags.size() + " parts");
+        } catch (ExecutionException e) {
+            throw new IOException("Part upload failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            if (!completed) {
+                parts.forEach(part -> part.cancel(true));
+                try {
+                    s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+                } catch (RuntimeException e) {
+                    logger.warning("Unable to abort the upload of " + key + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
     protected String getDataCiteFileName(String spaceName, DatasetVersion dv) {
         return spaceName + "_datacite.v" + dv.getFriendlyVersionNumber();
     }
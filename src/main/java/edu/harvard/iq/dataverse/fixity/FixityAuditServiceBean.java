@@ -0,0 +1,331 @@
+package edu.harvard.iq.dataverse.fixity;
+
+import com.google.common.util.concurrent.RateLimiter;
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
+import edu.harvard.iq.dataverse.dataaccess.RangedReadAheadInputStream;
+import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Asynchronous;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.inject.Named;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+
+/**
+ * A batch job that re-verifies the checksums of stored DataFiles (fixity
+ * audit), for preservation purposes.
+ *
+ * The stores (storage drivers) are audited in parallel, each independently
+ * of the others: each store picks its own files in pages, in the order of
+ * their ids, skipping the ones verified within the last N days, so that
+ * periodic runs are incremental. Each store has its own thread pool
+ * (dataverse.fixity.threads-per-store) and, optionally, its own read rate
+ * limit, so a slow or throttled store doesn't hold up the others. Large S3
+ * objects are read as parallel ranged GETs. The results are recorded in the
+ * fixitycheck table, one transaction per page.
+ */
+@Named
+@Stateless
+public class FixityAuditServiceBean {
+
+    private static final Logger logger = Logger.getLogger(FixityAuditServiceBean.class.getCanonicalName());
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_THREADS_PER_STORE = 4;
+    private static final long DEFAULT_RANGED_READ_THRESHOLD = 256L * 1024 * 1024;
+    private static final int RANGED_READ_PART_SIZE = 8 * 1024 * 1024;
+    private static final int RANGED_READ_AHEAD = 4;
+
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+    private static final AtomicLong filesChecked = new AtomicLong(0);
+    private static final AtomicLong filesFailed = new AtomicLong(0);
+    private static final AtomicLong bytesChecked = new AtomicLong(0);
+    private static volatile Timestamp lastRunStarted = null;
+    private static volatile Timestamp lastRunFinished = null;
+
+    @EJB
+    FixityCheckServiceBean fixityCheckService;
+    @Resource
+    ManagedExecutorService managedExecutorService;
+    @Resource
+    ManagedThreadFactory managedThreadFactory;
+
+    /**
+     * Runs the audit in the background. Only one audit can run at a time
+     * (per application server).
+     *
+     * @param notVerifiedInDays only verify files that haven't been verified
+     * within this many days (0: verify everything)
+     * @param maxFiles stop after this many files (0: no limit)
+     * @param maxBytesPerSecond per storage driver read rate limit, in bytes
+     * per second (0: use dataverse.fixity.max-bytes-per-second, if set;
+     * otherwise unlimited)
+     */
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void runAudit(int notVerifiedInDays, long maxFiles, long maxBytesPerSecond) {
+        if (!running.compareAndSet(false, true)) {
+            logger.warning("A fixity audit is already running; not starting another one.");
+            return;
+        }
+        int threadsPerStore = JvmSettings.FIXITY_THREADS_PER_STORE.lookupOptional(Integer.class).orElse(DEFAULT_THREADS_PER_STORE);
+        long rangedReadThreshold = JvmSettings.FIXITY_RANGED_READ_THRESHOLD.lookupOptional(Long.class).orElse(DEFAULT_RANGED_READ_THRESHOLD);
+        if (maxBytesPerSecond <= 0) {
+            maxBytesPerSecond = JvmSettings.FIXITY_MAX_BYTES_PER_SECOND.lookupOptional(Long.class).orElse(0L);
+        }
+
+        filesChecked.set(0);
+        filesFailed.set(0);
+        bytesChecked.set(0);
+        lastRunStarted = new Timestamp(System.currentTimeMillis());
+        lastRunFinished = null;
+        Timestamp cutoff = new Timestamp(Instant.now().minus(notVerifiedInDays, ChronoUnit.DAYS).toEpochMilli());
+        logger.info("Starting fixity audit of files not verified since " + cutoff + " (" + threadsPerStore
+                + " threads per store, rate limit " + (maxBytesPerSecond > 0 ? maxBytesPerSecond + " bytes/s per store" : "none") + ")");
+
+        AtomicLong remaining = new AtomicLong(maxFiles > 0 ? maxFiles : Long.MAX_VALUE);
+        List<Future<?>> storeAudits = new ArrayList<>();
+        try {
+            for (String driverId : fixityCheckService.findStorageDriversInUse()) {
+                if ("Undefined".equals(DataAccess.getDriverType(driverId))) {
+                    // (harvested files, or a store that is no longer configured)
+                    logger.fine("Fixity audit: skipping the files of undefined storage driver " + driverId);
+                    continue;
+                }
+                RateLimiter rateLimiter = (maxBytesPerSecond > 0) ? RateLimiter.create(maxBytesPerSecond) : null;
+                storeAudits.add(managedExecutorService.submit(() -> {
+                    auditStore(driverId, cutoff, remaining, threadsPerStore, rateLimiter, rangedReadThreshold);
+                    return null;
+                }));
+            }
+            for (Future<?> storeAudit : storeAudits) {
+                try {
+                    storeAudit.get();
+                } catch (ExecutionException ee) {
+                    logger.log(Level.WARNING, "Fixity audit of a store failed", ee.getCause());
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            storeAudits.forEach(storeAudit -> storeAudit.cancel(true));
+            logger.warning("Fixity audit interrupted");
+        } finally {
+            lastRunFinished = new Timestamp(System.currentTimeMillis());
+            running.set(false);
+            logger.info("Fixity audit finished: " + filesChecked.get() + " files (" + bytesChecked.get() + " bytes) verified, "
+                    + filesFailed.get() + " failed.");
+        }
+    }
+
+    /**
+     * Verifies the files of one store, in pages of its own, on pools of
+     * threads of its own (for the checks, and for the parallel ranged reads
+     * of large objects). The checks are handed to the pool as threads free
+     * up, at most 2 per thread queued at a time, and the next page is fetched
+     * as soon as the current one has been handed out: the store never waits
+     * for the slowest file of a page. The results are recorded every
+     * PAGE_SIZE files.
+     *
+     * @param remaining the number of files the whole audit can still verify,
+     * shared with the other stores
+     */
+    private void auditStore(String driverId, Timestamp cutoff, AtomicLong remaining, int threads, RateLimiter rateLimiter,
+            long rangedReadThreshold) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, managedThreadFactory);
+        ExecutorService rangeExecutor = Executors.newFixedThreadPool(threads * RANGED_READ_AHEAD, managedThreadFactory);
+        CompletionService<FixityCheck> completion = new ExecutorCompletionService<>(executor);
+        int window = threads * 2;
+        Deque<DataFile> queued = new ArrayDeque<>();
+        List<FixityCheck> results = new ArrayList<>();
+        long lastId = 0;
+        boolean morePages = true;
+        int inFlight = 0;
+        try {
+            while (true) {
+                if (queued.isEmpty() && morePages) {
+                    int claimed = claim(remaining, PAGE_SIZE);
+                    List<DataFile> page = (claimed > 0)
+                            ? fixityCheckService.findDataFilesDueForCheck(driverId, cutoff, lastId, claimed)
+                            : List.of();
+                    // (what this page didn't use goes back to the other stores)
+                    remaining.addAndGet(claimed - page.size());
+                    morePages = claimed > 0 && page.size() == claimed;
+                    if (!page.isEmpty()) {
+                        lastId = page.get(page.size() - 1).getId();
+                    }
+                    for (DataFile dataFile : page) {
+                        if (!dataFile.isHarvested()) {
+                            queued.add(dataFile);
+                        }
+                    }
+                }
+                while (inFlight < window && !queued.isEmpty()) {
+                    DataFile dataFile = queued.poll();
+                    completion.submit(() -> verify(dataFile, driverId, rateLimiter, rangedReadThreshold, rangeExecutor));
+                    inFlight++;
+                }
+                if (inFlight == 0) {
+                    if (!morePages) {
+                        break;
+                    }
+                    continue;
+                }
+                Future<FixityCheck> done = completion.take();
+                inFlight--;
+                try {
+                    results.add(done.get());
+                } catch (ExecutionException ee) {
+                    logger.log(Level.WARNING, "Unexpected failure of a fixity check", ee.getCause());
+                }
+                if (results.size() >= PAGE_SIZE) {
+                    fixityCheckService.recordResults(results);
+                    results = new ArrayList<>();
+                    logger.info("Fixity audit: " + filesChecked.get() + " files (" + bytesChecked.get() + " bytes) verified so far, "
+                            + filesFailed.get() + " failed.");
+                }
+            }
+            if (!results.isEmpty()) {
+                fixityCheckService.recordResults(results);
+            }
+        } finally {
+            executor.shutdownNow();
+            rangeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Takes up to max files out of the remaining budget of the audit.
+     *
+     * @return the number of files taken
+     */
+    private static int claim(AtomicLong remaining, int max) {
+        long before = remaining.getAndUpdate(r -> Math.max(0, r - max));
+        return (int) Math.min(before, max);
+    }
+
+    public JsonObjectBuilder getAuditStatus() {
+        JsonObjectBuilder status = Json.createObjectBuilder()
+                .add("running", running.get())
+                .add("filesChecked", filesChecked.get())
+                .add("filesFailed", filesFailed.get())
+                .add("bytesChecked", bytesChecked.get());
+        if (lastRunStarted != null) {
+            status.add("lastRunStarted", lastRunStarted.toString());
+        }
+        if (lastRunFinished != null) {
+            status.add("lastRunFinished", lastRunFinished.toString());
+        }
+        JsonObjectBuilder counts = Json.createObjectBuilder();
+        fixityCheckService.countByStatus().forEach((s, count) -> counts.add(s.name(), count));
+        status.add("recordedResults", counts);
+        return status;
+    }
+
+    private FixityCheck verify(DataFile dataFile, String driverId, RateLimiter rateLimiter, long rangedReadThreshold, ExecutorService rangeExecutor) {
+        FixityCheck check = new FixityCheck();
+        check.setDataFile(dataFile);
+        check.setStorageDriver(driverId);
+        check.setChecksumType(dataFile.getChecksumType());
+        check.setExpectedValue(dataFile.getChecksumValue());
+        long start = System.currentTimeMillis();
+        long bytesRead = 0;
+
+        InputStream in = null;
+        try {
+            StorageIO<DataFile> storage = dataFile.getStorageIO();
+            storage.open(DataAccessOption.READ_ACCESS);
+            if (dataFile.isTabularData()) {
+                // for tabular files, the checksum on record is that of the
+                // preserved original:
+                in = storage.getAuxFileAsInputStream(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION);
+            } else if (storage instanceof S3AccessIO && storage.getSize() > rangedReadThreshold) {
+                S3AccessIO<DataFile> s3io = (S3AccessIO<DataFile>) storage;
+                in = new RangedReadAheadInputStream(s3io::getRangeInputStream, storage.getSize(),
+                        RANGED_READ_PART_SIZE, RANGED_READ_AHEAD, rangeExecutor);
+            } else {
+                in = storage.getInputStream();
+            }
+            if (in == null) {
+                throw new FileNotFoundException("Could not open the stored file");
+            }
+
+            MessageDigest md = MessageDigest.getInstance(dataFile.getChecksumType().toString());
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int nread;
+            while ((nread = in.read(buffer)) != -1) {
+                if (rateLimiter != null && nread > 0) {
+                    rateLimiter.acquire(nread);
+                }
+                md.update(buffer, 0, nread);
+                bytesRead += nread;
+            }
+            String calculated = FileUtil.checksumDigestToString(md.digest());
+            check.setCalculatedValue(calculated);
+            if (calculated.equals(dataFile.getChecksumValue())) {
+                check.setStatus(FixityCheck.Status.VALID);
+            } else {
+                check.setStatus(FixityCheck.Status.INVALID);
+                logger.warning("Fixity check FAILED for datafile " + dataFile.getId() + " (" + dataFile.getStorageIdentifier()
+                        + "): expected " + dataFile.getChecksumValue() + ", calculated " + calculated);
+            }
+        } catch (FileNotFoundException fnfe) {
+            check.setStatus(FixityCheck.Status.MISSING);
+            check.setMessage(fnfe.getMessage());
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException ex) {
+            check.setStatus(FixityCheck.Status.ERROR);
+            check.setMessage(ex.getMessage());
+            logger.fine("Fixity check of datafile " + dataFile.getId() + " failed: " + ex.getMessage());
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ioex) {
+                    logger.fine("failed to close the stream for datafile " + dataFile.getId());
+                }
+            }
+        }
+
+        if (check.getStatus() != FixityCheck.Status.VALID) {
+            filesFailed.incrementAndGet();
+        }
+        filesChecked.incrementAndGet();
+        bytesChecked.addAndGet(bytesRead);
+        check.setBytesRead(bytesRead);
+        check.setDurationMs(System.currentTimeMillis() - start);
+        check.setCheckTime(new Timestamp(System.currentTimeMillis()));
+        return check;
+    }
+}
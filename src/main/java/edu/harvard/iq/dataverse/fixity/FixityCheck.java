@@ -0,0 +1,189 @@
+package edu.harvard.iq.dataverse.fixity;
+
+import edu.harvard.iq.dataverse.DataFile;
+import java.io.Serializable;
+import java.sql.Timestamp;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.NamedQueries;
+import jakarta.persistence.NamedQuery;
+import jakarta.persistence.OneToOne;
+import jakarta.persistence.Table;
+
+/**
+ * The result of the most recent fixity (checksum) verification of a
+ * DataFile, as recorded by the fixity audit job.
+ */
+@NamedQueries({
+    @NamedQuery(name = "FixityCheck.findByDataFileId",
+            query = "SELECT c FROM FixityCheck c WHERE c.dataFile.id=:dataFileId"),
+    @NamedQuery(name = "FixityCheck.findByDataFileIds",
+            query = "SELECT c FROM FixityCheck c WHERE c.dataFile.id IN :dataFileIds"),
+    @NamedQuery(name = "FixityCheck.countByStatus",
+            query = "SELECT c.status, COUNT(c) FROM FixityCheck c GROUP BY c.status"),
+    @NamedQuery(name = "FixityCheck.findDataFilesDueInStore",
+            query = "SELECT df FROM DataFile df WHERE df.id > :afterId AND df.storageIdentifier LIKE :prefix ESCAPE '\\' AND NOT EXISTS "
+            + "(SELECT c FROM FixityCheck c WHERE c.dataFile = df AND c.checkTime >= :cutoff) ORDER BY df.id"),
+    // (the default store also has the files stored before there were storage drivers, without a prefix)
+    @NamedQuery(name = "FixityCheck.findDataFilesDueInDefaultStore",
+            query = "SELECT df FROM DataFile df WHERE df.id > :afterId "
+            + "AND (df.storageIdentifier LIKE :prefix ESCAPE '\\' OR df.storageIdentifier NOT LIKE '%://%') AND NOT EXISTS "
+            + "(SELECT c FROM FixityCheck c WHERE c.dataFile = df AND c.checkTime >= :cutoff) ORDER BY df.id")
+})
+@Entity
+@Table(indexes = {@Index(columnList = "checktime"), @Index(columnList = "status")})
+public class FixityCheck implements Serializable {
+
+    public enum Status {
+        /** The recalculated checksum matches the one on record */
+        VALID,
+        /** The recalculated checksum does NOT match the one on record */
+        INVALID,
+        /** The stored file could not be found */
+        MISSING,
+        /** The stored file could not be read */
+        ERROR
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @OneToOne
+    @JoinColumn(name = "datafile_id", nullable = false, unique = true)
+    private DataFile dataFile;
+
+    @Column(nullable = false)
+    private Timestamp checkTime;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    @Enumerated(EnumType.STRING)
+    private DataFile.ChecksumType checksumType;
+
+    private String expectedValue;
+
+    private String calculatedValue;
+
+    @Column(columnDefinition = "TEXT")
+    private String message;
+
+    private String storageDriver;
+
+    private long bytesRead;
+
+    private long durationMs;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public DataFile getDataFile() {
+        return dataFile;
+    }
+
+    public void setDataFile(DataFile dataFile) {
+        this.dataFile = dataFile;
+    }
+
+    public Timestamp getCheckTime() {
+        return checkTime;
+    }
+
+    public void setCheckTime(Timestamp checkTime) {
+        this.checkTime = checkTime;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public DataFile.ChecksumType getChecksumType() {
+        return checksumType;
+    }
+
+    public void setChecksumType(DataFile.ChecksumType checksumType) {
+        this.checksumType = checksumType;
+    }
+
+    public String getExpectedValue() {
+        return expectedValue;
+    }
+
+    public void setExpectedValue(String expectedValue) {
+        this.expectedValue = expectedValue;
+    }
+
+    public String getCalculatedValue() {
+        return calculatedValue;
+    }
+
+    public void setCalculatedValue(String calculatedValue) {
+        this.calculatedValue = calculatedValue;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getStorageDriver() {
+        return storageDriver;
+    }
+
+    public void setStorageDriver(String storageDriver) {
+        this.storageDriver = storageDriver;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    /**
+     * Copies the outcome of another check (typically a fresh, unmanaged one
+     * produced by the audit workers) into this one.
+     */
+    void copyResultFrom(FixityCheck other) {
+        this.checkTime = other.checkTime;
+        this.status = other.status;
+        this.checksumType = other.checksumType;
+        this.expectedValue = other.expectedValue;
+        this.calculatedValue = other.calculatedValue;
+        this.message = other.message;
+        this.storageDriver = other.storageDriver;
+        this.bytesRead = other.bytesRead;
+        this.durationMs = other.durationMs;
+    }
+}
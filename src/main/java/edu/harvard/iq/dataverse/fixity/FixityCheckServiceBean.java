@@ -0,0 +1,127 @@
+package edu.harvard.iq.dataverse.fixity;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Named;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Database access for the fixity audit: picking the files that are due for
+ * verification, and recording the results.
+ */
+@Named
+@Stateless
+public class FixityCheckServiceBean {
+
+    private static final Logger logger = Logger.getLogger(FixityCheckServiceBean.class.getCanonicalName());
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    /**
+     * @return the ids of the storage drivers the DataFiles are stored with
+     * (the files without a driver in their storage identifier are in the
+     * default store)
+     */
+    public List<String> findStorageDriversInUse() {
+        @SuppressWarnings("unchecked")
+        List<String> prefixes = em.createNativeQuery("SELECT DISTINCT CASE WHEN strpos(storageidentifier, '://') > 0 "
+                + "THEN split_part(storageidentifier, '://', 1) ELSE '' END "
+                + "FROM dvobject WHERE dtype = 'DataFile' AND storageidentifier IS NOT NULL").getResultList();
+        Set<String> driverIds = new TreeSet<>();
+        for (String prefix : prefixes) {
+            driverIds.add(prefix.isEmpty() ? DataAccess.DEFAULT_STORAGE_DRIVER_IDENTIFIER : prefix);
+        }
+        return new ArrayList<>(driverIds);
+    }
+
+    /**
+     * Finds the next page of the DataFiles in a store (in the order of their
+     * ids) that have not been verified since the cutoff time, or ever.
+     *
+     * @param driverId the storage driver of the store
+     * @param cutoff files verified at or after this time are skipped
+     * @param afterId only files with ids greater than this are returned
+     * (keyset pagination)
+     * @param maxResults the size of the page
+     */
+    public List<DataFile> findDataFilesDueForCheck(String driverId, Timestamp cutoff, long afterId, int maxResults) {
+        String queryName = driverId.equals(DataAccess.DEFAULT_STORAGE_DRIVER_IDENTIFIER)
+                ? "FixityCheck.findDataFilesDueInDefaultStore"
+                : "FixityCheck.findDataFilesDueInStore";
+        String prefix = driverId.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + DataAccess.SEPARATOR + "%";
+        return em.createNamedQuery(queryName, DataFile.class)
+                .setParameter("afterId", afterId)
+                .setParameter("prefix", prefix)
+                .setParameter("cutoff", cutoff)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    public FixityCheck findByDataFileId(Long dataFileId) {
+        List<FixityCheck> checks = em.createNamedQuery("FixityCheck.findByDataFileId", FixityCheck.class)
+                .setParameter("dataFileId", dataFileId)
+                .getResultList();
+        return checks.isEmpty() ? null : checks.get(0);
+    }
+
+    /**
+     * Records a batch of results, in its own transaction, so that a long
+     * audit run saves its progress as it goes. The existing results of the
+     * files in the batch are looked up in one query, and updated in place.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void recordResults(List<FixityCheck> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        List<Long> dataFileIds = new ArrayList<>();
+        for (FixityCheck result : results) {
+            dataFileIds.add(result.getDataFile().getId());
+        }
+        Map<Long, FixityCheck> existing = new HashMap<>();
+        for (FixityCheck check : em.createNamedQuery("FixityCheck.findByDataFileIds", FixityCheck.class)
+                .setParameter("dataFileIds", dataFileIds)
+                .getResultList()) {
+            existing.put(check.getDataFile().getId(), check);
+        }
+        for (FixityCheck result : results) {
+            FixityCheck check = existing.get(result.getDataFile().getId());
+            if (check == null) {
+                check = new FixityCheck();
+                check.setDataFile(em.getReference(DataFile.class, result.getDataFile().getId()));
+                check.copyResultFrom(result);
+                em.persist(check);
+                existing.put(result.getDataFile().getId(), check);
+            } else {
+                check.copyResultFrom(result);
+            }
+        }
+        logger.fine("recorded " + results.size() + " fixity check results");
+    }
+
+    public Map<FixityCheck.Status, Long> countByStatus() {
+        Map<FixityCheck.Status, Long> counts = new EnumMap<>(FixityCheck.Status.class);
+        for (FixityCheck.Status status : FixityCheck.Status.values()) {
+            counts.put(status, 0L);
+        }
+        List<Object[]> rows = em.createNamedQuery("FixityCheck.countByStatus", Object[].class).getResultList();
+        for (Object[] row : rows) {
+            counts.put((FixityCheck.Status) row[0], ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+}
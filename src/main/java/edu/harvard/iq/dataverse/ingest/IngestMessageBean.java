@@ -21,13 +21,7 @@
 package edu.harvard.iq.dataverse.ingest;
 
 import edu.harvard.iq.dataverse.*;
-import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
-import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
-import edu.harvard.iq.dataverse.util.BundleUtil;
 
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.util.Iterator;
 import java.util.logging.Logger;
 import jakarta.ejb.ActivationConfigProperty;
 import jakarta.ejb.EJB;
@@ -56,10 +50,7 @@ import jakarta.jms.ObjectMessage;
 public class IngestMessageBean implements MessageListener {
     private static final Logger logger = Logger.getLogger(IngestMessageBean.class.getCanonicalName());
     @EJB DatasetServiceBean datasetService;
-    @EJB DataFileServiceBean datafileService;
-    @EJB IngestServiceBean ingestService;
-    @EJB UserNotificationServiceBean userNotificationService;
-    @EJB AuthenticationServiceBean authenticationServiceBean;
+    @EJB IngestWorkerServiceBean ingestWorkerService;
 
    
     public IngestMessageBean() {
@@ -68,9 +59,8 @@ public class IngestMessageBean implements MessageListener {
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void onMessage(Message message) {
         IngestMessage ingestMessage = null;
+        boolean queued = false;
 
-        AuthenticatedUser authenticatedUser = null;
-        
         try {
             ObjectMessage om = (ObjectMessage) message;
             ingestMessage = (IngestMessage) om.getObject();
@@ -86,106 +76,29 @@ public class IngestMessageBean implements MessageListener {
                     ingestMessage.getAuthenticatedUserId(),
                     ingestMessage.getInfo());
 
-            authenticatedUser = authenticationServiceBean.findByID(ingestMessage.getAuthenticatedUserId());
-
-            Iterator<Long> iter = ingestMessage.getFileIds().iterator();
-            Long datafile_id = null;
-
-            boolean ingestWithErrors = false;
-
-            StringBuilder sbIngestedFiles = new StringBuilder();
-            sbIngestedFiles.append("<ul>");
-            
-            while (iter.hasNext()) {
-                datafile_id = iter.next();
-
-                logger.fine("Start ingest job;");
-                try {
-
-                    DataFile datafile = datafileService.find(datafile_id);
-
-                    if (ingestService.ingestAsTabular(datafile_id)) {
-                        //Thread.sleep(10000);
-                        logger.fine("Finished ingest job;");
-                        // We used to list the successfully ingested files in the "success"
-                        // and "mixed success and failure" emails. Now we never list successfully
-                        // ingested files so this line is commented out.
-                        // sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
-                    } else {
-                        logger.warning("Error occurred during ingest job for file id " + datafile_id + "!");
-                        sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
-                        ingestWithErrors = true;
-                    }
-
-                } catch (Exception ex) {
-                    //ex.printStackTrace();
-                    // TODO: 
-                    // this solution is working - but it would be cleaner to instead
-                    // make sure that all the exceptions are interrupted and appropriate
-                    // action taken still on the ingest service side. 
-                    // -- L.A. Aug. 13 2014; 
-                    logger.info("Unknown exception occurred  during ingest (supressed stack trace); re-setting ingest status.");
-                    if (datafile_id != null) {
-                        logger.fine("looking up datafile for id " + datafile_id);
-                        DataFile datafile = datafileService.find(datafile_id);
-                        if (datafile != null) {
-
-                            ingestWithErrors = true;
-
-                            sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
-
-                            datafile.SetIngestProblem();
-                            IngestReport errorReport = new IngestReport();
-                            errorReport.setFailure();
-                            if (ex.getMessage() != null) {
-                                errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.detail.message") + ex.getMessage());
-                            } else {
-                                errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.message"));
-                            }
-                            errorReport.setDataFile(datafile);
-                            datafile.setIngestReport(errorReport);
-                            datafile.setDataTables(null);
-
-                            logger.info("trying to save datafile and the failed ingest report, id=" + datafile_id);
-                            datafile = datafileService.save(datafile);
-
-                            if (ingestMessage.getDatasetId() != null) {
-                                //logger.info("attempting to remove dataset lock for dataset " + dataset.getId());
-                                //datasetService.removeDatasetLock(dataset.getId());
-                                ingestService.sendFailNotification(ingestMessage.getDatasetId());
-                            }
-                        }
-                    }
-                }
-            }
-
-            sbIngestedFiles.append("</ul>");
-
-            userNotificationService.sendNotification(
-                    authenticatedUser,
-                    Timestamp.from(Instant.now()),
-                    !ingestWithErrors ? UserNotification.Type.INGESTCOMPLETED : UserNotification.Type.INGESTCOMPLETEDWITHERRORS,
-                    ingestMessage.getDatasetId(),
-                    sbIngestedFiles.toString(),
-                    true
-            );
-
+            // The files are ingested, in parallel with the files of the other
+            // datasets, by the worker pool; which also sends the notification,
+            // and removes the lock, once the last file is done. This waits
+            // for them, so that the message is only acknowledged once they
+            // are all done (and is delivered again if the server stops before;
+            // if the wait is cut short, ingest() throws, and it is too):
+            queued = ingestWorkerService.ingest(ingestMessage, message.getJMSRedelivered());
 
         } catch (JMSException ex) {
             ex.printStackTrace(); // error in getting object from message; can't send e-mail
 
         } finally {
-            // when we're done, go ahead and remove the lock
-            try {
-                // Remove the dataset lock: 
-                // (note that the assumption here is that all of the datafiles
-                // packed into this IngestMessage belong to the same dataset) 
-                Dataset dataset = datasetService.find(ingestMessage.getDatasetId());
-                if (dataset != null && dataset.getId() != null) {
-                    datasetService.removeDatasetLocks(dataset, DatasetLock.Reason.Ingest);
+            // if nothing was queued (by this, or by another message for
+            // the same dataset), go ahead and remove the lock
+            if (!queued && ingestMessage != null && !ingestWorkerService.isIngesting(ingestMessage.getDatasetId())) {
+                try {
+                    Dataset dataset = datasetService.find(ingestMessage.getDatasetId());
+                    if (dataset != null && dataset.getId() != null) {
+                        datasetService.removeDatasetLocks(dataset, DatasetLock.Reason.Ingest);
+                    }
+                } catch (Exception ex) {
+                    ex.printStackTrace(); // application was unable to remove the datasetLock
                 }
-            } catch (Exception ex) {
-                ex.printStackTrace(); // application was unable to remove the datasetLock
             }
         }
     }
@@ -30,6 +30,7 @@ import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DataFileCategory;
 import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.ThumbnailGenerationServiceBean;
 import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.DatasetField;
 import edu.harvard.iq.dataverse.DatasetFieldServiceBean;
@@ -146,6 +147,8 @@ public class IngestServiceBean {
     @EJB
     AuxiliaryFileServiceBean auxiliaryFileService;
     @EJB
+    ThumbnailGenerationServiceBean thumbnailGenerationService;
+    @EJB
     SystemConfig systemConfig;
 
     @Resource(lookup = "java:app/jms/queue/ingest")
@@ -158,6 +161,33 @@ public class IngestServiceBean {
     private static String dateTimeFormat_ymdhmsS = "yyyy-MM-dd HH:mm:ss.SSS";
     private static String dateFormat_ymd = "yyyy-MM-dd";
     
+    /**
+     * The storage drivers calculate the checksums of the file inline, while 
+     * saving it. If the DataFile doesn't have a checksum yet, we record the 
+     * one for the configured algorithm; if it does (it was calculated while 
+     * the upload was saved in the temp directory, or supplied by the client), 
+     * we use the inline one to verify the saved copy, at no extra I/O cost.
+     */
+    private void recordSavedChecksum(DataFile dataFile, StorageIO<DataFile> dataAccess) {
+        Map<DataFile.ChecksumType, String> savedChecksums = dataAccess.getSavedChecksums();
+        if (savedChecksums == null) {
+            return;
+        }
+        if (dataFile.getChecksumType() == null) {
+            dataFile.setChecksumType(systemConfig.getFileFixityChecksumAlgorithm());
+        }
+        String savedChecksum = savedChecksums.get(dataFile.getChecksumType());
+        if (savedChecksum == null) {
+            return;
+        }
+        if (StringUtil.isEmpty(dataFile.getChecksumValue())) {
+            dataFile.setChecksumValue(savedChecksum);
+        } else if (!savedChecksum.equalsIgnoreCase(dataFile.getChecksumValue())) {
+            logger.warning("The " + dataFile.getChecksumType() + " checksum of the saved copy of " + dataFile.getStorageIdentifier()
+                    + " (" + savedChecksum + ") does not match the checksum of the uploaded file (" + dataFile.getChecksumValue() + ")");
+        }
+    }
+
     // This method tries to permanently store new files on the filesystem. 
     // Then it adds the files that *have been successfully saved* to the 
     // dataset (by attaching the DataFiles to the Dataset, and the corresponding
@@ -241,6 +271,7 @@ public class IngestServiceBean {
 						// Set filesize in bytes
 						//
 						dataFile.setFilesize(dataAccess.getSize());
+						recordSavedChecksum(dataFile, dataAccess);
 						savedSuccess = true;
 						logger.fine("Success: permanently saved file " + dataFile.getFileMetadata().getLabel());
 
@@ -481,6 +512,10 @@ public class IngestServiceBean {
         List<DataFile> scheduledFiles = new ArrayList<>();
                 
         for (DataFile dataFile : dataset.getFiles()) {
+            if (!dataFile.isPreviewImageAvailable() && !dataFile.isPreviewImageFail()) {
+                // (this is a no-op for the files that don't support thumbnails)
+                thumbnailGenerationService.requestThumbnails(dataFile);
+            }
             if (dataFile.isIngestScheduled()) {
                 // todo: investigate why when calling save with the file object
                 // gotten from the loop, the roles assignment added at create is removed
@@ -1760,7 +1795,7 @@ public class IngestServiceBean {
                 StorageIO<DataFile> dataAccess = dataFile.getStorageIO();
                 if (dataAccess != null) { // && storageIO.isLocalFile()) {
 
-                    if (ImageThumbConverter.isThumbnailAvailable(dataFile, ImageThumbConverter.DEFAULT_PREVIEW_SIZE)) {
+                    if (ImageThumbConverter.generateThumbnail(dataFile, ImageThumbConverter.DEFAULT_PREVIEW_SIZE) == ImageThumbConverter.ThumbnailStatus.AVAILABLE) {
                         dataFile.setPreviewImageAvailable(true);
                     }
                 }
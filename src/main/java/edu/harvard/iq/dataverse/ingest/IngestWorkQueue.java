@@ -0,0 +1,204 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The queue of the individual files waiting to be ingested, and the
+ * bookkeeping of the ones being ingested, used by IngestWorkerServiceBean.
+ *
+ * Fairness: the users take turns, and so do the datasets of each user, so
+ * that one user (or dataset) with hundreds of files queued doesn't hold up
+ * everybody else; within a dataset, the files are taken in the order they
+ * were queued.
+ *
+ * Admission: at most maxRunning files are ingested at the same time, and
+ * the sum of their estimated memory costs (see {@link #estimateCost}) is
+ * kept within memoryBudget. A file that doesn't fit waits until enough of the
+ * running ones finish (the files queued behind it wait too, so that large
+ * files are not starved by small ones); a file that is larger than the whole
+ * budget is ingested alone.
+ */
+class IngestWorkQueue {
+
+    // the memory an ingest takes, beyond that proportional to the size of
+    // the file:
+    static final long BASE_COST = 16L * 1024 * 1024;
+
+    static class Task {
+
+        final long userId;
+        final long datasetId;
+        final Long dataFileId;
+        final long cost;
+
+        Task(Long userId, Long datasetId, Long dataFileId, long cost) {
+            this.userId = userId != null ? userId : 0L;
+            this.datasetId = datasetId != null ? datasetId : 0L;
+            this.dataFileId = dataFileId;
+            this.cost = cost;
+        }
+    }
+
+    private final int maxRunning;
+    private final long memoryBudget;
+
+    private final Deque<Long> users = new ArrayDeque<>();
+    private final Map<Long, Deque<Long>> datasetsByUser = new HashMap<>();
+    private final Map<Long, Deque<Task>> tasksByDataset = new HashMap<>();
+    private int queued = 0;
+    private int running = 0;
+    private long memoryInUse = 0;
+
+    IngestWorkQueue(int maxRunning, long memoryBudget) {
+        this.maxRunning = Math.max(1, maxRunning);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Estimates the memory (in bytes) needed to ingest a file of the given
+     * type and size. The multipliers reflect how much of the data each
+     * ingest plugin, and the calculation of the summary statistics and the
+     * UNFs after it, hold in memory at once.
+     */
+    static long estimateCost(String contentType, long size) {
+        int multiplier;
+        if (FileUtil.MIME_TYPE_XLSX.equals(contentType)) {
+            // compressed XML, with the shared strings table held in memory:
+            multiplier = 20;
+        } else if (FileUtil.MIME_TYPE_RDATA.equals(contentType)) {
+            // compressed too, and converted to a CSV file (by Rserve) first:
+            multiplier = 8;
+        } else if (FileUtil.MIME_TYPE_CSV.equals(contentType) || FileUtil.MIME_TYPE_CSV_ALT.equals(contentType)
+                || FileUtil.MIME_TYPE_TSV.equals(contentType) || FileUtil.MIME_TYPE_TSV_ALT.equals(contentType)) {
+            multiplier = 3;
+        } else {
+            // Stata and SPSS:
+            multiplier = 2;
+        }
+        return BASE_COST + Math.max(0, size) * multiplier;
+    }
+
+    /**
+     * Queues all the tasks, or none of them.
+     */
+    synchronized void addAll(List<? extends Task> tasks) {
+        for (Task task : tasks) {
+            add(task);
+        }
+    }
+
+    synchronized void add(Task task) {
+        Deque<Task> tasks = tasksByDataset.get(task.datasetId);
+        if (tasks == null) {
+            tasks = new ArrayDeque<>();
+            tasksByDataset.put(task.datasetId, tasks);
+            Deque<Long> datasets = datasetsByUser.get(task.userId);
+            if (datasets == null) {
+                datasets = new ArrayDeque<>();
+                datasetsByUser.put(task.userId, datasets);
+                users.addLast(task.userId);
+            }
+            datasets.addLast(task.datasetId);
+        }
+        tasks.addLast(task);
+        queued++;
+    }
+
+    /**
+     * Takes the tasks that can be started now off the queue, and counts them
+     * as running.
+     */
+    synchronized List<Task> admit() {
+        List<Task> admitted = new ArrayList<>();
+        while (running < maxRunning && !users.isEmpty()) {
+            Long userId = users.peekFirst();
+            Deque<Long> datasets = datasetsByUser.get(userId);
+            Long datasetId = datasets.peekFirst();
+            Deque<Task> tasks = tasksByDataset.get(datasetId);
+            Task task = tasks.peekFirst();
+            if (running > 0 && memoryInUse + task.cost > memoryBudget) {
+                break;
+            }
+
+            tasks.pollFirst();
+            queued--;
+            running++;
+            memoryInUse += task.cost;
+            admitted.add(task);
+
+            // the next turn goes to the next dataset of this user, and to
+            // the next user:
+            datasets.pollFirst();
+            if (tasks.isEmpty()) {
+                tasksByDataset.remove(datasetId);
+            } else {
+                datasets.addLast(datasetId);
+            }
+            users.pollFirst();
+            if (datasets.isEmpty()) {
+                datasetsByUser.remove(userId);
+            } else {
+                users.addLast(userId);
+            }
+        }
+        return admitted;
+    }
+
+    /**
+     * Takes the queued tasks that match off the queue (the running ones are
+     * left to finish).
+     *
+     * @return the tasks that were removed
+     */
+    synchronized List<Task> remove(Predicate<Task> filter) {
+        List<Task> removed = new ArrayList<>();
+        for (Iterator<Map.Entry<Long, Deque<Task>>> datasetTasks = tasksByDataset.entrySet().iterator(); datasetTasks.hasNext();) {
+            Map.Entry<Long, Deque<Task>> entry = datasetTasks.next();
+            for (Iterator<Task> tasks = entry.getValue().iterator(); tasks.hasNext();) {
+                Task task = tasks.next();
+                if (filter.test(task)) {
+                    tasks.remove();
+                    queued--;
+                    removed.add(task);
+                }
+            }
+            if (entry.getValue().isEmpty()) {
+                datasetTasks.remove();
+                for (Iterator<Map.Entry<Long, Deque<Long>>> userDatasets = datasetsByUser.entrySet().iterator(); userDatasets.hasNext();) {
+                    Map.Entry<Long, Deque<Long>> user = userDatasets.next();
+                    user.getValue().remove(entry.getKey());
+                    if (user.getValue().isEmpty()) {
+                        userDatasets.remove();
+                        users.remove(user.getKey());
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    synchronized void finished(Task task) {
+        running--;
+        memoryInUse -= task.cost;
+    }
+
+    synchronized int getQueuedCount() {
+        return queued;
+    }
+
+    synchronized int getRunningCount() {
+        return running;
+    }
+
+    synchronized long getMemoryInUse() {
+        return memoryInUse;
+    }
+}
@@ -0,0 +1,363 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetLock;
+import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.UserNotification;
+import edu.harvard.iq.dataverse.UserNotificationServiceBean;
+import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BundleUtil;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.EJBException;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+
+/**
+ * Runs the tabular ingest of the individual files on a pool of worker
+ * threads (dataverse.ingest.threads), so that the files of several datasets
+ * are ingested in parallel, instead of one dataset (i.e., one IngestMessage)
+ * at a time, with the files of each dataset one after another.
+ *
+ * The files are queued in an {@link IngestWorkQueue}, which takes care of
+ * the fairness between the users and the datasets, and keeps the estimated
+ * memory used by the running ingests within dataverse.ingest.memory-budget.
+ *
+ * The ingest lock on a dataset is released, and the user notified, once the
+ * last of its queued files is done.
+ *
+ * The queue itself is not persisted: the JMS message stays the durable
+ * record of the ingest. {@link #ingest} only returns (and the message bean
+ * only lets the message be acknowledged) once all the files of the message
+ * are done, so a message whose files were still queued, or in progress, when
+ * the server stopped is delivered again when it comes back up; the files that
+ * were done by then are skipped. If the wait is cut short (the message bean
+ * thread is interrupted, or the application is stopped), the files of the
+ * message that haven't started are taken off the queue, and {@link #ingest}
+ * throws, so that the message is not acknowledged, and is delivered again.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class IngestWorkerServiceBean {
+
+    private static final Logger logger = Logger.getLogger(IngestWorkerServiceBean.class.getCanonicalName());
+
+    @EJB
+    DatasetServiceBean datasetService;
+    @EJB
+    DataFileServiceBean datafileService;
+    @EJB
+    IngestServiceBean ingestService;
+    @EJB
+    UserNotificationServiceBean userNotificationService;
+    @EJB
+    AuthenticationServiceBean authenticationServiceBean;
+    @Resource
+    ManagedThreadFactory managedThreadFactory;
+
+    /**
+     * The files of one IngestMessage; the user is notified once all of them
+     * have been ingested.
+     */
+    static class IngestBatch {
+
+        final IngestMessage message;
+        final AtomicInteger remaining;
+        final CountDownLatch done = new CountDownLatch(1);
+        final StringBuffer failedFiles = new StringBuffer();
+        volatile boolean ingestWithErrors = false;
+        // the message is to be delivered again; its files were not all done:
+        volatile boolean abandoned = false;
+
+        IngestBatch(IngestMessage message, int fileCount) {
+            this.message = message;
+            this.remaining = new AtomicInteger(fileCount);
+        }
+    }
+
+    private IngestWorkQueue queue;
+    private ExecutorService executor;
+    // the number of files still queued or in progress for each dataset:
+    private final Map<Long, Integer> filesByDataset = new ConcurrentHashMap<>();
+    // the batches whose files are not all done yet:
+    private final Set<IngestBatch> batches = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        int threads = JvmSettings.INGEST_THREADS.lookupOptional(Integer.class)
+                .orElse(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        long memoryBudget = JvmSettings.INGEST_MEMORY_BUDGET.lookupOptional(Long.class)
+                .orElse(Runtime.getRuntime().maxMemory() / 4);
+        logger.info("Tabular ingest: " + threads + " worker threads, memory budget of " + memoryBudget + " bytes");
+        queue = new IngestWorkQueue(threads, memoryBudget);
+        executor = Executors.newFixedThreadPool(threads, managedThreadFactory);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        // (the tasks dropped by the executor will never count their batches
+        // down; the message bean threads waiting on them are let go, and
+        // their messages delivered again)
+        for (IngestBatch batch : batches) {
+            abandon(batch);
+            batch.done.countDown();
+        }
+        batches.clear();
+    }
+
+    /**
+     * Queues the files of the message for ingest, and waits until all of
+     * them are done. The dataset must already be locked for ingest; the lock
+     * is removed once the last file queued for the dataset is done.
+     *
+     * @param redelivered whether the message is being delivered again (after
+     * the server was stopped while its files were being ingested): the files
+     * that are no longer scheduled for ingest are skipped.
+     * @return false if there was nothing to queue (and the lock is left to
+     * the caller)
+     * @throws EJBException if the wait was interrupted, or the application
+     * stopped, before all the files were done: the message must be delivered
+     * again
+     */
+    public boolean ingest(IngestMessage message, boolean redelivered) {
+        IngestBatch batch = submit(message, redelivered);
+        if (batch == null) {
+            return false;
+        }
+        try {
+            batch.done.await();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            abandon(batch);
+            throw new EJBException("Interrupted while waiting for the ingest of the files of dataset "
+                    + message.getDatasetId() + "; the ingest message will be delivered again");
+        }
+        if (batch.abandoned) {
+            throw new EJBException("The ingest of the files of dataset " + message.getDatasetId()
+                    + " was stopped before they were done; the ingest message will be delivered again");
+        }
+        return true;
+    }
+
+    IngestBatch submit(IngestMessage message, boolean redelivered) {
+        if (message.getDatasetId() == null || message.getFileIds() == null || message.getFileIds().isEmpty()) {
+            return null;
+        }
+        Long datasetId = message.getDatasetId();
+        // look up all the files first, so that if that fails, none of them is
+        // queued:
+        List<Long> dataFileIds = new ArrayList<>();
+        List<Long> costs = new ArrayList<>();
+        for (Long dataFileId : message.getFileIds()) {
+            DataFile dataFile = datafileService.find(dataFileId);
+            if (redelivered && dataFile != null && !dataFile.isIngestInProgress()) {
+                logger.fine("file " + dataFileId + " was already ingested before the message was redelivered");
+                continue;
+            }
+            dataFileIds.add(dataFileId);
+            costs.add(dataFile != null
+                    ? IngestWorkQueue.estimateCost(dataFile.getContentType(), dataFile.getFilesize())
+                    : IngestWorkQueue.BASE_COST);
+        }
+        if (dataFileIds.isEmpty()) {
+            return null;
+        }
+
+        IngestBatch batch = new IngestBatch(message, dataFileIds.size());
+        List<BatchTask> tasks = new ArrayList<>();
+        for (int i = 0; i < dataFileIds.size(); i++) {
+            tasks.add(new BatchTask(batch, dataFileIds.get(i), costs.get(i)));
+        }
+        // (counted before they are queued, so that a task finishing right
+        // away doesn't remove the lock while the others are still queued)
+        filesByDataset.merge(datasetId, tasks.size(), Integer::sum);
+        try {
+            queue.addAll(tasks);
+        } catch (RuntimeException rex) {
+            filesByDataset.compute(datasetId, (id, count) -> count == null || count <= tasks.size() ? null : count - tasks.size());
+            throw rex;
+        }
+        batches.add(batch);
+        logger.fine(() -> "queued " + tasks.size() + " files of dataset " + datasetId + " for ingest");
+        dispatch();
+        return batch;
+    }
+
+    /**
+     * @return whether any files of the dataset are queued, or being ingested
+     */
+    public boolean isIngesting(Long datasetId) {
+        return datasetId != null && filesByDataset.containsKey(datasetId);
+    }
+
+    public JsonObjectBuilder getStatus() {
+        return Json.createObjectBuilder()
+                .add("queuedFiles", queue.getQueuedCount())
+                .add("runningFiles", queue.getRunningCount())
+                .add("datasets", filesByDataset.size())
+                .add("estimatedMemoryInUse", queue.getMemoryInUse());
+    }
+
+    private static class BatchTask extends IngestWorkQueue.Task {
+
+        final IngestBatch batch;
+
+        BatchTask(IngestBatch batch, Long dataFileId, long cost) {
+            super(batch.message.getAuthenticatedUserId(), batch.message.getDatasetId(), dataFileId, cost);
+            this.batch = batch;
+        }
+    }
+
+    private void dispatch() {
+        for (IngestWorkQueue.Task task : queue.admit()) {
+            BatchTask batchTask = (BatchTask) task;
+            try {
+                executor.execute(() -> run(batchTask));
+            } catch (RejectedExecutionException rex) {
+                // (the application is being stopped)
+                logger.fine("not starting the ingest of file " + batchTask.dataFileId + "; shutting down");
+                queue.finished(task);
+                abandon(batchTask.batch);
+                batchTask.batch.done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Takes the files of the batch that haven't started off the queue; the
+     * ones being ingested are left to finish. No notification is sent for
+     * the batch: its message is delivered again.
+     */
+    private void abandon(IngestBatch batch) {
+        batch.abandoned = true;
+        for (IngestWorkQueue.Task task : queue.remove(queued -> ((BatchTask) queued).batch == batch)) {
+            fileDone(batch);
+        }
+    }
+
+    private void run(BatchTask task) {
+        try {
+            ingestFile(task.dataFileId, task.batch);
+        } catch (RuntimeException rex) {
+            logger.log(Level.WARNING, "Unexpected failure ingesting file " + task.dataFileId, rex);
+        } finally {
+            queue.finished(task);
+            try {
+                fileDone(task.batch);
+            } finally {
+                dispatch();
+            }
+        }
+    }
+
+    private void ingestFile(Long datafile_id, IngestBatch batch) {
+        logger.fine("Start ingest job;");
+        try {
+            DataFile datafile = datafileService.find(datafile_id);
+
+            if (ingestService.ingestAsTabular(datafile_id)) {
+                logger.fine("Finished ingest job;");
+                // We used to list the successfully ingested files in the "success"
+                // and "mixed success and failure" emails. Now we never list successfully
+                // ingested files.
+            } else {
+                logger.warning("Error occurred during ingest job for file id " + datafile_id + "!");
+                batch.failedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
+                batch.ingestWithErrors = true;
+            }
+
+        } catch (Exception ex) {
+            logger.info("Unknown exception occurred  during ingest (supressed stack trace); re-setting ingest status.");
+            logger.fine("looking up datafile for id " + datafile_id);
+            DataFile datafile = datafileService.find(datafile_id);
+            if (datafile != null) {
+
+                batch.ingestWithErrors = true;
+
+                batch.failedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
+
+                datafile.SetIngestProblem();
+                IngestReport errorReport = new IngestReport();
+                errorReport.setFailure();
+                if (ex.getMessage() != null) {
+                    errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.detail.message") + ex.getMessage());
+                } else {
+                    errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.message"));
+                }
+                errorReport.setDataFile(datafile);
+                datafile.setIngestReport(errorReport);
+                datafile.setDataTables(null);
+
+                logger.info("trying to save datafile and the failed ingest report, id=" + datafile_id);
+                datafileService.save(datafile);
+
+                if (batch.message.getDatasetId() != null) {
+                    ingestService.sendFailNotification(batch.message.getDatasetId());
+                }
+            }
+        }
+    }
+
+    private void fileDone(IngestBatch batch) {
+        Long datasetId = batch.message.getDatasetId();
+        boolean lastFileOfBatch = batch.remaining.decrementAndGet() == 0;
+        try {
+            if (lastFileOfBatch && !batch.abandoned) {
+                userNotificationService.sendNotification(
+                        authenticationServiceBean.findByID(batch.message.getAuthenticatedUserId()),
+                        Timestamp.from(Instant.now()),
+                        !batch.ingestWithErrors ? UserNotification.Type.INGESTCOMPLETED : UserNotification.Type.INGESTCOMPLETEDWITHERRORS,
+                        datasetId,
+                        "<ul>" + batch.failedFiles + "</ul>",
+                        true
+                );
+            }
+        } catch (RuntimeException rex) {
+            logger.log(Level.WARNING, "Failed to send the ingest notification for dataset " + datasetId, rex);
+        }
+
+        // the lock is only removed when the last file queued for the dataset
+        // (in this, or in any other batch) is done:
+        boolean lastFile = filesByDataset.compute(datasetId, (id, count) -> count == null || count <= 1 ? null : count - 1) == null;
+        if (lastFile) {
+            try {
+                Dataset dataset = datasetService.find(datasetId);
+                if (dataset != null && dataset.getId() != null) {
+                    datasetService.removeDatasetLocks(dataset, DatasetLock.Reason.Ingest);
+                }
+            } catch (RuntimeException rex) {
+                logger.log(Level.WARNING, "Failed to remove the ingest lock on dataset " + datasetId, rex);
+            }
+        }
+        if (lastFileOfBatch) {
+            batches.remove(batch);
+            batch.done.countDown();
+        }
+    }
+}
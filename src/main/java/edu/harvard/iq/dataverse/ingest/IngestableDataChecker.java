@@ -148,7 +148,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      *
      *
      */
-    public String testSAVformat(MappedByteBuffer buff) {
+    public String testSAVformat(ByteBuffer buff) {
         String result = null;
         buff.rewind();
         boolean DEBUG = false;
@@ -191,7 +191,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      * test this byte buffer against STATA DTA spec
      *
      */
-    public String testDTAformat(MappedByteBuffer buff) {
+    public String testDTAformat(ByteBuffer buff) {
         String result = null;
         buff.rewind();
         boolean DEBUG = false;
@@ -310,7 +310,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      * test this byte buffer against SAS Transport(XPT) spec
      *
      */
-    public String testXPTformat(MappedByteBuffer buff) {
+    public String testXPTformat(ByteBuffer buff) {
         String result = null;
         buff.rewind();
         boolean DEBUG = false;
@@ -358,7 +358,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      * test this byte buffer against SPSS Portable (POR) spec
      *
      */
-    public String testPORformat(MappedByteBuffer buff) {
+    public String testPORformat(ByteBuffer buff) {
         String result = null;
         buff.rewind();
         boolean DEBUG = false;
@@ -524,7 +524,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      * test this byte buffer against R data file
      *
      */
-    public String testRDAformat(MappedByteBuffer buff) {
+    public String testRDAformat(ByteBuffer buff) {
         String result = null;
         buff.rewind();
         
@@ -606,7 +606,6 @@ public class IngestableDataChecker implements java.io.Serializable {
 
     // public instance methods ------------------------------------------------
     public String detectTabularDataFormat(File fh) {
-        boolean DEBUG = false;
         String readableFormatType = null;
         FileChannel srcChannel = null;
         FileInputStream inp = null;
@@ -621,57 +620,7 @@ public class IngestableDataChecker implements java.io.Serializable {
             // create a read-only MappedByteBuffer
             MappedByteBuffer buff = srcChannel.map(FileChannel.MapMode.READ_ONLY, 0, buffer_size);
             
-            //this.printHexDump(buff, "hex dump of the byte-buffer");
-
-            buff.rewind();
-            dbgLog.fine("before the for loop");
-            for (String fmt : this.getTestFormatSet()) {
-                
-                // get a test method
-                Method mthd = testMethods.get(fmt);
-                //dbgLog.info("mthd: " + mthd.getName());
-
-                try {
-                    // invoke this method
-                    Object retobj = mthd.invoke(this, buff);
-                    String result = (String) retobj;
-
-                    if (result != null) {
-                        dbgLog.fine("result for (" + fmt + ")=" + result);
-                        if (DEBUG) {
-                            out.println("result for (" + fmt + ")=" + result);
-                        }
-                        if (readableFileTypes.contains(result)) {
-                            readableFormatType = result;
-                        }
-                        dbgLog.fine("readableFormatType=" + readableFormatType);
-                    } else {
-                        dbgLog.fine("null was returned for " + fmt + " test");
-                        if (DEBUG) {
-                            out.println("null was returned for " + fmt + " test");
-                        }
-                    }
-                } catch (InvocationTargetException e) {
-                    Throwable cause = e.getCause();
-                    // added null check because of "homemade.zip" from https://redmine.hmdc.harvard.edu/issues/3273
-                    if (cause.getMessage() != null) {
-                        err.format(cause.getMessage());
-                        e.printStackTrace();
-                    } else {
-                        dbgLog.info("cause.getMessage() was null for " + e);
-                        e.printStackTrace();
-                    }
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                } catch (BufferUnderflowException e){
-                    dbgLog.info("BufferUnderflowException " + e);
-                    e.printStackTrace();
-                }
-                
-                if (readableFormatType != null) {
-                    break;
-                }
-            }
+            readableFormatType = this.runFormatTests(buff);
             
             // help garbage-collect the mapped buffer sooner, to avoid the jvm  
             // holding onto the underlying file unnecessarily:
@@ -690,6 +639,85 @@ public class IngestableDataChecker implements java.io.Serializable {
         return readableFormatType;
     }
 
+    /**
+     * Runs the format tests against a header that has already been read 
+     * into memory (for example, by the shared header window of the file 
+     * type detection pipeline), without re-opening the file. Only the 
+     * first DEFAULT_BUFFER_SIZE bytes are looked at, same as when the 
+     * checker maps the file itself.
+     * 
+     * @param header buffer holding the beginning of the file
+     * @return the readable mime type, or null if none of the tests matched
+     */
+    public String detectTabularDataFormat(ByteBuffer header) {
+        ByteBuffer buff = header.duplicate();
+        buff.rewind();
+        if (buff.limit() > DEFAULT_BUFFER_SIZE) {
+            buff.limit(DEFAULT_BUFFER_SIZE);
+        }
+        // slice, so that the capacity checks in the test methods see the
+        // same size window as with a mapped file:
+        return this.runFormatTests(buff.slice());
+    }
+
+    private String runFormatTests(ByteBuffer buff) {
+        boolean DEBUG = false;
+        String readableFormatType = null;
+
+        //this.printHexDump(buff, "hex dump of the byte-buffer");
+
+        buff.rewind();
+        dbgLog.fine("before the for loop");
+        for (String fmt : this.getTestFormatSet()) {
+
+            // get a test method
+            Method mthd = testMethods.get(fmt);
+            //dbgLog.info("mthd: " + mthd.getName());
+
+            try {
+                // invoke this method
+                Object retobj = mthd.invoke(this, buff);
+                String result = (String) retobj;
+
+                if (result != null) {
+                    dbgLog.fine("result for (" + fmt + ")=" + result);
+                    if (DEBUG) {
+                        out.println("result for (" + fmt + ")=" + result);
+                    }
+                    if (readableFileTypes.contains(result)) {
+                        readableFormatType = result;
+                    }
+                    dbgLog.fine("readableFormatType=" + readableFormatType);
+                } else {
+                    dbgLog.fine("null was returned for " + fmt + " test");
+                    if (DEBUG) {
+                        out.println("null was returned for " + fmt + " test");
+                    }
+                }
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                // added null check because of "homemade.zip" from https://redmine.hmdc.harvard.edu/issues/3273
+                if (cause.getMessage() != null) {
+                    err.format(cause.getMessage());
+                    e.printStackTrace();
+                } else {
+                    dbgLog.info("cause.getMessage() was null for " + e);
+                    e.printStackTrace();
+                }
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            } catch (BufferUnderflowException e){
+                dbgLog.info("BufferUnderflowException " + e);
+                e.printStackTrace();
+            }
+
+            if (readableFormatType != null) {
+                break;
+            }
+        }
+        return readableFormatType;
+    }
+
     /**
      * identify the first 5 bytes
      *
@@ -736,7 +764,7 @@ public class IngestableDataChecker implements java.io.Serializable {
         return BUFFER_SIZE;
     }
 
-    private int getGzipBufferSize(MappedByteBuffer buff) {
+    private int getGzipBufferSize(ByteBuffer buff) {
         int GZIP_BUFFER_SIZE = 120;
         /*
         note:
@@ -757,7 +785,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      * dump the data buffer in HEX
      *
      */
-    public void printHexDump(MappedByteBuffer buff, String hdr) {
+    public void printHexDump(ByteBuffer buff, String hdr) {
         int counter = 0;
         if (hdr != null) {
             out.println(hdr);
@@ -0,0 +1,251 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the tab-delimited data file produced by the ingest plugins.
+ *
+ * Fields are appended one at a time, with write(...), and each row is
+ * terminated with endRow(); the tabs between the fields are added by the
+ * writer. The output is encoded as UTF-8 straight into an internal byte
+ * buffer, which is only written out when it fills up (there is no flush per
+ * row, as with an autoflushing PrintWriter), and no intermediate strings are
+ * built for the rows or for the integer values.
+ *
+ * The text produced for every value is the same as String.valueOf() of that
+ * value (and an empty string for a null), i.e., the same as the
+ * StringUtils.join(row, "\t") the plugins used before; the rows are
+ * terminated with "\n".
+ *
+ * Not thread-safe.
+ */
+public class TabDelimitedFileWriter implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    // the largest number of bytes a single char can take in UTF-8 (a
+    // surrogate pair takes 4 bytes, but for 2 chars):
+    private static final int MAX_BYTES_PER_CHAR = 3;
+    private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0.0d);
+    // Double.toString() and Float.toString() switch to the scientific
+    // notation at this magnitude:
+    private static final double SCIENTIFIC_NOTATION_THRESHOLD = 1.0e7;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position = 0;
+    private boolean rowStarted = false;
+    private long rowCount = 0;
+    // scratch space for formatting the digits of integers:
+    private final byte[] digits = new byte[20];
+
+    public TabDelimitedFileWriter(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    public TabDelimitedFileWriter(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    public TabDelimitedFileWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 64)];
+    }
+
+    /**
+     * Appends a field to the current row; a null is written as an empty
+     * field. The string is written as is: escaping the tabs and the new
+     * lines in it is up to the caller.
+     */
+    public TabDelimitedFileWriter write(String value) throws IOException {
+        startField();
+        if (value != null) {
+            writeChars(value);
+        }
+        return this;
+    }
+
+    public TabDelimitedFileWriter write(long value) throws IOException {
+        startField();
+        writeLong(value);
+        return this;
+    }
+
+    /**
+     * Appends a double, formatted the same way as Double.toString() does
+     * it. Integral values (by far the most common in the data we ingest)
+     * are formatted directly, without creating a String.
+     */
+    public TabDelimitedFileWriter write(double value) throws IOException {
+        startField();
+        if (isPlainIntegral(value)) {
+            writeLong((long) value);
+            ensureCapacity(2);
+            buffer[position++] = '.';
+            buffer[position++] = '0';
+        } else {
+            writeChars(Double.toString(value));
+        }
+        return this;
+    }
+
+    /**
+     * Appends a float, formatted the same way as Float.toString() does it.
+     */
+    public TabDelimitedFileWriter write(float value) throws IOException {
+        startField();
+        if (isPlainIntegral(value)) {
+            writeLong((long) value);
+            ensureCapacity(2);
+            buffer[position++] = '.';
+            buffer[position++] = '0';
+        } else {
+            writeChars(Float.toString(value));
+        }
+        return this;
+    }
+
+    /**
+     * Appends a field of any type, formatted as String.valueOf() would
+     * format it (a null is written as an empty field).
+     */
+    public TabDelimitedFileWriter write(Object value) throws IOException {
+        if (value instanceof String) {
+            return write((String) value);
+        } else if (value instanceof Double) {
+            return write(((Double) value).doubleValue());
+        } else if (value instanceof Float) {
+            return write(((Float) value).floatValue());
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return write(((Number) value).longValue());
+        }
+        return write(value == null ? null : value.toString());
+    }
+
+    /**
+     * Appends all the values as the fields of a complete row (for the
+     * plugins that assemble their rows in an array, or a list, first).
+     */
+    public void writeRow(Object[] values) throws IOException {
+        for (Object value : values) {
+            write(value);
+        }
+        endRow();
+    }
+
+    public void writeRow(Iterable<?> values) throws IOException {
+        for (Object value : values) {
+            write(value);
+        }
+        endRow();
+    }
+
+    public void endRow() throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = '\n';
+        rowStarted = false;
+        rowCount++;
+    }
+
+    /**
+     * @return the number of complete rows written so far
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void startField() throws IOException {
+        if (rowStarted) {
+            ensureCapacity(1);
+            buffer[position++] = '\t';
+        } else {
+            rowStarted = true;
+        }
+    }
+
+    private static boolean isPlainIntegral(double value) {
+        return value == Math.rint(value)
+                && Math.abs(value) < SCIENTIFIC_NOTATION_THRESHOLD
+                && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO_BITS;
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeChars(Long.toString(value));
+            return;
+        }
+        ensureCapacity(digits.length + 1);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        int length = digits.length - i;
+        System.arraycopy(digits, i, buffer, position, length);
+        position += length;
+    }
+
+    private void writeChars(String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (position + MAX_BYTES_PER_CHAR + 1 > buffer.length) {
+                flushBuffer();
+            }
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // an unpaired surrogate can't be encoded; this is what an
+                // OutputStreamWriter would write in its place:
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
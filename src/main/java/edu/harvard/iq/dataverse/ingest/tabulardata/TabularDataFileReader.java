@@ -24,6 +24,7 @@ import edu.harvard.iq.dataverse.ingest.tabulardata.spi.*;
 //import edu.harvard.iq.dataverse.ingest.plugin.metadata.*;
 import java.io.*;
 import static java.lang.System.*;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Matcher;
 
 /**
@@ -177,4 +178,145 @@ public abstract class TabularDataFileReader {
         return escapedString;
     }
 
+    /**
+     * Whether Double.parseDouble(s) would succeed. The plain decimal numbers
+     * (i.e., virtually all the numbers in a data file) are recognized without
+     * parsing them, or creating any objects; anything else is left to
+     * Double.parseDouble(), which only happens once per variable, since the
+     * variable is no longer numeric once a value fails to parse.
+     */
+    protected static boolean isDouble(String s) {
+        if (isDecimalNumber(s)) {
+            return true;
+        }
+        try {
+            Double.parseDouble(s);
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    // [+-]? (digits [. digits?] | . digits) ([eE] [+-]? digits)? [fFdD]?
+    private static boolean isDecimalNumber(String s) {
+        int length = s.length();
+        int i = 0;
+        if (i < length && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+            i++;
+        }
+        int digits = 0;
+        while (i < length && isAsciiDigit(s.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < length && s.charAt(i) == '.') {
+            i++;
+            while (i < length && isAsciiDigit(s.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < length && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < length && isAsciiDigit(s.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        if (i < length && "fFdD".indexOf(s.charAt(i)) >= 0) {
+            i++;
+        }
+        return i == length;
+    }
+
+    protected static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * A temporary file of cell values, for the readers that can only decide
+     * how to format the values of a variable once they have seen all of
+     * them: the cells are written as they are read, then read back, in the
+     * same order, to write the final tab file.
+     *
+     * Each value is stored as the length of its UTF-8 encoding (-1 for a null),
+     * followed by the encoded value; reading them back involves no parsing.
+     * The file is deleted when the spool is closed.
+     */
+    protected static class CellSpool implements Closeable {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final File file;
+        private DataOutputStream out;
+        private DataInputStream in;
+        private byte[] bytes = new byte[256];
+
+        public CellSpool(String prefix) throws IOException {
+            file = File.createTempFile(prefix, ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        }
+
+        public void write(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+
+        /**
+         * Ends the writing; the values can be read back from the first one.
+         */
+        public void rewind() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            if (in != null) {
+                in.close();
+            }
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        }
+
+        public String read() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            in.readFully(bytes, 0, length);
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+                if (in != null) {
+                    in.close();
+                }
+            } finally {
+                // deleted to prevent tmp from filling up
+                file.delete();
+            }
+        }
+    }
+
 }
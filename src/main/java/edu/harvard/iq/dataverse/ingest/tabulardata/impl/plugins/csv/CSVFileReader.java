@@ -19,12 +19,12 @@
  */
 package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.csv;
 
-import java.io.FileReader;
 import java.io.InputStreamReader;
 
 import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabDelimitedFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
@@ -32,27 +32,18 @@ import edu.harvard.iq.dataverse.util.BundleUtil;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
 import java.text.ParseException;
 import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Logger;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 
 /**
@@ -67,21 +58,19 @@ import org.apache.commons.csv.CSVRecord;
 public class CSVFileReader extends TabularDataFileReader {
 
     private static final Logger logger = Logger.getLogger(CSVFileReader.class.getPackage().getName());
-    private static final int DIGITS_OF_PRECISION_DOUBLE = 15;
-    private static final String FORMAT_IEEE754 = "%+#." + DIGITS_OF_PRECISION_DOUBLE + "e";
-    private MathContext doubleMathContext;
     private CSVFormat inFormat;
-    //private final Set<Character> firstNumCharSet = new HashSet<>();
 
     // DATE FORMATS
-    private static SimpleDateFormat[] DATE_FORMATS = new SimpleDateFormat[]{
+    // (SimpleDateFormat is not thread-safe, and several files may be
+    // ingested at the same time; so each reader has its own)
+    private final SimpleDateFormat[] dateFormats = new SimpleDateFormat[]{
         new SimpleDateFormat("yyyy-MM-dd"), //new SimpleDateFormat("yyyy/MM/dd"),
     //new SimpleDateFormat("MM/dd/yyyy"),
     //new SimpleDateFormat("MM-dd-yyyy"),
     };
 
     // TIME FORMATS
-    private static SimpleDateFormat[] TIME_FORMATS = new SimpleDateFormat[]{
+    private final SimpleDateFormat[] timeFormats = new SimpleDateFormat[]{
         // Date-time up to seconds with timezone, e.g. 2013-04-08 13:14:23 -0500
         new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z"),
         // Date-time up to seconds and no timezone, e.g. 2013-04-08 13:14:23
@@ -97,11 +86,6 @@ public class CSVFileReader extends TabularDataFileReader {
         }
     }
 
-    private void init() throws IOException {
-        doubleMathContext = new MathContext(DIGITS_OF_PRECISION_DOUBLE, RoundingMode.HALF_EVEN);
-        //firstNumCharSet.addAll(Arrays.asList(new Character[]{'+', '-', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9'}));
-    }
-
     /**
      * Reads a CSV file, converts it into a dataverse DataTable.
      *
@@ -111,8 +95,6 @@ public class CSVFileReader extends TabularDataFileReader {
      */
     @Override
     public TabularDataIngest read(BufferedInputStream stream, File dataFile) throws IOException {
-        init();
-
         if (stream == null) {
             throw new IOException(BundleUtil.getStringFromBundle("ingest.csv.nullStream"));
         }
@@ -122,7 +104,7 @@ public class CSVFileReader extends TabularDataFileReader {
         BufferedReader localBufferedReader = new BufferedReader(new InputStreamReader(stream));
 
         File tabFileDestination = File.createTempFile("data-", ".tab");
-        PrintWriter tabFileWriter = new PrintWriter(tabFileDestination.getAbsolutePath());
+        TabDelimitedFileWriter tabFileWriter = new TabDelimitedFileWriter(tabFileDestination);
 
         int lineCount = readFile(localBufferedReader, dataTable, tabFileWriter);
 
@@ -136,7 +118,7 @@ public class CSVFileReader extends TabularDataFileReader {
 
     }
 
-    public int readFile(BufferedReader csvReader, DataTable dataTable, PrintWriter finalOut) throws IOException {
+    public int readFile(BufferedReader csvReader, DataTable dataTable, TabDelimitedFileWriter finalOut) throws IOException {
 
         List<DataVariable> variableList = new ArrayList<>();
         CSVParser parser = new CSVParser(csvReader, inFormat.withHeader());
@@ -180,19 +162,16 @@ public class CSVFileReader extends TabularDataFileReader {
             isTimeVariable[i] = true;
         }
 
-        // First, "learning" pass.
-        // (we'll save the incoming stream in another temp file:)
+        // Single pass: the types of the variables are inferred as the records
+        // are read, and the cells are spooled, as they are, to a temporary
+        // file; the final tab file is then written from the spooled cells,
+        // once we know how each variable is to be formatted. (Re-reading
+        // the spooled cells is much cheaper than parsing the CSV again.)
         SimpleDateFormat[] selectedDateTimeFormat = new SimpleDateFormat[headers.size()];
         SimpleDateFormat[] selectedDateFormat = new SimpleDateFormat[headers.size()];
 
-        File firstPassTempFile = File.createTempFile("firstpass-", ".csv");
-
-        try (CSVPrinter csvFilePrinter = new CSVPrinter(
-                // TODO allow other parsers of tabular data to use this parser by changin inFormat
-                new FileWriter(firstPassTempFile.getAbsolutePath()), inFormat)) {
-            //Write  headers
-            csvFilePrinter.printRecord(headers.keySet());
-            for (CSVRecord record : parser.getRecords()) {
+        try (CellSpool spool = new CellSpool("csvspool-")) {
+            for (CSVRecord record : parser) {
                 // Checks if #records = #columns in header
                 if (!record.isConsistent()) {
                     List<String> args = Arrays.asList(new String[]{"" + (parser.getCurrentLineNumber() - 1),
@@ -203,36 +182,27 @@ public class CSVFileReader extends TabularDataFileReader {
 
                 for (i = 0; i < headers.size(); i++) {
                     String varString = record.get(i);
+                    spool.write(varString);
+
                     isIntegerVariable[i] = isIntegerVariable[i]
                                            && varString != null
                                            && (varString.isEmpty()
                                                || varString.equals("null")
-                                               || (StringUtils.isNumeric(varString)
-                                                    || (varString.substring(0,1).matches("[+-]") 
-                                                        && StringUtils.isNumeric(varString.substring(1)))));
+                                               || isInteger(varString));
                     if (isNumericVariable[i]) {
                         // If variable might be "numeric" test to see if this value is a parsable number:
                         if (varString != null && !varString.isEmpty()) {
-
-                            boolean isNumeric = false;
-                            boolean isInteger = false;
-
                             if (varString.equalsIgnoreCase("NaN")
                                 || varString.equalsIgnoreCase("NA")
                                 || varString.equalsIgnoreCase("Inf")
                                 || varString.equalsIgnoreCase("+Inf")
                                 || varString.equalsIgnoreCase("-Inf")
-                                || varString.equalsIgnoreCase("null")) {
+                                || varString.equalsIgnoreCase("null")
+                                || isDouble(varString)) {
                                 continue;
-                            } else {
-                                try {
-                                    Double testDoubleValue = new Double(varString);
-                                    continue;
-                                } catch (NumberFormatException ex) {
-                                    // the token failed to parse as a double
-                                    // so the column is a string variable.
-                                }
                             }
+                            // the token failed to parse as a double
+                            // so the column is a string variable.
                             isNumericVariable[i] = false;
                         }
                     }
@@ -256,7 +226,7 @@ public class CSVFileReader extends TabularDataFileReader {
                                         isTime = true;
                                     }
                                 } else {
-                                    for (SimpleDateFormat format : TIME_FORMATS) {
+                                    for (SimpleDateFormat format : timeFormats) {
                                         ParsePosition pos = new ParsePosition(0);
                                         dateResult = format.parse(varString, pos);
                                         if (dateResult != null && pos.getIndex() == varString.length()) {
@@ -291,7 +261,7 @@ public class CSVFileReader extends TabularDataFileReader {
                                 // other values in this column match it... but we
                                 // only have one, as of now, so it should be ok.
                                 // -- L.A. 4.0 beta
-                                for (SimpleDateFormat format : DATE_FORMATS) {
+                                for (SimpleDateFormat format : dateFormats) {
                                     // Strict parsing - it will throw an
                                     // exception if it doesn't parse!
                                     format.setLenient(false);
@@ -309,160 +279,143 @@ public class CSVFileReader extends TabularDataFileReader {
                         }
                     }
                 }
-
-                csvFilePrinter.printRecord(record);
             }
-        }
-        dataTable.setCaseQuantity(parser.getRecordNumber());
-        parser.close();
-        csvReader.close();
+            dataTable.setCaseQuantity(parser.getRecordNumber());
+            parser.close();
+            csvReader.close();
 
-        // Re-type the variables that we've determined are numerics:
-        for (i = 0; i < headers.size(); i++) {
-            if (isNumericVariable[i]) {
-                dataTable.getDataVariables().get(i).setTypeNumeric();
+            // Re-type the variables that we've determined are numerics:
+            for (i = 0; i < headers.size(); i++) {
+                if (isNumericVariable[i]) {
+                    dataTable.getDataVariables().get(i).setTypeNumeric();
 
-                if (isIntegerVariable[i]) {
-                    dataTable.getDataVariables().get(i).setIntervalDiscrete();
-                } else {
-                    dataTable.getDataVariables().get(i).setIntervalContinuous();
+                    if (isIntegerVariable[i]) {
+                        dataTable.getDataVariables().get(i).setIntervalDiscrete();
+                    } else {
+                        dataTable.getDataVariables().get(i).setIntervalContinuous();
+                    }
+                } else if (isDateVariable[i] && selectedDateFormat[i] != null) {
+                    // Dates are still Strings, i.e., they are "character" and "discrete";
+                    // But we add special format values for them:
+                    dataTable.getDataVariables().get(i).setFormat(dateFormats[0].toPattern());
+                    dataTable.getDataVariables().get(i).setFormatCategory("date");
+                } else if (isTimeVariable[i] && selectedDateTimeFormat[i] != null) {
+                    // Same for time values:
+                    dataTable.getDataVariables().get(i).setFormat(selectedDateTimeFormat[i].toPattern());
+                    dataTable.getDataVariables().get(i).setFormatCategory("time");
                 }
-            } else if (isDateVariable[i] && selectedDateFormat[i] != null) {
-                // Dates are still Strings, i.e., they are "character" and "discrete";
-                // But we add special format values for them:
-                dataTable.getDataVariables().get(i).setFormat(DATE_FORMATS[0].toPattern());
-                dataTable.getDataVariables().get(i).setFormatCategory("date");
-            } else if (isTimeVariable[i] && selectedDateTimeFormat[i] != null) {
-                // Same for time values:
-                dataTable.getDataVariables().get(i).setFormat(selectedDateTimeFormat[i].toPattern());
-                dataTable.getDataVariables().get(i).setFormatCategory("time");
             }
-        }
-        // Second, final pass.
-        try (BufferedReader secondPassReader = new BufferedReader(new FileReader(firstPassTempFile))) {
-            parser = new CSVParser(secondPassReader, inFormat.withHeader());
-            String[] caseRow = new String[headers.size()];
-
-            for (CSVRecord record : parser) {
-                if (!record.isConsistent()) {
-                    List<String> args = Arrays.asList(new String[]{"" + (parser.getCurrentLineNumber() - 1),
-                                                                   "" + headers.size(),
-                                                                   "" + record.size()});
-                    throw new IOException(BundleUtil.getStringFromBundle("ingest.csv.recordMismatch", args));
-                }
 
+            // Write the final tab file from the spooled cells:
+            long caseQuantity = dataTable.getCaseQuantity();
+            spool.rewind();
+            for (long row = 0; row < caseQuantity; row++) {
                 for (i = 0; i < headers.size(); i++) {
-                    String varString = record.get(i);
+                    String varString = spool.read();
                     if (isNumericVariable[i]) {
-                        if (varString == null || varString.isEmpty() || varString.equalsIgnoreCase("NA")) {
-                            // Missing value - represented as an empty string in
-                            // the final tab file
-                            caseRow[i] = "";
-                        } else if (varString.equalsIgnoreCase("NaN")) {
-                            // "Not a Number" special value:
-                            caseRow[i] = "NaN";
-                        } else if (varString.equalsIgnoreCase("Inf")
-                                || varString.equalsIgnoreCase("+Inf")) {
-                            // Positive infinity:
-                            caseRow[i] = "Inf";
-                        } else if (varString.equalsIgnoreCase("-Inf")) {
-                            // Negative infinity:
-                            caseRow[i] = "-Inf";
-                        } else if (varString.equalsIgnoreCase("null")) {
-                            // By request from Gus - "NULL" is recognized as a
-                            // numeric zero:
-                            caseRow[i] = isIntegerVariable[i] ? "0" : "0.0";
-                        } else {
-                            /* No re-formatting is done on any other numeric values.
-                             * We'll save them as they were, for archival purposes.
-                             * The alternative solution - formatting in sci. notation
-                             * is commented-out below.
-                             */
-                            caseRow[i] = varString;
-                            /*
-                             if (isIntegerVariable[i]) {
-                                try {
-                                    Integer testIntegerValue = new Integer(varString);
-                                    caseRow[i] = testIntegerValue.toString();
-                                } catch (NumberFormatException ex) {
-                                    throw new IOException("Failed to parse a value recognized as an integer in the first pass! (?)");
-                                }
-                            } else {
-                                try {
-                                    Double testDoubleValue = new Double(varString);
-                                    if (testDoubleValue.equals(0.0)) {
-                                        caseRow[i] = "0.0";
-                                    } else {
-                                                                            // One possible implementation:
-                                        //
-                                        // Round our fractional values to 15 digits
-                                        // (minimum number of digits of precision guaranteed by
-                                        // type Double) and format the resulting representations
-                                        // in a IEEE 754-like "scientific notation" - for ex.,
-                                        // 753.24 will be encoded as 7.5324e2
-                                        BigDecimal testBigDecimal = new BigDecimal(varString, doubleMathContext);
-                                        caseRow[i] = String.format(FORMAT_IEEE754, testBigDecimal);
-
-                                        // Strip meaningless zeros and extra + signs:
-                                        caseRow[i] = caseRow[i].replaceFirst("00*e", "e");
-                                        caseRow[i] = caseRow[i].replaceFirst("\\.e", ".0e");
-                                        caseRow[i] = caseRow[i].replaceFirst("e\\+00", "");
-                                        caseRow[i] = caseRow[i].replaceFirst("^\\+", "");
-                                    }
-                                } catch (NumberFormatException ex) {
-                                    throw new IOException("Failed to parse a value recognized as numeric in the first pass! (?)");
-                                }
-                            }
-                             */
-                        }
+                        finalOut.write(formatNumeric(varString, isIntegerVariable[i]));
                     } else if (isTimeVariable[i] || isDateVariable[i]) {
-                        // Time and Dates are stored NOT quoted (don't ask).
-                        if (varString != null) {
-                            // Dealing with quotes:
-                            // remove the leading and trailing quotes, if present:
-                            varString = varString.replaceFirst("^\"*", "");
-                            varString = varString.replaceFirst("\"*$", "");
-                            caseRow[i] = varString;
-                        } else {
-                            caseRow[i] = "";
-                        }
+                        finalOut.write(formatDateTime(varString));
                     } else {
-                        // Treat as a String:
-                        // Strings are stored in tab files quoted;
-                        // Missing values are stored as an empty string
-                        // between two tabs (or one tab and the new line);
-                        // Empty strings stored as "" (quoted empty string).
-                        // For the purposes  of this CSV ingest reader, we are going
-                        // to assume that all the empty strings in the file are
-                        // indeed empty strings, and NOT missing values:
-                        if (varString != null) {
-                            // escape the quotes, newlines, and tabs:
-                            varString = varString.replace("\"", "\\\"");
-                            varString = varString.replace("\n", "\\n");
-                            varString = varString.replace("\t", "\\t");
-                            // final pair of quotes:
-                            varString = "\"" + varString + "\"";
-                            caseRow[i] = varString;
-                        } else {
-                            caseRow[i] = "\"\"";
-                        }
+                        finalOut.write(formatString(varString));
                     }
                 }
-                finalOut.println(StringUtils.join(caseRow, "\t"));
+                finalOut.endRow();
             }
         }
-        long linecount = parser.getRecordNumber();
         finalOut.close();
-        parser.close();
-        logger.fine("Tmp File: " + firstPassTempFile);
-        // Firstpass file is deleted to prevent tmp from filling up.
-        firstPassTempFile.delete();
-        if (dataTable.getCaseQuantity().intValue() != linecount) {
-            List<String> args = Arrays.asList(new String[]{"" + dataTable.getCaseQuantity().intValue(),
-                                                           "" + linecount});
-            throw new IOException(BundleUtil.getStringFromBundle("ingest.csv.line_mismatch", args));
+        return dataTable.getCaseQuantity().intValue();
+    }
+
+    private static String formatNumeric(String varString, boolean isInteger) {
+        if (varString == null || varString.isEmpty() || varString.equalsIgnoreCase("NA")) {
+            // Missing value - represented as an empty string in
+            // the final tab file
+            return "";
+        } else if (varString.equalsIgnoreCase("NaN")) {
+            // "Not a Number" special value:
+            return "NaN";
+        } else if (varString.equalsIgnoreCase("Inf")
+                || varString.equalsIgnoreCase("+Inf")) {
+            // Positive infinity:
+            return "Inf";
+        } else if (varString.equalsIgnoreCase("-Inf")) {
+            // Negative infinity:
+            return "-Inf";
+        } else if (varString.equalsIgnoreCase("null")) {
+            // By request from Gus - "NULL" is recognized as a
+            // numeric zero:
+            return isInteger ? "0" : "0.0";
+        }
+        // No re-formatting is done on any other numeric values.
+        // We'll save them as they were, for archival purposes.
+        return varString;
+    }
+
+    private static String formatDateTime(String varString) {
+        // Time and Dates are stored NOT quoted (don't ask).
+        if (varString == null) {
+            return "";
+        }
+        // Dealing with quotes:
+        // remove the leading and trailing quotes, if present:
+        int start = 0;
+        int end = varString.length();
+        while (start < end && varString.charAt(start) == '"') {
+            start++;
+        }
+        while (end > start && varString.charAt(end - 1) == '"') {
+            end--;
+        }
+        return varString.substring(start, end);
+    }
+
+    private static String formatString(String varString) {
+        // Treat as a String:
+        // Strings are stored in tab files quoted;
+        // Missing values are stored as an empty string
+        // between two tabs (or one tab and the new line);
+        // Empty strings stored as "" (quoted empty string).
+        // For the purposes  of this CSV ingest reader, we are going
+        // to assume that all the empty strings in the file are
+        // indeed empty strings, and NOT missing values:
+        if (varString == null) {
+            return "\"\"";
+        }
+        StringBuilder quoted = new StringBuilder(varString.length() + 2);
+        quoted.append('"');
+        for (int i = 0; i < varString.length(); i++) {
+            // escape the quotes, newlines, and tabs:
+            char c = varString.charAt(i);
+            if (c == '"') {
+                quoted.append("\\\"");
+            } else if (c == '\n') {
+                quoted.append("\\n");
+            } else if (c == '\t') {
+                quoted.append("\\t");
+            } else {
+                quoted.append(c);
+            }
+        }
+        // final pair of quotes:
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * The same test as StringUtils.isNumeric(s), allowing a leading sign
+     * (without creating any objects).
+     */
+    static boolean isInteger(String s) {
+        int start = s.length() > 0 && (s.charAt(0) == '+' || s.charAt(0) == '-') ? 1 : 0;
+        if (start == s.length()) {
+            return false;
+        }
+        for (int i = start; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
         }
-        return (int) linecount;
+        return true;
     }
 
 }
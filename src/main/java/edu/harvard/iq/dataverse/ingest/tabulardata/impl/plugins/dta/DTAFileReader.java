@@ -22,11 +22,8 @@ package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.dta;
 
 import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InvalidObjectException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.text.DecimalFormat;
@@ -56,6 +53,7 @@ import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabDelimitedFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
@@ -1693,15 +1691,12 @@ public class DTAFileReader extends TabularDataFileReader{
         }
 
         // create a File object to save the tab-delimited data file
-        FileOutputStream fileOutTab = null;
-        PrintWriter pwout = null;
         File tabDelimitedDataFile = File.createTempFile("tempTabfile.", ".tab");
 
         // save the temp tab-delimited file in the return ingest object:        
         ingesteddata.setTabDelimitedFile(tabDelimitedDataFile);
 
-        fileOutTab = new FileOutputStream(tabDelimitedDataFile);
-        pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
+        TabDelimitedFileWriter tabWriter = new TabDelimitedFileWriter(tabDelimitedDataFile);
 
         /* Should we lose this dateFormat thing in 4.0? 
          * the UNF should be calculatable on the app side solely from the data
@@ -1720,9 +1715,8 @@ public class DTAFileReader extends TabularDataFileReader{
          */
         //String[][] dateFormat = new String[nvar][nobs];
 
+        byte[] dataRowBytes = new byte[bytes_per_row];
         for (int i = 0; i < nobs; i++) {
-            byte[] dataRowBytes = new byte[bytes_per_row];
-            Object[] dataRow = new Object[nvar];
 
             int nbytes = stream.read(dataRowBytes, 0, bytes_per_row);
 
@@ -1764,9 +1758,9 @@ public class DTAFileReader extends TabularDataFileReader{
                                 dbgLog.finer(i + "-th row " + columnCounter
                                         + "=th column byte MV=" + byte_datum);
                             }
-                            dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                            tabWriter.write(MissingValueForTabDelimitedFile);
                         } else {
-                            dataRow[columnCounter] = byte_datum;
+                            tabWriter.write(byte_datum);
                         }
 
                         byte_offset++;
@@ -1791,7 +1785,7 @@ public class DTAFileReader extends TabularDataFileReader{
                                 dbgLog.finer(i + "-th row " + columnCounter
                                         + "=th column stata long missing value=" + short_datum);
                             }
-                            dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                            tabWriter.write(MissingValueForTabDelimitedFile);
                         } else {
 
                             if (isDateTimeDatum) {
@@ -1800,12 +1794,12 @@ public class DTAFileReader extends TabularDataFileReader{
                                 if (dbgLog.isLoggable(Level.FINER)) {
                                     dbgLog.finer(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
                                 }
-                                dataRow[columnCounter] = ddt.decodedDateTime;
+                                tabWriter.write(ddt.decodedDateTime);
                                 //dateFormat[columnCounter][i] = ddt.format;
                                 dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
 
                             } else {
-                                dataRow[columnCounter] = short_datum;
+                                tabWriter.write(short_datum);
                             }
                         }
                         byte_offset += 2;
@@ -1832,18 +1826,18 @@ public class DTAFileReader extends TabularDataFileReader{
                                 //dbgLog.fine(i + "-th row " + columnCounter
                                 //        + "=th column stata long missing value=" + int_datum);
                             }
-                            dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                            tabWriter.write(MissingValueForTabDelimitedFile);
                         } else {
                             if (isDateTimeDatum) {
                                 DecodedDateTime ddt = decodeDateTimeData("int", variableFormat, Integer.toString(int_datum));
                                 if (dbgLog.isLoggable(Level.FINER)) {
                                     dbgLog.finer(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
                                 }
-                                dataRow[columnCounter] = ddt.decodedDateTime;
+                                tabWriter.write(ddt.decodedDateTime);
                                 dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
 
                             } else {
-                                dataRow[columnCounter] = int_datum;
+                                tabWriter.write(int_datum);
                             }
 
                         }
@@ -1868,7 +1862,7 @@ public class DTAFileReader extends TabularDataFileReader{
                                 dbgLog.finer(i + "-th row " + columnCounter
                                         + "=th column float missing value=" + float_datum);
                             }
-                            dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                            tabWriter.write(MissingValueForTabDelimitedFile);
 
                         } else {
 
@@ -1877,10 +1871,10 @@ public class DTAFileReader extends TabularDataFileReader{
                                 if (dbgLog.isLoggable(Level.FINER)) {
                                     dbgLog.finer(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
                                 }
-                                dataRow[columnCounter] = ddt.decodedDateTime;
+                                tabWriter.write(ddt.decodedDateTime);
                                 dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
                             } else {
-                                dataRow[columnCounter] = float_datum;
+                                tabWriter.write(float_datum);
                                 // This may be temporary - but for now (as in, while I'm testing 
                                 // 4.0 ingest against 3.* ingest, I need to be able to tell if a 
                                 // floating point value was a single, or double float in the 
@@ -1906,7 +1900,7 @@ public class DTAFileReader extends TabularDataFileReader{
                                 dbgLog.finer(i + "-th row " + columnCounter
                                         + "=th column double missing value=" + double_datum);
                             }
-                            dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                            tabWriter.write(MissingValueForTabDelimitedFile);
                         } else {
 
                             if (isDateTimeDatum) {
@@ -1914,10 +1908,10 @@ public class DTAFileReader extends TabularDataFileReader{
                                 if (dbgLog.isLoggable(Level.FINER)) {
                                     dbgLog.finer(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
                                 }
-                                dataRow[columnCounter] = ddt.decodedDateTime;
+                                tabWriter.write(ddt.decodedDateTime);
                                 dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
                             } else {
-                                dataRow[columnCounter] = doubleNumberFormatter.format(double_datum);
+                                tabWriter.write(doubleNumberFormatter.format(double_datum));
                             }
 
                         }
@@ -1949,7 +1943,7 @@ public class DTAFileReader extends TabularDataFileReader{
                              * Is there such a thing as a missing value for a String in Stata?
                              * -- L.A. 4.0
                              */
-                            dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                            tabWriter.write(MissingValueForTabDelimitedFile);
                         } else {
                             /*
                              * Some special characters, like new lines and tabs need to 
@@ -1972,7 +1966,7 @@ public class DTAFileReader extends TabularDataFileReader{
                             // Although the question still remains - is it even possible 
                             // to store an empty string, that's not a missing value, in Stata? 
                             // - see the comment in the missing value case above. -- L.A. 4.0
-                            dataRow[columnCounter] = "\"" + escapedString + "\"";
+                            tabWriter.write("\"" + escapedString + "\"");
                         }
                         byte_offset += strVarLength;
                         break;
@@ -1984,16 +1978,12 @@ public class DTAFileReader extends TabularDataFileReader{
                 } // switch
             } // for-columnCounter
 
-            // Dump the row of data to the tab-delimited file we are producing:
-            pwout.println(StringUtils.join(dataRow, "\t"));
-
-            if (dbgLog.isLoggable(Level.FINE)) {
-                //dbgLog.fine(i + "-th row's data={" + StringUtils.join(dataRow, ",") + "};");
-            }
+            // End the row of data in the tab-delimited file we are producing:
+            tabWriter.endRow();
 
         }  // for- i (row)
 
-        pwout.close();
+        tabWriter.close();
 
         if (dbgLog.isLoggable(Level.FINE)) {
             dbgLog.fine("variableTypes:\n" + Arrays.deepToString(variableTypes));
@@ -3,10 +3,7 @@ package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.dta;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.ParseException;
@@ -24,16 +21,17 @@ import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabDelimitedFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
-import org.apache.commons.lang3.StringUtils;
 
 /**
  * ingest plugin for Stata 13-15 (117-119) DTA file format. A copy and paste from
@@ -728,14 +726,11 @@ public class NewDTAFileReader extends TabularDataFileReader {
         // save the temp tab-delimited file in the return ingest object:        
         ingesteddata.setTabDelimitedFile(tabDelimitedDataFile);
 
-        FileOutputStream fileOutTab = new FileOutputStream(tabDelimitedDataFile);
-        PrintWriter pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
+        TabDelimitedFileWriter tabWriter = new TabDelimitedFileWriter(tabDelimitedDataFile);
 
         logger.fine("Beginning to read data stream.");
 
         for (int i = 0; i < nobs; i++) {
-            Object[] dataRow = new Object[nvar];
-
             // TODO: 
             // maybe intercept any potential exceptions here, and add more 
             // diagnostic info, before re-throwing...
@@ -760,42 +755,56 @@ public class NewDTAFileReader extends TabularDataFileReader {
                 if (varType.equals("Byte")) { // signed
                     byte byte_datum = reader.readByte();
 
-                    logger.fine(i + "-th row " + columnCounter
-                            + "=th column byte =" + byte_datum);
-                    if (byte_datum >= BYTE_MISSING_VALUE) {
+                    if (logger.isLoggable(Level.FINE)) {
                         logger.fine(i + "-th row " + columnCounter
-                                + "=th column byte MV=" + byte_datum);
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                                + "=th column byte =" + byte_datum);
+                    }
+                    if (byte_datum >= BYTE_MISSING_VALUE) {
+                        if (logger.isLoggable(Level.FINE)) {
+                            logger.fine(i + "-th row " + columnCounter
+                                    + "=th column byte MV=" + byte_datum);
+                        }
+                        tabWriter.write(MissingValueForTabDelimitedFile);
                     } else {
-                        dataRow[columnCounter] = byte_datum;
-                        logger.fine(i + "-th row " + columnCounter
-                                + "-th column byte value=" + byte_datum);
+                        tabWriter.write(byte_datum);
+                        if (logger.isLoggable(Level.FINE)) {
+                            logger.fine(i + "-th row " + columnCounter
+                                    + "-th column byte value=" + byte_datum);
+                        }
                     }
 
                     byte_offset++;
                 } else if (varType.equals("Integer")) { // signed
                     short short_datum = (short) reader.readShort();
 
-                    logger.fine(i + "-th row " + columnCounter
-                            + "=th column stata int =" + short_datum);
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine(i + "-th row " + columnCounter
+                                + "=th column stata int =" + short_datum);
+                    }
 
                     if (short_datum >= INT_MISSIG_VALUE) {
-                        logger.fine(i + "-th row " + columnCounter
-                                + "=th column stata long missing value=" + short_datum);
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                        if (logger.isLoggable(Level.FINE)) {
+                            logger.fine(i + "-th row " + columnCounter
+                                    + "=th column stata long missing value=" + short_datum);
+                        }
+                        tabWriter.write(MissingValueForTabDelimitedFile);
                     } else {
 
                         if (isDateTimeDatum) {
 
                             DecodedDateTime ddt = decodeDateTimeData("short", variableFormat, Short.toString(short_datum));
-                            logger.fine(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
-                            dataRow[columnCounter] = ddt.decodedDateTime;
+                            if (logger.isLoggable(Level.FINE)) {
+                                logger.fine(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
+                            }
+                            tabWriter.write(ddt.decodedDateTime);
                             dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
 
                         } else {
-                            dataRow[columnCounter] = short_datum;
-                            logger.fine(i + "-th row " + columnCounter
-                                    + "-th column \"integer\" value=" + short_datum);
+                            tabWriter.write(short_datum);
+                            if (logger.isLoggable(Level.FINE)) {
+                                logger.fine(i + "-th row " + columnCounter
+                                        + "-th column \"integer\" value=" + short_datum);
+                            }
                         }
                     }
                     byte_offset += 2;
@@ -803,18 +812,22 @@ public class NewDTAFileReader extends TabularDataFileReader {
                     int int_datum = reader.readInt();
 
                     if (int_datum >= LONG_MISSING_VALUE) {
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                        tabWriter.write(MissingValueForTabDelimitedFile);
                     } else {
                         if (isDateTimeDatum) {
                             DecodedDateTime ddt = decodeDateTimeData("int", variableFormat, Integer.toString(int_datum));
-                            logger.fine(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
-                            dataRow[columnCounter] = ddt.decodedDateTime;
+                            if (logger.isLoggable(Level.FINE)) {
+                                logger.fine(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
+                            }
+                            tabWriter.write(ddt.decodedDateTime);
                             dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
 
                         } else {
-                            dataRow[columnCounter] = int_datum;
-                            logger.fine(i + "-th row " + columnCounter
-                                    + "-th column \"long\" value=" + int_datum);
+                            tabWriter.write(int_datum);
+                            if (logger.isLoggable(Level.FINE)) {
+                                logger.fine(i + "-th row " + columnCounter
+                                        + "-th column \"long\" value=" + int_datum);
+                            }
                         }
 
                     }
@@ -823,24 +836,32 @@ public class NewDTAFileReader extends TabularDataFileReader {
 
                     float float_datum = reader.readFloat();
 
-                    logger.fine(i + "-th row " + columnCounter
-                            + "=th column float =" + float_datum);
-                    if (FLOAT_MISSING_VALUE_SET.contains(float_datum)) {
+                    if (logger.isLoggable(Level.FINE)) {
                         logger.fine(i + "-th row " + columnCounter
-                                + "=th column float missing value=" + float_datum);
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                                + "=th column float =" + float_datum);
+                    }
+                    if (FLOAT_MISSING_VALUE_SET.contains(float_datum)) {
+                        if (logger.isLoggable(Level.FINE)) {
+                            logger.fine(i + "-th row " + columnCounter
+                                    + "=th column float missing value=" + float_datum);
+                        }
+                        tabWriter.write(MissingValueForTabDelimitedFile);
 
                     } else {
 
                         if (isDateTimeDatum) {
                             DecodedDateTime ddt = decodeDateTimeData("float", variableFormat, doubleNumberFormatter.format(float_datum));
-                            logger.fine(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
-                            dataRow[columnCounter] = ddt.decodedDateTime;
+                            if (logger.isLoggable(Level.FINE)) {
+                                logger.fine(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
+                            }
+                            tabWriter.write(ddt.decodedDateTime);
                             dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
                         } else {
-                            dataRow[columnCounter] = float_datum;
-                            logger.fine(i + "-th row " + columnCounter
-                                    + "=th column float value:" + float_datum);
+                            tabWriter.write(float_datum);
+                            if (logger.isLoggable(Level.FINE)) {
+                                logger.fine(i + "-th row " + columnCounter
+                                        + "=th column float value:" + float_datum);
+                            }
                             // This may be temporary - but for now (as in, while I'm testing 
                             // 4.0 ingest against 3.* ingest, I need to be able to tell if a 
                             // floating point value was a single, or double float in the 
@@ -855,21 +876,27 @@ public class NewDTAFileReader extends TabularDataFileReader {
 
                     double double_datum = reader.readDouble();
                     if (DOUBLE_MISSING_VALUE_SET.contains(double_datum)) {
-                        logger.finer(i + "-th row " + columnCounter
-                                + "=th column double missing value=" + double_datum);
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                        if (logger.isLoggable(Level.FINER)) {
+                            logger.finer(i + "-th row " + columnCounter
+                                    + "=th column double missing value=" + double_datum);
+                        }
+                        tabWriter.write(MissingValueForTabDelimitedFile);
                     } else {
 
                         if (isDateTimeDatum) {
                             DecodedDateTime ddt = decodeDateTimeData("double", variableFormat, doubleNumberFormatter.format(double_datum));
-                            logger.finer(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
-                            dataRow[columnCounter] = ddt.decodedDateTime;
+                            if (logger.isLoggable(Level.FINER)) {
+                                logger.finer(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
+                            }
+                            tabWriter.write(ddt.decodedDateTime);
                             dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
                         } else {
-                            logger.fine(i + "-th row " + columnCounter
-                                    + "=th column double value:" + double_datum); //doubleNumberFormatter.format(double_datum));
+                            if (logger.isLoggable(Level.FINE)) {
+                                logger.fine(i + "-th row " + columnCounter
+                                        + "=th column double value:" + double_datum); //doubleNumberFormatter.format(double_datum));
+                            }
 
-                            dataRow[columnCounter] = double_datum; //doubleNumberFormatter.format(double_datum);
+                            tabWriter.write(double_datum); //doubleNumberFormatter.format(double_datum);
                         }
 
                     }
@@ -877,16 +904,20 @@ public class NewDTAFileReader extends TabularDataFileReader {
                 } else if (varType.matches("^STR[1-9][0-9]*")) {
                     // String case
                     int strVarLength = variableByteLengths[columnCounter];
-                    logger.fine(i + "-th row " + columnCounter
-                            + "=th column is a string (" + strVarLength + " bytes)");
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine(i + "-th row " + columnCounter
+                                + "=th column is a string (" + strVarLength + " bytes)");
+                    }
                     // In STATA13+, STRF strings *MUST*
                     // be limited to ASCII. UTF8 strings can be stored as 
                     // STRLs. 
                     String string_datum = reader.readString(strVarLength);
                     if (string_datum.equals("")) {
 
-                        logger.fine(i + "-th row " + columnCounter
-                                + "=th column string missing value=" + string_datum);
+                        if (logger.isLoggable(Level.FINE)) {
+                            logger.fine(i + "-th row " + columnCounter
+                                    + "=th column string missing value=" + string_datum);
+                        }
 
                         /* Note: 
                          * In Stata, an empty string ("") in a String vector is 
@@ -896,7 +927,7 @@ public class NewDTAFileReader extends TabularDataFileReader {
                          * (This of course means that it's simply not possible 
                          * to store actual empty strings in Stata)
                          */
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
+                        tabWriter.write(MissingValueForTabDelimitedFile);
                     } else {
                         /*
                          * Some special characters, like new lines and tabs need to 
@@ -904,7 +935,7 @@ public class NewDTAFileReader extends TabularDataFileReader {
                          * structure! 
                          */
 
-                        dataRow[columnCounter] = escapeCharacterString(string_datum);
+                        tabWriter.write(escapeCharacterString(string_datum));
                     }
                     byte_offset += strVarLength;
                 } else if (varType.equals("STRL")) {
@@ -931,7 +962,7 @@ public class NewDTAFileReader extends TabularDataFileReader {
                     }
                     // create v,o pair; save, for now:
                     String voPair = v + "," + o;
-                    dataRow[columnCounter] = voPair;
+                    tabWriter.write(voPair);
 
                     // TODO: 
                     // would it make sense to validate v and o here? 
@@ -960,13 +991,15 @@ public class NewDTAFileReader extends TabularDataFileReader {
             }
 
             // Dump the row of data to the tab-delimited file:
-            pwout.println(StringUtils.join(dataRow, "\t"));
+            tabWriter.endRow();
 
-            logger.fine("finished reading " + i + "-th row");
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("finished reading " + i + "-th row");
+            }
 
         }  // for (rows)
 
-        pwout.close();
+        tabWriter.close();
 
         reader.readClosingTag(TAG_DATA);
         logger.fine("NewDTA Ingest: readData(): end.");
@@ -989,8 +1022,7 @@ public class NewDTAFileReader extends TabularDataFileReader {
             scanner.useDelimiter("\\n");
 
             File finalTabFile = File.createTempFile("finalTabfile.", ".tab");
-            FileOutputStream fileOutTab = new FileOutputStream(finalTabFile);
-            PrintWriter pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
+            TabDelimitedFileWriter tabWriter = new TabDelimitedFileWriter(finalTabFile);
 
             logger.fine("Setting the tab-delimited file to " + finalTabFile.getName());
             ingesteddata.setTabDelimitedFile(finalTabFile);
@@ -1052,12 +1084,12 @@ public class NewDTAFileReader extends TabularDataFileReader {
                         }
                     }
                     // Dump the row of data to the tab-delimited file:
-                    pwout.println(StringUtils.join(line, "\t"));
+                    tabWriter.writeRow(line);
                 }
             }
 
             scanner.close();
-            pwout.close();
+            tabWriter.close();
 
             reader.readClosingTag(TAG_STRLS);
         } else {
@@ -1329,8 +1361,10 @@ public class NewDTAFileReader extends TabularDataFileReader {
 
     private DecodedDateTime decodeDateTimeData(String storageType, String FormatType, String rawDatum) throws IOException {
 
-        logger.fine("(storageType, FormatType, rawDatum)=("
-                + storageType + ", " + FormatType + ", " + rawDatum + ")");
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("(storageType, FormatType, rawDatum)=("
+                    + storageType + ", " + FormatType + ", " + rawDatum + ")");
+        }
         /*
          *         Historical note:
                    pseudofunctions,  td(), tw(), tm(), tq(), and th()
@@ -1349,15 +1383,21 @@ public class NewDTAFileReader extends TabularDataFileReader {
             milliSeconds = Math.round(new Double(rawDatum)) + STATA_BIAS_TO_EPOCH;
             decodedDateTime = sdf_ymdhmsS.format(new Date(milliSeconds));
             format = sdf_ymdhmsS.toPattern();
-            logger.fine("tc: result=" + decodedDateTime + ", format = " + format);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("tc: result=" + decodedDateTime + ", format = " + format);
+            }
 
         } else if (FormatType.matches("^%t?d.*")) {
             milliSeconds = Math.round(new Double(rawDatum)) * MILLISECCONDS_PER_DAY + STATA_BIAS_TO_EPOCH;
-            logger.fine("milliSeconds=" + milliSeconds);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("milliSeconds=" + milliSeconds);
+            }
 
             decodedDateTime = sdf_ymd.format(new Date(milliSeconds));
             format = sdf_ymd.toPattern();
-            logger.fine("td:" + decodedDateTime + ", format = " + format);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("td:" + decodedDateTime + ", format = " + format);
+            }
 
         } else if (FormatType.matches("^%t?w.*")) {
 
@@ -1411,11 +1451,15 @@ public class NewDTAFileReader extends TabularDataFileReader {
             String month = "-" + twoDigitFormatter.format(monthdata) + "-01";
             long year = 1960L + years;
             String monthYear = year + month;
-            logger.fine("rawDatum=" + rawDatum + ": monthYear=" + monthYear);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("rawDatum=" + rawDatum + ": monthYear=" + monthYear);
+            }
 
             decodedDateTime = monthYear;
             format = "yyyy-MM-dd";
-            logger.fine("tm:" + decodedDateTime + ", format:" + format);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("tm:" + decodedDateTime + ", format:" + format);
+            }
 
         } else if (FormatType.matches("^%t?q.*")) {
             // quarter
@@ -1449,11 +1493,15 @@ public class NewDTAFileReader extends TabularDataFileReader {
 
             long year = 1960L + years;
             String quarterYear = Long.toString(year) + quarter;
-            logger.fine("rawDatum=" + rawDatum + ": quarterYear=" + quarterYear);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("rawDatum=" + rawDatum + ": quarterYear=" + quarterYear);
+            }
 
             decodedDateTime = quarterYear;
             format = "yyyy-MM-dd";
-            logger.fine("tq:" + decodedDateTime + ", format:" + format);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("tq:" + decodedDateTime + ", format:" + format);
+            }
 
         } else if (FormatType.matches("^%t?h.*")) {
             // half year
@@ -1482,17 +1530,23 @@ public class NewDTAFileReader extends TabularDataFileReader {
             }
             long year = 1960L + years;
             String halfYear = Long.toString(year) + half;
-            logger.fine("rawDatum=" + rawDatum + ": halfYear=" + halfYear);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("rawDatum=" + rawDatum + ": halfYear=" + halfYear);
+            }
 
             decodedDateTime = halfYear;
             format = "yyyy-MM-dd";
-            logger.fine("th:" + decodedDateTime + ", format:" + format);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("th:" + decodedDateTime + ", format:" + format);
+            }
 
         } else if (FormatType.matches("^%t?y.*")) {
             // year type's origin is 0 AD
             decodedDateTime = rawDatum;
             format = "yyyy";
-            logger.fine("th:" + decodedDateTime);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("th:" + decodedDateTime);
+            }
         } else {
             decodedDateTime = rawDatum;
             format = null;
@@ -28,7 +28,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.io.Writer;
 import java.nio.ByteBuffer;
 
@@ -63,6 +62,7 @@ import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabDelimitedFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
@@ -1110,12 +1110,10 @@ public class PORFileReader  extends TabularDataFileReader{
         ingesteddata.setTabDelimitedFile(tabDelimitedDataFile);
         
 
-        FileOutputStream fileOutTab = null;
-        PrintWriter pwout = null;
+        TabDelimitedFileWriter tabWriter = null;
 
         try {
-            fileOutTab = new FileOutputStream(tabDelimitedDataFile);
-            pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
+            tabWriter = new TabDelimitedFileWriter(tabDelimitedDataFile);
 
             variableFormatTypeList = new String[varQnty];
             for (int i = 0; i < varQnty; i++) {
@@ -1129,17 +1127,14 @@ public class PORFileReader  extends TabularDataFileReader{
             // raw-case counter
             int j = 0; // case
 
+            // case(row)-wise storage object; every field of it is updated
+            // for each row read, so the same object is reused for all rows
+            String[] casewiseRecordForTabFile = new String[varQnty];
+
             // use while instead for because the number of cases (observations) is usually unknown
             FBLOCK: while(true){
                 j++;
 
-                // case(row)-wise storage object; to be updated after each row-reading
-
-                String[] casewiseRecordForTabFile = new String[varQnty];
-                // warning: the above object is later shallow-copied to the
-                // data object for calculating a UNF value/summary statistics
-                //
-
                 for (int i=0; i<varQnty; i++){
                     // check the type of this variable
                     boolean isStringType = variableTypeTable.get(variableNameList.get(i)) > 0;
@@ -1374,13 +1369,13 @@ public class PORFileReader  extends TabularDataFileReader{
 
 
                 // print the i-th case; use casewiseRecord to dump the current case to the tab-delimited file
-                pwout.println(StringUtils.join(casewiseRecordForTabFile, "\t"));
+                tabWriter.writeRow(casewiseRecordForTabFile);
 
             } // end: while-block
         } finally {
-            // close the print writer
-            if (pwout != null) {
-                pwout.close();
+            // close the tab file writer
+            if (tabWriter != null) {
+                tabWriter.close();
             }
         }
 
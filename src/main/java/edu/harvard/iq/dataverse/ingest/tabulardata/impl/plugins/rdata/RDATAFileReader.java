@@ -41,6 +41,7 @@ import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabDelimitedFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
@@ -507,7 +508,7 @@ public class RDATAFileReader extends TabularDataFileReader {
             BufferedReader localBufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(localCsvFile), "UTF-8"));
 
             File tabFileDestination = File.createTempFile("data-", ".tab");
-            PrintWriter tabFileWriter = new PrintWriter(tabFileDestination.getAbsolutePath(), "UTF-8");
+            TabDelimitedFileWriter tabFileWriter = new TabDelimitedFileWriter(tabFileDestination);
         
             int lineCount = csvFileReader.read(localBufferedReader, dataTable, tabFileWriter);
 
@@ -24,9 +24,9 @@ import java.util.Arrays;
 import java.util.logging.*;
 
 import edu.harvard.iq.dataverse.util.BundleUtil;
-import org.apache.commons.lang3.StringUtils;
 
 import edu.harvard.iq.dataverse.DataTable;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabDelimitedFileWriter;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 
 /**
@@ -61,7 +61,7 @@ public class RTabFileParser implements java.io.Serializable {
     // should be used.
 
 
-  public int read(BufferedReader csvReader, DataTable dataTable, PrintWriter pwout) throws IOException {
+  public int read(BufferedReader csvReader, DataTable dataTable, TabDelimitedFileWriter pwout) throws IOException {
     dbgLog.warning("RTabFileParser: Inside R Tab file parser");
       
         int varQnty = 0;
@@ -272,7 +272,7 @@ public class RTabFileParser implements java.io.Serializable {
                 }
             }
 
-            pwout.println(StringUtils.join(caseRow, "\t"));
+            pwout.writeRow(caseRow);
 
             lineCounter++;
         }
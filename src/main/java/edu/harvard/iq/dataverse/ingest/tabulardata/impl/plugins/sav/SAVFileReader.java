@@ -21,12 +21,7 @@ package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav;
 
 import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -62,6 +57,7 @@ import edu.harvard.iq.dataverse.datavariable.SummaryStatistic;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 import edu.harvard.iq.dataverse.datavariable.VariableRange;
 
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabDelimitedFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
@@ -2330,36 +2326,14 @@ public class SAVFileReader  extends TabularDataFileReader{
         dbgLog.fine("***** decodeRecordTypeData(): end *****");
     }
 
-    PrintWriter createOutputWriter (BufferedInputStream stream) throws IOException {
-        PrintWriter pwout = null;
-	FileOutputStream fileOutTab = null;
-	        
-        try {
-
-            // create a File object to save the tab-delimited data file
-            File tabDelimitedDataFile = File.createTempFile("tempTabfile.", ".tab");
-
-            String tabDelimitedDataFileName   = tabDelimitedDataFile.getAbsolutePath();
-
-            // save the temp file name in the metadata object
-            ///smd.getFileInformation().put("tabDelimitedDataFileLocation", tabDelimitedDataFileName);
-            ingesteddata.setTabDelimitedFile(tabDelimitedDataFile);
-
-            fileOutTab = new FileOutputStream(tabDelimitedDataFile);
-            
-            pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
-
-        } catch (FileNotFoundException ex) {
-            ex.printStackTrace();
-        } catch (UnsupportedEncodingException ex) {
-            ex.printStackTrace();
-        } catch (IOException ex){
-            //ex.printStackTrace();
-	    throw ex; 
-        }
+    TabDelimitedFileWriter createOutputWriter (BufferedInputStream stream) throws IOException {
+        // create a File object to save the tab-delimited data file
+        File tabDelimitedDataFile = File.createTempFile("tempTabfile.", ".tab");
 
-	return pwout;
+        // save the temp file in the ingest object
+        ingesteddata.setTabDelimitedFile(tabDelimitedDataFile);
 
+        return new TabDelimitedFileWriter(tabDelimitedDataFile);
     }
 
     void decodeRecordTypeDataCompressed(BufferedInputStream stream) throws IOException {
@@ -2370,7 +2344,7 @@ public class SAVFileReader  extends TabularDataFileReader{
             throw new IllegalArgumentException("decodeRecordTypeDataCompressed: stream == null!");
         }
 
-        PrintWriter pwout = createOutputWriter(stream);
+        TabDelimitedFileWriter pwout = createOutputWriter(stream);
 
         int varQnty = dataTable.getVarQuantity().intValue();
         int caseQnty = dataTable.getCaseQuantity().intValue();
@@ -2878,7 +2852,7 @@ public class SAVFileReader  extends TabularDataFileReader{
 
                         // write to tab file
                         if (casewiseRecordForTabFile.size() > 0) {
-                            pwout.println(StringUtils.join(casewiseRecordForTabFile, "\t"));
+                            pwout.writeRow(casewiseRecordForTabFile);
                         }
 
                         // numeric contents-check
@@ -2960,7 +2934,7 @@ public class SAVFileReader  extends TabularDataFileReader{
         // 
         // set-up tab file
         
-        PrintWriter pwout = createOutputWriter ( stream ); 
+        TabDelimitedFileWriter pwout = createOutputWriter ( stream ); 
         
         boolean hasStringVarContinuousBlock = 
             obsNonVariableBlockSet.size() > 0 ? true : false;
@@ -3311,7 +3285,7 @@ public class SAVFileReader  extends TabularDataFileReader{
 
 		// write to tab file
 		if (casewiseRecordForTabFile.size() > 0) {
-		    pwout.println(StringUtils.join(casewiseRecordForTabFile, "\t"));
+		    pwout.writeRow(casewiseRecordForTabFile);
 		}
 		
                 // numeric contents-check
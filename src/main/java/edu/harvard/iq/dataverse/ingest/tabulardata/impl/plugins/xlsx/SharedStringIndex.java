@@ -0,0 +1,273 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.xlsx;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * The shared strings table of a workbook (xl/sharedStrings.xml), read with
+ * SAX, as plain strings - instead of POI's SharedStringsTable, which keeps
+ * an XML bean for every string, and needs several times the size of the
+ * table in memory.
+ *
+ * The strings are kept in memory until there are more than memoryLimit
+ * characters of them; beyond that (i.e., for the huge workbooks), they are
+ * moved to a temporary file, and only their offsets in the file are kept in
+ * memory. The strings read from the file go through a small cache, since
+ * the same values are often repeated over and over in a column.
+ */
+class SharedStringIndex implements Closeable {
+
+    static final long DEFAULT_MEMORY_LIMIT = 16L * 1024 * 1024;
+    private static final int CACHE_SIZE = 4096;
+
+    private final long memoryLimit;
+    private List<String> strings = new ArrayList<>();
+    private long charactersInMemory = 0;
+    private int count = 0;
+
+    // once the strings are moved to disk:
+    private File file;
+    private OutputStream out;
+    // string i is stored from offsets[i] to offsets[i + 1]:
+    private long[] offsets;
+    private int written = 0;
+    private long length = 0;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private final int[] cachedIndexes = new int[CACHE_SIZE];
+    private final String[] cachedStrings = new String[CACHE_SIZE];
+
+    SharedStringIndex(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * @param sharedStrings the XML of the table; null if the workbook
+     * doesn't have one
+     */
+    static SharedStringIndex read(InputStream sharedStrings, long memoryLimit) throws IOException, SAXException {
+        SharedStringIndex index = new SharedStringIndex(memoryLimit);
+        if (sharedStrings != null) {
+            XMLReader xReader = XMLReaderFactory.createXMLReader();
+            xReader.setContentHandler(new SharedStringsHandler(index));
+            xReader.parse(new InputSource(sharedStrings));
+        }
+        index.finish();
+        return index;
+    }
+
+    void add(String value) throws IOException {
+        if (file == null) {
+            strings.add(value);
+            charactersInMemory += value.length();
+            if (charactersInMemory > memoryLimit) {
+                moveToDisk();
+            }
+        } else {
+            write(value);
+        }
+        count++;
+    }
+
+    void finish() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            randomAccessFile = new RandomAccessFile(file, "r");
+            channel = randomAccessFile.getChannel();
+            buffer = ByteBuffer.allocate(1024);
+            Arrays.fill(cachedIndexes, -1);
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isOnDisk() {
+        return file != null;
+    }
+
+    String get(int index) throws IOException {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("No shared string " + index + " (of " + count + ")");
+        }
+        if (file == null) {
+            return strings.get(index);
+        }
+        int slot = index % CACHE_SIZE;
+        if (cachedIndexes[slot] == index) {
+            return cachedStrings[slot];
+        }
+        int byteLength = (int) (offsets[index + 1] - offsets[index]);
+        if (buffer.capacity() < byteLength) {
+            buffer = ByteBuffer.allocate(Math.max(byteLength, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.limit(byteLength);
+        long position = offsets[index];
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the shared strings file");
+            }
+        }
+        String value = new String(buffer.array(), 0, byteLength, StandardCharsets.UTF_8);
+        cachedIndexes[slot] = index;
+        cachedStrings[slot] = value;
+        return value;
+    }
+
+    private void moveToDisk() throws IOException {
+        file = File.createTempFile("sharedstrings-", ".tmp");
+        out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        offsets = new long[Math.max(1024, strings.size() * 2)];
+        List<String> inMemory = strings;
+        strings = null;
+        for (String value : inMemory) {
+            write(value);
+        }
+    }
+
+    private void write(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        length += bytes.length;
+        written++;
+        if (written >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[written] = length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (out != null) {
+                out.close();
+            }
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Decodes the _xHHHH_ escapes (e.g. _x000D_, for a carriage return) with
+     * which the characters that can't be represented in XML are stored, the
+     * same way POI does.
+     */
+    static String decode(String value) {
+        if (value.indexOf("_x") < 0) {
+            return value;
+        }
+        StringBuilder decoded = new StringBuilder(value.length());
+        int i = 0;
+        while (i < value.length()) {
+            if (i + 7 <= value.length() && value.charAt(i) == '_' && value.charAt(i + 1) == 'x'
+                    && value.charAt(i + 6) == '_' && isHex(value, i + 2, i + 6)) {
+                decoded.append((char) Integer.parseInt(value.substring(i + 2, i + 6), 16));
+                i += 7;
+            } else {
+                decoded.append(value.charAt(i));
+                i++;
+            }
+        }
+        return decoded.toString();
+    }
+
+    private static boolean isHex(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Each si element is a string: either a single t element, or rich text
+     * runs (r elements) with a t element each. The phonetic runs (rPh) are
+     * not part of the string.
+     */
+    private static class SharedStringsHandler extends DefaultHandler {
+
+        private final SharedStringIndex index;
+        private final StringBuilder text = new StringBuilder();
+        private boolean inText = false;
+        private boolean inPhoneticRun = false;
+
+        SharedStringsHandler(SharedStringIndex index) {
+            this.index = index;
+        }
+
+        private static String name(String localName, String qName) {
+            return localName != null && !localName.isEmpty() ? localName : qName;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (name(localName, qName)) {
+                case "si":
+                    text.setLength(0);
+                    break;
+                case "rPh":
+                    inPhoneticRun = true;
+                    break;
+                case "t":
+                    inText = !inPhoneticRun;
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (name(localName, qName)) {
+                case "si":
+                    try {
+                        index.add(decode(text.toString()));
+                    } catch (IOException ioex) {
+                        throw new SAXException(ioex);
+                    }
+                    break;
+                case "rPh":
+                    inPhoneticRun = false;
+                    break;
+                case "t":
+                    inText = false;
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText) {
+                text.append(ch, start, length);
+            }
+        }
+    }
+}
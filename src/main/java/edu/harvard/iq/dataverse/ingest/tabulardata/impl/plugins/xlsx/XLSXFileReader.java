@@ -21,24 +21,25 @@ package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.xlsx;
 
 
 import java.io.*;
-import java.io.FileReader;
 import java.util.logging.*;
 import java.util.*;
 
 import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabDelimitedFileWriter;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
 
 import edu.harvard.iq.dataverse.util.BundleUtil;
-import org.apache.commons.lang3.StringUtils;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import org.apache.poi.xssf.eventusermodel.XSSFReader;
-import org.apache.poi.xssf.usermodel.XSSFRichTextString;
-import org.apache.poi.xssf.model.SharedStrings;
 import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
@@ -62,7 +63,6 @@ import org.xml.sax.helpers.XMLReaderFactory;
 public class XLSXFileReader extends TabularDataFileReader {
 
     private static final Logger dbglog = Logger.getLogger(XLSXFileReader.class.getPackage().getName());
-    private char delimiterChar = '\t';
 
     public XLSXFileReader(TabularDataFileReaderSpi originator) {
         super(originator);
@@ -75,6 +75,10 @@ public class XLSXFileReader extends TabularDataFileReader {
     /**
      * Reads an XLSX file, converts it into a dataverse DataTable.
      *
+     * The sheet is parsed once; the cells are spooled as they are, while the
+     * types of the variables are inferred, and the final tab file is written
+     * from the spooled cells.
+     *
      * @param stream a <code>BufferedInputStream</code>.
      * @param ignored
      * @return an <code>TabularDataIngest</code> object
@@ -87,115 +91,47 @@ public class XLSXFileReader extends TabularDataFileReader {
         TabularDataIngest ingesteddata = new TabularDataIngest();
         DataTable dataTable = new DataTable();
 
-        File firstPassTempFile = File.createTempFile("firstpass-", ".tab");
-        PrintWriter firstPassWriter = new PrintWriter(firstPassTempFile.getAbsolutePath());
-        try {
-            processSheet(stream, dataTable, firstPassWriter);
-        } catch (Exception ex) {
-            throw new IOException(BundleUtil.getStringFromBundle("xlsxfilereader.ioexception.parse" , Arrays.asList(ex.getMessage())));
-        }
+        File tabFileDestination;
 
-        if (dataTable.getCaseQuantity() == null || dataTable.getCaseQuantity().intValue() < 1) {
-            String errorMessage; 
-            if (dataTable.getVarQuantity() == null || dataTable.getVarQuantity().intValue() < 1) {
-                errorMessage = BundleUtil.getStringFromBundle("xlsxfilereader.ioexception.norows");
-            } else {
-                errorMessage = BundleUtil.getStringFromBundle("xlsxfilereader.ioexception.onlyonerow");
+        try (CellSpool spool = new CellSpool("xlsxspool-")) {
+            try {
+                processSheet(stream, dataTable, spool);
+            } catch (Exception ex) {
+                throw new IOException(BundleUtil.getStringFromBundle("xlsxfilereader.ioexception.parse" , Arrays.asList(ex.getMessage())));
             }
-            throw new IOException(errorMessage);
-        }
-        
-        // 2nd pass:
-        
-        File tabFileDestination = File.createTempFile("data-", ".tab");
-        PrintWriter finalWriter = new PrintWriter(tabFileDestination.getAbsolutePath());
-        
-        BufferedReader secondPassReader = new BufferedReader(new FileReader(firstPassTempFile));
-        
-        int varQnty = dataTable.getVarQuantity().intValue();
-        int lineCounter = 0;
-        String line = null;
-        String[] caseRow = new String[varQnty];
-        String[] valueTokens;
-
-        
-        while ((line = secondPassReader.readLine()) != null) {
-            // chop the line:
-            line = line.replaceFirst("[\r\n]*$", "");
-            valueTokens = line.split("" + delimiterChar, -2);
 
-            if (valueTokens == null) {
-                throw new IOException(BundleUtil.getStringFromBundle("xlsxfilereader.ioexception.failed" , Arrays.asList(Integer.toString(lineCounter + 1))));
+            if (dataTable.getCaseQuantity() == null || dataTable.getCaseQuantity().intValue() < 1) {
+                String errorMessage; 
+                if (dataTable.getVarQuantity() == null || dataTable.getVarQuantity().intValue() < 1) {
+                    errorMessage = BundleUtil.getStringFromBundle("xlsxfilereader.ioexception.norows");
+                } else {
+                    errorMessage = BundleUtil.getStringFromBundle("xlsxfilereader.ioexception.onlyonerow");
+                }
+                throw new IOException(errorMessage);
             }
 
-            if (valueTokens.length != varQnty) {
-                throw new IOException(BundleUtil.getStringFromBundle("xlsxfilereader.ioexception.mismatch" , Arrays.asList(Integer.toString(lineCounter + 1),Integer.toString(varQnty),Integer.toString(valueTokens.length))));
-            }
-        
+            int varQnty = dataTable.getVarQuantity().intValue();
+            boolean[] isNumericVariable = new boolean[varQnty];
             for (int i = 0; i < varQnty; i++) {
-                if (dataTable.getDataVariables().get(i).isTypeNumeric()) {
-                    if (valueTokens[i] == null || valueTokens[i].equals(".") || valueTokens[i].equals("") || valueTokens[i].equalsIgnoreCase("NA")) {
-                        // Missing value - represented as an empty string in 
-                        // the final tab file
-                        caseRow[i] = "";
-                    } else if (valueTokens[i].equalsIgnoreCase("NaN")) {
-                        // "Not a Number" special value: 
-                        caseRow[i] = "NaN";
-                    } else if (valueTokens[i].equalsIgnoreCase("Inf")
-                            || valueTokens[i].equalsIgnoreCase("+Inf")) {
-                        // Positive infinity:
-                        caseRow[i] = "Inf";
-                    } else if (valueTokens[i].equalsIgnoreCase("-Inf")) {
-                        // Negative infinity: 
-                        caseRow[i] = "-Inf";
-                    } else if (valueTokens[i].equalsIgnoreCase("null")) {
-                        // By request from Gus - "NULL" is recognized as a 
-                        // numeric zero: 
-                        caseRow[i] = "0";
-                    } else {
-                        try {
-                            Double testDoubleValue = new Double(valueTokens[i]);
-                            caseRow[i] = testDoubleValue.toString();
-                        } catch (Exception ex) {
-                            throw new IOException ("Failed to parse a value recognized as numeric in the first pass! column: "+i+", value: "+valueTokens[i]);
+                isNumericVariable[i] = dataTable.getDataVariables().get(i).isTypeNumeric();
+            }
+
+            spool.rewind();
+            tabFileDestination = File.createTempFile("data-", ".tab");
+            try (TabDelimitedFileWriter finalWriter = new TabDelimitedFileWriter(tabFileDestination)) {
+                long caseQuantity = dataTable.getCaseQuantity();
+                for (long row = 0; row < caseQuantity; row++) {
+                    for (int i = 0; i < varQnty; i++) {
+                        String value = spool.read();
+                        if (isNumericVariable[i]) {
+                            writeNumericValue(finalWriter, value, i);
+                        } else {
+                            finalWriter.write(formatStringValue(value));
                         }
-                    }    
-                } else {
-                    // Treat as a String:
-                    // Strings are stored in tab files quoted;                                                                                   
-                    // Missing values are stored as tab-delimited nothing - 
-                    // i.e., an empty string between two tabs (or one tab and 
-                    // the new line);                                                                       
-                    // Empty strings stored as "" (quoted empty string).
-                    
-                    if (valueTokens[i] != null && !valueTokens[i].equals(".")) {
-                        String charToken = valueTokens[i];
-                        // Dealing with quotes: 
-                        // remove the leading and trailing quotes, if present:
-                        charToken = charToken.replaceFirst("^\"", "");
-                        charToken = charToken.replaceFirst("\"$", "");
-                        // escape the remaining ones:
-                        charToken = charToken.replace("\"", "\\\"");
-                        // final pair of quotes:
-                        charToken = "\"" + charToken + "\"";
-                        caseRow[i] = charToken;
-                    } else {
-                        caseRow[i] = "";
                     }
+                    finalWriter.endRow();
                 }
             }
-            
-            finalWriter.println(StringUtils.join(caseRow, "\t"));
-            lineCounter++;
-
-            
-        }
-
-        secondPassReader.close();
-        finalWriter.close();
-        
-        if (dataTable.getCaseQuantity().intValue() != lineCounter) {
-            throw new IOException(BundleUtil.getStringFromBundle("xlsxfilereader.ioexception.linecount"));
         }
         
         dataTable.setUnf("UNF:6:NOTCALCULATED");
@@ -220,28 +156,119 @@ public class XLSXFileReader extends TabularDataFileReader {
 
     }
 
-    public void processSheet(String filename, DataTable dataTable, PrintWriter tempOut) throws Exception {
-        BufferedInputStream xlsxInputStream = new BufferedInputStream(new FileInputStream(new File(filename)));
-        processSheet(xlsxInputStream, dataTable, tempOut);
+    private static void writeNumericValue(TabDelimitedFileWriter out, String value, int column) throws IOException {
+        if (value == null || value.equals(".") || value.equals("") || value.equalsIgnoreCase("NA")) {
+            // Missing value - represented as an empty string in 
+            // the final tab file
+            out.write("");
+        } else if (value.equalsIgnoreCase("NaN")) {
+            // "Not a Number" special value: 
+            out.write("NaN");
+        } else if (value.equalsIgnoreCase("Inf")
+                || value.equalsIgnoreCase("+Inf")) {
+            // Positive infinity:
+            out.write("Inf");
+        } else if (value.equalsIgnoreCase("-Inf")) {
+            // Negative infinity: 
+            out.write("-Inf");
+        } else if (value.equalsIgnoreCase("null")) {
+            // By request from Gus - "NULL" is recognized as a 
+            // numeric zero: 
+            out.write("0");
+        } else {
+            double doubleValue;
+            try {
+                doubleValue = Double.parseDouble(value);
+            } catch (NumberFormatException ex) {
+                throw new IOException ("Failed to parse a value recognized as numeric in the first pass! column: "+column+", value: "+value);
+            }
+            // (formatted the same as Double.toString())
+            out.write(doubleValue);
+        }
     }
 
-    public void processSheet(InputStream inputStream, DataTable dataTable, PrintWriter tempOut) throws Exception {
+    private static String formatStringValue(String value) {
+        // Treat as a String:
+        // Strings are stored in tab files quoted;                                                                                   
+        // Missing values are stored as tab-delimited nothing - 
+        // i.e., an empty string between two tabs (or one tab and 
+        // the new line);                                                                       
+        // Empty strings stored as "" (quoted empty string).
+        // (a cell missing from a row is an empty string, too)
+        if (value == null) {
+            return "\"\"";
+        }
+        if (value.equals(".")) {
+            return "";
+        }
+        // Dealing with quotes: 
+        // remove the leading and trailing quotes, if present:
+        int start = value.startsWith("\"") ? 1 : 0;
+        int end = value.length() > start && value.endsWith("\"") ? value.length() - 1 : value.length();
+        StringBuilder quoted = new StringBuilder(end - start + 2);
+        quoted.append('"');
+        for (int i = start; i < end; i++) {
+            // escape the remaining ones, and the tabs and new lines:
+            char c = value.charAt(i);
+            if (c == '"') {
+                quoted.append("\\\"");
+            } else if (c == '\t') {
+                quoted.append("\\t");
+            } else if (c == '\n') {
+                quoted.append("\\n");
+            } else if (c == '\r') {
+                quoted.append("\\r");
+            } else {
+                quoted.append(c);
+            }
+        }
+        // final pair of quotes:
+        return quoted.append('"').toString();
+    }
+
+    public void processSheet(String filename, DataTable dataTable, CellSpool spool) throws Exception {
+        processSheet(new File(filename), dataTable, spool);
+    }
+
+    public void processSheet(InputStream inputStream, DataTable dataTable, CellSpool spool) throws Exception {
+        // OPCPackage.open(InputStream) would unzip the whole workbook into
+        // memory; opened from a file, the parts are read from the zip as they
+        // are needed:
+        File xlsxTempFile = File.createTempFile("xlsx-", ".xlsx");
+        try {
+            Files.copy(inputStream, xlsxTempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            processSheet(xlsxTempFile, dataTable, spool);
+        } finally {
+            xlsxTempFile.delete();
+        }
+    }
+
+    public void processSheet(File xlsxFile, DataTable dataTable, CellSpool spool) throws Exception {
         dbglog.info("entering processSheet");
-        OPCPackage pkg = OPCPackage.open(inputStream);
-        XSSFReader r = new XSSFReader(pkg);
-        SharedStrings sst = r.getSharedStringsTable();
-
-        XMLReader parser = fetchSheetParser(sst, dataTable, tempOut);
-
-        // rId2 found by processing the Workbook
-        // Seems to either be rId# or rSheet#
-        InputStream sheet1 = r.getSheet("rId1");
-        InputSource sheetSource = new InputSource(sheet1);
-        parser.parse(sheetSource);
-        sheet1.close();
+        OPCPackage pkg = OPCPackage.open(xlsxFile, PackageAccess.READ);
+        try {
+            XSSFReader r = new XSSFReader(pkg);
+            SharedStringIndex sst;
+            try (InputStream sharedStrings = r.getSharedStringsData()) {
+                sst = SharedStringIndex.read(sharedStrings, SharedStringIndex.DEFAULT_MEMORY_LIMIT);
+            }
+            try (sst) {
+                dbglog.fine(sst.size() + " shared strings" + (sst.isOnDisk() ? ", indexed on disk" : ""));
+                XMLReader parser = fetchSheetParser(sst, dataTable, spool);
+
+                // rId2 found by processing the Workbook
+                // Seems to either be rId# or rSheet#
+                try (InputStream sheet1 = r.getSheet("rId1")) {
+                    InputSource sheetSource = new InputSource(sheet1);
+                    parser.parse(sheetSource);
+                }
+            }
+        } finally {
+            pkg.revert();
+        }
     }
     
-    public XMLReader fetchSheetParser(SharedStrings sst, DataTable dataTable, PrintWriter tempOut) throws SAXException {
+    XMLReader fetchSheetParser(SharedStringIndex sst, DataTable dataTable, CellSpool spool) throws SAXException {
         // An attempt to use org.apache.xerces.parsers.SAXParser resulted 
         // in some weird conflict in the app; the default XMLReader obtained 
         // from the XMLReaderFactory (from xml-apis.jar) appears to be working
@@ -257,7 +284,7 @@ public class XLSXFileReader extends TabularDataFileReader {
  
         XMLReader xReader = XMLReaderFactory.createXMLReader();
         dbglog.fine("creating new SheetHandler;");
-        ContentHandler handler = new SheetHandler(sst, dataTable, tempOut);
+        ContentHandler handler = new SheetHandler(sst, dataTable, spool);
         xReader.setContentHandler(handler);
         return xReader;
     }
@@ -265,8 +292,8 @@ public class XLSXFileReader extends TabularDataFileReader {
     private static class SheetHandler extends DefaultHandler {
 
         private DataTable dataTable;
-        private SharedStrings sst;
-        private String cellContents;
+        private SharedStringIndex sst;
+        private final StringBuilder cellContents = new StringBuilder();
         private boolean nextIsString;
         private boolean variableHeader;
         //private List<String> variableNames;
@@ -275,16 +302,12 @@ public class XLSXFileReader extends TabularDataFileReader {
         private int columnCount; 
         boolean[] isNumericVariable;
         String[] dataRow; 
-        PrintWriter tempOut; 
-
-        private SheetHandler(SharedStrings sst) {
-            this(sst, null, null);
-        }
+        CellSpool spool; 
 
-        private SheetHandler(SharedStrings sst, DataTable dataTable, PrintWriter tempOut) {
+        private SheetHandler(SharedStringIndex sst, DataTable dataTable, CellSpool spool) {
             this.sst = sst;
             this.dataTable = dataTable;
-            this.tempOut = tempOut; 
+            this.spool = spool; 
             variableHeader = true;
             //variableNames = new ArrayList<String>(); 
             caseCount = 0; 
@@ -293,7 +316,7 @@ public class XLSXFileReader extends TabularDataFileReader {
         
         public void startElement(String uri, String localName, String name,
                 Attributes attributes) throws SAXException {
-            dbglog.fine("entering startElement ("+name+")");
+            dbglog.fine(() -> "entering startElement ("+name+")");
 
             // first raw encountered: 
             if (variableHeader && name.equals("row")) {
@@ -339,10 +362,15 @@ public class XLSXFileReader extends TabularDataFileReader {
                 if (indexAttribute == null) {
                     dbglog.warning("Null r attribute in a cell element!");
                 } 
-                if (!indexAttribute.matches(".*[0-9]")) {
+                // (the letters before the row number, e.g. "AB" of "AB12":)
+                int rowNumberStart = 0;
+                while (rowNumberStart < indexAttribute.length() && !isAsciiDigit(indexAttribute.charAt(rowNumberStart))) {
+                    rowNumberStart++;
+                }
+                if (indexAttribute.isEmpty() || !isAsciiDigit(indexAttribute.charAt(indexAttribute.length() - 1))) {
                     dbglog.warning("Invalid index (r) attribute in a cell element: "+indexAttribute+"!"); 
                 }
-                columnCount = getColumnCount(indexAttribute.replaceFirst("[0-9].*$", ""));
+                columnCount = getColumnCount(indexAttribute.substring(0, rowNumberStart));
                 
                 if (columnCount < 0) {
                     throw new SAXException("Could not establish position index of a cell element unambiguously!");
@@ -356,20 +384,20 @@ public class XLSXFileReader extends TabularDataFileReader {
                 }
             }
             // Clear contents cache
-            cellContents = "";
+            cellContents.setLength(0);
         }
 
         /* Works from 1-702 columns. Could be made recursive to work beyond that*/
         private int getColumnCount(String columnTag) {
             int count = -1;
-            if (columnTag.length() == 1 && columnTag.matches("[A-Z]")) {
+            if (columnTag.length() == 1 && columnTag.charAt(0) >= 'A' && columnTag.charAt(0) <= 'Z') {
                 count = columnTag.charAt(0) - 'A';
             } else {
                 if (columnTag.length() == 2) {
                     int c1 = columnTag.charAt(0) - 'A';
                     int c2 = columnTag.charAt(1) - 'A';
                     if (c1 >= 0 && c1 < 26 && c2 >= 0 && c2 < 26) {
-                        dbglog.fine(columnTag + ": " + ((c1 + 1) * 26 + c2));
+                        dbglog.fine(() -> columnTag + ": " + ((c1 + 1) * 26 + c2));
                         return ((c1 + 1) * 26 + c2);
                     } else {
                         dbglog.warning("Unsupported column index tag: " + columnTag);
@@ -405,12 +433,18 @@ public class XLSXFileReader extends TabularDataFileReader {
         
         public void endElement(String uri, String localName, String name)
                 throws SAXException {
-            dbglog.fine("entering endElement ("+name+")");
+            dbglog.fine(() -> "entering endElement ("+name+")");
             // Process the content cache as required.
             // Do it now, as characters() may be called more than once
             if (nextIsString) {
-                int idx = Integer.parseInt(cellContents);
-                cellContents = sst.getItemAt(idx).getString();
+                int idx = Integer.parseInt(cellContents.toString());
+                try {
+                    String sharedString = sst.get(idx);
+                    cellContents.setLength(0);
+                    cellContents.append(sharedString);
+                } catch (IOException ioex) {
+                    throw new SAXException(ioex);
+                }
                 nextIsString = false;
             }
 
@@ -418,13 +452,13 @@ public class XLSXFileReader extends TabularDataFileReader {
             // Output after we've seen the string contents
             if (name.equals("v")) {
                 if (variableHeader) {
-                    dbglog.fine("variable header mode; cell "+columnCount+", cell contents: "+cellContents);
+                    dbglog.fine(() -> "variable header mode; cell "+columnCount+", cell contents: "+cellContents);
                     
                     //variableNames.add(cellContents);
-                    variableNames[columnCount] = cellContents;
+                    variableNames[columnCount] = cellContents.toString();
                 } else {
-                    dataRow[columnCount] = cellContents;
-                    dbglog.fine("data row mode; cell "+columnCount+", cell contents: "+cellContents);
+                    dataRow[columnCount] = cellContents.toString();
+                    dbglog.fine(() -> "data row mode; cell "+columnCount+", cell contents: "+cellContents);
                 }
             }
             
@@ -486,25 +520,16 @@ public class XLSXFileReader extends TabularDataFileReader {
                             // this value is still a parsable number:
                             if (dataRow[i] != null && (!dataRow[i].equals(""))) {
 
-                                boolean isNumeric = false; 
-                        
-                                if (dataRow[i].equalsIgnoreCase(".")
+                                boolean isNumeric = dataRow[i].equalsIgnoreCase(".")
                                         || dataRow[i].equalsIgnoreCase("NaN")
                                         || dataRow[i].equalsIgnoreCase("NA")
                                         || dataRow[i].equalsIgnoreCase("Inf")
                                         || dataRow[i].equalsIgnoreCase("+Inf")
                                         || dataRow[i].equalsIgnoreCase("-Inf")
-                                        || dataRow[i].equalsIgnoreCase("null")) {
-                                    isNumeric = true;
-                                } else {
-                                    try {
-                                        Double testDoubleValue = new Double(dataRow[i]);
-                                        isNumeric = true; 
-                                    } catch (Exception ex) {
-                                        // the token failed to parse as a double number;
-                                        // so we'll have to assume it's just a string variable.
-                                    }
-                                }
+                                        || dataRow[i].equalsIgnoreCase("null")
+                                        // (if not, the token failed to parse as a double number;
+                                        // so we'll have to assume it's just a string variable)
+                                        || isDouble(dataRow[i]);
                                 if (!isNumeric) {
                                     isNumericVariable[i] = false; 
                                 }
@@ -512,8 +537,14 @@ public class XLSXFileReader extends TabularDataFileReader {
                         } 
                     }
                     
-                    // print out the data row:
-                    tempOut.println(StringUtils.join(dataRow, "\t"));
+                    // spool the data row:
+                    try {
+                        for (String value : dataRow) {
+                            spool.write(value);
+                        }
+                    } catch (IOException ioex) {
+                        throw new SAXException(ioex);
+                    }
                     caseCount++;
                 }
                 columnCount = 0;
@@ -531,15 +562,13 @@ public class XLSXFileReader extends TabularDataFileReader {
                         dataTable.getDataVariables().get(i).setIntervalContinuous();
                     }
                 }
-                
-                tempOut.close(); 
             }
         }
 
         @Override
         public void characters(char[] ch, int start, int length)
                 throws SAXException {
-            cellContents += new String(ch, start, length);
+            cellContents.append(ch, start, length);
         }
     }
 
@@ -560,6 +589,4 @@ public class XLSXFileReader extends TabularDataFileReader {
             System.out.println(dataTable.getDataVariables().get(i).getName());
         }
     }
-    
-
 }
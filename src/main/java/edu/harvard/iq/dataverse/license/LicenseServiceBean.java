@@ -96,7 +96,9 @@ public class LicenseServiceBean {
         if (candidate == null) return 0;
         if (candidate.isActive()) {
                 em.createNamedQuery("License.clearDefault").executeUpdate();
-               return em.createNamedQuery("License.setDefault").setParameter("id", id).executeUpdate();
+               int updated = em.createNamedQuery("License.setDefault").setParameter("id", id).executeUpdate();
+               evictCachedLicenses();
+               return updated;
         } else {
             throw new WrappedResponse(new IllegalArgumentException("Cannot set an inactive license as default"), null);
         }
@@ -112,8 +114,10 @@ public class LicenseServiceBean {
                 throw new WrappedResponse(
                         new IllegalArgumentException("Cannot inactivate the default license"), null);
             }
-            return em.createNamedQuery("License.setActiveState").setParameter("id", id).setParameter("state", state)
+            int updated = em.createNamedQuery("License.setActiveState").setParameter("id", id).setParameter("state", state)
                     .executeUpdate();
+            evictCachedLicenses();
+            return updated;
         } else {
             throw new WrappedResponse(
                     new IllegalArgumentException("License already " + (state ? "active" : "inactive")), null);
@@ -125,8 +129,10 @@ public class LicenseServiceBean {
         if (candidate == null)
             return 0;
         
-        return em.createNamedQuery("License.setSortOrder").setParameter("id", id).setParameter("sortOrder", sortOrder)
+        int updated = em.createNamedQuery("License.setSortOrder").setParameter("id", id).setParameter("sortOrder", sortOrder)
                 .executeUpdate();
+        evictCachedLicenses();
+        return updated;
     }
     
     public License save(License license) throws WrappedResponse {
@@ -155,7 +161,9 @@ public class LicenseServiceBean {
         actionLogSvc.log( new ActionLogRecord(ActionLogRecord.ActionType.Admin, "delete")
                             .setInfo(Long.toString(id)));
         try {
-            return em.createNamedQuery("License.deleteById").setParameter("id", id).executeUpdate();
+            int deleted = em.createNamedQuery("License.deleteById").setParameter("id", id).executeUpdate();
+            evictCachedLicenses();
+            return deleted;
         } catch (PersistenceException p) {
             if (p.getMessage().contains("violates foreign key constraint")) {
                 throw new WrappedResponse(new IllegalStateException("License with id " + id + " is referenced and cannot be deleted.", p), null);
@@ -164,4 +172,12 @@ public class LicenseServiceBean {
             }
         }
     }
+
+    /**
+     * Licenses are kept in the shared entity cache, which the bulk updates
+     * above bypass.
+     */
+    private void evictCachedLicenses() {
+        em.getEntityManagerFactory().getCache().evict(License.class);
+    }
 }
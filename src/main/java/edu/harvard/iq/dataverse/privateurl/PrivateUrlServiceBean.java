@@ -4,6 +4,7 @@ import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.RoleAssignment;
+import edu.harvard.iq.dataverse.authorization.AuthenticationCache;
 import edu.harvard.iq.dataverse.authorization.users.PrivateUrlUser;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.Serializable;
@@ -39,6 +40,9 @@ public class PrivateUrlServiceBean implements Serializable {
     @EJB
     SystemConfig systemConfig;
 
+    @EJB
+    AuthenticationCache authCache;
+
     /**
      * @return A PrivateUrl if the dataset has one or null.
      */
@@ -51,7 +55,19 @@ public class PrivateUrlServiceBean implements Serializable {
      * @return A PrivateUrlUser if one can be found using the token or null.
      */
     public PrivateUrlUser getPrivateUrlUserFromToken(String token) {
-        return PrivateUrlUtil.getPrivateUrlUserFromRoleAssignment(getRoleAssignmentFromPrivateUrlToken(token));
+        PrivateUrlUser cachedUser = authCache.getPrivateUrlUser(token);
+        if (cachedUser != null) {
+            return cachedUser;
+        }
+        if (authCache.contains(token)) {
+            // a cached API token, so not a Private URL token
+            return null;
+        }
+        PrivateUrlUser privateUrlUser = PrivateUrlUtil.getPrivateUrlUserFromRoleAssignment(getRoleAssignmentFromPrivateUrlToken(token));
+        if (privateUrlUser != null) {
+            authCache.putPrivateUrlUser(token, privateUrlUser);
+        }
+        return privateUrlUser;
     }
 
     /**
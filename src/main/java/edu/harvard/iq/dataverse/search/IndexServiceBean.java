@@ -131,6 +131,8 @@ public class IndexServiceBean {
     @EJB
     SolrClientService solrClientService;
     @EJB
+    SearchResultCache searchResultCache;
+    @EJB
     DataFileServiceBean dataFileService;
 
     @EJB
@@ -334,6 +336,7 @@ public class IndexServiceBean {
         }
         try {
             solrClientService.getSolrClient().commit();
+            searchResultCache.indexChanged();
         } catch (SolrServerException | IOException ex) {
             status = ex.toString();
             logger.info(status);
@@ -1464,6 +1467,7 @@ public class IndexServiceBean {
         try {
             solrClientService.getSolrClient().add(docs.getDocuments());
             solrClientService.getSolrClient().commit();
+            searchResultCache.indexChanged();
         } catch (SolrServerException | IOException ex) {
             if (ex.getCause() instanceof SolrServerException) {
                 throw new SolrServerException(ex);
@@ -1706,6 +1710,7 @@ public class IndexServiceBean {
             sid.addField(SearchFields.SUBTREE, paths);
             UpdateResponse addResponse = solrClientService.getSolrClient().add(sid);
             UpdateResponse commitResponse = solrClientService.getSolrClient().commit();
+            searchResultCache.indexChanged();
             if (object.isInstanceofDataset()) {
                 for (DataFile df : dataset.getFiles()) {
                     solrQuery.setQuery(SearchUtil.constructQuery(SearchFields.ENTITY_ID, df.getId().toString()));
@@ -1720,6 +1725,7 @@ public class IndexServiceBean {
                         sid.addField(SearchFields.SUBTREE, paths);
                         addResponse = solrClientService.getSolrClient().add(sid);
                         commitResponse = solrClientService.getSolrClient().commit();
+                        searchResultCache.indexChanged();
                     }
                 }
             }
@@ -1767,6 +1773,7 @@ public class IndexServiceBean {
         }
         try {
             solrClientService.getSolrClient().commit();
+            searchResultCache.indexChanged();
         } catch (SolrServerException | IOException ex) {
             return ex.toString();
         }
@@ -1792,6 +1799,7 @@ public class IndexServiceBean {
         }
         try {
             solrClientService.getSolrClient().commit();
+            searchResultCache.indexChanged();
         } catch (SolrServerException | IOException ex) {
             return ex.toString();
         }
@@ -0,0 +1,306 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.DvObjectServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObjectBuilder;
+
+/**
+ * Reindexes the permissions on a definition point (the dvObject a role was
+ * assigned on) and on its children in the background, in chunks of
+ * dataverse.search.permission-index.chunk-size objects, rather than all at
+ * once inside the request that changed the role.
+ *
+ * The definition points are reindexed one after another, on a coordinator
+ * thread; the chunks of each are built and sent to Solr in parallel, on
+ * dataverse.search.permission-index.threads worker threads. A chunk that
+ * fails is retried (up to dataverse.search.permission-index.max-retries
+ * times). The permission index time of the objects of a chunk is updated once
+ * the chunk is in Solr, and their permission modification time is updated
+ * when the reindex starts, so the objects of a chunk that failed for good
+ * show up as stale (see /api/admin/index/status) and can be reindexed later.
+ * The progress of each definition point is reported by
+ * /api/admin/index/perms/status.
+ *
+ * The role changes fire a {@link PermissionsChangedEvent}; the reindex is
+ * queued once the change is committed, so that it reads the new role
+ * assignments. A definition point is never reindexed twice at the same time:
+ * a change made while its reindex is queued joins that reindex, and a change
+ * made while it is running has it run once more when it is done.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class PermissionReindexServiceBean {
+
+    private static final Logger logger = Logger.getLogger(PermissionReindexServiceBean.class.getCanonicalName());
+
+    private static final long RETRY_DELAY_MILLIS = 2000;
+    private static final long PROGRESS_RETENTION_MILLIS = 24 * 60 * 60 * 1000L;
+
+    @EJB
+    SolrIndexServiceBean solrIndexService;
+    @EJB
+    DvObjectServiceBean dvObjectService;
+    @Resource
+    ManagedThreadFactory managedThreadFactory;
+
+    private int chunkSize;
+    private int maxRetries;
+    private ExecutorService coordinator;
+    private ExecutorService workers;
+    // the definition points waiting for their reindex to start, those being
+    // reindexed, and those to reindex again once they are done (all guarded
+    // by queued):
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+    private final Set<Long> rerun = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Progress> progressByDefinitionPoint = new ConcurrentHashMap<>();
+
+    /**
+     * The progress of the reindex of one definition point.
+     */
+    private static class Progress {
+
+        final Long definitionPointId;
+        volatile String state = "queued";
+        volatile int totalChunks = 0;
+        final AtomicInteger doneChunks = new AtomicInteger();
+        final AtomicInteger failedChunks = new AtomicInteger();
+        final AtomicLong objects = new AtomicLong();
+        final AtomicLong changedDocuments = new AtomicLong();
+        final long queuedAt = System.currentTimeMillis();
+        volatile long startedAt = 0;
+        volatile long finishedAt = 0;
+
+        Progress(Long definitionPointId) {
+            this.definitionPointId = definitionPointId;
+        }
+
+        JsonObjectBuilder toJson() {
+            JsonObjectBuilder json = Json.createObjectBuilder()
+                    .add("definitionPointId", definitionPointId)
+                    .add("state", state)
+                    .add("totalChunks", totalChunks)
+                    .add("doneChunks", doneChunks.get())
+                    .add("failedChunks", failedChunks.get())
+                    .add("objects", objects.get())
+                    .add("changedDocuments", changedDocuments.get())
+                    .add("queued", new Timestamp(queuedAt).toString());
+            if (startedAt != 0) {
+                json.add("started", new Timestamp(startedAt).toString());
+            }
+            if (finishedAt != 0) {
+                json.add("finished", new Timestamp(finishedAt).toString());
+            }
+            return json;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        chunkSize = Math.max(1, JvmSettings.SEARCH_PERMISSION_INDEX_CHUNK_SIZE.lookupOptional(Integer.class).orElse(1000));
+        maxRetries = Math.max(0, JvmSettings.SEARCH_PERMISSION_INDEX_MAX_RETRIES.lookupOptional(Integer.class).orElse(3));
+        int threads = Math.max(1, JvmSettings.SEARCH_PERMISSION_INDEX_THREADS.lookupOptional(Integer.class)
+                .orElse(Math.min(4, Runtime.getRuntime().availableProcessors())));
+        logger.fine("Permission reindexing: chunks of " + chunkSize + " objects, on " + threads + " threads");
+        coordinator = Executors.newSingleThreadExecutor(managedThreadFactory);
+        workers = Executors.newFixedThreadPool(threads, managedThreadFactory);
+    }
+
+    @PreDestroy
+    public void close() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queues the reindex of the permissions on the definition points of the
+     * role changes, once they are committed.
+     */
+    public void permissionsChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) PermissionsChangedEvent event) {
+        for (DvObject definitionPoint : event.getDefinitionPoints()) {
+            submit(definitionPoint);
+        }
+    }
+
+    /**
+     * Queues the reindex of the permissions on the definition point and its
+     * children, and returns right away. If the definition point is already
+     * queued, the reindex is joined to the queued one; if it is being
+     * reindexed, it is reindexed once more when that is done.
+     *
+     * @return true if a reindex was queued, false if it was joined to one
+     *         already queued or running
+     */
+    public boolean submit(DvObject definitionPoint) {
+        Long id = definitionPoint.getId();
+        if (id == null) {
+            return false;
+        }
+        synchronized (queued) {
+            if (queued.contains(id)) {
+                return false;
+            }
+            if (running.contains(id)) {
+                rerun.add(id);
+                return false;
+            }
+            queued.add(id);
+        }
+        queue(id);
+        return true;
+    }
+
+    private void queue(Long id) {
+        purgeFinished();
+        Progress progress = new Progress(id);
+        progressByDefinitionPoint.put(id, progress);
+        coordinator.execute(() -> {
+            synchronized (queued) {
+                queued.remove(id);
+                running.add(id);
+            }
+            try {
+                reindex(progress);
+            } catch (RuntimeException e) {
+                progress.state = "failed";
+                progress.finishedAt = System.currentTimeMillis();
+                logger.log(Level.WARNING, "Failed to reindex the permissions on dvObject " + id, e);
+            } finally {
+                boolean again;
+                synchronized (queued) {
+                    running.remove(id);
+                    again = rerun.remove(id);
+                    if (again) {
+                        queued.add(id);
+                    }
+                }
+                if (again) {
+                    queue(id);
+                }
+            }
+        });
+    }
+
+    public JsonObjectBuilder getStatus() {
+        JsonArrayBuilder definitionPoints = Json.createArrayBuilder();
+        progressByDefinitionPoint.values().stream()
+                .sorted((p1, p2) -> Long.compare(p1.queuedAt, p2.queuedAt))
+                .forEach(progress -> definitionPoints.add(progress.toJson()));
+        return Json.createObjectBuilder()
+                .add("queued", queued.size())
+                .add("running", running.size())
+                .add("definitionPoints", definitionPoints);
+    }
+
+    private void reindex(Progress progress) {
+        progress.state = "running";
+        progress.startedAt = System.currentTimeMillis();
+
+        List<Long> objectIds = solrIndexService.findObjectsToReindexPermissionsFor(progress.definitionPointId);
+        List<Long> fileIds = new ArrayList<>();
+        for (List<Long> chunk : chunks(objectIds)) {
+            fileIds.addAll(solrIndexService.findFilesToReindexPermissionsFor(chunk));
+        }
+
+        List<List<Long>> chunks = new ArrayList<>(chunks(objectIds));
+        chunks.addAll(chunks(fileIds));
+        progress.totalChunks = chunks.size();
+        logger.fine("Reindexing the permissions on dvObject " + progress.definitionPointId + ": "
+                + objectIds.size() + " objects and " + fileIds.size() + " files, in " + chunks.size() + " chunks");
+
+        // (until its chunk is done, each object shows up as stale)
+        for (List<Long> chunk : chunks) {
+            dvObjectService.updatePermissionModificationTimes(chunk);
+        }
+
+        CompletableFuture<?>[] futures = chunks.stream()
+                .map(chunk -> CompletableFuture.runAsync(() -> indexChunk(progress, chunk), workers))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+
+        progress.state = (progress.failedChunks.get() == 0) ? "done" : "failed";
+        progress.finishedAt = System.currentTimeMillis();
+        logger.fine("Reindexed the permissions on dvObject " + progress.definitionPointId + ": "
+                + progress.changedDocuments.get() + " Solr documents changed, " + progress.failedChunks.get() + " chunks failed");
+    }
+
+    private void indexChunk(Progress progress, List<Long> chunk) {
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            try {
+                progress.changedDocuments.addAndGet(solrIndexService.indexPermissionsForChunk(chunk));
+                progress.objects.addAndGet(chunk.size());
+                progress.doneChunks.incrementAndGet();
+                return;
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to reindex the permissions on a chunk of " + chunk.size()
+                        + " objects under dvObject " + progress.definitionPointId + " (attempt " + (attempt + 1) + ")", e);
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MILLIS * (attempt + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        progress.failedChunks.incrementAndGet();
+    }
+
+    private List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += chunkSize) {
+            chunks.add(new ArrayList<>(ids.subList(i, Math.min(i + chunkSize, ids.size()))));
+        }
+        return chunks;
+    }
+
+    private void purgeFinished() {
+        long cutoff = System.currentTimeMillis() - PROGRESS_RETENTION_MILLIS;
+        progressByDefinitionPoint.values().removeIf(progress -> progress.finishedAt != 0 && progress.finishedAt < cutoff);
+    }
+
+    /**
+     * Fired when role assignments, or roles, change on definition points.
+     */
+    public static class PermissionsChangedEvent {
+
+        private final Collection<DvObject> definitionPoints;
+
+        public PermissionsChangedEvent(Collection<DvObject> definitionPoints) {
+            this.definitionPoints = definitionPoints;
+        }
+
+        public Collection<DvObject> getDefinitionPoints() {
+            return definitionPoints;
+        }
+    }
+}
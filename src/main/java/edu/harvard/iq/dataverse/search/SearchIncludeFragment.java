@@ -407,6 +407,11 @@ public class SearchIncludeFragment implements java.io.Serializable {
              * solrSearchResult.setCitation method but only the dataset card in
              * the UI (currently) shows this "citation" field.
              */
+            // The cards are populated by type, with a constant number of
+            // queries for the whole page rather than one (or more) per card:
+            List<SolrSearchResult> dvCards = new ArrayList<>();
+            List<SolrSearchResult> datasetCards = new ArrayList<>();
+            List<SolrSearchResult> fileCards = new ArrayList<>();
             for (SolrSearchResult solrSearchResult : searchResults) {
                 if (solrSearchResult.getEntityId() == null) {
                     // avoiding EJBException a la https://redmine.hmdc.harvard.edu/issues/3809
@@ -419,7 +424,7 @@ public class SearchIncludeFragment implements java.io.Serializable {
                 // (we'll review this later!)
                 
                 if (solrSearchResult.getType().equals("dataverses")) {
-                    dataverseService.populateDvSearchCard(solrSearchResult);
+                    dvCards.add(solrSearchResult);
                     
                     /*
                     Dataverses cannot be harvested yet.
@@ -428,7 +433,7 @@ public class SearchIncludeFragment implements java.io.Serializable {
                     }*/
 
                 } else if (solrSearchResult.getType().equals("datasets")) {
-                    datasetVersionService.populateDatasetSearchCard(solrSearchResult);
+                    datasetCards.add(solrSearchResult);
 
                     // @todo - the 3 lines below, should they be moved inside
                     // searchServiceBean.search()?
@@ -438,13 +443,22 @@ public class SearchIncludeFragment implements java.io.Serializable {
                     }
                     
                 } else if (solrSearchResult.getType().equals("files")) {
-                    dataFileService.populateFileSearchCard(solrSearchResult);
+                    fileCards.add(solrSearchResult);
 
                     /**
                      * @todo: show DataTable variables
                      */
                 }
             }
+            if (!dvCards.isEmpty()) {
+                dataverseService.populateDvSearchCards(dvCards);
+            }
+            if (!datasetCards.isEmpty()) {
+                datasetVersionService.populateDatasetSearchCards(datasetCards);
+            }
+            if (!fileCards.isEmpty()) {
+                dataFileService.populateFileSearchCards(fileCards);
+            }
 
             // populate preview counts: https://redmine.hmdc.harvard.edu/issues/3560
             previewCountbyType.put(BundleUtil.getStringFromBundle("dataverses"), 0L);
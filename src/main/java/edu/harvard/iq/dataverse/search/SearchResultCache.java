@@ -0,0 +1,308 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DatasetFieldType;
+import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DataverseFacet;
+import edu.harvard.iq.dataverse.DataverseMetadataBlockFacet;
+import edu.harvard.iq.dataverse.MetadataBlock;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+
+/**
+ * Caches the Solr responses to the searches of guest users (the landing page,
+ * the collection pages, and crawlers browsing them), and the facet
+ * configuration the searches are built from.
+ *
+ * The field and facet configuration is kept as plain values copied from the
+ * entities, not as the (detached) entities themselves.
+ *
+ * The responses are keyed by the complete Solr query: the query, the filter
+ * queries (including the permission filter query), the sort, the page and
+ * the facets. Every commit to the index bumps the index generation, which
+ * invalidates all the responses cached before it. The responses also expire
+ * after {@code dataverse.search.result-cache.ttl-seconds}; on a multi-server
+ * installation, or with changes to the index made outside of this server,
+ * that is the only way they are invalidated.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SearchResultCache {
+
+    private static final Logger logger = Logger.getLogger(SearchResultCache.class.getCanonicalName());
+
+    private final LruCache<String, Entry<QueryResponse>> responses = new LruCache<>();
+    private final LruCache<Long, Entry<FacetConfiguration>> facetsByDataverse = new LruCache<>();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Entry<List<DatasetFieldInfo>> datasetFields = null;
+    private boolean enabled;
+    private long ttl;
+
+    @PostConstruct
+    public void init() {
+        enabled = JvmSettings.SEARCH_RESULT_CACHE_ENABLED.lookupOptional(Boolean.class).orElse(true);
+        responses.setMaxSize(Math.max(1, JvmSettings.SEARCH_RESULT_CACHE_MAX_SIZE.lookupOptional(Integer.class).orElse(1000)));
+        facetsByDataverse.setMaxSize(1000);
+        ttl = JvmSettings.SEARCH_RESULT_CACHE_TTL_SECONDS.lookupOptional(Integer.class).orElse(60) * 1000L;
+        if (ttl <= 0) {
+            enabled = false;
+        }
+        logger.fine("Search result cache " + (enabled ? "enabled, for " + (ttl / 1000) + "s" : "disabled"));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the current index generation, to be passed to
+     *         {@link #put(SolrQuery, QueryResponse, long)} along with the
+     *         response of a query made after this call
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @return the cached response to the query, or null if there is none
+     */
+    public QueryResponse get(SolrQuery solrQuery) {
+        if (!enabled) {
+            return null;
+        }
+        String key = solrQuery.toQueryString();
+        Entry<QueryResponse> entry = responses.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.generation != generation.get() || entry.isExpired()) {
+            responses.invalidate(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Caches the response, unless the index changed since the query was made.
+     *
+     * @param generation the index generation from before the query was made
+     */
+    public void put(SolrQuery solrQuery, QueryResponse response, long generation) {
+        if (enabled && generation == this.generation.get()) {
+            responses.put(solrQuery.toQueryString(), new Entry<>(response, generation, expiry()));
+        }
+    }
+
+    /**
+     * To be called after every commit to the index.
+     */
+    public void indexChanged() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @return all the dataset field types, by id, as last looked up with the
+     *         supplier
+     */
+    public List<DatasetFieldInfo> getDatasetFields(Supplier<List<DatasetFieldType>> supplier) {
+        if (!enabled) {
+            return DatasetFieldInfo.of(supplier.get());
+        }
+        Entry<List<DatasetFieldInfo>> entry = datasetFields;
+        if (entry == null || entry.isExpired()) {
+            entry = new Entry<>(DatasetFieldInfo.of(supplier.get()), 0, expiry());
+            datasetFields = entry;
+        }
+        return entry.value;
+    }
+
+    /**
+     * @return the facets the dataverse shows (its own, or inherited from its
+     *         facet root)
+     */
+    public FacetConfiguration getFacets(Dataverse dataverse) {
+        if (!enabled || dataverse.getId() == null) {
+            return new FacetConfiguration(dataverse);
+        }
+        Entry<FacetConfiguration> entry = facetsByDataverse.get(dataverse.getId());
+        if (entry == null || entry.isExpired()) {
+            entry = new Entry<>(new FacetConfiguration(dataverse), 0, expiry());
+            facetsByDataverse.put(dataverse.getId(), entry);
+        }
+        return entry.value;
+    }
+
+    /**
+     * Invalidates the facets of all the dataverses (the facets are inherited)
+     * once the change of the facets of a dataverse is committed. Invalidating
+     * them any earlier would let a search running in the meantime cache the
+     * facets from before the change again.
+     */
+    public void facetsChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) FacetsChangedEvent event) {
+        facetsByDataverse.invalidate();
+    }
+
+    private long expiry() {
+        return System.currentTimeMillis() + ttl;
+    }
+
+    /**
+     * The Solr facet fields and the metadata block facets of a dataverse.
+     */
+    public static class FacetConfiguration {
+
+        private final List<String> facetFields = new ArrayList<>();
+        private final List<MetadataBlockFacet> metadataBlockFacets = new ArrayList<>();
+
+        FacetConfiguration(Dataverse dataverse) {
+            for (DataverseFacet dataverseFacet : dataverse.getDataverseFacets()) {
+                facetFields.add(dataverseFacet.getDatasetFieldType().getSolrField().getNameFacetable());
+            }
+            for (DataverseMetadataBlockFacet metadataBlockFacet : dataverse.getMetadataBlockFacets()) {
+                MetadataBlock metadataBlock = metadataBlockFacet.getMetadataBlock();
+                metadataBlockFacets.add(new MetadataBlockFacet(metadataBlock.getName(), metadataBlock.getDisplayName()));
+            }
+        }
+
+        public List<String> getFacetFields() {
+            return facetFields;
+        }
+
+        public List<MetadataBlockFacet> getMetadataBlockFacets() {
+            return metadataBlockFacets;
+        }
+    }
+
+    /**
+     * A metadata block a dataverse shows as a facet.
+     */
+    public static class MetadataBlockFacet {
+
+        private final String name;
+        private final String displayName;
+
+        MetadataBlockFacet(String name, String displayName) {
+            this.name = name;
+            this.displayName = displayName;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the facet label, in the locale of the current request
+         */
+        public String getLocaleDisplayFacet() {
+            return MetadataBlock.getLocaleValue("metadatablock.displayFacet", name, displayName);
+        }
+    }
+
+    /**
+     * What the searches use of a dataset field type: its Solr fields and what
+     * its label is made of. The labels are looked up in the locale of each
+     * request, the way {@link DatasetFieldType#getDisplayName()} does.
+     */
+    public static class DatasetFieldInfo {
+
+        private final Long id;
+        private final String name;
+        private final String title;
+        private final String metadataBlockName;
+        private final String searchableSolrField;
+        private final String facetableSolrField;
+        private final String tmpNullFieldTypeIdentifier;
+        private final DatasetFieldInfo parent;
+
+        DatasetFieldInfo(DatasetFieldType datasetFieldType) {
+            id = datasetFieldType.getId();
+            name = datasetFieldType.getName();
+            title = datasetFieldType.getTitle();
+            metadataBlockName = datasetFieldType.getMetadataBlock() == null ? null : datasetFieldType.getMetadataBlock().getName();
+            searchableSolrField = datasetFieldType.getSolrField().getNameSearchable();
+            facetableSolrField = datasetFieldType.getSolrField().getNameFacetable();
+            tmpNullFieldTypeIdentifier = datasetFieldType.getTmpNullFieldTypeIdentifier();
+            // (only kept when its title is part of the label)
+            DatasetFieldType parentType = datasetFieldType.getParentDatasetFieldType();
+            parent = parentType != null && !parentType.getTitle().equals(title) ? new DatasetFieldInfo(parentType) : null;
+        }
+
+        static List<DatasetFieldInfo> of(List<DatasetFieldType> datasetFieldTypes) {
+            List<DatasetFieldInfo> datasetFields = new ArrayList<>(datasetFieldTypes.size());
+            for (DatasetFieldType datasetFieldType : datasetFieldTypes) {
+                datasetFields.add(new DatasetFieldInfo(datasetFieldType));
+            }
+            return Collections.unmodifiableList(datasetFields);
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getMetadataBlockName() {
+            return metadataBlockName;
+        }
+
+        public String getSearchableSolrField() {
+            return searchableSolrField;
+        }
+
+        public String getFacetableSolrField() {
+            return facetableSolrField;
+        }
+
+        public String getTmpNullFieldTypeIdentifier() {
+            return tmpNullFieldTypeIdentifier;
+        }
+
+        /**
+         * @see DatasetFieldType#getDisplayName()
+         */
+        public String getDisplayName() {
+            String localeTitle = DatasetFieldType.getLocaleTitle(name, metadataBlockName, title);
+            return parent == null ? localeTitle : DatasetFieldType.getLocaleTitle(parent.name, parent.metadataBlockName, parent.title) + " " + localeTitle;
+        }
+    }
+
+    /**
+     * Fired when the facets of a dataverse are changed.
+     */
+    public static class FacetsChangedEvent {
+    }
+
+    private static class Entry<T> {
+
+        private final T value;
+        private final long generation;
+        private final long expiresAt;
+
+        Entry(T value, long generation, long expiresAt) {
+            this.value = value;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return expiresAt < System.currentTimeMillis();
+        }
+    }
+}
@@ -3,11 +3,9 @@ package edu.harvard.iq.dataverse.search;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DatasetFieldConstant;
 import edu.harvard.iq.dataverse.DatasetFieldServiceBean;
-import edu.harvard.iq.dataverse.DatasetFieldType;
 import edu.harvard.iq.dataverse.DatasetVersionServiceBean;
 import edu.harvard.iq.dataverse.Dataverse;
-import edu.harvard.iq.dataverse.DataverseFacet;
-import edu.harvard.iq.dataverse.DataverseMetadataBlockFacet;
+import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
 import edu.harvard.iq.dataverse.authorization.groups.Group;
 import edu.harvard.iq.dataverse.authorization.groups.GroupServiceBean;
@@ -30,17 +28,16 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.MissingResourceException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import jakarta.ejb.EJB;
-import jakarta.ejb.EJBTransactionRolledbackException;
 import jakarta.ejb.Stateless;
-import jakarta.ejb.TransactionRolledbackLocalException;
 import jakarta.inject.Named;
-import jakarta.persistence.NoResultException;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrQuery.SortClause;
 import org.apache.solr.client.solrj.SolrServerException;
@@ -51,6 +48,7 @@ import org.apache.solr.client.solrj.response.RangeFacet;
 import org.apache.solr.client.solrj.response.SpellCheckResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
 
 @Stateless
 @Named
@@ -77,6 +75,8 @@ public class SearchServiceBean {
     SystemConfig systemConfig;
     @EJB
     SolrClientService solrClientService;
+    @EJB
+    SearchResultCache searchResultCache;
     
     /**
      * Import note: "onlyDatatRelatedToMe" relies on filterQueries for providing
@@ -119,7 +119,7 @@ public class SearchServiceBean {
      * @param paginationStart
      * @param onlyDatatRelatedToMe
      * @param numResultsPerPage
-     * @param retrieveEntities - look up dvobject entities with .find() (potentially expensive!)
+     * @param retrieveEntities - look up dvobject entities (with one query for all the results)
      * @param geoPoint e.g. "35,15"
      * @param geoRadius e.g. "5"
      * @return
@@ -138,6 +138,34 @@ public class SearchServiceBean {
             String geoPoint,
             String geoRadius
     ) throws SearchException {
+        return search(dataverseRequest, dataverses, query, filterQueries, sortField, sortOrder, paginationStart, onlyDatatRelatedToMe, numResultsPerPage, retrieveEntities, geoPoint, geoRadius, null);
+    }
+
+    /**
+     * Same as above, but pages through the results with a Solr cursor rather
+     * than with paginationStart, when cursorMark is not null. The cost of a
+     * page doesn't grow with its depth, as it does with paginationStart, and
+     * documents added or removed while paging don't shift the later pages.
+     * The cursor of the next page is returned in
+     * {@link SolrQueryResponse#getNextCursorMark()}.
+     *
+     * @param cursorMark "*" for the first page, then the next cursor mark
+     * returned with the previous page; or null to use paginationStart
+     */
+    public SolrQueryResponse search(
+            DataverseRequest dataverseRequest,
+            List<Dataverse> dataverses,
+            String query,
+            List<String> filterQueries,
+            String sortField, String sortOrder,
+            int paginationStart,
+            boolean onlyDatatRelatedToMe,
+            int numResultsPerPage,
+            boolean retrieveEntities,
+            String geoPoint,
+            String geoRadius,
+            String cursorMark
+    ) throws SearchException {
 
         if (paginationStart < 0) {
             throw new IllegalArgumentException("paginationStart must be 0 or greater");
@@ -153,6 +181,10 @@ public class SearchServiceBean {
 //        if (query.equals("*") || query.equals("*:*")) {
 //            solrQuery.setSort(new SortClause(SearchFields.NAME_SORT, SolrQuery.ORDER.asc));
         solrQuery.setSort(new SortClause(sortField, sortOrder));
+        if (cursorMark != null && !SearchFields.ID.equals(sortField)) {
+            // a cursor needs a total order: break the ties on the unique key
+            solrQuery.addSort(new SortClause(SearchFields.ID, SolrQuery.ORDER.asc));
+        }
 //        } else {
 //            solrQuery.setSort(sortClause);
 //        }
@@ -196,9 +228,9 @@ public class SearchServiceBean {
          */
         solrFieldsToHightlightOnMap.put(SearchFields.FILENAME_WITHOUT_EXTENSION, "Filename Without Extension");
         solrFieldsToHightlightOnMap.put(SearchFields.FILE_TAG_SEARCHABLE, "File Tag");
-        List<DatasetFieldType> datasetFields = datasetFieldService.findAllOrderedById();
-        for (DatasetFieldType datasetFieldType : datasetFields) {
-            String solrField = datasetFieldType.getSolrField().getNameSearchable();
+        List<SearchResultCache.DatasetFieldInfo> datasetFields = searchResultCache.getDatasetFields(datasetFieldService::findAllOrderedById);
+        for (SearchResultCache.DatasetFieldInfo datasetFieldType : datasetFields) {
+            String solrField = datasetFieldType.getSearchableSolrField();
             String displayName = datasetFieldType.getDisplayName();
             solrFieldsToHightlightOnMap.put(solrField, displayName);
         }
@@ -250,7 +282,7 @@ public class SearchServiceBean {
          *
          */
 
-        List<DataverseMetadataBlockFacet> metadataBlockFacets = new LinkedList<>();
+        List<SearchResultCache.MetadataBlockFacet> metadataBlockFacets = new LinkedList<>();
         //I'm not sure if just adding null here is good for hte permissions system... i think it needs something
         if(dataverses != null) {
             for(Dataverse dataverse : dataverses) {
@@ -262,12 +294,12 @@ public class SearchServiceBean {
                     solrQuery.addFilterQuery(permissionFilterQuery);
                 }
                 if (dataverse != null) {
-                    for (DataverseFacet dataverseFacet : dataverse.getDataverseFacets()) {
-                        DatasetFieldType datasetField = dataverseFacet.getDatasetFieldType();
-                        solrQuery.addFacetField(datasetField.getSolrField().getNameFacetable());
+                    SearchResultCache.FacetConfiguration facets = searchResultCache.getFacets(dataverse);
+                    for (String facetField : facets.getFacetFields()) {
+                        solrQuery.addFacetField(facetField);
                     }
                     // Get all metadata block facets configured to be displayed
-                    metadataBlockFacets.addAll(dataverse.getMetadataBlockFacets());
+                    metadataBlockFacets.addAll(facets.getMetadataBlockFacets());
                 }
             }
         } else {
@@ -290,7 +322,13 @@ public class SearchServiceBean {
         /**
          * @todo: do sanity checking... throw error if negative
          */
-        solrQuery.setStart(paginationStart);
+        if (cursorMark != null) {
+            // (a cursor always starts where the previous page ended)
+            solrQuery.setStart(0);
+            solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+        } else {
+            solrQuery.setStart(paginationStart);
+        }
         /**
          * @todo: decide if year CITATION_YEAR is good enough or if we should
          * support CITATION_DATE
@@ -327,9 +365,18 @@ public class SearchServiceBean {
         // -----------------------------------
         // Make the solr query
         // -----------------------------------
-        QueryResponse queryResponse = null;
+        // (the searches of guests are all alike, and are answered from the
+        // cache; the searches of users depend on their permissions)
+        boolean cacheable = dataverseRequest.getUser() instanceof GuestUser;
+        QueryResponse queryResponse = cacheable ? searchResultCache.get(solrQuery) : null;
         try {
-            queryResponse = solrClientService.getSolrClient().query(solrQuery);
+            if (queryResponse == null) {
+                long indexGeneration = searchResultCache.getGeneration();
+                queryResponse = solrClientService.getSolrClient().query(solrQuery);
+                if (cacheable) {
+                    searchResultCache.put(solrQuery, queryResponse, indexGeneration);
+                }
+            }
         } catch (RemoteSolrException ex) {
             String messageFromSolr = ex.getLocalizedMessage();
             String error = "Search Syntax Error: ";
@@ -371,17 +418,12 @@ public class SearchServiceBean {
          */
         Object searchFieldsObject = new SearchFields();
         Field[] staticSearchFields = searchFieldsObject.getClass().getDeclaredFields();
-        String titleSolrField = null;
-        try {
-            DatasetFieldType titleDatasetField = datasetFieldService.findByName(DatasetFieldConstant.title);
-            titleSolrField = titleDatasetField.getSolrField().getNameSearchable();
-        } catch (EJBTransactionRolledbackException ex) {
+        String titleSolrField = datasetFields.stream()
+                .filter(datasetField -> DatasetFieldConstant.title.equals(datasetField.getName()))
+                .map(SearchResultCache.DatasetFieldInfo::getSearchableSolrField)
+                .findFirst().orElse(null);
+        if (titleSolrField == null) {
             logger.info("Couldn't find " + DatasetFieldConstant.title);
-            if (ex.getCause() instanceof TransactionRolledbackLocalException) {
-                if (ex.getCause().getCause() instanceof NoResultException) {
-                    logger.info("Caught NoResultException");
-                }
-            }
         }
         Map<String, String> datasetfieldFriendlyNamesBySolrField = new HashMap<>();
         Map<String, String> staticSolrFieldFriendlyNamesBySolrField = new HashMap<>();
@@ -460,9 +502,6 @@ public class SearchServiceBean {
 //            logger.info(id + ": " + description);
             solrSearchResult.setId(id);
             solrSearchResult.setEntityId(entityid);
-            if (retrieveEntities) {
-                solrSearchResult.setEntity(dvObjectService.findDvObject(entityid));
-            }
             solrSearchResult.setIdentifier(identifier);
             solrSearchResult.setPersistentUrl(persistentUrl);
             solrSearchResult.setType(type);
@@ -606,6 +645,16 @@ public class SearchServiceBean {
             solrSearchResult.setParent(parent);
             solrSearchResults.add(solrSearchResult);
         }
+        if (retrieveEntities) {
+            // (one query for the whole page, rather than one per document)
+            Map<Long, DvObject> entities = dvObjectService.findDvObjects(solrSearchResults.stream()
+                    .map(SolrSearchResult::getEntityId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+            for (SolrSearchResult solrSearchResult : solrSearchResults) {
+                solrSearchResult.setEntity(entities.get(solrSearchResult.getEntityId()));
+            }
+        }
         Map<String, List<String>> spellingSuggestionsByToken = new HashMap<>();
         SpellCheckResponse spellCheckResponse = queryResponse.getSpellCheckResponse();
         if (spellCheckResponse != null) {
@@ -633,10 +682,10 @@ public class SearchServiceBean {
              * ===facetField: authorName_ss   metadatablockname : citation
              * ===facetField: dvCategory  metadatablockname : ""
              */
-            for (DatasetFieldType datasetField : datasetFields) {
-                String solrFieldNameForDataset = datasetField.getSolrField().getNameFacetable();
+            for (SearchResultCache.DatasetFieldInfo datasetField : datasetFields) {
+                String solrFieldNameForDataset = datasetField.getFacetableSolrField();
                 if (solrFieldNameForDataset != null && facetField.getName().equals(solrFieldNameForDataset)) {
-                    metadataBlockName = datasetField.getMetadataBlock().getName() ;
+                    metadataBlockName = datasetField.getMetadataBlockName();
                     datasetFieldName = datasetField.getName();
                     facetCategory.setDatasetFieldTypeId(datasetField.getId());
                     break;
@@ -654,13 +703,13 @@ public class SearchServiceBean {
                    if(metadataBlockName.length() > 0 ) {
                        localefriendlyName = getLocaleTitle(datasetFieldName,facetFieldCount.getName(), metadataBlockName);
                     } else if (facetField.getName().equals(SearchFields.METADATA_TYPES)) {
-                       Optional<DataverseMetadataBlockFacet> metadataBlockFacet = metadataBlockFacets.stream().filter(blockFacet -> blockFacet.getMetadataBlock().getName().equals(facetFieldCount.getName())).findFirst();
+                       Optional<SearchResultCache.MetadataBlockFacet> metadataBlockFacet = metadataBlockFacets.stream().filter(blockFacet -> blockFacet.getName().equals(facetFieldCount.getName())).findFirst();
                        if (metadataBlockFacet.isEmpty()) {
                            // metadata block facet is not configured to be displayed => ignore
                            continue;
                        }
 
-                       localefriendlyName = metadataBlockFacet.get().getMetadataBlock().getLocaleDisplayFacet();
+                       localefriendlyName = metadataBlockFacet.get().getLocaleDisplayFacet();
                    } else {
                        try {
                            localefriendlyName = BundleUtil.getStringFromPropertyFile(facetFieldCount.getName(), "Bundle");
@@ -699,8 +748,8 @@ public class SearchServiceBean {
              * the todo above but we need a way to lookup by Solr field, so
              * we'll build a hashmap
              */
-            for (DatasetFieldType datasetField : datasetFields) {
-                String solrFieldNameForDataset = datasetField.getSolrField().getNameFacetable();
+            for (SearchResultCache.DatasetFieldInfo datasetField : datasetFields) {
+                String solrFieldNameForDataset = datasetField.getFacetableSolrField();
                 String friendlyName = datasetField.getDisplayName();
                 if (solrFieldNameForDataset != null && facetField.getName().endsWith(datasetField.getTmpNullFieldTypeIdentifier())) {
                     // give it the non-friendly name so we remember to update the reference data script for datasets
@@ -712,7 +761,7 @@ public class SearchServiceBean {
                         break;
                     }
                 }
-                datasetfieldFriendlyNamesBySolrField.put(datasetField.getSolrField().getNameFacetable(), friendlyName);
+                datasetfieldFriendlyNamesBySolrField.put(datasetField.getFacetableSolrField(), friendlyName);
             }
             /**
              * @todo get rid of this crazy reflection, per todo above... or
@@ -810,6 +859,7 @@ public class SearchServiceBean {
         solrQueryResponse.setTypeFacetCategories(typeFacetCategories);
         solrQueryResponse.setNumResultsFound(queryResponse.getResults().getNumFound());
         solrQueryResponse.setResultsStart(queryResponse.getResults().getStart());
+        solrQueryResponse.setNextCursorMark(queryResponse.getNextCursorMark());
         solrQueryResponse.setDatasetfieldFriendlyNamesBySolrField(datasetfieldFriendlyNamesBySolrField);
         solrQueryResponse.setStaticSolrFieldFriendlyNamesBySolrField(staticSolrFieldFriendlyNamesBySolrField);
         String[] filterQueriesArray = solrQuery.getFilterQueries();
@@ -15,6 +15,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -25,8 +27,10 @@ import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
 import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
+import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
 
 @Named
@@ -49,6 +53,10 @@ public class SolrIndexServiceBean {
     IndexServiceBean indexService;
     @EJB
     SolrClientService solrClientService;
+    @EJB
+    SearchResultCache searchResultCache;
+
+    private static final int PERMISSION_LOOKUP_BATCH_SIZE = 500;
 
     public static String numRowsClearedByClearAllIndexTimes = "numRowsClearedByClearAllIndexTimes";
     public static String messageString = "message";
@@ -331,7 +339,7 @@ public class SolrIndexServiceBean {
             docs.add(solrInputDocument);
         }
         try {
-            persistToSolr(docs);
+            persistChangedToSolr(docs);
             boolean updatePermissionTimeSuccessful = false;
             if (dvObject != null) {
                 DvObject savedDvObject = dvObjectService.updatePermissionIndexTime(dvObject);
@@ -358,6 +366,54 @@ public class SolrIndexServiceBean {
          */
         UpdateResponse addResponse = solrClientService.getSolrClient().add(docs);
         UpdateResponse commitResponse = solrClientService.getSolrClient().commit();
+        searchResultCache.indexChanged();
+    }
+
+    /**
+     * Persists only the permission documents whose discoverableBy differs
+     * from the one in Solr (or that aren't in Solr yet). A role assignment
+     * only changes who can discover the unpublished objects below its
+     * definition point; the documents of everything else are left alone,
+     * rather than rewritten with the same permissions.
+     *
+     * The permission documents are still one per object. They are not kept
+     * per assignee and expanded at query time: the only ancestry in the
+     * index is the subtree paths, which include linked collections (so a
+     * join on them would make linked content discoverable through the link)
+     * and know nothing of permission roots.
+     *
+     * @return the number of documents persisted
+     */
+    // Visible for testing
+    int persistChangedToSolr(Collection<SolrInputDocument> docs) throws SolrServerException, IOException {
+        Map<String, SolrInputDocument> docsById = new LinkedHashMap<>();
+        for (SolrInputDocument doc : docs) {
+            docsById.put((String) doc.getFieldValue(SearchFields.ID), doc);
+        }
+        List<String> ids = new ArrayList<>(docsById.keySet());
+        for (int i = 0; i < ids.size(); i += PERMISSION_LOOKUP_BATCH_SIZE) {
+            List<String> batch = ids.subList(i, Math.min(i + PERMISSION_LOOKUP_BATCH_SIZE, ids.size()));
+            SolrQuery solrQuery = new SolrQuery("*:*");
+            solrQuery.addFilterQuery("{!terms f=" + SearchFields.ID + "}" + String.join(",", batch));
+            solrQuery.setFields(SearchFields.ID, SearchFields.DISCOVERABLE_BY);
+            solrQuery.setRows(batch.size());
+            for (SolrDocument indexed : solrClientService.getSolrClient().query(solrQuery).getResults()) {
+                String id = (String) indexed.getFieldValue(SearchFields.ID);
+                SolrInputDocument doc = docsById.get(id);
+                if (doc != null && sameValues(doc.getFieldValues(SearchFields.DISCOVERABLE_BY), indexed.getFieldValues(SearchFields.DISCOVERABLE_BY))) {
+                    docsById.remove(id);
+                }
+            }
+        }
+        logger.fine(docsById.size() + " of " + docs.size() + " permission documents changed");
+        persistToSolr(docsById.values());
+        return docsById.size();
+    }
+
+    private static boolean sameValues(Collection<Object> values, Collection<Object> indexedValues) {
+        Set<Object> set = (values == null) ? Set.of() : new HashSet<>(values);
+        Set<Object> indexedSet = (indexedValues == null) ? Set.of() : new HashSet<>(indexedValues);
+        return set.equals(indexedSet);
     }
 
     public IndexResponse indexPermissionsOnSelfAndChildren(long definitionPointId) {
@@ -408,28 +464,99 @@ public class SolrIndexServiceBean {
         }
 
         /**
-         * @todo Error handling? What to do with response?
-         *
          * @todo Should update timestamps, probably, even thought these are
          * files, see https://github.com/IQSS/dataverse/issues/2421
          */
-        String response = reindexFilesInBatches(filesToReindexAsBatch);
-
+        List<SolrInputDocument> docs = constructDatafilePermissionDocs(filesToReindexAsBatch);
         for (DvObject dvObject : dvObjectsToReindexPermissionsFor) {
-            /**
-             * @todo do something with this response
-             */
-            IndexResponse indexResponse = indexPermissionsForOneDvObject(dvObject);
+            for (DvObjectSolrDoc dvObjectSolrDoc : determineSolrDocs(dvObject)) {
+                docs.add(SearchUtil.createSolrDoc(dvObjectSolrDoc));
+            }
         }
-        
+        int numPersisted;
+        try {
+            numPersisted = persistChangedToSolr(docs);
+        } catch (SolrServerException | IOException ex) {
+            // (the permission index times are left as they are, so that the
+            // objects show up as stale)
+            logger.log(Level.WARNING, "Failed to index the permissions on " + definitionPoint + " and its children", ex);
+            return new IndexResponse("problem indexing permissions for " + definitionPoint + ": " + ex);
+        }
+        for (DvObject dvObject : dvObjectsToReindexPermissionsFor) {
+            dvObjectService.updatePermissionIndexTime(dvObject);
+        }
+
         return new IndexResponse("Number of dvObject permissions indexed for " + definitionPoint
                 + ": " + dvObjectsToReindexPermissionsFor.size()
+                + " (" + numPersisted + " of " + docs.size() + " Solr documents changed)"
         );
     }
 
-    private String reindexFilesInBatches(List<DataFile> filesToReindexPermissionsFor) {
+    /**
+     * The ids of the dataverses and datasets whose permissions
+     * {@link #indexPermissionsOnSelfAndChildren(DvObject)} reindexes, for
+     * {@link PermissionReindexServiceBean} to reindex them in chunks. (The
+     * files are found with {@link #findFilesToReindexPermissionsFor(List)}.)
+     */
+    public List<Long> findObjectsToReindexPermissionsFor(Long definitionPointId) {
+        List<Long> ids = new ArrayList<>();
+        DvObject definitionPoint = dvObjectService.findDvObject(definitionPointId);
+        if (definitionPoint == null) {
+            return ids;
+        }
+        if (definitionPoint.isInstanceofDataverse()) {
+            if (!definitionPoint.equals(dataverseService.findRootDataverse())) {
+                ids.add(definitionPointId);
+            }
+            ids.addAll(datasetService.findIdsByOwnerId(definitionPointId));
+        } else {
+            ids.add(definitionPointId);
+        }
+        return ids;
+    }
+
+    /**
+     * @return the ids of the files of the datasets that have Solr documents
+     *         (i.e. that are in the released or the latest version)
+     */
+    public List<Long> findFilesToReindexPermissionsFor(List<Long> datasetIds) {
+        Set<Long> fileIds = new LinkedHashSet<>();
+        for (DvObject dvObject : dvObjectService.findDvObjects(datasetIds).values()) {
+            if (dvObject.isInstanceofDataset()) {
+                for (DataFile datafile : filesToReIndexPermissionsFor((Dataset) dvObject)) {
+                    fileIds.add(datafile.getId());
+                }
+            }
+        }
+        return new ArrayList<>(fileIds);
+    }
+
+    /**
+     * Indexes the permissions of one chunk of objects (of any type), and
+     * updates their permission index times once they are in Solr.
+     *
+     * @return the number of Solr documents that changed
+     */
+    public int indexPermissionsForChunk(List<Long> dvObjectIds) throws SolrServerException, IOException {
+        List<DataFile> files = new ArrayList<>();
+        List<SolrInputDocument> docs = new ArrayList<>();
+        for (DvObject dvObject : dvObjectService.findDvObjects(dvObjectIds).values()) {
+            if (dvObject.isInstanceofDataFile()) {
+                files.add((DataFile) dvObject);
+            } else {
+                for (DvObjectSolrDoc dvObjectSolrDoc : determineSolrDocs(dvObject)) {
+                    docs.add(SearchUtil.createSolrDoc(dvObjectSolrDoc));
+                }
+            }
+        }
+        docs.addAll(constructDatafilePermissionDocs(files));
+        int numPersisted = persistChangedToSolr(docs);
+        dvObjectService.updatePermissionIndexTimes(dvObjectIds);
+        return numPersisted;
+    }
+
+    private List<SolrInputDocument> constructDatafilePermissionDocs(List<DataFile> filesToReindexPermissionsFor) {
         List<SolrInputDocument> docs = new ArrayList<>();
-        Map<Long, List<Long>> byParentId = new HashMap<>();
         Map<Long, List<String>> permStringByDatasetVersion = new HashMap<>();
         for (DataFile file : filesToReindexPermissionsFor) {
             Dataset dataset = (Dataset) file.getOwner();
@@ -459,23 +586,8 @@ public class SolrIndexServiceBean {
                     }
                 }
             }
-            Long parent = file.getOwner().getId();
-            List<Long> existingList = byParentId.get(parent);
-            if (existingList == null) {
-                List<Long> empty = new ArrayList<>();
-                byParentId.put(parent, empty);
-            } else {
-                List<Long> updatedList = existingList;
-                updatedList.add(file.getId());
-                byParentId.put(parent, updatedList);
-            }
-        }
-        try {
-            persistToSolr(docs);
-            return " " + filesToReindexPermissionsFor.size() + " files indexed across " + docs.size() + " Solr documents ";
-        } catch (SolrServerException | IOException ex) {
-            return " tried to reindex " + filesToReindexPermissionsFor.size() + " files indexed across " + docs.size() + " Solr documents but caught exception: " + ex;
         }
+        return docs;
     }
 
     private List<DataFile> filesToReIndexPermissionsFor(Dataset dataset) {
@@ -506,6 +618,7 @@ public class SolrIndexServiceBean {
         }
         try {
             solrClientService.getSolrClient().commit();
+            searchResultCache.indexChanged();
         } catch (SolrServerException | IOException ex) {
             return new IndexResponse("problem committing deletion of the following documents from Solr: " + solrIdsToDelete);
         }
@@ -517,6 +630,7 @@ public class SolrIndexServiceBean {
         logger.info("attempting to delete all Solr documents before a complete re-index");
         solrClientService.getSolrClient().deleteByQuery("*:*");
         solrClientService.getSolrClient().commit();
+        searchResultCache.indexChanged();
         int numRowsAffected = dvObjectService.clearAllIndexTimes();
         response.add(numRowsClearedByClearAllIndexTimes, numRowsAffected);
         response.add(messageString, "Solr index and database index timestamps cleared.");
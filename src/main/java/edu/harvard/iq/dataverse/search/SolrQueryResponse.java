@@ -17,6 +17,7 @@ public class SolrQueryResponse {
     private List<SolrSearchResult> solrSearchResults;
     private Long numResultsFound;
     private Long resultsStart;
+    private String nextCursorMark;
     private Map<String, List<String>> spellingSuggestionsByToken;
     private List<FacetCategory> facetCategoryList;
     private List<FacetCategory> typeFacetCategories;
@@ -147,6 +148,19 @@ public class SolrQueryResponse {
         this.resultsStart = resultsStart;
     }
 
+    /**
+     * @return the cursor mark of the next page, when paging with a cursor; the
+     *         same as the cursor mark of this page, once there are no more
+     *         results
+     */
+    public String getNextCursorMark() {
+        return nextCursorMark;
+    }
+
+    public void setNextCursorMark(String nextCursorMark) {
+        this.nextCursorMark = nextCursorMark;
+    }
+
     public void setSpellingSuggestionsByToken(Map<String, List<String>> spellingSuggestionsByToken) {
         this.spellingSuggestionsByToken = spellingSuggestionsByToken;
     }
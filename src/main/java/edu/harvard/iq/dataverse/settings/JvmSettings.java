@@ -49,6 +49,46 @@ public enum JvmSettings {
     // FILES SETTINGS
     SCOPE_FILES(PREFIX, "files"),
     FILES_DIRECTORY(SCOPE_FILES, "directory"),
+    SCOPE_CHUNKED_UPLOADS(SCOPE_FILES, "chunked-uploads"),
+    CHUNKED_UPLOADS_MAX_IN_PROGRESS(SCOPE_CHUNKED_UPLOADS, "max-in-progress"),
+    CHUNKED_UPLOADS_EXPIRY_MINUTES(SCOPE_CHUNKED_UPLOADS, "expiry-minutes"),
+    CHUNKED_UPLOADS_MAX_BUFFERED_BYTES(SCOPE_CHUNKED_UPLOADS, "max-buffered-bytes"),
+    
+    // FIXITY AUDIT SETTINGS
+    SCOPE_FIXITY(PREFIX, "fixity"),
+    FIXITY_THREADS_PER_STORE(SCOPE_FIXITY, "threads-per-store"),
+    FIXITY_MAX_BYTES_PER_SECOND(SCOPE_FIXITY, "max-bytes-per-second"),
+    FIXITY_RANGED_READ_THRESHOLD(SCOPE_FIXITY, "ranged-read-threshold"),
+    
+    // THUMBNAIL GENERATION SETTINGS
+    SCOPE_THUMBNAILS(PREFIX, "thumbnails"),
+    THUMBNAILS_THREADS(SCOPE_THUMBNAILS, "threads"),
+    THUMBNAILS_QUEUE_SIZE(SCOPE_THUMBNAILS, "queue-size"),
+    THUMBNAILS_MAX_DECODE_PIXELS(SCOPE_THUMBNAILS, "max-decode-pixels"),
+    
+    // TABULAR INGEST SETTINGS
+    SCOPE_INGEST(PREFIX, "ingest"),
+    INGEST_THREADS(SCOPE_INGEST, "threads"),
+    INGEST_MEMORY_BUDGET(SCOPE_INGEST, "memory-budget"),
+    
+    // USER ACTIVITY SETTINGS
+    SCOPE_USER_ACTIVITY(PREFIX, "user-activity"),
+    USER_ACTIVITY_FLUSH_INTERVAL_SECONDS(SCOPE_USER_ACTIVITY, "flush-interval-seconds"),
+    
+    // ACTION LOG SETTINGS
+    SCOPE_ACTION_LOG(PREFIX, "action-log"),
+    ACTION_LOG_ASYNC(SCOPE_ACTION_LOG, "async"),
+    ACTION_LOG_QUEUE_SIZE(SCOPE_ACTION_LOG, "queue-size"),
+    ACTION_LOG_BATCH_SIZE(SCOPE_ACTION_LOG, "batch-size"),
+    ACTION_LOG_FLUSH_INTERVAL_MS(SCOPE_ACTION_LOG, "flush-interval-ms"),
+    
+    // SHARED ENTITY CACHE SETTINGS
+    SCOPE_ENTITY_CACHE(PREFIX, "entity-cache"),
+    ENTITY_CACHE_ENABLED(SCOPE_ENTITY_CACHE, "enabled"),
+    ENTITY_CACHE_EXPIRY_SECONDS(SCOPE_ENTITY_CACHE, "expiry-seconds"),
+    ENTITY_CACHE_STATISTICS(SCOPE_ENTITY_CACHE, "statistics"),
+    ENTITY_CACHE_COORDINATION_TOPIC(SCOPE_ENTITY_CACHE, "coordination-topic"),
+    ENTITY_CACHE_COORDINATION_FACTORY(SCOPE_ENTITY_CACHE, "coordination-factory"),
     
     // SOLR INDEX SETTINGS
     SCOPE_SOLR(PREFIX, "solr"),
@@ -58,6 +98,17 @@ public enum JvmSettings {
     SOLR_CORE(SCOPE_SOLR, "core"),
     SOLR_PATH(SCOPE_SOLR, "path"),
 
+    // SEARCH SETTINGS
+    SCOPE_SEARCH(PREFIX, "search"),
+    SCOPE_SEARCH_RESULT_CACHE(SCOPE_SEARCH, "result-cache"),
+    SEARCH_RESULT_CACHE_ENABLED(SCOPE_SEARCH_RESULT_CACHE, "enabled"),
+    SEARCH_RESULT_CACHE_MAX_SIZE(SCOPE_SEARCH_RESULT_CACHE, "max-size"),
+    SEARCH_RESULT_CACHE_TTL_SECONDS(SCOPE_SEARCH_RESULT_CACHE, "ttl-seconds"),
+    SCOPE_SEARCH_PERMISSION_INDEX(SCOPE_SEARCH, "permission-index"),
+    SEARCH_PERMISSION_INDEX_CHUNK_SIZE(SCOPE_SEARCH_PERMISSION_INDEX, "chunk-size"),
+    SEARCH_PERMISSION_INDEX_THREADS(SCOPE_SEARCH_PERMISSION_INDEX, "threads"),
+    SEARCH_PERMISSION_INDEX_MAX_RETRIES(SCOPE_SEARCH_PERMISSION_INDEX, "max-retries"),
+
     // RSERVE CONNECTION
     SCOPE_RSERVE(PREFIX, "rserve"),
     RSERVE_HOST(SCOPE_RSERVE, "host"),
@@ -70,6 +121,10 @@ public enum JvmSettings {
     SCOPE_API(PREFIX, "api"),
     API_SIGNING_SECRET(SCOPE_API, "signing-secret"),
     API_ALLOW_INCOMPLETE_METADATA(SCOPE_API, "allow-incomplete-metadata"),
+    SCOPE_API_AUTH_CACHE(SCOPE_API, "auth-cache"),
+    API_AUTH_CACHE_ENABLED(SCOPE_API_AUTH_CACHE, "enabled"),
+    API_AUTH_CACHE_MAX_SIZE(SCOPE_API_AUTH_CACHE, "max-size"),
+    API_AUTH_CACHE_TTL_SECONDS(SCOPE_API_AUTH_CACHE, "ttl-seconds"),
 
     // SIGNPOSTING SETTINGS
     SCOPE_SIGNPOSTING(PREFIX, "signposting"),
@@ -29,6 +29,7 @@ import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.Embargo;
 import edu.harvard.iq.dataverse.FileMetadata;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.DigestingInputStream;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
 import edu.harvard.iq.dataverse.dataset.DatasetThumbnail;
@@ -43,6 +44,9 @@ import edu.harvard.iq.dataverse.license.License;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.file.BagItFileHandler;
 import edu.harvard.iq.dataverse.util.file.CreateDataFileResult;
+import edu.harvard.iq.dataverse.util.file.FileHeaderBuffer;
+import edu.harvard.iq.dataverse.util.file.FileTypeDetectionPipeline;
+import edu.harvard.iq.dataverse.util.file.FileTypeDetector;
 import edu.harvard.iq.dataverse.util.file.BagItFileHandlerFactory;
 import edu.harvard.iq.dataverse.util.xml.html.HtmlFormatUtil;
 import static edu.harvard.iq.dataverse.util.xml.html.HtmlFormatUtil.formatDoc;
@@ -55,7 +59,6 @@ import static edu.harvard.iq.dataverse.util.xml.html.HtmlFormatUtil.formatLink;
 import static edu.harvard.iq.dataverse.util.xml.html.HtmlFormatUtil.formatTableCellAlignRight;
 import static edu.harvard.iq.dataverse.util.xml.html.HtmlFormatUtil.formatTableRow;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -65,6 +68,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -123,6 +127,109 @@ public class FileUtil implements java.io.Serializable  {
     private static final Logger logger = Logger.getLogger(FileUtil.class.getCanonicalName());
     
     private static final String[] TABULAR_DATA_FORMAT_SET = {"POR", "SAV", "DTA", "RDA"};
+
+    private static final byte[] NETCDF_CLASSIC_MAGIC = {'C', 'D', 'F'};
+    private static final byte[] HDF5_SIGNATURE = {(byte) 0x89, 'H', 'D', 'F', '\r', '\n', 0x1a, '\n'};
+    private static final String GRAPHML_ROOT_ELEMENT = "<graphml";
+
+    /**
+     * The magic number detectors used by determineFileType(), in the order 
+     * of priority; all of them work off the shared header window, except 
+     * for Jhove, which parses the whole file and is only run when the cheap 
+     * checks are inconclusive.
+     */
+    private static final FileTypeDetectionPipeline FILE_TYPE_DETECTION_PIPELINE = new FileTypeDetectionPipeline(List.of(
+            new FileTypeDetector() {
+                @Override
+                public String getName() {
+                    return "tabular";
+                }
+
+                @Override
+                public String detect(FileHeaderBuffer header, String fileName) {
+                    return new IngestableDataChecker(TABULAR_DATA_FORMAT_SET).detectTabularDataFormat(header.asByteBuffer());
+                }
+            },
+            new FileTypeDetector() {
+                @Override
+                public String getName() {
+                    return "graphml";
+                }
+
+                @Override
+                public boolean needsFile() {
+                    return true;
+                }
+
+                @Override
+                public String detect(FileHeaderBuffer header, String fileName) {
+                    return isGraphMLFile(header) ? "text/xml-graphml" : null;
+                }
+            },
+            new FileTypeDetector() {
+                @Override
+                public String getName() {
+                    return "fits";
+                }
+
+                @Override
+                public String detect(FileHeaderBuffer header, String fileName) {
+                    // Check for FITS:
+                    // our check is fairly weak (it appears to be hard to really
+                    // really recognize a FITS file without reading the entire 
+                    // stream...), so in version 3.* we used to nsist on *both* 
+                    // the ".fits" extension and the header check;
+                    // in 4.0, we'll accept either the extension, or the valid 
+                    // magic header:
+                    String fileExtension = getFileExtension(fileName);
+                    if (isFITSFile(header.asInputStream()) || (fileExtension != null
+                            && fileExtension.equalsIgnoreCase("fits"))) {
+                        return "application/fits";
+                    }
+                    return null;
+                }
+            },
+            new FileTypeDetector() {
+                @Override
+                public String getName() {
+                    return "netcdf-hdf5";
+                }
+
+                @Override
+                public boolean needsFile() {
+                    return true;
+                }
+
+                @Override
+                public String detect(FileHeaderBuffer header, String fileName) {
+                    // Only open the file with the NetCDF library if it has 
+                    // one of the signatures it could recognize. The library 
+                    // is still needed to tell NetCDF-4 from plain HDF5.
+                    return isNetcdfOrHdf5Candidate(header) ? checkNetcdfOrHdf5(header.getFile()) : null;
+                }
+            },
+            new FileTypeDetector() {
+                @Override
+                public String getName() {
+                    return "jhove";
+                }
+
+                @Override
+                public boolean isExpensive() {
+                    return true;
+                }
+
+                @Override
+                public boolean needsFile() {
+                    return true;
+                }
+
+                @Override
+                public String detect(FileHeaderBuffer header, String fileName) {
+                    return new JhoveFileType().getFileMimeType(header.getFile());
+                }
+            }
+    ));
     
     private static Map<String, String> STATISTICAL_FILE_EXTENSION = new HashMap<String, String>();
     
@@ -422,52 +529,33 @@ public class FileUtil implements java.io.Serializable  {
     }
     
     public static String determineFileType(File f, String fileName) throws IOException{
+        return determineFileType(FileHeaderBuffer.read(f), fileName);
+    }
+    
+    /**
+     * Same as determineFileType(File, String), from a header window. If 
+     * the window doesn't come with a local copy of the file (as with the 
+     * chunked uploads, that go straight to the store), only the checks 
+     * that can be answered from the window itself are run: the tabular 
+     * formats and FITS are still recognized, NetCDF/HDF5, GraphML and the 
+     * Jhove types are left to the file name and extension, and zip files 
+     * are not checked for shapefiles or BagIt packages.
+     */
+    public static String determineFileType(FileHeaderBuffer header, String fileName) throws IOException {
         String fileType = null;
         String fileExtension = getFileExtension(fileName);
+        File f = header.getFile();
         
-        
-        
-        // step 1: 
-        // Apply our custom methods to try and recognize data files that can be 
-        // converted to tabular data, or can be parsed for extra metadata 
-        // (such as FITS).
-        logger.fine("Attempting to identify potential tabular data files;");
-        IngestableDataChecker tabChk = new IngestableDataChecker(TABULAR_DATA_FORMAT_SET);
-        
-        fileType = tabChk.detectTabularDataFormat(f);
-        
-        logger.fine("determineFileType: tabular data checker found "+fileType);
-                
-        // step 2: If not found, check if graphml or FITS
-        if (fileType==null) {
-            if (isGraphMLFile(f))  {
-                fileType = "text/xml-graphml";
-            } else // Check for FITS:
-            // our check is fairly weak (it appears to be hard to really
-            // really recognize a FITS file without reading the entire 
-            // stream...), so in version 3.* we used to nsist on *both* 
-            // the ".fits" extension and the header check;
-            // in 4.0, we'll accept either the extension, or the valid 
-            // magic header:
-            if (isFITSFile(f) || (fileExtension != null
-                    && fileExtension.equalsIgnoreCase("fits"))) {
-                fileType = "application/fits";
-            }
-        }
-
-        // step 3a: Check if NetCDF or HDF5
-        if (fileType == null) {
-            fileType = checkNetcdfOrHdf5(f);
-        }
-       
-        // step 3: check the mime type of this file with Jhove
-        if (fileType == null){
-            JhoveFileType jw = new JhoveFileType();
-            String mimeType = jw.getFileMimeType(f);
-            if (mimeType != null) {
-                fileType = mimeType;
-            }
-        }
+        // steps 1 - 3: 
+        // Run our magic number checks against the header window of the 
+        // file, in priority order: first our custom methods 
+        // that recognize data files that can be converted to tabular data, 
+        // or can be parsed for extra metadata (such as FITS); then 
+        // NetCDF/HDF5. The full-file Jhove check is only run if none of 
+        // these were conclusive.
+        FileTypeDetectionPipeline.Result detected = FILE_TYPE_DETECTION_PIPELINE.detect(header, fileName);
+        fileType = detected.getType();
+        logger.fine("determineFileType: " + detected);
         
         // step 4: 
         // Additional processing; if we haven't gotten much useful information 
@@ -504,23 +592,18 @@ public class FileUtil implements java.io.Serializable  {
             logger.fine("we'll run additional checks on this gzipped file.");
             // We want to be able to support gzipped FITS files, same way as
             // if they were just regular FITS files:
-            FileInputStream gzippedIn = new FileInputStream(f);
-            // (new FileInputStream() can throw a "filen not found" exception;
-            // however, if we've made it this far, it really means that the 
-            // file does exist and can be opened)
-            InputStream uncompressedIn = null; 
-            try {
-                uncompressedIn = new GZIPInputStream(gzippedIn);
+            // (the FITS magic word is in the very first bytes of the 
+            // uncompressed stream, so the header window we already have is 
+            // plenty, and we don't need to re-open the file)
+            try (InputStream uncompressedIn = new GZIPInputStream(header.asInputStream())) {
                 if (isFITSFile(uncompressedIn)) {
                     fileType = "application/fits-gzipped";
                 }
             } catch (IOException ioex) {
-                if (uncompressedIn != null) {
-                    try {uncompressedIn.close();} catch (IOException e) {}
-                }
+                logger.fine("failed to read the gzipped header of " + fileName + ": " + ioex.getMessage());
             }
         } 
-        if ("application/zip".equals(fileType)) {
+        if ("application/zip".equals(fileType) && f != null) {
             
             // Is this a zipped Shapefile?
             // Check for shapefile extensions as described here: http://en.wikipedia.org/wiki/Shapefile
@@ -585,17 +668,6 @@ public class FileUtil implements java.io.Serializable  {
      * least the primary HDU, using the NOM fits parser. 
      * -- L.A. 4.0 alpha
     */
-    private static boolean isFITSFile(File file) {
-
-        try (BufferedInputStream ins = new BufferedInputStream(new FileInputStream(file))) {
-            return isFITSFile(ins);
-        } catch (IOException ex) {
-            logger.fine("IOException: "+ ex.getMessage());
-        } 
-        
-        return false;
-    }
-     
     private static boolean isFITSFile(InputStream ins) {
         boolean isFITS = false;
 
@@ -628,6 +700,40 @@ public class FileUtil implements java.io.Serializable  {
         return isFITS;
     }
     
+    /**
+     * GraphML files have the graphml root element right at the top; so 
+     * unless the header window contains it, there's no point in running 
+     * the XML parser over the whole file.
+     */
+    private static boolean isGraphMLFile(FileHeaderBuffer header) {
+        String headerText = header.asString(StandardCharsets.UTF_8);
+        if (!headerText.contains(GRAPHML_ROOT_ELEMENT)) {
+            return false;
+        }
+        return isGraphMLFile(header.getFile());
+    }
+
+    private static boolean isNetcdfOrHdf5Candidate(FileHeaderBuffer header) {
+        if (header.startsWith(NETCDF_CLASSIC_MAGIC) && header.length() > NETCDF_CLASSIC_MAGIC.length) {
+            // CDF1, CDF2 (64-bit offset) and CDF5 (64-bit data):
+            byte version = header.asByteBuffer().get(NETCDF_CLASSIC_MAGIC.length);
+            if (version == 1 || version == 2 || version == 5) {
+                return true;
+            }
+        }
+        // The HDF5 superblock (NetCDF-4 files are HDF5 too) is at offset 0, 
+        // or, if the file has a user block, at 512, 1024, 2048, ...
+        if (header.startsWith(HDF5_SIGNATURE)) {
+            return true;
+        }
+        for (int offset = 512; offset < header.length(); offset *= 2) {
+            if (header.matchesAt(offset, HDF5_SIGNATURE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static boolean isGraphMLFile(File file) {
         boolean isGraphML = false;
         logger.fine("begin isGraphMLFile()");
@@ -818,6 +924,8 @@ public class FileUtil implements java.io.Serializable  {
 
         // save the file, in the temporary location for now: 
         Path tempFile = null;
+        // (and its checksum, calculated while saving it)
+        String tempFileChecksum = null;
 
         Long fileSizeLimit = systemConfig.getMaxFileUploadSizeForStore(version.getDataset().getEffectiveStorageDriverId());
         String finalType = null;
@@ -829,7 +937,9 @@ public class FileUtil implements java.io.Serializable  {
                 // temp files will always be stored on the local filesystem.
                 // -- L.A. Jul. 2014
                 logger.fine("Will attempt to save the file as: " + tempFile.toString());
-                Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                DigestingInputStream digestingIn = new DigestingInputStream(inputStream, newCheckSumType);
+                Files.copy(digestingIn, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                tempFileChecksum = digestingIn.getChecksums().get(newCheckSumType);
 
                 // A file size check, before we do anything else:
                 // (note that "no size limit set" = "unlimited")
@@ -890,8 +1000,11 @@ public class FileUtil implements java.io.Serializable  {
 
                 DataFile datafile = null;
                 try (InputStream uncompressedIn = new GZIPInputStream(new FileInputStream(tempFile.toFile()))){
-                    File unZippedTempFile = saveInputStreamInTempFile(uncompressedIn, fileSizeLimit);
-                    datafile = createSingleDataFile(version, unZippedTempFile, finalFileName, MIME_TYPE_UNDETERMINED_DEFAULT, systemConfig.getFileFixityChecksumAlgorithm());
+                    ChecksumType checksumType = systemConfig.getFileFixityChecksumAlgorithm();
+                    DigestingInputStream digestingIn = new DigestingInputStream(uncompressedIn, checksumType);
+                    File unZippedTempFile = saveInputStreamInTempFile(digestingIn, fileSizeLimit);
+                    datafile = createSingleDataFile(version, unZippedTempFile, null, finalFileName, MIME_TYPE_UNDETERMINED_DEFAULT,
+                            checksumType, digestingIn.getChecksums().get(checksumType));
                 } catch (IOException | FileExceedsMaxSizeException ioex) {
                     datafile = null;
                 } 
@@ -1064,13 +1177,16 @@ public class FileUtil implements java.io.Serializable  {
 
                                     String storageIdentifier = generateStorageIdentifier();
                                     File unzippedFile = new File(getFilesTempDirectory() + "/" + storageIdentifier);
-                                    Files.copy(unZippedIn, unzippedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                                    ChecksumType checksumType = systemConfig.getFileFixityChecksumAlgorithm();
+                                    // (not closed: that would close the zip stream)
+                                    DigestingInputStream digestingIn = new DigestingInputStream(unZippedIn, checksumType);
+                                    Files.copy(digestingIn, unzippedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
                                     // No need to check the size of this unpacked file against the size limit, 
                                     // since we've already checked for that in the first pass.
                                     
                                     DataFile datafile = createSingleDataFile(version, null, storageIdentifier, shortName,
                                             MIME_TYPE_UNDETERMINED_DEFAULT,
-                                            systemConfig.getFileFixityChecksumAlgorithm(), null, false);
+                                            checksumType, digestingIn.getChecksums().get(checksumType), false);
 
                                     if (!fileEntryName.equals(shortName)) {
                                         // If the filename looks like a hierarchical folder name (i.e., contains slashes and backslashes),
@@ -1175,8 +1291,11 @@ public class FileUtil implements java.io.Serializable  {
                             continue;
                         }
 
-                        File unZippedShapeTempFile = saveInputStreamInTempFile(finalFileInputStream, fileSizeLimit);
-                        DataFile new_datafile = createSingleDataFile(version, unZippedShapeTempFile, finalFile.getName(), finalType, systemConfig.getFileFixityChecksumAlgorithm());
+                        ChecksumType checksumType = systemConfig.getFileFixityChecksumAlgorithm();
+                        DigestingInputStream digestingIn = new DigestingInputStream(finalFileInputStream, checksumType);
+                        File unZippedShapeTempFile = saveInputStreamInTempFile(digestingIn, fileSizeLimit);
+                        DataFile new_datafile = createSingleDataFile(version, unZippedShapeTempFile, null, finalFile.getName(), finalType,
+                                checksumType, digestingIn.getChecksums().get(checksumType));
                         String directoryName = null;
                         String absolutePathName = finalFile.getParent();
                         if (absolutePathName != null) {
@@ -1258,6 +1377,9 @@ public class FileUtil implements java.io.Serializable  {
         }
         
 
+        if (StringUtil.isEmpty(newCheckSum)) {
+            newCheckSum = tempFileChecksum;
+        }
         DataFile datafile = createSingleDataFile(version, newFile, newStorageIdentifier, fileName, finalType, newCheckSumType, newCheckSum);
         File f = null;
         if (tempFile != null) {
@@ -1344,10 +1466,6 @@ public class FileUtil implements java.io.Serializable  {
      * been figured out. 
     */
 
-    public static DataFile createSingleDataFile(DatasetVersion version, File tempFile, String fileName, String contentType, DataFile.ChecksumType checksumType) {
-        return createSingleDataFile(version, tempFile, null, fileName, contentType, checksumType, null, false);
-    }
-
     public static DataFile createSingleDataFile(DatasetVersion version, File tempFile, String storageIdentifier,  String fileName, String contentType, DataFile.ChecksumType checksumType, String checksum) {
         return createSingleDataFile(version, tempFile, storageIdentifier, fileName, contentType, checksumType, checksum, false);
     }
@@ -1394,17 +1512,11 @@ public class FileUtil implements java.io.Serializable  {
             datafile.setStorageIdentifier(storageIdentifier);
         }
 
+        // (the callers calculate the checksum while saving the temp file; 
+        // without one, it is calculated when the file is saved to storage)
+        datafile.setChecksumType(checksumType);
         if ((checksum !=null)&&(!checksum.isEmpty())) {
-        	datafile.setChecksumType(checksumType);
             datafile.setChecksumValue(checksum);
-        } else {
-        	try {
-        		// We persist "SHA1" rather than "SHA-1".
-        		datafile.setChecksumType(checksumType);
-        		datafile.setChecksumValue(calculateChecksum(getFilesTempDirectory() + "/" + datafile.getStorageIdentifier(), datafile.getChecksumType()));
-        	} catch (Exception cksumEx) {
-        		logger.warning("Could not calculate " + checksumType + " signature for the new file " + fileName);
-        	}
         }
         return datafile;
     }
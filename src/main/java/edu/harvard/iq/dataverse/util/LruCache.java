@@ -2,6 +2,7 @@ package edu.harvard.iq.dataverse.util;
 
 import java.util.LinkedHashMap;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 /**
  * A thread-safe implementation of a capped-size cache, where the removal is done 
@@ -80,6 +81,17 @@ public class LruCache<K,V> {
         } finally { cacheLock.unlock(); }
     }
     
+    /**
+     * Removes all the entries whose values match {@code p}.
+     * @param p the values to remove
+     */
+    public void invalidateIf( Predicate<V> p ) {
+        try {
+            cacheLock.lock();
+            cache.values().removeIf(p);
+        } finally { cacheLock.unlock(); }
+    }
+    
     private void shrinkToMaxSize() {
         while( cache.size() > getMaxSize() ) {
             cache.remove( cache.entrySet().iterator().next().getKey() );
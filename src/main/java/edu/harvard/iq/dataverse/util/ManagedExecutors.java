@@ -0,0 +1,77 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+
+/**
+ * Looks up the container's default managed executor service and managed
+ * thread factory, for the classes that are not beans and can't have them
+ * injected (the commands, the bag generator, the storage IO classes). The
+ * beans inject them with {@code @Resource} instead.
+ *
+ * The short tasks go to the executor service; a pool of a configured size, or
+ * a long running thread, takes its threads from the thread factory. Either
+ * way, the threads are managed by the container: they run with the context of
+ * the application (and can call the EJBs), and are stopped with it.
+ *
+ * Outside of a container (in the unit tests), plain threads are used instead.
+ */
+public class ManagedExecutors {
+
+    private static final Logger logger = Logger.getLogger(ManagedExecutors.class.getCanonicalName());
+
+    static final String DEFAULT_EXECUTOR_SERVICE = "java:comp/DefaultManagedExecutorService";
+    static final String DEFAULT_THREAD_FACTORY = "java:comp/DefaultManagedThreadFactory";
+
+    private static volatile ExecutorService unmanagedExecutor;
+
+    private ManagedExecutors() {
+    }
+
+    public static ExecutorService getExecutorService() {
+        ManagedExecutorService executor = lookup(DEFAULT_EXECUTOR_SERVICE, ManagedExecutorService.class);
+        return (executor != null) ? executor : getUnmanagedExecutor();
+    }
+
+    public static ThreadFactory getThreadFactory() {
+        ManagedThreadFactory threadFactory = lookup(DEFAULT_THREAD_FACTORY, ManagedThreadFactory.class);
+        return (threadFactory != null) ? threadFactory : unmanagedThreadFactory();
+    }
+
+    private static <T> T lookup(String name, Class<T> type) {
+        try {
+            return type.cast(new InitialContext().lookup(name));
+        } catch (NamingException | RuntimeException e) {
+            logger.fine("No " + name + " (" + e.getMessage() + "), using unmanaged threads");
+            return null;
+        }
+    }
+
+    private static ExecutorService getUnmanagedExecutor() {
+        if (unmanagedExecutor == null) {
+            synchronized (ManagedExecutors.class) {
+                if (unmanagedExecutor == null) {
+                    unmanagedExecutor = Executors.newCachedThreadPool(unmanagedThreadFactory());
+                }
+            }
+        }
+        return unmanagedExecutor;
+    }
+
+    private static ThreadFactory unmanagedThreadFactory() {
+        ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        return r -> {
+            Thread t = threadFactory.newThread(r);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,184 @@
+package edu.harvard.iq.dataverse.util;
+
+import edu.harvard.iq.dataverse.ControlledVocabAlternate;
+import edu.harvard.iq.dataverse.ControlledVocabularyValue;
+import edu.harvard.iq.dataverse.DatasetFieldType;
+import edu.harvard.iq.dataverse.MetadataBlock;
+import edu.harvard.iq.dataverse.authorization.DataverseRole;
+import edu.harvard.iq.dataverse.externaltools.ExternalTool;
+import edu.harvard.iq.dataverse.externaltools.ExternalToolType;
+import edu.harvard.iq.dataverse.license.License;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import org.eclipse.persistence.config.CacheIsolationType;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.DatabaseSession;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionCustomizer;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+import org.eclipse.persistence.sessions.coordination.CommandProcessor;
+import org.eclipse.persistence.sessions.coordination.RemoteCommandManager;
+import org.eclipse.persistence.sessions.coordination.jms.JMSTopicTransportManager;
+
+/**
+ * The entity cache is turned off for the persistence unit as a whole
+ * (eclipselink.cache.shared.default=false in persistence.xml), because most
+ * of our entities are updated with native queries, and from more than one
+ * application server. This customizer turns the shared cache back on for
+ * the handful of reference entities listed in {@link #CACHED_ENTITIES}, which
+ * only change when an admin edits them, and which are otherwise looked up
+ * again and again on every page (e.g. the DatasetFieldType of every field
+ * of every dataset).
+ *
+ * Settings:
+ * - dataverse.entity-cache.enabled (true by default);
+ * - dataverse.entity-cache.expiry-seconds: the cached entities are reloaded
+ *   after this long (600 by default); this bounds how long a change made on
+ *   another server can go unnoticed, when there is no cache coordination;
+ * - dataverse.entity-cache.coordination-topic and .coordination-factory: the
+ *   JNDI names of a JMS topic and its connection factory; when they are set,
+ *   the changes to the cached entities invalidate them on all the servers of
+ *   a cluster, through the topic;
+ * - dataverse.entity-cache.statistics (false by default): count the cache
+ *   hits and misses, per entity type, for /api/admin/cache/entities. This
+ *   installs a session profiler, which is called for every query of every
+ *   entity type (cached or not), so it is only meant to be turned on while
+ *   tuning the cache.
+ */
+public class SharedEntityCacheCustomizer implements SessionCustomizer {
+
+    private static final Logger logger = Logger.getLogger(SharedEntityCacheCustomizer.class.getCanonicalName());
+
+    public static final List<Class<?>> CACHED_ENTITIES = List.of(
+            DatasetFieldType.class,
+            MetadataBlock.class,
+            ControlledVocabularyValue.class,
+            ControlledVocabAlternate.class,
+            License.class,
+            DataverseRole.class,
+            ExternalTool.class,
+            ExternalToolType.class);
+
+    private static final int DEFAULT_EXPIRY_SECONDS = 600;
+
+    private static volatile boolean enabled = false;
+    private static volatile boolean statistics = false;
+    private static final Map<String, LongAdder> hits = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> misses = new ConcurrentHashMap<>();
+
+    @Override
+    public void customize(Session session) throws Exception {
+        boolean enable = true;
+        boolean countStatistics = false;
+        int expirySeconds = DEFAULT_EXPIRY_SECONDS;
+        String topic = null;
+        String topicFactory = null;
+        try {
+            enable = JvmSettings.ENTITY_CACHE_ENABLED.lookupOptional(Boolean.class).orElse(true);
+            countStatistics = JvmSettings.ENTITY_CACHE_STATISTICS.lookupOptional(Boolean.class).orElse(false);
+            expirySeconds = JvmSettings.ENTITY_CACHE_EXPIRY_SECONDS.lookupOptional(Integer.class).orElse(DEFAULT_EXPIRY_SECONDS);
+            topic = JvmSettings.ENTITY_CACHE_COORDINATION_TOPIC.lookupOptional().orElse(null);
+            topicFactory = JvmSettings.ENTITY_CACHE_COORDINATION_FACTORY.lookupOptional().orElse(null);
+        } catch (RuntimeException rex) {
+            logger.log(Level.WARNING, "Could not read the entity cache settings; using the defaults", rex);
+        }
+        if (!enable) {
+            logger.info("The shared entity cache is disabled");
+            return;
+        }
+
+        for (Class<?> entityClass : CACHED_ENTITIES) {
+            ClassDescriptor descriptor = session.getDescriptor(entityClass);
+            if (descriptor == null) {
+                logger.warning("No descriptor for " + entityClass.getName() + "; not cached");
+                continue;
+            }
+            descriptor.setCacheIsolation(CacheIsolationType.SHARED);
+            descriptor.setCacheInvalidationPolicy(new TimeToLiveCacheInvalidationPolicy(expirySeconds * 1000L));
+            // (only the ids of the changed objects are sent to the other
+            // servers, which then reload them from the database)
+            descriptor.setCacheSynchronizationType(ClassDescriptor.INVALIDATE_CHANGED_OBJECTS);
+        }
+
+        if (topic != null && topicFactory != null) {
+            RemoteCommandManager commandManager = new RemoteCommandManager((CommandProcessor) session);
+            JMSTopicTransportManager transportManager = new JMSTopicTransportManager(commandManager);
+            transportManager.setTopicName(topic);
+            transportManager.setTopicConnectionFactoryName(topicFactory);
+            commandManager.setTransportManager(transportManager);
+            commandManager.setShouldPropagateAsynchronously(true);
+            ((CommandProcessor) session).setCommandManager(commandManager);
+            ((DatabaseSession) session).setShouldPropagateChanges(true);
+            logger.info("Entity cache coordination through the JMS topic " + topic);
+        }
+
+        if (countStatistics) {
+            session.setProfiler(new CacheStatisticsProfiler());
+            statistics = true;
+        }
+        enabled = true;
+        logger.info("Shared entity cache enabled for " + CACHED_ENTITIES.size() + " entity types; expiry: " + expirySeconds + " s");
+    }
+
+    public static JsonObjectBuilder getStatistics() {
+        JsonObjectBuilder entities = Json.createObjectBuilder();
+        for (Class<?> entityClass : CACHED_ENTITIES) {
+            String name = entityClass.getSimpleName();
+            long hitCount = hits.getOrDefault(name, new LongAdder()).sum();
+            long missCount = misses.getOrDefault(name, new LongAdder()).sum();
+            JsonObjectBuilder counts = Json.createObjectBuilder()
+                    .add("hits", hitCount)
+                    .add("misses", missCount);
+            if (hitCount + missCount > 0) {
+                counts.add("hitRatio", (double) hitCount / (hitCount + missCount));
+            }
+            entities.add(name, counts);
+        }
+        return Json.createObjectBuilder()
+                .add("enabled", enabled)
+                .add("statistics", statistics)
+                .add("entities", entities);
+    }
+
+    /**
+     * Counts the cache hits and misses of the queries (including the lookups
+     * by id, and of the relationships) for the cached entity types, and
+     * ignores everything else.
+     */
+    static class CacheStatisticsProfiler extends SessionProfilerAdapter {
+
+        @Override
+        public void occurred(String operationName, DatabaseQuery query, AbstractSession session) {
+            if (query == null || query.getReferenceClass() == null) {
+                return;
+            }
+            if (SessionProfiler.CacheHits.equals(operationName)) {
+                count(hits, query.getReferenceClass());
+            } else if (SessionProfiler.CacheMisses.equals(operationName)) {
+                count(misses, query.getReferenceClass());
+            }
+        }
+
+        @Override
+        public int getProfileWeight() {
+            return SessionProfiler.NORMAL;
+        }
+
+        private static void count(Map<String, LongAdder> counters, Class<?> entityClass) {
+            if (CACHED_ENTITIES.contains(entityClass)) {
+                counters.computeIfAbsent(entityClass.getSimpleName(), k -> new LongAdder()).increment();
+            }
+        }
+    }
+}
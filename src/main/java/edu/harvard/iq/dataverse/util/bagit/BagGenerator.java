@@ -24,19 +24,25 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 
 import edu.harvard.iq.dataverse.util.BundleUtil;
-import org.apache.commons.codec.digest.DigestUtils;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.util.ManagedExecutors;
 import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
 import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
@@ -73,6 +79,12 @@ import com.google.gson.JsonSyntaxException;
 
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
+import edu.harvard.iq.dataverse.dataaccess.RangedReadAheadInputStream;
+import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import edu.harvard.iq.dataverse.util.json.JsonLDTerm;
 
@@ -88,6 +100,22 @@ public class BagGenerator {
     private Boolean[] resourceUsed = null;
     private HashMap<String, String> pidMap = new LinkedHashMap<String, String>();
     private HashMap<String, String> checksumMap = new LinkedHashMap<String, String>();
+    // The hashes of the data files, calculated as they are zipped
+    private LinkedHashMap<String, CompletableFuture<String>> inlineHashMap = new LinkedHashMap<String, CompletableFuture<String>>();
+    private volatile boolean hashesVerified = false;
+    // When the data files were last read; the manifest waits for their hashes
+    // as long as they are being read, but gives up on a stalled read
+    private final AtomicLong lastHashProgress = new AtomicLong(System.currentTimeMillis());
+    private static final long HASH_STALL_TIMEOUT_MINUTES = 30;
+
+    // The files of the version, by their @id in the OREMap, to be read from
+    // storage rather than through the access API
+    private Map<String, DataFile> dataFiles = new HashMap<String, DataFile>();
+    // Large files on S3 are read in parallel ranges
+    private static final long RANGED_READ_THRESHOLD = 256L * 1024 * 1024;
+    private static final int RANGED_READ_PART_SIZE = 8 * 1024 * 1024;
+    private static final int RANGED_READ_AHEAD = 4;
+    private ExecutorService rangeExecutor = null;
 
     private int timeout = 60;
     private RequestConfig config = RequestConfig.custom().setConnectTimeout(timeout * 1000)
@@ -130,10 +158,12 @@ public class BagGenerator {
      * minimally compatible with the Research Data Repository Interoperability WG
      * Final Recommendations (DOI: 10.15497/RDA00025). It works by parsing the
      * submitted OAI-ORE Map file, using the metadata therein to create required
-     * BagIt metadata, and using the schema.org/sameAs entries for
-     * AggregatedResources as a way to retrieve these files and store them in the
+     * BagIt metadata, and reading the files of the version directly from their
+     * StorageIO (or, for AggregatedResources that aren't files of the version,
+     * retrieving them via their schema.org/sameAs entries) to store them in the
      * /data directory within the BagIt structure. The Bag is zipped. File retrieval
-     * and zipping are done in parallel, using a connection pool. The required space
+     * and zipping are done in parallel, using numConnections threads, and the
+     * manifest hashes are calculated as the files are zipped. The required space
      * on disk is ~ n+1/n of the final bag size, e.g. 125% of the bag size for a
      * 4-way parallel zip operation.
      * @throws Exception 
@@ -167,8 +197,6 @@ public class BagGenerator {
             cm.setMaxTotal(numConnections > 20 ? numConnections : 20);
 
             client = HttpClients.custom().setConnectionManager(cm).setDefaultRequestConfig(config).build();
-
-            scatterZipCreator = new ParallelScatterZipCreator(Executors.newFixedThreadPool(numConnections));
         } catch (NoSuchAlgorithmException | KeyManagementException e) {
             logger.warning("Aint gonna work");
             e.printStackTrace();
@@ -200,7 +228,29 @@ public class BagGenerator {
      * @return success true/false
      */
     public boolean generateBag(OutputStream outputStream) throws Exception {
-        
+        // (created here, so that the numConnections set after the constructor is used)
+        ThreadFactory threadFactory = ManagedExecutors.getThreadFactory();
+        ExecutorService zipExecutor = Executors.newFixedThreadPool(numConnections, threadFactory);
+        scatterZipCreator = new ParallelScatterZipCreator(zipExecutor);
+        rangeExecutor = Executors.newFixedThreadPool(numConnections * RANGED_READ_AHEAD, threadFactory);
+        lastHashProgress.set(System.currentTimeMillis());
+        try {
+            return generateBagContent(outputStream);
+        } finally {
+            // (the zip executor is already shut down once the zip has been 
+            // written, but not if the bag failed before that)
+            zipExecutor.shutdownNow();
+            rangeExecutor.shutdownNow();
+        }
+    }
+
+    private boolean generateBagContent(OutputStream outputStream) throws Exception {
+
+        if (oremap.getDatasetVersion() != null) {
+            for (FileMetadata fmd : oremap.getDatasetVersion().getFileMetadatas()) {
+                dataFiles.put(OREMap.getAggregatedResourceId(fmd.getDataFile()), fmd.getDataFile());
+            }
+        }
 
         File tmp = File.createTempFile("qdr-scatter-dirs", "tmp");
         dirs = ScatterZipOutputStream.fileBased(tmp);
@@ -256,18 +306,8 @@ public class BagGenerator {
         createDir("metadata/");
         createFileFromString("metadata/pid-mapping.txt", pidStringBuffer.toString());
         // Hash manifest - a hash manifest is required
-        // by Bagit spec
-        StringBuffer sha1StringBuffer = new StringBuffer();
-        first = true;
-        for (Entry<String, String> sha1Entry : checksumMap.entrySet()) {
-            if (!first) {
-                sha1StringBuffer.append("\r\n");
-            } else {
-                first = false;
-            }
-            String path = sha1Entry.getKey();
-            sha1StringBuffer.append(sha1Entry.getValue() + " " + path);
-        }
+        // by Bagit spec. It is only put together once the data files have been
+        // zipped (and their hashes calculated); see getManifest()
         if (!(hashtype == null)) {
             String manifestName = "manifest-";
             if (hashtype.equals(DataFile.ChecksumType.SHA1)) {
@@ -281,7 +321,7 @@ public class BagGenerator {
             } else {
                 logger.warning("Unsupported Hash type: " + hashtype);
             }
-            createFileFromString(manifestName, sha1StringBuffer.toString());
+            createManifestFile(manifestName);
         } else {
             logger.warning("No Hash values (no files?) sending empty manifest to nominally comply with BagIT specification requirement");
             createFileFromString("manifest-md5.txt", "");
@@ -353,6 +393,15 @@ public class BagGenerator {
 
     }
 
+    /**
+     * @return true if the hashes calculated while the data files were zipped
+     *         all match the checksums stored for them, in which case the zipped
+     *         bag doesn't need to be validated again
+     */
+    public boolean isHashesVerified() {
+        return hashesVerified;
+    }
+
     public boolean generateBag(String bagName, boolean temp) {
         usetemp = temp;
         FileOutputStream bagFileOS = null;
@@ -367,7 +416,11 @@ public class BagGenerator {
             bagFileOS = new FileOutputStream(bagFile);
             if (generateBag(bagFileOS)) {
                 //The generateBag call sets this.bagName to the correct value
-                validateBagFile(bagFile);
+                if (hashesVerified) {
+                    logger.fine("All hashes verified while zipping, not validating " + bagFile.getName() + " again");
+                } else {
+                    validateBagFile(bagFile);
+                }
                 if (usetemp) {
                     logger.fine("Moving tmp zip");
                     origBagFile.delete();
@@ -570,43 +623,9 @@ public class BagGenerator {
                     hashtype = DataFile.ChecksumType.SHA512;
                 }
                 try {
-                    if ((childHash == null) | ignorehashes) {
-                        // Generate missing hashInputStream inputStream = null;
-                        InputStream inputStream = null;
-                        try {
-                            inputStream = getInputStreamSupplier(dataUrl).get();
-
-                            if (hashtype != null) {
-                                if (hashtype.equals(DataFile.ChecksumType.SHA1)) {
-                                    childHash = DigestUtils.sha1Hex(inputStream);
-                                } else if (hashtype.equals(DataFile.ChecksumType.SHA256)) {
-                                    childHash = DigestUtils.sha256Hex(inputStream);
-                                } else if (hashtype.equals(DataFile.ChecksumType.SHA512)) {
-                                    childHash = DigestUtils.sha512Hex(inputStream);
-                                } else if (hashtype.equals(DataFile.ChecksumType.MD5)) {
-                                    childHash = DigestUtils.md5Hex(inputStream);
-                                }
-                            }
-
-                        } catch (IOException e) {
-                            logger.severe("Failed to read " + childPath);
-                            throw e;
-                        } finally {
-                            IOUtils.closeQuietly(inputStream);
-                        }
-                        if (childHash != null) {
-                            JsonObject childHashObject = new JsonObject();
-                            childHashObject.addProperty("@type", hashtype.toString());
-                            childHashObject.addProperty("@value", childHash);
-                            child.add(JsonLDTerm.checksum.getLabel(), (JsonElement) childHashObject);
-
-                            checksumMap.put(childPath, childHash);
-                        } else {
-                            logger.warning("Unable to calculate a " + hashtype + " for " + dataUrl);
-                        }
-                    }
+                    // The hash, if it is missing or of another type, is calculated as the file is zipped
                     logger.fine("Requesting: " + childPath + " from " + dataUrl);
-                    createFileFromURL(childPath, dataUrl);
+                    createDataFileEntry(childPath, dataUrl, dataFiles.get(child.get("@id").getAsString()));
                     dataCount++;
                     if (dataCount % 1000 == 0) {
                         logger.info("Retrieval in progress: " + dataCount + " files retrieved");
@@ -696,17 +715,137 @@ public class BagGenerator {
         addEntry(archiveEntry, supp);
     }
 
-    private void createFileFromURL(final String relPath, final String uri)
+    /**
+     * Adds a data file, read from storage if it is a file of the version (or
+     * from its URL otherwise), and hashed as it is zipped.
+     */
+    private void createDataFileEntry(final String relPath, final String uri, final DataFile dataFile)
             throws IOException, ExecutionException, InterruptedException {
 
         ZipArchiveEntry archiveEntry = new ZipArchiveEntry(bagName + "/" + relPath);
         archiveEntry.setMethod(ZipEntry.DEFLATED);
-        InputStreamSupplier supp = getInputStreamSupplier(uri);
+        final InputStreamSupplier source = (dataFile != null) ? getStorageInputStreamSupplier(dataFile, uri)
+                : getInputStreamSupplier(uri);
+        final ChecksumType entryHashtype = hashtype;
+        final CompletableFuture<String> hash = new CompletableFuture<String>();
+        inlineHashMap.put(relPath, hash);
+        InputStreamSupplier supp = new InputStreamSupplier() {
+            public InputStream get() {
+                InputStream inputStream = null;
+                try {
+                    inputStream = source.get();
+                } finally {
+                    if (inputStream == null) {
+                        // (or the manifest would wait for it forever)
+                        hash.completeExceptionally(new IOException("Could not read " + uri));
+                    }
+                }
+                return (inputStream == null) ? null : new InlineHashInputStream(inputStream, entryHashtype, hash, lastHashProgress);
+            }
+        };
+        addEntry(archiveEntry, supp);
+    }
+
+    /**
+     * The manifest is added after all the data files, so by the time it is
+     * zipped, the data files have all been (or are being) read by the other
+     * threads, and their hashes are on their way.
+     */
+    private void createManifestFile(final String relPath) throws IOException {
+
+        ZipArchiveEntry archiveEntry = new ZipArchiveEntry(bagName + "/" + relPath);
+        archiveEntry.setMethod(ZipEntry.DEFLATED);
+        InputStreamSupplier supp = new InputStreamSupplier() {
+            public InputStream get() {
+                try {
+                    return new ByteArrayInputStream(getManifest().getBytes("UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    e.printStackTrace();
+                }
+                return null;
+            }
+        };
         addEntry(archiveEntry, supp);
     }
 
+    /**
+     * Waits for the hashes of the data files, and checks them against the
+     * checksums on record. The manifest lists the checksums on record, as
+     * before, and the calculated hashes for the files that have none (of the
+     * hashtype in use).
+     */
+    private String getManifest() {
+        boolean verified = !ignorehashes;
+        for (Entry<String, CompletableFuture<String>> hashEntry : inlineHashMap.entrySet()) {
+            String path = hashEntry.getKey();
+            String calculated = null;
+            try {
+                calculated = awaitHash(hashEntry.getValue(), lastHashProgress,
+                        TimeUnit.MINUTES.toMillis(HASH_STALL_TIMEOUT_MINUTES), TimeUnit.MINUTES.toMillis(1));
+            } catch (ExecutionException e) {
+                logger.warning("Unable to calculate a " + hashtype + " for " + path + ": " + e.getCause().getMessage());
+                verified = false;
+                continue;
+            } catch (TimeoutException e) {
+                logger.severe("No data file has been read for " + HASH_STALL_TIMEOUT_MINUTES + " minutes, giving up on the "
+                        + hashtype + " of " + path);
+                hashEntry.getValue().completeExceptionally(e);
+                verified = false;
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warning("Interrupted while waiting for the " + hashtype + " of " + path);
+                verified = false;
+                break;
+            }
+            String recorded = checksumMap.get(path);
+            if ((recorded == null) || ignorehashes) {
+                checksumMap.put(path, calculated);
+            } else if (!recorded.equalsIgnoreCase(calculated)) {
+                logger.severe("Invalid " + hashtype + " for " + path + " in: " + bagID);
+                logger.fine("As recorded: " + recorded);
+                logger.fine("As calculated: " + calculated);
+                verified = false;
+            }
+        }
+        hashesVerified = verified;
+
+        StringBuffer sha1StringBuffer = new StringBuffer();
+        boolean first = true;
+        for (Entry<String, String> sha1Entry : checksumMap.entrySet()) {
+            if (!first) {
+                sha1StringBuffer.append("\r\n");
+            } else {
+                first = false;
+            }
+            String path = sha1Entry.getKey();
+            sha1StringBuffer.append(sha1Entry.getValue() + " " + path);
+        }
+        return sha1StringBuffer.toString();
+    }
+
+    /**
+     * Waits for a hash for as long as the data files are being read, i.e. for
+     * as long as it takes to read a large file, but not forever on a read
+     * that has stalled.
+     *
+     * @throws TimeoutException if nothing has been read for stallMillis
+     */
+    static String awaitHash(CompletableFuture<String> hash, AtomicLong lastProgress, long stallMillis, long pollMillis)
+            throws ExecutionException, TimeoutException, InterruptedException {
+        while (true) {
+            try {
+                return hash.get(pollMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (System.currentTimeMillis() - lastProgress.get() > stallMillis) {
+                    throw e;
+                }
+            }
+        }
+    }
+
     private void checkFiles(HashMap<String, String> shaMap, File bagFile) {
-        ExecutorService executor = Executors.newFixedThreadPool(numConnections);
+        ExecutorService executor = Executors.newFixedThreadPool(numConnections, ManagedExecutors.getThreadFactory());
         ZipFile zf = null;
         try {
             zf = new ZipFile(bagFile);
@@ -1008,6 +1147,41 @@ public class BagGenerator {
         return request;
     }
 
+    /**
+     * Reads the file straight from its StorageIO (the saved original, for an
+     * ingested file, as with the format=original URL in the OREMap), falling
+     * back to its URL if that fails.
+     */
+    InputStreamSupplier getStorageInputStreamSupplier(final DataFile dataFile, final String uriString) {
+
+        return new InputStreamSupplier() {
+            public InputStream get() {
+                try {
+                    StorageIO<DataFile> storageIO = DataAccess.getStorageIO(dataFile);
+                    storageIO.open(DataAccessOption.READ_ACCESS);
+                    InputStream inputStream = null;
+                    if (dataFile.isTabularData()) {
+                        inputStream = storageIO.getAuxFileAsInputStream(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION);
+                    } else if (storageIO instanceof S3AccessIO && storageIO.getSize() > RANGED_READ_THRESHOLD) {
+                        S3AccessIO<DataFile> s3io = (S3AccessIO<DataFile>) storageIO;
+                        inputStream = new RangedReadAheadInputStream(s3io::getRangeInputStream, storageIO.getSize(),
+                                RANGED_READ_PART_SIZE, RANGED_READ_AHEAD, rangeExecutor);
+                    } else {
+                        inputStream = storageIO.getInputStream();
+                    }
+                    if (inputStream != null) {
+                        return inputStream;
+                    }
+                    logger.warning("No stream for " + dataFile.getStorageIdentifier() + ", retrieving " + uriString);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to read " + dataFile.getStorageIdentifier() + " from storage, retrieving "
+                            + uriString, e);
+                }
+                return getInputStreamSupplier(uriString).get();
+            }
+        };
+    }
+
     InputStreamSupplier getInputStreamSupplier(final String uriString) {
 
         return new InputStreamSupplier() {
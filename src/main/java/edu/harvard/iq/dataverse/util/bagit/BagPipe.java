@@ -0,0 +1,296 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Connects the BagGenerator, writing a zipped bag on one thread, to the
+ * upload of the bag to an archive, reading it on another. It replaces a
+ * PipedInputStream/PipedOutputStream pair: the bytes go through a fixed set
+ * of large buffers, handed over whole, so the uploader gets large reads and
+ * the generator can get ahead of it by up to bufferCount buffers. When all the
+ * buffers are waiting to be uploaded, the generator blocks until one is free
+ * again (and vice versa), without any polling.
+ *
+ * If the generator fails, it calls {@link #fail(Throwable)}, and the reader
+ * gets an IOException rather than a truncated bag. If the reader is closed
+ * early, the writer gets an IOException on its next write.
+ */
+public class BagPipe {
+
+    private static final Logger logger = Logger.getLogger(BagPipe.class.getCanonicalName());
+
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_BUFFER_COUNT = 8;
+
+    private static final long PROGRESS_INTERVAL = 1024L * 1024 * 1024;
+    private static final Chunk EOF = new Chunk(null, 0);
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final BlockingQueue<Chunk> fullBuffers;
+    private final CountDownLatch firstChunk = new CountDownLatch(1);
+    private final PipeOutputStream outputStream = new PipeOutputStream();
+    private final PipeInputStream inputStream = new PipeInputStream();
+
+    private volatile Throwable failure = null;
+    private volatile boolean readerClosed = false;
+    private volatile long bytesWritten = 0;
+    private volatile long startTime = 0;
+    private volatile long endTime = 0;
+
+    public BagPipe() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    public BagPipe(int bufferSize, int bufferCount) {
+        this.bufferSize = bufferSize;
+        this.freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            freeBuffers.add(new byte[bufferSize]);
+        }
+        // (one more slot than there are buffers, for the end of the stream)
+        this.fullBuffers = new ArrayBlockingQueue<>(bufferCount + 1);
+    }
+
+    /**
+     * @return the end the bag is written to; closing it marks the end of the
+     *         bag
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * @return the end the bag is read from, by a single reader
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Marks the bag as failed; the reader gets an IOException instead of the
+     * rest of the bag.
+     */
+    public void fail(Throwable t) {
+        failure = t;
+        outputStream.closed = true;
+        fullBuffers.offer(EOF);
+        firstChunk.countDown();
+    }
+
+    /**
+     * Waits until the first full buffer of the bag (or the whole bag, if it is
+     * smaller) is ready. Uploading a bag whose beginning is ready, but whose
+     * data files are still being zipped, risks a timeout from the archive.
+     *
+     * @return false if the wait timed out
+     */
+    public boolean awaitData(long timeout, TimeUnit unit) throws InterruptedException {
+        return firstChunk.await(timeout, unit);
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the average throughput so far, in bytes per second
+     */
+    public long getThroughput() {
+        if (startTime == 0) {
+            return 0;
+        }
+        long elapsed = ((endTime != 0) ? endTime : System.currentTimeMillis()) - startTime;
+        return (elapsed > 0) ? (bytesWritten * 1000 / elapsed) : bytesWritten;
+    }
+
+    private IOException failureException() {
+        if (failure instanceof IOException) {
+            return new IOException(failure.getMessage(), failure);
+        }
+        return new IOException("Bag generation failed: " + failure.getMessage(), failure);
+    }
+
+    private static class Chunk {
+
+        private final byte[] data;
+        private final int length;
+
+        Chunk(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+
+        private volatile boolean closed = false;
+        private byte[] buffer = null;
+        private int position = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("The pipe is closed");
+            }
+            if (readerClosed) {
+                throw new IOException("The reader of the pipe was closed");
+            }
+            if (startTime == 0) {
+                startTime = System.currentTimeMillis();
+            }
+            while (len > 0) {
+                if (buffer == null) {
+                    buffer = nextFreeBuffer();
+                    position = 0;
+                }
+                int n = Math.min(len, bufferSize - position);
+                System.arraycopy(b, off, buffer, position, n);
+                position += n;
+                off += n;
+                len -= n;
+                if (position == bufferSize) {
+                    send();
+                }
+            }
+        }
+
+        /**
+         * Does nothing: a buffer is only handed over once it is full (or at
+         * the end), so that the reader gets large reads.
+         */
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (buffer != null && position > 0) {
+                send();
+            }
+            closed = true;
+            endTime = System.currentTimeMillis();
+            fullBuffers.add(EOF);
+            firstChunk.countDown();
+            logger.fine("Bag written: " + bytesWritten + " bytes, at " + (getThroughput() / (1024 * 1024)) + " MB/s");
+        }
+
+        private byte[] nextFreeBuffer() throws IOException {
+            try {
+                byte[] free;
+                while ((free = freeBuffers.poll(1, TimeUnit.SECONDS)) == null) {
+                    if (readerClosed) {
+                        throw new IOException("The reader of the pipe was closed");
+                    }
+                }
+                return free;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the reader of the pipe");
+            }
+        }
+
+        private void send() {
+            fullBuffers.add(new Chunk(buffer, position));
+            firstChunk.countDown();
+            long before = bytesWritten;
+            bytesWritten = before + position;
+            if (before / PROGRESS_INTERVAL != bytesWritten / PROGRESS_INTERVAL) {
+                logger.fine("Bag in progress: " + bytesWritten + " bytes written, at " + (getThroughput() / (1024 * 1024)) + " MB/s");
+            }
+            buffer = null;
+            position = 0;
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+
+        private Chunk chunk = null;
+        private int position = 0;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return (n == -1) ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (chunk == null || (chunk != EOF && position == chunk.length)) {
+                if (chunk != null) {
+                    freeBuffers.add(chunk.data);
+                }
+                chunk = nextFullBuffer();
+                position = 0;
+            }
+            if (chunk == EOF) {
+                if (failure != null) {
+                    throw failureException();
+                }
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk.data, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (chunk == null || chunk == EOF) ? 0 : chunk.length - position;
+        }
+
+        @Override
+        public void close() {
+            readerClosed = true;
+            // free up the writer, if it is waiting for a buffer
+            Chunk full;
+            while ((full = fullBuffers.poll()) != null) {
+                if (full != EOF) {
+                    freeBuffers.offer(full.data);
+                }
+            }
+        }
+
+        private Chunk nextFullBuffer() throws IOException {
+            if (readerClosed) {
+                throw new IOException("The pipe is closed");
+            }
+            try {
+                Chunk full;
+                while ((full = fullBuffers.poll(1, TimeUnit.SECONDS)) == null) {
+                    if (failure != null) {
+                        throw failureException();
+                    }
+                }
+                if (failure != null) {
+                    throw failureException();
+                }
+                return full;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the bag");
+            }
+        }
+    }
+}
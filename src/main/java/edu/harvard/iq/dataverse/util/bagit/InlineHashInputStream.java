@@ -0,0 +1,111 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.util.FileUtil;
+
+/**
+ * Hashes the bytes of a data file as they are read into the zipped bag, so
+ * that the manifest entry doesn't need a separate read of the file. The hash
+ * is only available once the stream has been read to the end; if it is closed
+ * (or fails) before that, the hash completes exceptionally. The time of the
+ * last read is recorded, if asked, so that whoever waits for the hash can
+ * tell a long read from a stalled one.
+ */
+class InlineHashInputStream extends FilterInputStream {
+
+    private final MessageDigest digest;
+    private final CompletableFuture<String> hash;
+    private final AtomicLong lastRead;
+
+    InlineHashInputStream(InputStream in, ChecksumType hashtype, CompletableFuture<String> hash) {
+        this(in, hashtype, hash, null);
+    }
+
+    InlineHashInputStream(InputStream in, ChecksumType hashtype, CompletableFuture<String> hash, AtomicLong lastRead) {
+        super(in);
+        try {
+            // Use "SHA-1" (toString) rather than "SHA1", for example.
+            this.digest = MessageDigest.getInstance(hashtype.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        this.hash = hash;
+        this.lastRead = lastRead;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b;
+        try {
+            b = in.read();
+        } catch (IOException | RuntimeException e) {
+            hash.completeExceptionally(e);
+            throw e;
+        }
+        touch();
+        if (b == -1) {
+            complete();
+        } else {
+            digest.update((byte) b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int nread;
+        try {
+            nread = in.read(b, off, len);
+        } catch (IOException | RuntimeException e) {
+            hash.completeExceptionally(e);
+            throw e;
+        }
+        touch();
+        if (nread == -1) {
+            complete();
+        } else {
+            digest.update(b, off, nread);
+        }
+        return nread;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes would be missing from the hash
+        throw new IOException("skip is not supported");
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            hash.completeExceptionally(new IOException("The stream was closed before it was read to the end"));
+        }
+    }
+
+    private void touch() {
+        if (lastRead != null) {
+            lastRead.set(System.currentTimeMillis());
+        }
+    }
+
+    private void complete() {
+        if (!hash.isDone()) {
+            hash.complete(FileUtil.checksumDigestToString(digest.digest()));
+        }
+    }
+}
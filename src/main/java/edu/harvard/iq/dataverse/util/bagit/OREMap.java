@@ -60,6 +60,21 @@ public class OREMap {
         this.excludeEmail = exclude;
     }
 
+    public DatasetVersion getDatasetVersion() {
+        return version;
+    }
+
+    /**
+     * @return the @id of the file in the map: its PID if it has one, its page
+     *         otherwise
+     */
+    public static String getAggregatedResourceId(DataFile df) {
+        if (df.getGlobalId() != null) {
+            return df.getGlobalId().asString();
+        }
+        return SystemConfig.getDataverseSiteUrlStatic() + "/file.xhtml?fileId=" + df.getId();
+    }
+
     public void writeOREMap(OutputStream outputStream) throws Exception {
         outputStream.write(getOREMap().toString().getBytes("UTF8"));
         outputStream.flush();
@@ -221,14 +236,12 @@ public class OREMap {
                 }
                 addIfNotNull(aggRes, JsonLDTerm.categories, catArray);
                 // File DOI if it exists
-                String fileId = null;
+                String fileId = getAggregatedResourceId(df);
                 String fileSameAs = null;
                 if (df.getGlobalId()!=null) {
-                    fileId = df.getGlobalId().asString();
                     fileSameAs = SystemConfig.getDataverseSiteUrlStatic()
                             + "/api/access/datafile/:persistentId?persistentId=" + fileId + (ingested ? "&format=original":"");
                 } else {
-                    fileId = SystemConfig.getDataverseSiteUrlStatic() + "/file.xhtml?fileId=" + df.getId();
                     fileSameAs = SystemConfig.getDataverseSiteUrlStatic() + "/api/access/datafile/" + df.getId() + (ingested ? "?format=original":"");
                 }
                 aggRes.add("@id", fileId);
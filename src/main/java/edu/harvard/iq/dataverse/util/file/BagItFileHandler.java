@@ -2,6 +2,7 @@ package edu.harvard.iq.dataverse.util.file;
 
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.dataaccess.DigestingInputStream;
 import edu.harvard.iq.dataverse.datasetutility.FileExceedsMaxSizeException;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.StringUtil;
@@ -113,9 +114,10 @@ public class BagItFileHandler {
                 String fileName = zipEntry.getFileName().toString();
                 DataFile datafile = null;
                 try {
-                    File zipEntryAsFile = fileUtil.saveInputStreamInTempFile(zipEntryStream.get().getInputStream(), sizeOfFilesLimit);
+                    DigestingInputStream digestingIn = new DigestingInputStream(zipEntryStream.get().getInputStream(), checksumAlgorithm);
+                    File zipEntryAsFile = fileUtil.saveInputStreamInTempFile(digestingIn, sizeOfFilesLimit);
                     datafile = fileUtil.createSingleDataFile(datasetVersion, zipEntryAsFile, null, fileName,
-                            FileUtil.MIME_TYPE_UNDETERMINED_DEFAULT, checksumAlgorithm, null, false);
+                            FileUtil.MIME_TYPE_UNDETERMINED_DEFAULT, checksumAlgorithm, digestingIn.getChecksums().get(checksumAlgorithm), false);
                 } catch(FileExceedsMaxSizeException e) {
                     throw new BagItFileHandlerException(String.format("Zip entry: %s for file: %s exceeds the size limit", zipEntry, uploadedFilename), e);
                 }
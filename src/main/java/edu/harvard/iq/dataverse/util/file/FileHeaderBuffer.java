@@ -0,0 +1,109 @@
+package edu.harvard.iq.dataverse.util.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * The beginning ("header window") of a file, read from disk once and shared
+ * by all the magic number checks in {@link FileTypeDetectionPipeline}, so that
+ * the same uploaded file is not re-opened and re-read by every detector.
+ */
+public class FileHeaderBuffer {
+
+    /**
+     * Large enough for every magic number check we run (the SPSS/POR check
+     * looks the furthest in, at ~500 bytes; the gzip and HDF5 signature
+     * checks want a bit more room than that).
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 8 * 1024;
+
+    private final File file;
+    private final byte[] header;
+    private final long fileSize;
+
+    FileHeaderBuffer(File file, byte[] header, long fileSize) {
+        this.file = file;
+        this.header = header;
+        this.fileSize = fileSize;
+    }
+
+    public static FileHeaderBuffer read(File file) throws IOException {
+        return read(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public static FileHeaderBuffer read(File file, int windowSize) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return new FileHeaderBuffer(file, in.readNBytes(windowSize), file.length());
+        }
+    }
+
+    /**
+     * A header window captured while the file was being streamed somewhere
+     * else (e.g. a chunked upload, straight to the store), with no local copy
+     * of the file behind it.
+     */
+    public static FileHeaderBuffer of(byte[] header, long fileSize) {
+        return new FileHeaderBuffer(null, header, fileSize);
+    }
+
+    /**
+     * @return the file the window was read from; null if there is no local
+     * copy of the file, in which case only the checks that can be answered
+     * from the window itself can be run
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int length() {
+        return header.length;
+    }
+
+    /**
+     * @return true if the window holds the entire file
+     */
+    public boolean isComplete() {
+        return header.length >= fileSize;
+    }
+
+    public boolean matchesAt(int offset, byte[] magic) {
+        if (offset < 0 || offset + magic.length > header.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (header[offset + i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean startsWith(byte[] magic) {
+        return matchesAt(0, magic);
+    }
+
+    /**
+     * @return a read-only view of the window, positioned at 0; every call
+     * returns an independent buffer, so detectors can't disturb each other.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(header).asReadOnlyBuffer();
+    }
+
+    public String asString(Charset charset) {
+        return new String(header, charset);
+    }
+
+    public InputStream asInputStream() {
+        return new ByteArrayInputStream(header);
+    }
+}
@@ -0,0 +1,121 @@
+package edu.harvard.iq.dataverse.util.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Runs a list of {@link FileTypeDetector}s, in priority order, against a
+ * header window that is read from the file once. The cheap (magic number)
+ * detectors all run first; the expensive ones only if none of the cheap ones
+ * recognized the file. The time spent in each detector is recorded on the
+ * returned {@link Result}. Detectors that need the whole file are skipped
+ * when the window doesn't come with a local copy of the file.
+ */
+public class FileTypeDetectionPipeline {
+
+    private static final Logger logger = Logger.getLogger(FileTypeDetectionPipeline.class.getCanonicalName());
+
+    private final List<FileTypeDetector> cheapDetectors = new ArrayList<>();
+    private final List<FileTypeDetector> expensiveDetectors = new ArrayList<>();
+
+    public FileTypeDetectionPipeline(List<FileTypeDetector> detectors) {
+        for (FileTypeDetector detector : detectors) {
+            if (detector.isExpensive()) {
+                expensiveDetectors.add(detector);
+            } else {
+                cheapDetectors.add(detector);
+            }
+        }
+    }
+
+    public Result detect(FileHeaderBuffer header, String fileName) {
+        Map<String, Long> costs = new LinkedHashMap<>();
+
+        Result result = runDetectors(cheapDetectors, header, fileName, costs);
+        if (result == null) {
+            logger.fine("magic number detectors inconclusive for " + fileName + "; running the full file validators");
+            result = runDetectors(expensiveDetectors, header, fileName, costs);
+        }
+        if (result == null) {
+            result = new Result(null, null, costs);
+        }
+        logger.fine("file type detection for " + fileName + ": " + result);
+        return result;
+    }
+
+    private Result runDetectors(List<FileTypeDetector> detectors, FileHeaderBuffer header, String fileName, Map<String, Long> costs) {
+        for (FileTypeDetector detector : detectors) {
+            if (detector.needsFile() && header.getFile() == null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            String type = null;
+            try {
+                type = detector.detect(header, fileName);
+            } catch (IOException ioex) {
+                logger.fine("detector " + detector.getName() + " failed on " + fileName + ": " + ioex.getMessage());
+            } finally {
+                costs.put(detector.getName(), System.nanoTime() - start);
+            }
+            if (type != null) {
+                return new Result(type, detector.getName(), costs);
+            }
+        }
+        return null;
+    }
+
+    public static class Result {
+
+        private final String type;
+        private final String detectorName;
+        private final Map<String, Long> costs;
+
+        Result(String type, String detectorName, Map<String, Long> costs) {
+            this.type = type;
+            this.detectorName = detectorName;
+            this.costs = Collections.unmodifiableMap(costs);
+        }
+
+        /**
+         * @return the detected mime type, or null if nothing matched
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return the name of the detector that recognized the file, or null
+         */
+        public String getDetectorName() {
+            return detectorName;
+        }
+
+        /**
+         * @return the time spent in each detector that was run, in
+         * nanoseconds, in the order they were run
+         */
+        public Map<String, Long> getCosts() {
+            return costs;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("type=").append(type).append(", detector=").append(detectorName).append(", costs(ms)=[");
+            boolean first = true;
+            for (Map.Entry<String, Long> entry : costs.entrySet()) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                sb.append(entry.getKey()).append(':').append(String.format("%.3f", entry.getValue() / 1000000.0));
+                first = false;
+            }
+            return sb.append(']').toString();
+        }
+    }
+}
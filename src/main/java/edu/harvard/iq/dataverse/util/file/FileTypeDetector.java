@@ -0,0 +1,37 @@
+package edu.harvard.iq.dataverse.util.file;
+
+import java.io.IOException;
+
+/**
+ * A single step of the {@link FileTypeDetectionPipeline}.
+ */
+public interface FileTypeDetector {
+
+    String getName();
+
+    /**
+     * Expensive detectors (ones that parse the full file, like JHOVE) are
+     * only run when none of the cheap ones were conclusive.
+     */
+    default boolean isExpensive() {
+        return false;
+    }
+
+    /**
+     * Detectors that need to read more of the file than the header window
+     * are skipped when there is no local copy of the file (see
+     * {@link FileHeaderBuffer#getFile()}).
+     */
+    default boolean needsFile() {
+        return false;
+    }
+
+    /**
+     * @param header the shared header window of the file being checked
+     * @param fileName the name the file was uploaded under (not the name of
+     * the temp file on disk)
+     * @return the detected mime type, or null if this detector doesn't
+     * recognize the file
+     */
+    String detect(FileHeaderBuffer header, String fileName) throws IOException;
+}
@@ -0,0 +1,20 @@
+-- Results of the most recent fixity (checksum) verification of each datafile,
+-- as recorded by the fixity audit job (/api/admin/fixity/audit)
+CREATE TABLE IF NOT EXISTS fixitycheck (
+    id SERIAL PRIMARY KEY,
+    datafile_id BIGINT NOT NULL UNIQUE,
+    checktime TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    status VARCHAR(255) NOT NULL,
+    checksumtype VARCHAR(255),
+    expectedvalue VARCHAR(255),
+    calculatedvalue VARCHAR(255),
+    message TEXT,
+    storagedriver VARCHAR(255),
+    bytesread BIGINT,
+    durationms BIGINT,
+    CONSTRAINT fk_fixitycheck_datafile_id FOREIGN KEY (datafile_id)
+        REFERENCES dvobject (id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS index_fixitycheck_checktime ON fixitycheck (checktime);
+CREATE INDEX IF NOT EXISTS index_fixitycheck_status ON fixitycheck (status);
@@ -0,0 +1,3 @@
+-- Files for which thumbnail generation has failed, so that it isn't retried
+-- every time they are displayed
+ALTER TABLE datafile ADD COLUMN IF NOT EXISTS previewimagefail BOOLEAN DEFAULT FALSE;
@@ -0,0 +1,34 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkedUploadServiceBeanTest {
+
+    @Test
+    @JvmSetting(key = JvmSettings.CHUNKED_UPLOADS_MAX_BUFFERED_BYTES, value = "1000")
+    public void testBuffersAreBounded() {
+        ChunkedUploadServiceBean target = new ChunkedUploadServiceBean();
+
+        assertTrue(target.reserveBuffer(600));
+        assertTrue(target.reserveBuffer(400));
+        assertFalse(target.reserveBuffer(1));
+        // (the stores that don't buffer anything are not limited)
+        assertTrue(target.reserveBuffer(0));
+        assertEquals(1000, target.getBufferedBytes());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.CHUNKED_UPLOADS_MAX_BUFFERED_BYTES, value = "1000")
+    public void testUploadLargerThanAllTheBuffers() {
+        ChunkedUploadServiceBean target = new ChunkedUploadServiceBean();
+
+        assertFalse(target.reserveBuffer(1001));
+        assertEquals(0, target.getBufferedBytes());
+    }
+}
@@ -0,0 +1,95 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DatasetVersionFilesServiceBeanTest {
+
+    @Mock
+    private EntityManager em;
+    @Mock(answer = Answers.RETURNS_SELF)
+    private TypedQuery<Long> query;
+    @InjectMocks
+    private DatasetVersionFilesServiceBean target;
+
+    private DatasetVersion datasetVersion;
+    private final ArgumentCaptor<String> queryString = ArgumentCaptor.forClass(String.class);
+
+    @BeforeEach
+    public void setUp() {
+        datasetVersion = new DatasetVersion();
+        datasetVersion.setId(42L);
+        lenient().when(em.createQuery(queryString.capture(), eq(Long.class))).thenReturn(query);
+    }
+
+    @Test
+    public void testNewestOrdersTheUnpublishedFilesByCreationDate() {
+        target.getDataFileIds(datasetVersion, null, DatasetVersionFilesServiceBean.FileOrderCriteria.Newest);
+
+        // the files without a publication date are not all put first
+        assertTrue(queryString.getValue().endsWith(" ORDER BY COALESCE(df.publicationDate, df.createDate) DESC, fm.id DESC"), queryString.getValue());
+        verify(query).setParameter("datasetVersionId", 42L);
+    }
+
+    @Test
+    public void testPageOfTheFilesTable() {
+        List<Long> ids = Arrays.asList(3L, 1L);
+        when(query.getResultList()).thenReturn(ids);
+        DatasetVersionFilesServiceBean.FileSearchCriteria searchCriteria = new DatasetVersionFilesServiceBean.FileSearchCriteria(null, null, null, null, null, Arrays.asList(1L, 2L, 3L));
+
+        assertEquals(ids, target.getDataFileIds(datasetVersion, searchCriteria, true, "size", false, 10, 20));
+
+        assertTrue(queryString.getValue().contains(" AND df.id IN :dataFileIds"), queryString.getValue());
+        assertTrue(queryString.getValue().endsWith(" ORDER BY UPPER(COALESCE(fm.directoryLabel, '')), df.filesize DESC, fm.id"), queryString.getValue());
+        verify(query).setParameter("dataFileIds", Arrays.asList(1L, 2L, 3L));
+        verify(query).setMaxResults(10);
+        verify(query).setFirstResult(20);
+    }
+
+    @Test
+    public void testPageOfTheFilesTableByNameWithoutFolders() {
+        target.getDataFileIds(datasetVersion, null, false, null, true, 10, 0);
+
+        assertTrue(queryString.getValue().endsWith(" ORDER BY UPPER(fm.label), fm.id"), queryString.getValue());
+        verify(query).setMaxResults(10);
+        verify(query, never()).setFirstResult(0);
+    }
+
+    @Test
+    public void testNoDataFileIdsMatchNothing() {
+        DatasetVersionFilesServiceBean.FileSearchCriteria searchCriteria = new DatasetVersionFilesServiceBean.FileSearchCriteria(null, null, null, null, null, Collections.emptyList());
+
+        target.getDataFileIds(datasetVersion, searchCriteria, true, "name", true, 10, 0);
+
+        assertTrue(queryString.getValue().contains(" AND df.id IS NULL"), queryString.getValue());
+    }
+
+    @Test
+    public void testTooManyDataFileIds() {
+        List<Long> ids = Collections.nCopies(DatasetVersionFilesServiceBean.MAX_DATA_FILE_IDS + 1, 1L);
+        assertThrows(IllegalArgumentException.class, () -> new DatasetVersionFilesServiceBean.FileSearchCriteria(null, null, null, null, null, ids));
+    }
+}
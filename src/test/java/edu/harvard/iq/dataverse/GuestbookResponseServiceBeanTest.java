@@ -0,0 +1,117 @@
+package edu.harvard.iq.dataverse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class GuestbookResponseServiceBeanTest {
+
+    private static final String HEADER = "Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions";
+
+    @Mock
+    private EntityManager em;
+    @Mock
+    private DataverseServiceBean dataverseService;
+    @Mock(answer = Answers.RETURNS_SELF)
+    private Query responsesQuery;
+    @Mock(answer = Answers.RETURNS_SELF)
+    private Query answersQuery;
+    @InjectMocks
+    private GuestbookResponseServiceBean target;
+
+    @BeforeEach
+    public void setUp() {
+        when(em.createNativeQuery(startsWith("select r.id"))).thenReturn(responsesQuery);
+    }
+
+    @Test
+    public void testStreamWithoutResponsesWritesTheHeaderOnly() throws IOException {
+        when(responsesQuery.getResultList()).thenReturn(Collections.emptyList());
+
+        String csv = stream(1L, null);
+
+        assertEquals(HEADER + "\n", csv);
+        verify(em, never()).createNativeQuery(startsWith("select q.questionstring"));
+    }
+
+    @Test
+    public void testStreamPagesThroughAllResponsesNewestFirst() throws IOException {
+        // one full page of 1000 responses (ids 1001 down to 2), and one more page with the oldest
+        List<Object[]> firstPage = new ArrayList<>();
+        for (int id = 1001; id > 1; id--) {
+            firstPage.add(response(id, 10));
+        }
+        List<Object[]> secondPage = new ArrayList<>();
+        secondPage.add(response(1, 20));
+        when(responsesQuery.getResultList()).thenReturn(firstPage, secondPage);
+
+        when(em.createNativeQuery(startsWith("select q.questionstring"))).thenReturn(answersQuery);
+        List<Object[]> firstAnswers = new ArrayList<>();
+        firstAnswers.add(new Object[]{"Why?", "Because", 1001});
+        List<Object[]> secondAnswers = new ArrayList<>();
+        secondAnswers.add(new Object[]{"Why?", "Just, because", 1});
+        when(answersQuery.getResultList()).thenReturn(firstAnswers, secondAnswers);
+
+        when(dataverseService.getDatasetTitles(any())).thenAnswer(invocation -> {
+            List<Object[]> titles = new ArrayList<>();
+            for (Integer datasetId : invocation.<Collection<Integer>>getArgument(0)) {
+                titles.add(new Object[]{"Dataset " + datasetId, datasetId});
+            }
+            return titles;
+        });
+
+        String[] lines = stream(1L, 7L).split("\n");
+
+        assertEquals(1 + 1001, lines.length);
+        assertEquals(HEADER, lines[0]);
+        assertEquals("Guestbook,Dataset 10,doi:10.5072/FK2ABC,01/2/2024,Download,file1001.txt,5001,N/A,Name 1001,user1001@example.edu,,,Why?,Because", lines[1]);
+        assertEquals("Guestbook,Dataset 10,doi:10.5072/FK2ABC,01/2/2024,Download,file2.txt,4002,N/A,Name 2,user2@example.edu,,", lines[1000]);
+        assertEquals("Guestbook,Dataset 20,doi:10.5072/FK2ABC,01/2/2024,Download,file1.txt,4001,N/A,Name 1,user1@example.edu,,,Why?,\"Just, because\"", lines[1001]);
+
+        // the second page starts below the last response of the first one
+        verify(responsesQuery, times(2)).getResultList();
+        verify(responsesQuery).setParameter(2, 7L);
+        verify(responsesQuery).setParameter(3, 2);
+        // the titles are looked up page by page
+        verify(dataverseService, times(2)).getDatasetTitles(any());
+    }
+
+    private String stream(Long dataverseId, Long guestbookId) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        target.streamResponsesByDataverseIdAndGuestbookId(out, dataverseId, guestbookId);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Object[] response(int id, int datasetId) {
+        return new Object[]{
+            id, "Guestbook", datasetId, Timestamp.valueOf("2024-01-02 10:00:00"), "Download",
+            "file" + id + ".txt", 4000 + id, "Name " + id, "user" + id + "@example.edu", null, null,
+            "doi", "10.5072", "FK2ABC", null, null, null
+        };
+    }
+}
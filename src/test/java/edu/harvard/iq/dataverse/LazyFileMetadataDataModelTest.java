@@ -0,0 +1,79 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class LazyFileMetadataDataModelTest {
+
+    @Test
+    public void testLoadsOnlyTheRequestedPage() {
+        List<FileMetadata> files = new ArrayList<>();
+        for (long id = 1; id <= 25; id++) {
+            files.add(fileMetadata(id));
+        }
+        List<int[]> requestedPages = new ArrayList<>();
+        LazyFileMetadataDataModel model = new LazyFileMetadataDataModel((first, pageSize) -> {
+            requestedPages.add(new int[]{first, pageSize});
+            return files.subList(first, Math.min(first + pageSize, files.size()));
+        }, dataFileId -> fail("only the current page should be searched"), files.size());
+
+        assertEquals(25, model.count(Collections.emptyMap()));
+        List<FileMetadata> page = model.load(20, 10, Collections.emptyMap(), Collections.emptyMap());
+
+        assertEquals(5, page.size());
+        assertEquals(1, requestedPages.size());
+        assertEquals(20, requestedPages.get(0)[0]);
+        assertEquals(10, requestedPages.get(0)[1]);
+
+        // the selected rows are looked up by the ids of their files, in the current page
+        assertEquals("21", model.getRowKey(page.get(0)));
+        assertSame(files.get(20), model.getRowData("21"));
+    }
+
+    @Test
+    public void testSelectionAcrossPages() {
+        List<FileMetadata> files = new ArrayList<>();
+        for (long id = 1; id <= 25; id++) {
+            files.add(fileMetadata(id));
+        }
+        List<Long> lookedUp = new ArrayList<>();
+        LazyFileMetadataDataModel model = new LazyFileMetadataDataModel(
+                (first, pageSize) -> files.subList(first, Math.min(first + pageSize, files.size())),
+                dataFileId -> {
+                    lookedUp.add(dataFileId);
+                    return files.stream().filter(fmd -> dataFileId.equals(fmd.getDataFile().getId())).findFirst().orElse(null);
+                }, files.size());
+
+        // a file is ticked on the first page, and another one on the third
+        model.load(0, 10, Collections.emptyMap(), Collections.emptyMap());
+        String onFirstPage = model.getRowKey(files.get(2));
+        model.load(20, 10, Collections.emptyMap(), Collections.emptyMap());
+        String onThirdPage = model.getRowKey(files.get(22));
+
+        // both of them are resolved when the selection is submitted from the third page
+        assertSame(files.get(22), model.getRowData(onThirdPage));
+        assertSame(files.get(2), model.getRowData(onFirstPage));
+        assertEquals(List.of(3L), lookedUp);
+
+        // (the file isn't in the version, or the key isn't one)
+        assertNull(model.getRowData("99"));
+        assertNull(model.getRowData("null"));
+    }
+
+    private static FileMetadata fileMetadata(long dataFileId) {
+        DataFile dataFile = new DataFile();
+        dataFile.setId(dataFileId);
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setDataFile(dataFile);
+        fileMetadata.setLabel("file" + dataFileId + ".txt");
+        return fileMetadata;
+    }
+}
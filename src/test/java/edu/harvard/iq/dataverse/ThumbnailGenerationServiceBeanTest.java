@@ -0,0 +1,127 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ThumbnailGenerationServiceBeanTest {
+
+    @Mock
+    private DataFileServiceBean dataFileService;
+    @Mock
+    private ManagedThreadFactory managedThreadFactory;
+    @InjectMocks
+    private ThumbnailGenerationServiceBean target;
+
+    @BeforeEach
+    public void setUp() {
+        lenient().when(managedThreadFactory.newThread(any())).thenAnswer(invocation -> new Thread(invocation.<Runnable>getArgument(0)));
+        target.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        target.close();
+    }
+
+    @Test
+    public void testFileIsQueuedOnceForAllSizes() throws InterruptedException {
+        DataFile file = imageFile(1L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(dataFileService.find(1L)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return file;
+        });
+
+        target.requestThumbnails(file);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // (the first request is in progress)
+        target.requestThumbnails(file);
+        target.requestThumbnails(file);
+        assertEquals(1, target.getPendingCount());
+        release.countDown();
+        awaitNoPendingRequests();
+
+        verify(dataFileService, times(1)).find(1L);
+        verify(managedThreadFactory).newThread(any());
+    }
+
+    @Test
+    public void testFileThatCantBeReadIsNotFlagged() throws InterruptedException {
+        // (the storage driver of this file is not configured)
+        DataFile file = imageFile(2L);
+        when(dataFileService.find(2L)).thenReturn(file);
+
+        target.requestThumbnails(file);
+        awaitNoPendingRequests();
+        // ... and it is tried again the next time it's requested:
+        target.requestThumbnails(file);
+        awaitNoPendingRequests();
+
+        verify(dataFileService, times(2)).find(2L);
+        verify(dataFileService, never()).setPreviewImageFail(anyLong(), anyBoolean());
+        verify(dataFileService, never()).setPreviewImageAvailable(anyLong());
+    }
+
+    @Test
+    public void testFlaggedFileIsNotQueued() {
+        DataFile file = imageFile(3L);
+        file.setPreviewImageFail(true);
+
+        target.requestThumbnails(file);
+
+        assertEquals(0, target.getPendingCount());
+        verifyNoInteractions(dataFileService);
+    }
+
+    @Test
+    public void testFileFlaggedSinceItWasQueuedIsSkipped() {
+        DataFile file = imageFile(4L);
+        file.setPreviewImageFail(true);
+        when(dataFileService.find(4L)).thenReturn(file);
+
+        target.generateThumbnails(4L);
+
+        verify(dataFileService, never()).setPreviewImageFail(anyLong(), anyBoolean());
+        verify(dataFileService, never()).setPreviewImageAvailable(anyLong());
+    }
+
+    private void awaitNoPendingRequests() throws InterruptedException {
+        for (int i = 0; i < 1000 && target.getPendingCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, target.getPendingCount());
+    }
+
+    private static DataFile imageFile(Long id) {
+        DataFile file = new DataFile("image/png");
+        file.setId(id);
+        file.setStorageIdentifier("nosuchstore://" + id);
+        file.setFilesize(1000);
+        return file;
+    }
+}
@@ -0,0 +1,111 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import javax.sql.DataSource;
+
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class UserActivityServiceBeanTest {
+
+    @Mock
+    private TimerService timerService;
+    @Mock
+    private DataSource dataSource;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement update;
+    @InjectMocks
+    private UserActivityServiceBean target;
+
+    private AuthenticatedUser user;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        lenient().when(dataSource.getConnection()).thenReturn(connection);
+        lenient().when(connection.prepareStatement(anyString())).thenReturn(update);
+        user = new AuthenticatedUser();
+        user.setId(42L);
+    }
+
+    @Test
+    public void testApiUsesAreWrittenOncePerInterval() throws SQLException {
+        target.init();
+        verify(timerService).createIntervalTimer(eq(60000L), eq(60000L), any(TimerConfig.class));
+
+        Timestamp first = new Timestamp(1000);
+        Timestamp last = new Timestamp(3000);
+        assertTrue(target.recordApiUse(user, first));
+        assertTrue(target.recordApiUse(user, last));
+        // (a time recorded late, by a request that started earlier, doesn't step back)
+        assertTrue(target.recordApiUse(user, new Timestamp(2000)));
+        target.flush();
+
+        // one update of the user, with the last time, and only if it's later than the one saved
+        verify(connection).prepareStatement("UPDATE authenticateduser SET lastapiusetime = ? WHERE id = ? AND (lastapiusetime IS NULL OR lastapiusetime < ?)");
+        verify(update, times(1)).addBatch();
+        verify(update).setTimestamp(1, last);
+        verify(update).setLong(2, 42L);
+        verify(update).setTimestamp(3, last);
+        verify(update).executeBatch();
+
+        // (nothing left to write)
+        target.flush();
+        verify(update, times(1)).executeBatch();
+    }
+
+    @Test
+    public void testTimesAreKeptUntilWritten() throws SQLException {
+        target.init();
+        when(update.executeBatch()).thenThrow(new SQLException("connection refused")).thenReturn(new int[]{1});
+
+        assertTrue(target.recordLogin(user, new Timestamp(1000)));
+        target.flush();
+        target.close();
+
+        // (written on the shutdown, after the failure)
+        verify(update, times(2)).executeBatch();
+        verify(update, times(2)).setLong(2, 42L);
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.USER_ACTIVITY_FLUSH_INTERVAL_SECONDS, value = "0")
+    public void testWrittenByTheCallerWithoutAnInterval() {
+        target.init();
+
+        assertFalse(target.recordApiUse(user, new Timestamp(1000)));
+        assertFalse(target.recordLogin(user, new Timestamp(1000)));
+        target.flush();
+
+        verify(timerService, never()).createIntervalTimer(anyLong(), anyLong(), any(TimerConfig.class));
+        verifyNoInteractions(dataSource);
+    }
+}
@@ -0,0 +1,99 @@
+package edu.harvard.iq.dataverse.actionlogging;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class ActionLogWriterTest {
+
+    @Mock
+    private ActionLogServiceBean actionLogService;
+    @Mock
+    private ManagedThreadFactory managedThreadFactory;
+    @InjectMocks
+    private ActionLogWriter target;
+
+    private final List<ActionLogRecord> written = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    public void setUp() {
+        lenient().when(managedThreadFactory.newThread(any())).thenAnswer(invocation -> new Thread(invocation.<Runnable>getArgument(0)));
+        lenient().doAnswer(invocation -> written.addAll(invocation.getArgument(0)))
+                .when(actionLogService).logBatch(anyList());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.ACTION_LOG_FLUSH_INTERVAL_MS, value = "60000")
+    public void testQueueIsDrainedOnShutdown() {
+        target.init();
+        for (int i = 0; i < 1200; i++) {
+            assertTrue(target.offer(record(i)));
+        }
+
+        target.shutdown();
+
+        // (the flush interval is long: the records are all written by the shutdown)
+        assertEquals(1200, written.size());
+        verify(managedThreadFactory).newThread(any());
+    }
+
+    @Test
+    public void testRecordsAreHandedBackAfterShutdown() {
+        target.init();
+        target.shutdown();
+
+        assertFalse(target.offer(record(1)));
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.ACTION_LOG_ASYNC, value = "false")
+    public void testSynchronous() {
+        target.init();
+
+        assertFalse(target.offer(record(1)));
+        target.shutdown();
+        verify(managedThreadFactory, never()).newThread(any());
+    }
+
+    @Test
+    public void testBadRecordDoesntLoseTheBatch() {
+        ActionLogRecord bad = record(2);
+        doAnswer(invocation -> {
+            List<ActionLogRecord> batch = invocation.getArgument(0);
+            if (batch.contains(bad)) {
+                throw new IllegalStateException("value too long");
+            }
+            return written.addAll(batch);
+        }).when(actionLogService).logBatch(anyList());
+
+        target.write(List.of(record(1), bad, record(3)));
+
+        assertEquals(2, written.size());
+    }
+
+    private static ActionLogRecord record(int i) {
+        return new ActionLogRecord(ActionLogRecord.ActionType.Command, "test" + i);
+    }
+}
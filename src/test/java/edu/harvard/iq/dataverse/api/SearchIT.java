@@ -16,7 +16,9 @@ import edu.harvard.iq.dataverse.util.FileUtil;
 import java.io.File;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 import jakarta.json.JsonArray;
 import static jakarta.ws.rs.core.Response.Status.BAD_REQUEST;
 import static jakarta.ws.rs.core.Response.Status.OK;
@@ -25,6 +27,7 @@ import org.hamcrest.CoreMatchers;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import static io.restassured.RestAssured.given;
 import static java.lang.Thread.sleep;
 import javax.imageio.ImageIO;
 import static jakarta.ws.rs.core.Response.Status.CREATED;
@@ -1282,6 +1285,73 @@ public class SearchIT {
 
     }
 
+    @Test
+    public void testSearchWithCursor() {
+        Response createUser = UtilIT.createRandomUser();
+        createUser.prettyPrint();
+        String apiToken = UtilIT.getApiTokenFromResponse(createUser);
+
+        Response createDataverseResponse = UtilIT.createRandomDataverse(apiToken);
+        createDataverseResponse.prettyPrint();
+        String dataverseAlias = UtilIT.getAliasFromResponse(createDataverseResponse);
+
+        for (int i = 0; i < 5; i++) {
+            Response createSubDataverse = UtilIT.createSubDataverse("subDV" + UtilIT.getRandomIdentifier(), null, apiToken, dataverseAlias);
+            createSubDataverse.then().assertThat()
+                    .statusCode(CREATED.getStatusCode());
+        }
+
+        String subtree = "&subtree=" + dataverseAlias;
+        assertTrue(UtilIT.sleepForSearch("*", apiToken, subtree, UtilIT.MAXIMUM_INGEST_LOCK_DURATION), "Failed test if search exceeds max duration *");
+
+        Response searchAll = UtilIT.search("*", apiToken, subtree + "&sort=name&order=asc&per_page=10");
+        searchAll.prettyPrint();
+        searchAll.then().assertThat()
+                .statusCode(OK.getStatusCode())
+                .body("data.total_count", CoreMatchers.equalTo(5));
+        List<String> expected = JsonPath.from(searchAll.asString()).getList("data.items.name");
+
+        // the same results, two at a time, each page asked for with the next_cursor of the page before
+        List<String> paged = new ArrayList<>();
+        String cursor = "*";
+        int pages = 0;
+        while (cursor != null) {
+            Response searchPage = given()
+                    .header(UtilIT.API_TOKEN_HTTP_HEADER, apiToken)
+                    .queryParam("q", "*")
+                    .queryParam("subtree", dataverseAlias)
+                    .queryParam("sort", "name")
+                    .queryParam("order", "asc")
+                    .queryParam("per_page", 2)
+                    .queryParam("cursor", cursor)
+                    .get("/api/search");
+            searchPage.prettyPrint();
+            searchPage.then().assertThat()
+                    .statusCode(OK.getStatusCode())
+                    .body("data.total_count", CoreMatchers.equalTo(5))
+                    .body("data.start", CoreMatchers.equalTo(0))
+                    .body("data.cursor", CoreMatchers.equalTo(cursor));
+            JsonPath page = JsonPath.from(searchPage.asString());
+            paged.addAll(page.getList("data.items.name"));
+            cursor = page.getString("data.next_cursor");
+            pages++;
+            assertTrue(pages <= 3, "The cursor should have reached the end in three pages at most");
+        }
+        assertEquals(expected, paged);
+        // (the last page, with one result, has no next_cursor)
+        assertEquals(3, pages);
+
+        Response cursorAndStart = UtilIT.search("*", apiToken, "&cursor=*&start=2");
+        cursorAndStart.prettyPrint();
+        cursorAndStart.then().assertThat()
+                .statusCode(BAD_REQUEST.getStatusCode());
+
+        Response blankCursor = UtilIT.search("*", apiToken, "&cursor=");
+        blankCursor.prettyPrint();
+        blankCursor.then().assertThat()
+                .statusCode(BAD_REQUEST.getStatusCode());
+    }
+
     @AfterEach
     public void tearDownDataverse() {
         File treesThumb = new File("scripts/search/data/binary/trees.png.thumb48");
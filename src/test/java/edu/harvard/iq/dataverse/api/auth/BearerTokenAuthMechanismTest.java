@@ -1,9 +1,12 @@
 package edu.harvard.iq.dataverse.api.auth;
 
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
 import edu.harvard.iq.dataverse.UserServiceBean;
 import edu.harvard.iq.dataverse.api.auth.doubles.BearerTokenKeyContainerRequestTestFake;
+import edu.harvard.iq.dataverse.authorization.AuthenticationCache;
 import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.UserRecordIdentifier;
 import edu.harvard.iq.dataverse.authorization.providers.oauth2.OAuth2Exception;
@@ -20,6 +23,7 @@ import jakarta.ws.rs.container.ContainerRequestContext;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Optional;
 
 import static edu.harvard.iq.dataverse.api.auth.BearerTokenAuthMechanism.*;
@@ -34,6 +38,7 @@ public class BearerTokenAuthMechanismTest {
     @BeforeEach
     public void setUp() {
         sut = new BearerTokenAuthMechanism();
+        sut.authCache = Mockito.mock(AuthenticationCache.class);
     }
 
     @Test
@@ -155,8 +160,65 @@ public class BearerTokenAuthMechanismTest {
         //then
         assertEquals(testAuthenticatedUser, actual);
         Mockito.verify(sut.userSvc, Mockito.atLeastOnce()).updateLastApiUseTime(testAuthenticatedUser);
+        // (not a JWT, so it isn't known when it expires, and it isn't cached)
+        Mockito.verify(sut.authCache, Mockito.never()).putUser(Mockito.any(), Mockito.any(), Mockito.any());
 
     }
+
+    @Test
+    public void testGetExpirationTime() {
+        // (JWT times are in seconds)
+        Date expirationTime = new Date((System.currentTimeMillis() / 1000 + 300) * 1000);
+        String jwt = new PlainJWT(new JWTClaimsSet.Builder().subject("KEY").expirationTime(expirationTime).build()).serialize();
+
+        assertEquals(Optional.of(expirationTime), getExpirationTime("Bearer " + jwt));
+        assertEquals(Optional.empty(), getExpirationTime("Bearer " + TEST_API_KEY));
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.FEATURE_FLAG, value = "true", varArgs = "api-bearer-auth")
+    public void testFindUserFromRequest_cachedToken() throws WrappedAuthErrorResponse {
+
+        sut.userSvc = Mockito.mock(UserServiceBean.class);
+        sut.authSvc = Mockito.mock(AuthenticationServiceBean.class);
+
+        // the token was validated before, for the user with id 42
+        AuthenticatedUser testAuthenticatedUser = new AuthenticatedUser();
+        Mockito.when(sut.authCache.getUserId("Bearer " + TEST_API_KEY)).thenReturn(42L);
+        Mockito.when(sut.authSvc.findByID(42L)).thenReturn(testAuthenticatedUser);
+        Mockito.when(sut.userSvc.updateLastApiUseTime(testAuthenticatedUser)).thenReturn(testAuthenticatedUser);
+
+        // when
+        ContainerRequestContext testContainerRequest = new BearerTokenKeyContainerRequestTestFake("Bearer " + TEST_API_KEY);
+        User actual = sut.findUserFromRequest(testContainerRequest);
+
+        //then
+        assertEquals(testAuthenticatedUser, actual);
+        Mockito.verify(sut.authSvc, Mockito.never()).getAuthenticationProviderIdsOfType(OIDCAuthProvider.class);
+
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.FEATURE_FLAG, value = "true", varArgs = "api-bearer-auth")
+    public void testFindUserFromRequest_cachedToken_deactivatedUser() {
+
+        sut.userSvc = Mockito.mock(UserServiceBean.class);
+        sut.authSvc = Mockito.mock(AuthenticationServiceBean.class);
+
+        // the user was deactivated since the token was cached (possibly on another server)
+        AuthenticatedUser testAuthenticatedUser = new AuthenticatedUser();
+        testAuthenticatedUser.setDeactivated(true);
+        Mockito.when(sut.authCache.getUserId("Bearer " + TEST_API_KEY)).thenReturn(42L);
+        Mockito.when(sut.authSvc.findByID(42L)).thenReturn(testAuthenticatedUser);
+
+        // when (the token is checked again, and there is no provider to check it)
+        ContainerRequestContext testContainerRequest = new BearerTokenKeyContainerRequestTestFake("Bearer " + TEST_API_KEY);
+        assertThrows(WrappedAuthErrorResponse.class, () -> sut.findUserFromRequest(testContainerRequest));
+
+        //then
+        Mockito.verify(sut.authCache).invalidate("Bearer " + TEST_API_KEY);
+        Mockito.verify(sut.userSvc, Mockito.never()).updateLastApiUseTime(testAuthenticatedUser);
+    }
     @Test
     @JvmSetting(key = JvmSettings.FEATURE_FLAG, value = "true", varArgs = "api-bearer-auth")
     public void testFindUserFromRequest_oneProvider_validToken_noAccount() throws WrappedAuthErrorResponse, ParseException, IOException, OAuth2Exception {
@@ -0,0 +1,64 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.authorization.users.PrivateUrlUser;
+import java.util.Date;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class AuthenticationCacheTest {
+
+    private AuthenticationCache target;
+    private AuthenticatedUser user;
+
+    @BeforeEach
+    public void setUp() {
+        target = new AuthenticationCache();
+        target.init();
+        user = new AuthenticatedUser();
+        user.setId(42L);
+        user.setUserIdentifier("jdoe");
+    }
+
+    @Test
+    public void testUserIsInvalidatedOnDeactivation() {
+        target.putUser("token", user, null);
+        assertEquals(42L, target.getUserId("token"));
+
+        target.invalidateUser(user);
+
+        assertNull(target.getUserId("token"));
+    }
+
+    @Test
+    public void testRoleChangesOfUsersAndGroupsLeaveTheCacheAlone() {
+        target.putUser("token", user, null);
+
+        target.invalidateAssignee(user.getIdentifier());
+        target.invalidateAssignee("&explicit/1-researchers");
+
+        assertEquals(42L, target.getUserId("token"));
+    }
+
+    @Test
+    public void testPrivateUrlIsInvalidatedWithItsRole() {
+        PrivateUrlUser privateUrlUser = new PrivateUrlUser(7L);
+        target.putPrivateUrlUser("privateUrlToken", privateUrlUser);
+        target.putPrivateUrlUser("otherPrivateUrlToken", new PrivateUrlUser(8L));
+
+        target.invalidateAssignee(privateUrlUser.getIdentifier());
+
+        assertNull(target.getPrivateUrlUser("privateUrlToken"));
+        assertEquals(8L, target.getPrivateUrlUser("otherPrivateUrlToken").getDatasetId());
+    }
+
+    @Test
+    public void testExpiredTokenIsNotReturned() {
+        target.putUser("token", user, new Date(System.currentTimeMillis() - 1000));
+
+        assertNull(target.getUserId("token"));
+    }
+}
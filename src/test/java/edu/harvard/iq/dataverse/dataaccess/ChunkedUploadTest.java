@@ -0,0 +1,171 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkedUploadTest {
+
+    /**
+     * Stores the chunks in memory.
+     */
+    private static class InMemoryUpload extends ChunkedUpload {
+
+        final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        boolean completed = false;
+        boolean aborted = false;
+
+        InMemoryUpload(long length) {
+            super(length, ChecksumType.SHA256);
+        }
+
+        @Override
+        protected void storeChunk(byte[] b, int off, int len) {
+            stored.write(b, off, len);
+        }
+
+        @Override
+        protected void flush() {
+        }
+
+        @Override
+        protected void completeStorage() {
+            completed = true;
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+        }
+    }
+
+    /**
+     * A store that is down.
+     */
+    private static class FailingUpload extends InMemoryUpload {
+
+        FailingUpload(long length) {
+            super(length);
+        }
+
+        @Override
+        protected void storeChunk(byte[] b, int off, int len) throws IOException {
+            throw new IOException("store unavailable");
+        }
+
+        @Override
+        protected void completeStorage() throws IOException {
+            throw new IOException("store unavailable");
+        }
+    }
+
+    /**
+     * Fails after a number of bytes, like a dropped connection.
+     */
+    private static InputStream failingAfter(byte[] bytes, int failAfter) {
+        return new InputStream() {
+            private int position = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (position == failAfter) {
+                    throw new IOException("connection reset");
+                }
+                return position < bytes.length ? bytes[position++] & 0xff : -1;
+            }
+        };
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testChunksAreStoredAndChecksummed() throws IOException {
+        byte[] bytes = randomBytes(200 * 1024 + 5);
+        InMemoryUpload upload = new InMemoryUpload(bytes.length);
+
+        upload.write(new ByteArrayInputStream(bytes, 0, 100 * 1024));
+        assertEquals(100 * 1024, upload.getOffset());
+        assertFalse(upload.isComplete());
+        assertNull(upload.getChecksum());
+        assertThrows(IOException.class, () -> upload.complete());
+
+        upload.write(new ByteArrayInputStream(bytes, 100 * 1024, bytes.length - 100 * 1024));
+        // (the checksum can be checked before the object is completed)
+        assertEquals(FileUtil.calculateChecksum(bytes, ChecksumType.SHA256), upload.getChecksum());
+        assertFalse(upload.completed);
+        upload.complete();
+        assertTrue(upload.isComplete());
+
+        assertTrue(upload.completed);
+        assertArrayEquals(bytes, upload.stored.toByteArray());
+        assertEquals(FileUtil.calculateChecksum(bytes, ChecksumType.SHA256), upload.getChecksum());
+        assertEquals(bytes.length, upload.getHeader().getFileSize());
+        assertTrue(upload.getHeader().startsWith(Arrays.copyOf(bytes, 16)));
+        assertNull(upload.getHeader().getFile());
+    }
+
+    @Test
+    public void testUploadResumesAfterAFailedChunk() throws IOException {
+        byte[] bytes = randomBytes(1000);
+        InMemoryUpload upload = new InMemoryUpload(bytes.length);
+
+        assertThrows(IOException.class, () -> upload.write(failingAfter(bytes, 300)));
+        long offset = upload.getOffset();
+        assertEquals(offset, upload.stored.size());
+
+        upload.write(new ByteArrayInputStream(bytes, (int) offset, bytes.length - (int) offset));
+        upload.complete();
+        assertArrayEquals(bytes, upload.stored.toByteArray());
+        assertEquals(FileUtil.calculateChecksum(bytes, ChecksumType.SHA256), upload.getChecksum());
+    }
+
+    @Test
+    public void testChunkBeyondTheLengthIsRejected() throws IOException {
+        byte[] bytes = randomBytes(100);
+        InMemoryUpload upload = new InMemoryUpload(50);
+
+        assertThrows(IOException.class, () -> upload.write(new ByteArrayInputStream(bytes)));
+        assertEquals(0, upload.getOffset());
+        assertEquals(0, upload.stored.size());
+    }
+
+    @Test
+    public void testStorageFailuresAreToldApart() throws IOException {
+        byte[] bytes = randomBytes(100);
+        FailingUpload upload = new FailingUpload(bytes.length);
+
+        // (a failure of the client's stream is a plain IOException)
+        IOException clientFailure = assertThrows(IOException.class, () -> new InMemoryUpload(bytes.length).write(failingAfter(bytes, 10)));
+        assertFalse(clientFailure instanceof ChunkedUpload.StorageException);
+
+        assertThrows(ChunkedUpload.StorageException.class, () -> upload.write(new ByteArrayInputStream(bytes)));
+        assertEquals(0, upload.getOffset());
+    }
+
+    @Test
+    public void testFailureToCompleteTheObject() throws IOException {
+        FailingUpload upload = new FailingUpload(0);
+
+        assertThrows(ChunkedUpload.StorageException.class, () -> upload.complete());
+        assertFalse(upload.isComplete());
+        // (the checksum of an empty file)
+        assertEquals(FileUtil.calculateChecksum(new byte[0], ChecksumType.SHA256), upload.getChecksum());
+    }
+}
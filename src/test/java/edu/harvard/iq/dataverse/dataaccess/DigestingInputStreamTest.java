@@ -0,0 +1,90 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DigestingInputStreamTest {
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testChecksumsMatchFileUtil() throws IOException {
+        // a few chunks' worth, and not a multiple of the chunk size
+        byte[] bytes = randomBytes(3 * 1024 * 1024 + 17);
+
+        DigestingInputStream digestingIn = new DigestingInputStream(new ByteArrayInputStream(bytes));
+        digestingIn.transferTo(OutputStream.nullOutputStream());
+        Map<ChecksumType, String> checksums = digestingIn.getChecksums();
+
+        assertEquals(ChecksumType.values().length, checksums.size());
+        for (ChecksumType checksumType : ChecksumType.values()) {
+            assertEquals(FileUtil.calculateChecksum(bytes, checksumType), checksums.get(checksumType));
+        }
+        assertEquals(bytes.length, digestingIn.getBytesRead());
+    }
+
+    @Test
+    public void testMoreChunksThanBuffers() throws IOException {
+        // more chunks than the stream has buffers, so that they are reused
+        byte[] bytes = randomBytes(20 * 1024 * 1024 + 5);
+
+        DigestingInputStream digestingIn = new DigestingInputStream(new ByteArrayInputStream(bytes), ChecksumType.SHA256);
+        byte[] buffer = new byte[64 * 1024];
+        while (digestingIn.read(buffer) != -1) {
+            // (the reads are smaller than the chunks)
+        }
+
+        assertEquals(FileUtil.calculateChecksum(bytes, ChecksumType.SHA256), digestingIn.getChecksums().get(ChecksumType.SHA256));
+    }
+
+    @Test
+    public void testSingleByteReadsAndSkips() throws IOException {
+        byte[] bytes = randomBytes(10000);
+
+        try (InputStream digestingIn = new DigestingInputStream(new ByteArrayInputStream(bytes), ChecksumType.MD5)) {
+            digestingIn.read();
+            assertEquals(5000, digestingIn.skip(5000));
+            digestingIn.transferTo(OutputStream.nullOutputStream());
+            // skipped bytes are still part of the digest:
+            assertEquals(FileUtil.calculateChecksum(bytes, ChecksumType.MD5),
+                    ((DigestingInputStream) digestingIn).getChecksums().get(ChecksumType.MD5));
+        }
+    }
+
+    @Test
+    public void testNoReadsAfterChecksums() throws IOException {
+        DigestingInputStream digestingIn = new DigestingInputStream(new ByteArrayInputStream(randomBytes(10)), ChecksumType.SHA1);
+        digestingIn.read(new byte[5]);
+        digestingIn.getChecksums();
+        assertThrows(IOException.class, () -> digestingIn.read(new byte[5]));
+    }
+
+    @Test
+    public void testDigestAsync() throws IOException {
+        byte[] bytes = randomBytes(2 * 1024 * 1024);
+        Path tmpFile = Files.createTempFile("digesting", "");
+        Files.write(tmpFile, bytes);
+        try {
+            Map<ChecksumType, String> checksums = DigestingInputStream.digestAsync(tmpFile).join();
+            assertEquals(FileUtil.calculateChecksum(bytes, ChecksumType.SHA512), checksums.get(ChecksumType.SHA512));
+        } finally {
+            Files.delete(tmpFile);
+        }
+    }
+}
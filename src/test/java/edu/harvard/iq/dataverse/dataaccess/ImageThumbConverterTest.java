@@ -0,0 +1,156 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ImageThumbConverterTest {
+
+    @TempDir
+    Path filesDirectory;
+
+    private Dataset dataset;
+
+    @BeforeEach
+    public void setUp() {
+        System.setProperty("dataverse.files.thumbtest.type", DataAccess.FILE);
+        System.setProperty("dataverse.files.thumbtest.directory", filesDirectory.toString());
+        dataset = new Dataset();
+        dataset.setProtocol("doi");
+        dataset.setAuthority("10.5072");
+        dataset.setIdentifier("FK2THUMBS");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        System.clearProperty("dataverse.files.thumbtest.type");
+        System.clearProperty("dataverse.files.thumbtest.directory");
+    }
+
+    @Test
+    public void testSubsamplingKeepsTwiceTheTargetSize() {
+        assertEquals(1, ImageThumbConverter.getSubsampling(600, 400, 400, 0));
+        assertEquals(5, ImageThumbConverter.getSubsampling(4000, 3000, 400, 0));
+        assertEquals(25, ImageThumbConverter.getSubsampling(20000, 20000, 400, 0));
+    }
+
+    @Test
+    public void testSubsamplingStaysWithinThePixelBudget() {
+        // twice a 5000 pixel target would be 10,000 x 10,000 pixels:
+        assertEquals(2, ImageThumbConverter.getSubsampling(20000, 20000, 5000, 0));
+        int subsampling = ImageThumbConverter.getSubsampling(20000, 20000, 5000, 4000000);
+        assertEquals(10, subsampling);
+        assertTrue((20000 / subsampling) * (20000 / subsampling) <= 4000000);
+    }
+
+    @Test
+    public void testReadImageForThumbnailDecodesAReducedImage() throws IOException {
+        BufferedImage image = new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+
+        BufferedImage reduced = ImageThumbConverter.readImageForThumbnail(new ByteArrayInputStream(png.toByteArray()), 400);
+
+        assertNotNull(reduced);
+        assertEquals(800, reduced.getWidth());
+        assertEquals(600, reduced.getHeight());
+    }
+
+    @Test
+    public void testReadImageForThumbnailOfNonImage() throws IOException {
+        assertNull(ImageThumbConverter.readImageForThumbnail(new ByteArrayInputStream("not an image".getBytes()), 400));
+    }
+
+    @Test
+    public void testGenerateThumbnailsOfAnImage() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(1000, 800, BufferedImage.TYPE_INT_RGB), "png", png);
+        DataFile file = storeFile("image.png", png.toByteArray());
+
+        assertEquals(ImageThumbConverter.ThumbnailStatus.AVAILABLE, ImageThumbConverter.generateThumbnails(file));
+
+        // all the standard sizes, from one task:
+        for (int size : new int[]{48, 64, 140, 400}) {
+            assertTrue(Files.exists(storedFilePath("image.png").resolveSibling("image.png.thumb" + size)), "thumb" + size);
+        }
+    }
+
+    @Test
+    public void testIsThumbnailAvailableDoesNotGenerate() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(1000, 800, BufferedImage.TYPE_INT_RGB), "png", png);
+        DataFile file = storeFile("image.png", png.toByteArray());
+
+        // (as when a page is rendered: only a thumbnail that is already cached)
+        assertFalse(ImageThumbConverter.isThumbnailAvailable(file));
+        assertFalse(Files.exists(storedFilePath("image.png").resolveSibling("image.png.thumb64")));
+
+        assertEquals(ImageThumbConverter.ThumbnailStatus.AVAILABLE, ImageThumbConverter.generateThumbnails(file));
+        assertTrue(ImageThumbConverter.isThumbnailAvailable(file));
+
+        file.setPreviewImageFail(true);
+        assertFalse(ImageThumbConverter.isThumbnailAvailable(file));
+    }
+
+    @Test
+    public void testGenerateThumbnailsOfAFileThatIsNotAnImage() throws IOException {
+        DataFile file = storeFile("broken.png", "not an image".getBytes());
+
+        assertEquals(ImageThumbConverter.ThumbnailStatus.UNREADABLE, ImageThumbConverter.generateThumbnails(file));
+    }
+
+    @Test
+    public void testGenerateThumbnailsOfAFileThatCantBeRead() throws IOException {
+        // (e.g. the storage is not reachable at the moment; this is not a reason to give up on the file)
+        DataFile file = dataFile("missing.png", 1000);
+
+        assertEquals(ImageThumbConverter.ThumbnailStatus.UNAVAILABLE, ImageThumbConverter.generateThumbnails(file));
+    }
+
+    @Test
+    public void testDecodingFailures() {
+        assertTrue(ImageThumbConverter.isDecodingFailure(new IIOException("Unsupported Image Type")));
+        assertTrue(ImageThumbConverter.isDecodingFailure(new ArrayIndexOutOfBoundsException()));
+        assertTrue(ImageThumbConverter.isDecodingFailure(new IIOException("Error reading PNG image data", new IIOException("Unknown row filter type"))));
+        // the bytes couldn't be read:
+        assertFalse(ImageThumbConverter.isDecodingFailure(new IOException("Connection reset")));
+        assertFalse(ImageThumbConverter.isDecodingFailure(new IIOException("Error reading PNG image data", new IOException("Connection reset"))));
+        assertFalse(ImageThumbConverter.isDecodingFailure(new RuntimeException("Unable to execute HTTP request", new IOException("Connection reset"))));
+    }
+
+    private DataFile storeFile(String name, byte[] content) throws IOException {
+        Path path = storedFilePath(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content);
+        return dataFile(name, content.length);
+    }
+
+    private Path storedFilePath(String name) {
+        return filesDirectory.resolve("10.5072").resolve("FK2THUMBS").resolve(name);
+    }
+
+    private DataFile dataFile(String name, long size) {
+        DataFile file = new DataFile("image/png");
+        file.setOwner(dataset);
+        file.setStorageIdentifier("thumbtest://" + name);
+        file.setFilesize(size);
+        return file;
+    }
+}
@@ -0,0 +1,64 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RangedReadAheadInputStreamTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReadsAllRangesInOrder() throws IOException {
+        byte[] bytes = new byte[100003];
+        new Random(7).nextBytes(bytes);
+        AtomicInteger rangesRead = new AtomicInteger();
+
+        RangedReadAheadInputStream.RangeReader reader = (offset, length) -> {
+            rangesRead.incrementAndGet();
+            return new ByteArrayInputStream(bytes, (int) offset, (int) length);
+        };
+        try (InputStream in = new RangedReadAheadInputStream(reader, bytes.length, 1000, 3, executor)) {
+            assertArrayEquals(bytes, in.readAllBytes());
+            assertEquals(-1, in.read());
+        }
+        assertEquals(101, rangesRead.get());
+    }
+
+    @Test
+    public void testEmptyObject() throws IOException {
+        RangedReadAheadInputStream.RangeReader reader = (offset, length) -> new ByteArrayInputStream(new byte[0]);
+        try (InputStream in = new RangedReadAheadInputStream(reader, 0, 1000, 3, executor)) {
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testShortRangeIsAnError() throws IOException {
+        RangedReadAheadInputStream.RangeReader reader = (offset, length) -> new ByteArrayInputStream(new byte[(int) length - 1]);
+        try (InputStream in = new RangedReadAheadInputStream(reader, 5000, 1000, 2, executor)) {
+            assertThrows(IOException.class, () -> in.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package edu.harvard.iq.dataverse.datasetutility;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.FileMetadata;
+import java.util.ArrayList;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileChecksumIndexTest {
+
+    private DatasetVersion datasetVersion;
+
+    @BeforeEach
+    public void setUp() {
+        datasetVersion = new DatasetVersion();
+        datasetVersion.setFileMetadatas(new ArrayList<>());
+    }
+
+    private FileMetadata addFile(Long id, String label, String checksum) {
+        DataFile dataFile = new DataFile();
+        dataFile.setChecksumValue(checksum);
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setId(id);
+        fileMetadata.setLabel(label);
+        fileMetadata.setDataFile(dataFile);
+        datasetVersion.getFileMetadatas().add(fileMetadata);
+        return fileMetadata;
+    }
+
+    @Test
+    public void testSavedFilesAreReadFromTheQueryResults() {
+        addFile(1L, "a.txt", null);
+        addFile(2L, "b.txt", null);
+        // (the files of the version are not loaded; their checksums are in
+        // the results of the query)
+        FileChecksumIndex index = new FileChecksumIndex(datasetVersion, Map.of(
+                1L, new String[]{"aaa", "a.txt"},
+                2L, new String[]{"bbb", "b.txt"}));
+
+        assertEquals("a.txt", index.findDuplicate("aaa"));
+        assertEquals("b.txt", index.findDuplicate("bbb"));
+        assertNull(index.findDuplicate("ccc"));
+        assertNull(index.findDuplicate(null));
+    }
+
+    @Test
+    public void testFilesAddedLaterAreFound() {
+        addFile(null, "a.txt", "aaa");
+        FileChecksumIndex index = new FileChecksumIndex(datasetVersion, null);
+        assertNull(index.findDuplicate("bbb"));
+
+        addFile(null, "b.txt", "bbb");
+        assertEquals("b.txt", index.findDuplicate("bbb"));
+        assertEquals("a.txt", index.findDuplicate("aaa"));
+    }
+
+    @Test
+    public void testRemovedFilesAreForgotten() {
+        FileMetadata first = addFile(null, "a.txt", "aaa");
+        addFile(null, "b.txt", "bbb");
+        FileChecksumIndex index = new FileChecksumIndex(datasetVersion, null);
+        assertEquals("a.txt", index.findDuplicate("aaa"));
+
+        datasetVersion.getFileMetadatas().remove(first);
+        assertNull(index.findDuplicate("aaa"));
+        assertEquals("b.txt", index.findDuplicate("bbb"));
+    }
+
+    @Test
+    public void testIsDuplicateSetsTheInlineMessage() {
+        addFile(null, "a.txt", "aaa");
+        FileChecksumIndex index = new FileChecksumIndex(datasetVersion, null);
+        assertTrue(index.isFor(datasetVersion));
+
+        DataFile newFile = new DataFile();
+        newFile.setChecksumValue("aaa");
+        FileMetadata newFileMetadata = new FileMetadata();
+        newFileMetadata.setDataFile(newFile);
+        assertTrue(DuplicateFileChecker.isDuplicate(index, newFileMetadata));
+        assertTrue(newFile.getDuplicateFilename().contains("a.txt"));
+
+        newFile.setChecksumValue("bbb");
+        assertFalse(DuplicateFileChecker.isDuplicate(index, newFileMetadata));
+    }
+}
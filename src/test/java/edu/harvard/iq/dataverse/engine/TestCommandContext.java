@@ -245,6 +245,11 @@ public class TestCommandContext implements CommandContext {
         return null;
     }
 
+    @Override
+    public ThumbnailGenerationServiceBean thumbnails() {
+        return null;
+    }
+
     @Override
     public void beginCommandSequence() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
@@ -0,0 +1,82 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IngestWorkQueueTest {
+
+    private static final long MB = 1024L * 1024;
+
+    private static List<Long> fileIds(List<IngestWorkQueue.Task> tasks) {
+        return tasks.stream().map(t -> t.dataFileId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testUsersAndDatasetsTakeTurns() {
+        IngestWorkQueue queue = new IngestWorkQueue(4, Long.MAX_VALUE);
+        // user 1 queues 3 files in dataset 10, then 1 file in dataset 11;
+        // user 2 queues 2 files in dataset 20:
+        queue.add(new IngestWorkQueue.Task(1L, 10L, 101L, MB));
+        queue.add(new IngestWorkQueue.Task(1L, 10L, 102L, MB));
+        queue.add(new IngestWorkQueue.Task(1L, 10L, 103L, MB));
+        queue.add(new IngestWorkQueue.Task(1L, 11L, 111L, MB));
+        queue.add(new IngestWorkQueue.Task(2L, 20L, 201L, MB));
+        queue.add(new IngestWorkQueue.Task(2L, 20L, 202L, MB));
+
+        assertEquals(List.of(101L, 201L, 111L, 202L), fileIds(queue.admit()));
+        assertEquals(4, queue.getRunningCount());
+        assertEquals(2, queue.getQueuedCount());
+        assertTrue(queue.admit().isEmpty());
+    }
+
+    @Test
+    public void testFinishedTasksMakeRoomForTheNextOnes() {
+        IngestWorkQueue queue = new IngestWorkQueue(1, Long.MAX_VALUE);
+        IngestWorkQueue.Task first = new IngestWorkQueue.Task(1L, 10L, 101L, MB);
+        queue.add(first);
+        queue.add(new IngestWorkQueue.Task(1L, 10L, 102L, MB));
+
+        assertEquals(List.of(101L), fileIds(queue.admit()));
+        assertTrue(queue.admit().isEmpty());
+        queue.finished(first);
+        assertEquals(List.of(102L), fileIds(queue.admit()));
+        assertEquals(0, queue.getQueuedCount());
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        IngestWorkQueue queue = new IngestWorkQueue(4, 100 * MB);
+        IngestWorkQueue.Task small = new IngestWorkQueue.Task(1L, 10L, 101L, 60 * MB);
+        IngestWorkQueue.Task large = new IngestWorkQueue.Task(2L, 20L, 201L, 500 * MB);
+        queue.add(small);
+        queue.add(large);
+        queue.add(new IngestWorkQueue.Task(1L, 10L, 102L, 10 * MB));
+
+        // the large file doesn't fit next to the small one, and the files
+        // queued behind it wait for it:
+        assertEquals(List.of(101L), fileIds(queue.admit()));
+        queue.finished(small);
+        // larger than the whole budget; ingested alone:
+        assertEquals(List.of(201L), fileIds(queue.admit()));
+        assertEquals(500 * MB, queue.getMemoryInUse());
+        queue.finished(large);
+        assertEquals(List.of(102L), fileIds(queue.admit()));
+    }
+
+    @Test
+    public void testEstimateCost() {
+        long size = 100 * MB;
+        long stata = IngestWorkQueue.estimateCost(FileUtil.MIME_TYPE_STATA14, size);
+        long csv = IngestWorkQueue.estimateCost(FileUtil.MIME_TYPE_CSV, size);
+        long xlsx = IngestWorkQueue.estimateCost(FileUtil.MIME_TYPE_XLSX, size);
+        assertTrue(stata > size);
+        assertTrue(csv > stata);
+        assertTrue(xlsx > csv);
+        assertEquals(IngestWorkQueue.BASE_COST, IngestWorkQueue.estimateCost(null, 0));
+    }
+}
@@ -0,0 +1,219 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetLock;
+import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.UserNotificationServiceBean;
+import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jakarta.ejb.EJBException;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class IngestWorkerServiceBeanTest {
+
+    @Mock
+    private DatasetServiceBean datasetService;
+    @Mock
+    private DataFileServiceBean datafileService;
+    @Mock
+    private IngestServiceBean ingestService;
+    @Mock
+    private UserNotificationServiceBean userNotificationService;
+    @Mock
+    private AuthenticationServiceBean authenticationServiceBean;
+    @Mock
+    private ManagedThreadFactory managedThreadFactory;
+    @InjectMocks
+    private IngestWorkerServiceBean target;
+
+    private Dataset dataset;
+
+    @BeforeEach
+    public void setUp() {
+        lenient().when(managedThreadFactory.newThread(any())).thenAnswer(invocation -> Executors.defaultThreadFactory().newThread(invocation.getArgument(0)));
+        target.init();
+        dataset = new Dataset();
+        dataset.setId(10L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        target.close();
+    }
+
+    @Test
+    public void testIngestWaitsForAllTheFilesBeforeRemovingTheLock() {
+        when(datafileService.find(anyLong())).thenAnswer(invocation -> scheduledFile(invocation.getArgument(0)));
+        when(ingestService.ingestAsTabular(anyLong())).thenReturn(true);
+        when(datasetService.find(10L)).thenReturn(dataset);
+
+        assertTrue(target.ingest(message(1L, 2L, 3L), false));
+
+        // (the files are all done when ingest() returns)
+        verify(ingestService, times(3)).ingestAsTabular(anyLong());
+        verify(datasetService, times(1)).removeDatasetLocks(dataset, DatasetLock.Reason.Ingest);
+        verify(userNotificationService, times(1)).sendNotification(any(), any(), any(), eq(10L), anyString(), anyBoolean());
+        assertFalse(target.isIngesting(10L));
+        assertEquals(0, target.getStatus().build().getInt("queuedFiles"));
+    }
+
+    @Test
+    public void testNothingIsQueuedIfAFileCantBeLookedUp() {
+        when(datafileService.find(1L)).thenReturn(scheduledFile(1L));
+        when(datafileService.find(2L)).thenThrow(new IllegalStateException("database is gone"));
+
+        assertThrows(IllegalStateException.class, () -> target.ingest(message(1L, 2L, 3L), false));
+
+        // the caller can remove the lock: none of the files were queued
+        assertFalse(target.isIngesting(10L));
+        assertEquals(0, target.getStatus().build().getInt("queuedFiles"));
+        verify(ingestService, never()).ingestAsTabular(anyLong());
+    }
+
+    @Test
+    public void testRedeliveredMessageSkipsTheFilesAlreadyIngested() {
+        DataFile ingested = scheduledFile(1L);
+        ingested.setIngestDone();
+        when(datafileService.find(1L)).thenReturn(ingested);
+        when(datafileService.find(2L)).thenReturn(scheduledFile(2L));
+        when(ingestService.ingestAsTabular(2L)).thenReturn(true);
+        when(datasetService.find(10L)).thenReturn(dataset);
+
+        assertTrue(target.ingest(message(1L, 2L), true));
+
+        verify(ingestService, never()).ingestAsTabular(1L);
+        verify(ingestService).ingestAsTabular(2L);
+        verify(datasetService).removeDatasetLocks(dataset, DatasetLock.Reason.Ingest);
+    }
+
+    @Test
+    public void testRedeliveredMessageWithAllTheFilesIngested() {
+        DataFile ingested = scheduledFile(1L);
+        ingested.setIngestDone();
+        when(datafileService.find(1L)).thenReturn(ingested);
+
+        // (nothing to queue; the lock is left to the message bean)
+        assertFalse(target.ingest(message(1L), true));
+
+        verify(ingestService, never()).ingestAsTabular(anyLong());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.INGEST_THREADS, value = "1")
+    public void testInterruptedWaitLeavesTheMessageToBeDeliveredAgain() throws Exception {
+        // (one worker: file 1 runs, file 2 stays queued)
+        target.close();
+        target.init();
+        when(datafileService.find(anyLong())).thenAnswer(invocation -> scheduledFile(invocation.getArgument(0)));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(ingestService.ingestAsTabular(1L)).thenAnswer(invocation -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread messageBean = new Thread(() -> {
+            try {
+                target.ingest(message(1L, 2L), false);
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        messageBean.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        messageBean.interrupt();
+        messageBean.join(5000);
+
+        // (not acknowledged; the file that hadn't started is off the queue)
+        assertInstanceOf(EJBException.class, thrown.get());
+        assertEquals(0, target.getStatus().build().getInt("queuedFiles"));
+        release.countDown();
+        verify(ingestService, timeout(5000)).ingestAsTabular(1L);
+        Thread.sleep(200);
+        verify(ingestService, never()).ingestAsTabular(2L);
+        verify(userNotificationService, never()).sendNotification(any(), any(), any(), anyLong(), anyString(), anyBoolean());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.INGEST_THREADS, value = "1")
+    public void testCloseLetsTheWaitingMessagesGo() throws Exception {
+        target.close();
+        target.init();
+        when(datafileService.find(anyLong())).thenAnswer(invocation -> scheduledFile(invocation.getArgument(0)));
+        CountDownLatch started = new CountDownLatch(1);
+        when(ingestService.ingestAsTabular(1L)).thenAnswer(invocation -> {
+            started.countDown();
+            return new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+        });
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread messageBean = new Thread(() -> {
+            try {
+                target.ingest(message(1L, 2L), false);
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        messageBean.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // (as when the application is undeployed)
+        target.close();
+        messageBean.join(5000);
+
+        assertFalse(messageBean.isAlive());
+        assertInstanceOf(EJBException.class, thrown.get());
+        verify(ingestService, never()).ingestAsTabular(2L);
+    }
+
+    private static IngestMessage message(Long... dataFileIds) {
+        IngestMessage message = new IngestMessage(5L);
+        message.setDatasetId(10L);
+        for (Long dataFileId : dataFileIds) {
+            message.addFileId(dataFileId);
+        }
+        return message;
+    }
+
+    private static DataFile scheduledFile(Long id) {
+        DataFile dataFile = new DataFile("text/csv");
+        dataFile.setId(id);
+        dataFile.setFilesize(1000);
+        dataFile.SetIngestScheduled();
+        return dataFile;
+    }
+}
@@ -0,0 +1,52 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TabDelimitedFileWriterTest {
+
+    @Test
+    public void testRowsAreTabDelimited() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TabDelimitedFileWriter writer = new TabDelimitedFileWriter(out)) {
+            writer.write("\"a\"").write(1L).write((String) null).write(2.5d);
+            writer.endRow();
+            writer.writeRow(Arrays.asList("x", null, "z"));
+            assertEquals(2, writer.getRowCount());
+        }
+        assertEquals("\"a\"\t1\t\t2.5\nx\t\tz\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testNumbersAreFormattedAsBefore() throws IOException {
+        Object[] row = {(byte) -5, (short) 300, 123456, -9876543210L, Long.MIN_VALUE,
+            0.0d, -0.0d, 3.0d, -42.0d, 9999999.0d, 1.0e7d, 0.1d, 1.0e-5d, 123.456d, -1.7976931348623157E308d,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.MIN_VALUE,
+            0.0f, -0.0f, 7.0f, 0.3f, 1.0e7f, Float.NaN, Float.NEGATIVE_INFINITY};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TabDelimitedFileWriter writer = new TabDelimitedFileWriter(out)) {
+            writer.writeRow(row);
+        }
+        assertEquals(StringUtils.join(row, "\t") + "\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStringsAreEncodedAsUtf8() throws IOException {
+        String value = "caf\u00e9 \u65e5\u672c \ud83d\ude00";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // a small buffer, to make sure the multi-byte characters are not
+        // split when it is flushed:
+        try (TabDelimitedFileWriter writer = new TabDelimitedFileWriter(out, 8)) {
+            for (int i = 0; i < 100; i++) {
+                writer.write(value).endRow();
+            }
+        }
+        assertEquals(StringUtils.repeat(value + "\n", 100), out.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,46 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TabularDataFileReaderTest {
+
+    /*
+     * The numeric values are recognized without Double.parseDouble(), for
+     * the common cases; the results must be the same.
+     */
+    @Test
+    public void testNumericValues() {
+        for (String value : new String[]{"0", "-199", "+5", "3.141592653", "1.", ".5", "-.5e-3", "1E10", "6.000001",
+            "1f", "2D", "Infinity", "0x1p3", " 12 "}) {
+            assertTrue(TabularDataFileReader.isDouble(value), value);
+        }
+        for (String value : new String[]{"", "+", "-", ".", "e5", "1e", "1.2.3", "Inf+11", "11-2", "4,8", "nap", "1 2"}) {
+            assertFalse(TabularDataFileReader.isDouble(value), value);
+        }
+    }
+
+    @Test
+    public void testCellsAreReadBackInOrder() throws IOException {
+        String longValue = "x".repeat(1000);
+        try (TabularDataFileReader.CellSpool spool = new TabularDataFileReader.CellSpool("spooltest-")) {
+            spool.write("1.5");
+            spool.write(null);
+            spool.write("");
+            spool.write("Zürich");
+            spool.write(longValue);
+
+            spool.rewind();
+            assertEquals("1.5", spool.read());
+            assertNull(spool.read());
+            assertEquals("", spool.read());
+            assertEquals("Zürich", spool.read());
+            assertEquals(longValue, spool.read());
+        }
+    }
+}
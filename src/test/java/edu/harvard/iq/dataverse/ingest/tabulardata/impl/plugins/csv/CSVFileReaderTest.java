@@ -420,4 +420,16 @@ public class CSVFileReaderTest {
             assertEquals(expMessage, ex.getMessage());
         }
     }
+
+    /*
+     * The integers are recognized without creating any objects (the
+     * decimal numbers are tested in TabularDataFileReaderTest).
+     */
+    @Test
+    public void testIntegerValues() {
+        assertTrue(CSVFileReader.isInteger("-2389"));
+        assertTrue(CSVFileReader.isInteger("+7"));
+        assertFalse(CSVFileReader.isInteger("-"));
+        assertFalse(CSVFileReader.isInteger("6.000001"));
+    }
 }
@@ -0,0 +1,58 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.xlsx;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SharedStringIndexTest {
+
+    private static final String SHARED_STRINGS = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"4\" uniqueCount=\"4\">"
+            + "<si><t>plain</t></si>"
+            + "<si><r><rPr><b/></rPr><t>rich </t></r><r><t xml:space=\"preserve\">text</t></r></si>"
+            + "<si><t>\u65e5\u672c</t><rPh sb=\"0\" eb=\"2\"><t>\u306b\u307b\u3093</t></rPh></si>"
+            + "<si><t>line_x000D_break</t></si>"
+            + "</sst>";
+
+    private static SharedStringIndex read(long memoryLimit) throws Exception {
+        return SharedStringIndex.read(new ByteArrayInputStream(SHARED_STRINGS.getBytes(StandardCharsets.UTF_8)), memoryLimit);
+    }
+
+    @Test
+    public void testStringsInMemory() throws Exception {
+        try (SharedStringIndex index = read(SharedStringIndex.DEFAULT_MEMORY_LIMIT)) {
+            assertFalse(index.isOnDisk());
+            assertEquals(4, index.size());
+            assertEquals("plain", index.get(0));
+            assertEquals("rich text", index.get(1));
+            assertEquals("\u65e5\u672c", index.get(2));
+            assertEquals("line\rbreak", index.get(3));
+            assertThrows(IndexOutOfBoundsException.class, () -> index.get(4));
+        }
+    }
+
+    @Test
+    public void testStringsOnDisk() throws Exception {
+        try (SharedStringIndex index = read(6)) {
+            assertTrue(index.isOnDisk());
+            assertEquals(4, index.size());
+            assertEquals("line\rbreak", index.get(3));
+            assertEquals("plain", index.get(0));
+            assertEquals("rich text", index.get(1));
+            assertEquals("\u65e5\u672c", index.get(2));
+            assertEquals("plain", index.get(0));
+        }
+    }
+
+    @Test
+    public void testNoSharedStrings() throws Exception {
+        try (SharedStringIndex index = SharedStringIndex.read(null, SharedStringIndex.DEFAULT_MEMORY_LIMIT)) {
+            assertEquals(0, index.size());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.DvObjectServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.json.JsonObject;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class PermissionReindexServiceBeanTest {
+
+    @Mock
+    private SolrIndexServiceBean solrIndexService;
+    @Mock
+    private DvObjectServiceBean dvObjectService;
+    @Mock
+    private ManagedThreadFactory managedThreadFactory;
+    @InjectMocks
+    private PermissionReindexServiceBean target;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    public void setUp() {
+        lenient().when(managedThreadFactory.newThread(any())).thenAnswer(invocation -> new Thread(invocation.<Runnable>getArgument(0)));
+        lenient().when(solrIndexService.findObjectsToReindexPermissionsFor(any())).thenReturn(List.of(10L, 11L, 12L, 13L, 14L));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        target.close();
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.SEARCH_PERMISSION_INDEX_CHUNK_SIZE, value = "2")
+    public void testReindexedInChunks() throws Exception {
+        target.init();
+        when(solrIndexService.indexPermissionsForChunk(anyList())).thenReturn(1);
+
+        assertTrue(target.submit(dataverse(1L)));
+
+        verify(solrIndexService, timeout(5000).times(3)).indexPermissionsForChunk(anyList());
+        verify(solrIndexService).indexPermissionsForChunk(List.of(10L, 11L));
+        verify(solrIndexService).indexPermissionsForChunk(List.of(14L));
+        verify(dvObjectService, times(3)).updatePermissionModificationTimes(anyList());
+        // (the coordinator and the workers run on managed threads)
+        verify(managedThreadFactory, atLeast(2)).newThread(any());
+    }
+
+    @Test
+    public void testSubmitJoinsTheQueuedReindex() throws Exception {
+        target.init();
+        blockTheReindexOf(2L);
+        assertTrue(target.submit(dataverse(2L)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // (queued behind the running reindex of 2)
+        assertTrue(target.submit(dataverse(1L)));
+        assertFalse(target.submit(dataverse(1L)));
+        assertEquals(1, status().getInt("queued"));
+        release.countDown();
+
+        verify(solrIndexService, timeout(5000).times(1)).findObjectsToReindexPermissionsFor(1L);
+        Thread.sleep(200);
+        verify(solrIndexService, times(1)).findObjectsToReindexPermissionsFor(1L);
+    }
+
+    @Test
+    public void testSubmitDuringTheReindexRunsItOnceMore() throws Exception {
+        target.init();
+        blockTheReindexOf(1L);
+        assertTrue(target.submit(dataverse(1L)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // (the role changes made while it's running are joined into one more reindex)
+        assertFalse(target.submit(dataverse(1L)));
+        assertFalse(target.submit(dataverse(1L)));
+        assertEquals(1, status().getInt("running"));
+        release.countDown();
+
+        verify(solrIndexService, timeout(5000).times(2)).findObjectsToReindexPermissionsFor(1L);
+        Thread.sleep(200);
+        verify(solrIndexService, times(2)).findObjectsToReindexPermissionsFor(1L);
+    }
+
+    @Test
+    public void testPermissionsChanged() {
+        target.init();
+
+        target.permissionsChanged(new PermissionReindexServiceBean.PermissionsChangedEvent(List.<DvObject>of(dataverse(1L), dataverse(2L))));
+
+        verify(solrIndexService, timeout(5000)).findObjectsToReindexPermissionsFor(1L);
+        verify(solrIndexService, timeout(5000)).findObjectsToReindexPermissionsFor(2L);
+    }
+
+    private void blockTheReindexOf(Long id) {
+        when(solrIndexService.findObjectsToReindexPermissionsFor(id)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+    }
+
+    private JsonObject status() {
+        return target.getStatus().build();
+    }
+
+    private static Dataverse dataverse(Long id) {
+        Dataverse dataverse = new Dataverse();
+        dataverse.setId(id);
+        return dataverse;
+    }
+}
@@ -0,0 +1,236 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetVersionServiceBean;
+import edu.harvard.iq.dataverse.DataverseServiceBean;
+import edu.harvard.iq.dataverse.pidproviders.PidUtil;
+import edu.harvard.iq.dataverse.pidproviders.UnmanagedDOIServiceBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * The search cards are populated a page at a time; a card must come out the
+ * same as if it were populated on its own.
+ */
+@ExtendWith(MockitoExtension.class)
+public class SearchCardsTest {
+
+    @Mock
+    private EntityManager em;
+    @Mock
+    private DataFileServiceBean datafileService;
+    @InjectMocks
+    private DatasetVersionServiceBean datasetVersionService;
+    @InjectMocks
+    private DataverseServiceBean dataverseService;
+
+    // the rows of the native queries, by id
+    private final Map<Long, Object[]> versions = new HashMap<>();
+    private final Map<Long, Object[]> aliases = new HashMap<>();
+    private final Map<Long, Object[]> dataverses = new HashMap<>();
+
+    @BeforeAll
+    public static void setUpPidProvider() {
+        // (the identifiers on the cards are parsed by the PID providers)
+        PidUtil.addAllToUnmanagedProviderList(List.of(new UnmanagedDOIServiceBean() {
+            @Override
+            public boolean isConfigured() {
+                return true;
+            }
+        }));
+    }
+
+    @BeforeEach
+    public void setUp() {
+        // DATASETVERSION: ID, VERSIONSTATE, THUMBNAILFILE_ID, USEGENERICTHUMBNAIL, STORAGEIDENTIFIER
+        versions.put(11L, new Object[]{11L, "RELEASED", 501L, null, "s3://demo:18b39722140-50eb7d3c5ece"});
+        versions.put(12L, new Object[]{12L, "DEACCESSIONED", null, true, null});
+        versions.put(13L, new Object[]{13L, "DRAFT", null, null, null});
+        // DATAVERSE: ID, ALIAS
+        aliases.put(1L, new Object[]{1L, "root"});
+        aliases.put(2L, new Object[]{2L, "chemistry"});
+        // DATAVERSE with its parent: ID, AFFILIATION, ALIAS, parent ALIAS
+        dataverses.put(2L, new Object[]{2L, "Harvard University", "chemistry", "root"});
+        dataverses.put(3L, new Object[]{3L, null, "organic", "chemistry"});
+        dataverses.put(1L, new Object[]{1L, null, "root", null});
+
+        lenient().when(em.createNativeQuery(anyString())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            Map<Long, Object[]> table = sql.contains("FROM DATASETVERSION") ? versions
+                    : sql.contains("FROM DATAVERSE t1 WHERE") ? aliases
+                    : dataverses;
+            List<Object[]> rows = idsIn(sql).stream().filter(table::containsKey).map(table::get).collect(Collectors.toList());
+            Query query = mock(Query.class);
+            lenient().when(query.getResultList()).thenReturn(rows);
+            return query;
+        });
+        lenient().when(datafileService.findCheapAndEasy(anyCollection())).thenAnswer(invocation -> {
+            Map<Long, DataFile> files = new HashMap<>();
+            for (Object id : invocation.<Collection<?>>getArgument(0)) {
+                DataFile dataFile = new DataFile("image/png");
+                dataFile.setId((Long) id);
+                files.put((Long) id, dataFile);
+            }
+            return files;
+        });
+    }
+
+    @Test
+    public void testDatasetCardsPopulatedInBulkAreTheSameAsOneByOne() {
+        List<SolrSearchResult> bulk = datasetCards();
+        datasetVersionService.populateDatasetSearchCards(bulk);
+        // (one query for the versions, one for the dataverses, and one lookup of the thumbnails)
+        verify(em, times(2)).createNativeQuery(anyString());
+        verify(datafileService, times(1)).findCheapAndEasy(anyCollection());
+
+        List<SolrSearchResult> oneByOne = datasetCards();
+        for (SolrSearchResult card : oneByOne) {
+            datasetVersionService.populateDatasetSearchCards(List.of(card));
+        }
+
+        assertEquals(describe(oneByOne), describe(bulk));
+
+        SolrSearchResult released = bulk.get(0);
+        assertEquals("chemistry", released.getDataverseAlias());
+        assertFalse(released.isDeaccessionedState());
+        Dataset dataset = (Dataset) released.getEntity();
+        assertEquals("doi:10.5072/FK2/AAAAAA", dataset.getGlobalId().asString());
+        assertEquals(501L, dataset.getThumbnailFile().getId());
+        assertEquals("s3://demo:18b39722140-50eb7d3c5ece", dataset.getStorageIdentifier());
+        assertFalse(dataset.isUseGenericThumbnail());
+
+        SolrSearchResult deaccessioned = bulk.get(1);
+        assertEquals("root", deaccessioned.getDataverseAlias());
+        assertTrue(deaccessioned.isDeaccessionedState());
+        assertTrue(((Dataset) deaccessioned.getEntity()).isUseGenericThumbnail());
+
+        // (the dataverse of this one is gone: the card is left as it is)
+        SolrSearchResult orphan = bulk.get(2);
+        assertNull(orphan.getDataverseAlias());
+        assertNull(orphan.getEntity());
+    }
+
+    @Test
+    public void testDataverseCardsPopulatedInBulkAreTheSameAsOneByOne() {
+        List<SolrSearchResult> bulk = dataverseCards();
+        dataverseService.populateDvSearchCards(bulk);
+        verify(em, times(1)).createNativeQuery(anyString());
+
+        List<SolrSearchResult> oneByOne = dataverseCards();
+        for (SolrSearchResult card : oneByOne) {
+            dataverseService.populateDvSearchCards(List.of(card));
+        }
+
+        assertEquals(describe(oneByOne), describe(bulk));
+
+        assertEquals("Harvard University", bulk.get(0).getDataverseAffiliation());
+        assertEquals("chemistry", bulk.get(0).getDataverseAlias());
+        assertEquals("root", bulk.get(0).getDataverseParentAlias());
+        assertEquals("organic", bulk.get(1).getDataverseAlias());
+        assertEquals("chemistry", bulk.get(1).getDataverseParentAlias());
+        // (the root has no parent)
+        assertEquals("root", bulk.get(2).getDataverseAlias());
+        assertNull(bulk.get(2).getDataverseParentAlias());
+    }
+
+    private static List<SolrSearchResult> datasetCards() {
+        return Arrays.asList(
+                datasetCard(101L, 11L, "2", "doi:10.5072/FK2/AAAAAA"),
+                datasetCard(102L, 12L, "1", "doi:10.5072/FK2/BBBBBB"),
+                datasetCard(103L, 13L, "99", "doi:10.5072/FK2/CCCCCC"));
+    }
+
+    private static SolrSearchResult datasetCard(Long datasetId, long datasetVersionId, String dataverseId, String identifier) {
+        SolrSearchResult card = new SolrSearchResult("", identifier);
+        card.setType("datasets");
+        card.setEntityId(datasetId);
+        card.setDatasetVersionId(datasetVersionId);
+        card.setIdentifier(identifier);
+        card.setParent(parent(dataverseId));
+        return card;
+    }
+
+    private static List<SolrSearchResult> dataverseCards() {
+        return Arrays.asList(
+                dataverseCard(2L, "1"),
+                dataverseCard(3L, "2"),
+                dataverseCard(1L, null));
+    }
+
+    private static SolrSearchResult dataverseCard(Long dataverseId, String parentId) {
+        SolrSearchResult card = new SolrSearchResult("", "dataverse " + dataverseId);
+        card.setType("dataverses");
+        card.setEntityId(dataverseId);
+        card.setParent(parent(parentId));
+        return card;
+    }
+
+    private static Map<String, String> parent(String id) {
+        Map<String, String> parent = new HashMap<>();
+        if (id != null) {
+            parent.put("id", id);
+        }
+        return parent;
+    }
+
+    private static List<String> describe(List<SolrSearchResult> cards) {
+        List<String> descriptions = new ArrayList<>();
+        for (SolrSearchResult card : cards) {
+            StringBuilder description = new StringBuilder()
+                    .append(card.getDataverseAlias()).append('|')
+                    .append(card.getDataverseParentAlias()).append('|')
+                    .append(card.getDataverseAffiliation()).append('|')
+                    .append(card.isDeaccessionedState());
+            if (card.getEntity() instanceof Dataset) {
+                Dataset dataset = (Dataset) card.getEntity();
+                description.append('|').append(dataset.getGlobalId().asString())
+                        .append('|').append(dataset.getStorageIdentifier())
+                        .append('|').append(dataset.getThumbnailFile() == null ? null : dataset.getThumbnailFile().getId())
+                        .append('|').append(dataset.isUseGenericThumbnail());
+            }
+            descriptions.add(description.toString());
+        }
+        return descriptions;
+    }
+
+    private static Set<Long> idsIn(String sql) {
+        String list = sql.substring(sql.indexOf(" IN (") + 5);
+        list = list.substring(0, list.indexOf(')'));
+        Set<Long> ids = new HashSet<>();
+        for (String id : list.split(",")) {
+            ids.add(Long.valueOf(id.trim()));
+        }
+        return ids;
+    }
+}
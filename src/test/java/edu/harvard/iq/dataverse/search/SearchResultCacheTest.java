@@ -0,0 +1,138 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DatasetFieldType;
+import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DataverseFacet;
+import edu.harvard.iq.dataverse.DataverseMetadataBlockFacet;
+import edu.harvard.iq.dataverse.MetadataBlock;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SearchResultCacheTest {
+
+    private SearchResultCache target;
+
+    @BeforeEach
+    public void setUp() {
+        target = new SearchResultCache();
+        target.init();
+    }
+
+    @Test
+    public void testResponsesAreInvalidatedByIndexChanges() {
+        SolrQuery query = new SolrQuery("*");
+        QueryResponse response = new QueryResponse();
+
+        target.put(query, response, target.getGeneration());
+        assertSame(response, target.get(new SolrQuery("*")));
+        assertNull(target.get(new SolrQuery("title:data")));
+
+        target.indexChanged();
+        assertNull(target.get(query));
+    }
+
+    @Test
+    public void testResponseOfAQueryRunningDuringAnIndexChangeIsNotCached() {
+        SolrQuery query = new SolrQuery("*");
+        long generation = target.getGeneration();
+
+        target.indexChanged();
+        target.put(query, new QueryResponse(), generation);
+
+        assertNull(target.get(query));
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.SEARCH_RESULT_CACHE_TTL_SECONDS, value = "0")
+    public void testDisabled() {
+        target.init();
+        SolrQuery query = new SolrQuery("*");
+
+        target.put(query, new QueryResponse(), target.getGeneration());
+
+        assertNull(target.get(query));
+    }
+
+    @Test
+    public void testDatasetFieldsAreCopied() {
+        MetadataBlock block = new MetadataBlock();
+        block.setName("testBlock");
+        DatasetFieldType author = new DatasetFieldType("author", DatasetFieldType.FieldType.NONE, true);
+        author.setTitle("Author");
+        author.setMetadataBlock(block);
+        DatasetFieldType authorName = new DatasetFieldType("authorName", DatasetFieldType.FieldType.TEXT, false);
+        authorName.setTitle("Name");
+        authorName.setMetadataBlock(block);
+        authorName.setParentDatasetFieldType(author);
+        authorName.setId(7L);
+        AtomicInteger lookups = new AtomicInteger();
+
+        List<SearchResultCache.DatasetFieldInfo> datasetFields = target.getDatasetFields(() -> {
+            lookups.incrementAndGet();
+            return List.of(authorName);
+        });
+
+        SearchResultCache.DatasetFieldInfo datasetField = datasetFields.get(0);
+        assertEquals(7L, datasetField.getId());
+        assertEquals("authorName", datasetField.getName());
+        assertEquals("testBlock", datasetField.getMetadataBlockName());
+        assertEquals(authorName.getSolrField().getNameSearchable(), datasetField.getSearchableSolrField());
+        assertEquals(authorName.getSolrField().getNameFacetable(), datasetField.getFacetableSolrField());
+        assertEquals(authorName.getDisplayName(), datasetField.getDisplayName());
+        assertEquals("Author Name", datasetField.getDisplayName());
+
+        // (looked up once, until the entry expires)
+        assertSame(datasetFields, target.getDatasetFields(List::of));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testFacetsAreInvalidatedWhenChanged() {
+        Dataverse dataverse = dataverse("producerName");
+        SearchResultCache.FacetConfiguration facets = target.getFacets(dataverse);
+
+        assertEquals(List.of("producerName_ss"), facets.getFacetFields());
+        SearchResultCache.MetadataBlockFacet metadataBlockFacet = facets.getMetadataBlockFacets().get(0);
+        assertEquals("testBlock", metadataBlockFacet.getName());
+        assertEquals("Test Block", metadataBlockFacet.getLocaleDisplayFacet());
+        assertSame(facets, target.getFacets(dataverse));
+
+        // (the observer runs once the change is committed)
+        target.facetsChanged(new SearchResultCache.FacetsChangedEvent());
+
+        assertNotSame(facets, target.getFacets(dataverse));
+    }
+
+    private static Dataverse dataverse(String facetField) {
+        Dataverse dataverse = new Dataverse();
+        dataverse.setId(1L);
+        DataverseFacet dataverseFacet = new DataverseFacet();
+        dataverseFacet.setDatasetFieldType(new DatasetFieldType(facetField, DatasetFieldType.FieldType.TEXT, true));
+        List<DataverseFacet> dataverseFacets = new ArrayList<>();
+        dataverseFacets.add(dataverseFacet);
+        dataverse.setDataverseFacets(dataverseFacets);
+
+        MetadataBlock block = new MetadataBlock();
+        block.setName("testBlock");
+        block.setDisplayName("Test Block");
+        DataverseMetadataBlockFacet metadataBlockFacet = new DataverseMetadataBlockFacet();
+        metadataBlockFacet.setMetadataBlock(block);
+        List<DataverseMetadataBlockFacet> metadataBlockFacets = new ArrayList<>();
+        metadataBlockFacets.add(metadataBlockFacet);
+        dataverse.setMetadataBlockFacets(metadataBlockFacets);
+        return dataverse;
+    }
+}
@@ -0,0 +1,129 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class SolrIndexServiceBeanTest {
+
+    @Mock
+    private SolrClientService solrClientService;
+    @Mock
+    private SolrClient solrClient;
+    @Mock
+    private SearchResultCache searchResultCache;
+    @InjectMocks
+    private SolrIndexServiceBean target;
+
+    // what Solr has
+    private final SolrDocumentList indexed = new SolrDocumentList();
+
+    @BeforeEach
+    public void setUp() throws SolrServerException, IOException {
+        lenient().when(solrClientService.getSolrClient()).thenReturn(solrClient);
+        lenient().when(solrClient.query(any(SolrQuery.class))).thenAnswer(invocation -> {
+            String filterQuery = invocation.<SolrQuery>getArgument(0).getFilterQueries()[0];
+            List<String> ids = List.of(filterQuery.substring(filterQuery.indexOf('}') + 1).split(","));
+            SolrDocumentList results = new SolrDocumentList();
+            indexed.stream().filter(doc -> ids.contains((String) doc.getFieldValue(SearchFields.ID))).forEach(results::add);
+            QueryResponse response = mock(QueryResponse.class);
+            lenient().when(response.getResults()).thenReturn(results);
+            return response;
+        });
+    }
+
+    @Test
+    public void testOnlyChangedPermissionsArePersisted() throws Exception {
+        indexed.add(indexedDoc("dataset_1_permission", "group_public"));
+        indexed.add(indexedDoc("dataset_2_draft_permission", "group_user1"));
+        indexed.add(indexedDoc("datafile_3_draft_permission", "group_user1", "group_2-researchers"));
+
+        int persisted = target.persistChangedToSolr(List.of(
+                // (unchanged)
+                doc("dataset_1_permission", "group_public"),
+                // (a role was assigned)
+                doc("dataset_2_draft_permission", "group_user1", "group_user2"),
+                // (the same values, in another order)
+                doc("datafile_3_draft_permission", "group_2-researchers", "group_user1"),
+                // (not indexed yet)
+                doc("datafile_4_draft_permission", "group_user1")));
+
+        assertEquals(2, persisted);
+        ArgumentCaptor<Collection<SolrInputDocument>> added = ArgumentCaptor.forClass(Collection.class);
+        verify(solrClient).add(added.capture());
+        assertEquals(List.of("dataset_2_draft_permission", "datafile_4_draft_permission"),
+                added.getValue().stream().map(doc -> doc.getFieldValue(SearchFields.ID)).collect(Collectors.toList()));
+        verify(solrClient, times(1)).commit();
+        verify(searchResultCache).indexChanged();
+    }
+
+    @Test
+    public void testNothingIsPersistedWhenNothingChanged() throws Exception {
+        indexed.add(indexedDoc("dataverse_1", "group_public"));
+
+        assertEquals(0, target.persistChangedToSolr(List.of(doc("dataverse_1", "group_public"))));
+
+        verify(solrClient, never()).add(anyCollection());
+        verify(solrClient, never()).commit();
+        verifyNoInteractions(searchResultCache);
+    }
+
+    @Test
+    public void testPermissionsAreLookedUpInBatches() throws Exception {
+        List<SolrInputDocument> docs = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            docs.add(doc("datafile_" + i + "_draft_permission", "group_user1"));
+            indexed.add(indexedDoc("datafile_" + i + "_draft_permission", "group_user1"));
+        }
+
+        assertEquals(0, target.persistChangedToSolr(docs));
+
+        // (500 ids a query)
+        verify(solrClient, times(3)).query(any(SolrQuery.class));
+    }
+
+    private static SolrInputDocument doc(String id, String... discoverableBy) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField(SearchFields.ID, id);
+        doc.addField(SearchFields.DISCOVERABLE_BY, List.of(discoverableBy));
+        return doc;
+    }
+
+    private static SolrDocument indexedDoc(String id, String... discoverableBy) {
+        SolrDocument doc = new SolrDocument();
+        doc.addField(SearchFields.ID, id);
+        for (String value : discoverableBy) {
+            doc.addField(SearchFields.DISCOVERABLE_BY, value);
+        }
+        return doc;
+    }
+}
@@ -106,4 +106,18 @@ public class LruCacheTest {
         assertNull(sut.get(key1), "verify that value 1 is no longer here");
         assertEquals(value2, sut.get(key2), "verify that value 2 still exists");
     }
+
+    @Test
+    public void testInvalidateMatchingValues() {
+        sut.put(0l, "x");
+        sut.put(1l, "y");
+        sut.put(2l, "x");
+
+        sut.invalidateIf("x"::equals);
+
+        assertNull(sut.get(0l), "verify that value 0 is no longer here");
+        assertNull(sut.get(2l), "verify that value 2 is no longer here");
+        assertEquals("y", sut.get(1l), "verify that value 1 still exists");
+        assertEquals(1, sut.size());
+    }
 }
@@ -0,0 +1,26 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ManagedExecutorsTest {
+
+    @Test
+    public void testExecutorServiceOutsideOfAContainer() throws Exception {
+        ExecutorService executor = ManagedExecutors.getExecutorService();
+        assertNotNull(executor);
+        assertSame(executor, ManagedExecutors.getExecutorService());
+        assertEquals("done", executor.submit(() -> "done").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testThreadFactoryOutsideOfAContainer() throws Exception {
+        Thread thread = ManagedExecutors.getThreadFactory().newThread(() -> {});
+        assertNotNull(thread);
+        assertFalse(thread.isAlive());
+    }
+}
@@ -0,0 +1,96 @@
+package edu.harvard.iq.dataverse.util;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.license.License;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import java.util.ArrayList;
+import java.util.List;
+import jakarta.json.JsonObject;
+import org.eclipse.persistence.config.CacheIsolationType;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.queries.ReadObjectQuery;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SharedEntityCacheCustomizerTest {
+
+    private Session session;
+    private List<ClassDescriptor> descriptors;
+
+    @BeforeEach
+    public void setUp() {
+        session = mock(Session.class);
+        descriptors = new ArrayList<>();
+        when(session.getDescriptor(any(Class.class))).thenAnswer(invocation -> {
+            ClassDescriptor descriptor = new ClassDescriptor();
+            descriptors.add(descriptor);
+            return descriptor;
+        });
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.ENTITY_CACHE_EXPIRY_SECONDS, value = "60")
+    public void testCachedEntitiesAreSharedWithoutTheProfiler() throws Exception {
+        new SharedEntityCacheCustomizer().customize(session);
+
+        assertEquals(SharedEntityCacheCustomizer.CACHED_ENTITIES.size(), descriptors.size());
+        for (ClassDescriptor descriptor : descriptors) {
+            assertEquals(CacheIsolationType.SHARED, descriptor.getCacheIsolation());
+            assertEquals(60000L, ((TimeToLiveCacheInvalidationPolicy) descriptor.getCacheInvalidationPolicy()).getTimeToLive());
+        }
+        // (the statistics are off by default)
+        verify(session, never()).setProfiler(any());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.ENTITY_CACHE_STATISTICS, value = "true")
+    public void testStatisticsInstallTheProfiler() throws Exception {
+        new SharedEntityCacheCustomizer().customize(session);
+
+        verify(session).setProfiler(any(SharedEntityCacheCustomizer.CacheStatisticsProfiler.class));
+        assertTrue(SharedEntityCacheCustomizer.getStatistics().build().getBoolean("statistics"));
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.ENTITY_CACHE_ENABLED, value = "false")
+    public void testDisabled() throws Exception {
+        new SharedEntityCacheCustomizer().customize(session);
+
+        assertTrue(descriptors.isEmpty());
+        verify(session, never()).setProfiler(any());
+    }
+
+    @Test
+    public void testProfilerCountsTheCachedEntitiesOnly() {
+        long licenseHits = count("License", "hits");
+        long licenseMisses = count("License", "misses");
+        SharedEntityCacheCustomizer.CacheStatisticsProfiler profiler = new SharedEntityCacheCustomizer.CacheStatisticsProfiler();
+
+        profiler.occurred(SessionProfiler.CacheHits, new ReadObjectQuery(License.class), null);
+        profiler.occurred(SessionProfiler.CacheHits, new ReadObjectQuery(License.class), null);
+        profiler.occurred(SessionProfiler.CacheMisses, new ReadObjectQuery(License.class), null);
+        profiler.occurred(SessionProfiler.CacheHits, new ReadObjectQuery(Dataset.class), null);
+
+        assertEquals(licenseHits + 2, count("License", "hits"));
+        assertEquals(licenseMisses + 1, count("License", "misses"));
+        assertFalse(SharedEntityCacheCustomizer.getStatistics().build().getJsonObject("entities").containsKey("Dataset"));
+    }
+
+    private static long count(String entity, String counter) {
+        JsonObject entities = SharedEntityCacheCustomizer.getStatistics().build().getJsonObject("entities");
+        return entities.getJsonObject(entity).getJsonNumber(counter).longValue();
+    }
+}
@@ -0,0 +1,78 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BagPipeTest {
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void should_pass_all_the_bytes_through_few_small_buffers() throws Exception {
+        byte[] bytes = randomBytes(100 * 1024 + 7);
+        BagPipe pipe = new BagPipe(1000, 3);
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try (OutputStream out = pipe.getOutputStream()) {
+                for (int i = 0; i < bytes.length; i += 777) {
+                    out.write(bytes, i, Math.min(777, bytes.length - i));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(pipe.awaitData(10, TimeUnit.SECONDS));
+        try (InputStream in = pipe.getInputStream()) {
+            assertArrayEquals(bytes, IOUtils.toByteArray(in));
+        }
+        writer.get(10, TimeUnit.SECONDS);
+        assertEquals(bytes.length, pipe.getBytesWritten());
+    }
+
+    @Test
+    public void should_not_hand_over_the_first_buffer_before_it_is_full() throws Exception {
+        BagPipe pipe = new BagPipe(1000, 3);
+        pipe.getOutputStream().write(new byte[999]);
+        assertFalse(pipe.awaitData(10, TimeUnit.MILLISECONDS));
+        pipe.getOutputStream().write(new byte[1]);
+        assertTrue(pipe.awaitData(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void should_fail_the_reader_when_the_bag_fails() throws Exception {
+        BagPipe pipe = new BagPipe(1000, 3);
+        pipe.getOutputStream().write(randomBytes(1500));
+        pipe.fail(new IOException("file not found"));
+        IOException e = assertThrows(IOException.class, () -> IOUtils.toByteArray(pipe.getInputStream()));
+        assertEquals("file not found", e.getMessage());
+    }
+
+    @Test
+    public void should_fail_the_writer_when_the_reader_is_closed() throws Exception {
+        BagPipe pipe = new BagPipe(1000, 2);
+        OutputStream out = pipe.getOutputStream();
+        out.write(randomBytes(2000));
+        pipe.getInputStream().close();
+        assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 10; i++) {
+                out.write(randomBytes(1000));
+            }
+        });
+    }
+}
@@ -0,0 +1,92 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InlineHashInputStreamTest {
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void should_hash_the_bytes_read() throws Exception {
+        byte[] bytes = randomBytes(100 * 1024 + 3);
+        CompletableFuture<String> hash = new CompletableFuture<>();
+        try (InputStream in = new InlineHashInputStream(new ByteArrayInputStream(bytes), ChecksumType.SHA512, hash)) {
+            assertFalse(hash.isDone());
+            assertArrayEquals(bytes, IOUtils.toByteArray(in));
+        }
+        assertEquals(FileUtil.calculateChecksum(bytes, ChecksumType.SHA512), hash.join());
+    }
+
+    @Test
+    public void should_fail_the_hash_when_closed_early() throws Exception {
+        byte[] bytes = randomBytes(1000);
+        CompletableFuture<String> hash = new CompletableFuture<>();
+        try (InputStream in = new InlineHashInputStream(new ByteArrayInputStream(bytes), ChecksumType.MD5, hash)) {
+            in.read(new byte[10]);
+        }
+        assertTrue(hash.isCompletedExceptionally());
+    }
+
+    @Test
+    public void should_record_the_reads() throws Exception {
+        AtomicLong lastRead = new AtomicLong(0);
+        try (InputStream in = new InlineHashInputStream(new ByteArrayInputStream(randomBytes(100)), ChecksumType.MD5, new CompletableFuture<>(), lastRead)) {
+            in.read(new byte[10]);
+        }
+        assertTrue(lastRead.get() > 0);
+    }
+
+    @Test
+    public void should_wait_for_a_hash_while_files_are_read() throws Exception {
+        CompletableFuture<String> hash = new CompletableFuture<>();
+        AtomicLong lastProgress = new AtomicLong(System.currentTimeMillis());
+        Thread reader = new Thread(() -> {
+            // (slower than the stall timeout overall, but never stalled)
+            for (int i = 0; i < 10; i++) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                lastProgress.set(System.currentTimeMillis());
+            }
+            hash.complete("abc");
+        });
+        reader.start();
+
+        assertEquals("abc", BagGenerator.awaitHash(hash, lastProgress, 100, 10));
+        reader.join();
+    }
+
+    @Test
+    public void should_give_up_on_a_stalled_hash() {
+        AtomicLong lastProgress = new AtomicLong(System.currentTimeMillis());
+
+        assertThrows(TimeoutException.class, () -> BagGenerator.awaitHash(new CompletableFuture<>(), lastProgress, 50, 10));
+
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("read failed"));
+        assertThrows(ExecutionException.class, () -> BagGenerator.awaitHash(failed, lastProgress, 50, 10));
+    }
+}
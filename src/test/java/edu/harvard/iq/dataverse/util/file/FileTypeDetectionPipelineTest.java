@@ -0,0 +1,90 @@
+package edu.harvard.iq.dataverse.util.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileTypeDetectionPipelineTest {
+
+    private static FileTypeDetector detector(String name, boolean expensive, String type, List<String> calls) {
+        return new FileTypeDetector() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public boolean isExpensive() {
+                return expensive;
+            }
+
+            @Override
+            public String detect(FileHeaderBuffer header, String fileName) {
+                calls.add(name);
+                return type;
+            }
+        };
+    }
+
+    private static FileHeaderBuffer header(String contents) throws IOException {
+        Path tmpFile = Files.createTempFile("filetypedetection", "");
+        Files.writeString(tmpFile, contents, StandardCharsets.UTF_8);
+        tmpFile.toFile().deleteOnExit();
+        return FileHeaderBuffer.read(tmpFile.toFile(), 4);
+    }
+
+    @Test
+    public void testHeaderWindow() throws IOException {
+        FileHeaderBuffer header = header("SIMPLE");
+
+        assertEquals(4, header.length());
+        assertEquals(6, header.getFileSize());
+        assertFalse(header.isComplete());
+        assertTrue(header.startsWith("SIM".getBytes(StandardCharsets.US_ASCII)));
+        assertTrue(header.matchesAt(2, "MP".getBytes(StandardCharsets.US_ASCII)));
+        // beyond the window:
+        assertFalse(header.matchesAt(4, "LE".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void testCheapDetectorsRunInOrderAndStopAtFirstMatch() throws IOException {
+        List<String> calls = new ArrayList<>();
+        FileTypeDetectionPipeline pipeline = new FileTypeDetectionPipeline(List.of(
+                detector("expensive", true, "application/x-expensive", calls),
+                detector("first", false, null, calls),
+                detector("second", false, "application/x-second", calls),
+                detector("third", false, "application/x-third", calls)));
+
+        FileTypeDetectionPipeline.Result result = pipeline.detect(header("data"), "data.bin");
+
+        assertEquals("application/x-second", result.getType());
+        assertEquals("second", result.getDetectorName());
+        assertEquals(List.of("first", "second"), calls);
+        assertEquals(List.of("first", "second"), new ArrayList<>(result.getCosts().keySet()));
+    }
+
+    @Test
+    public void testExpensiveDetectorsOnlyRunWhenInconclusive() throws IOException {
+        List<String> calls = new ArrayList<>();
+        FileTypeDetectionPipeline pipeline = new FileTypeDetectionPipeline(List.of(
+                detector("expensive", true, null, calls),
+                detector("cheap", false, null, calls)));
+
+        FileTypeDetectionPipeline.Result result = pipeline.detect(header("data"), "data.bin");
+
+        assertNull(result.getType());
+        assertNull(result.getDetectorName());
+        assertEquals(List.of("cheap", "expensive"), calls);
+    }
+}